@@ -65,6 +65,7 @@ import javax.management.ObjectName;
 // jmx RI import
 //
 import com.sun.jdmk.internal.ClassLogger;
+import com.sun.jdmk.internal.VirtualThreads;
 
 
 /**
@@ -92,9 +93,9 @@ abstract class ClientHandler implements Runnable {
         // Note: the thread will be started by the subclass.
     }
 
-    // thread service
+    // thread service: a virtual thread if enabled, see VirtualThreads
     Thread createThread(Runnable r) {
-	return new Thread(this);
+	return VirtualThreads.newThread(r);
     }
 
     public void interrupt() {
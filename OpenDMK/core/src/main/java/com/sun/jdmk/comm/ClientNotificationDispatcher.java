@@ -61,6 +61,7 @@ import javax.management.*;
 import com.sun.jdmk.*;
 import com.sun.jdmk.comm.*;
 import com.sun.jdmk.internal.ClassLogger;
+import com.sun.jdmk.internal.VirtualThreads;
 
 /**
  * This class is used by a client connector to receive notifications from remote MBean objects.
@@ -880,10 +881,21 @@ class ClientNotificationDispatcher implements ClientNotificationHandler {
 
     // used to get notifications periodically from the ServerNotificationDispatcher if the mode is set to false.
     //
-    private class JobOfGetNotif extends Thread {
+    // Runs in a virtual thread if enabled, see VirtualThreads.
+    //
+    private class JobOfGetNotif implements Runnable {
 
         public JobOfGetNotif() {
-            setDaemon(true);
+            thread = VirtualThreads.newThread(this);
+            thread.setDaemon(true);
+        }
+
+        public void start() {
+            thread.start();
+        }
+
+        public boolean isAlive() {
+            return thread.isAlive();
         }
 
         public void run() {
@@ -894,7 +906,7 @@ class ClientNotificationDispatcher implements ClientNotificationHandler {
                 RemoteNotification[] ret = null;
 
                 try {
-                    sleep(forwardPeriod);
+                    Thread.sleep(forwardPeriod);
 
                     // check again
                     if (tobeTerminated || forwardPeriod <= 0) {
@@ -944,6 +956,8 @@ class ClientNotificationDispatcher implements ClientNotificationHandler {
         }
 
         boolean tobeTerminated = false;
+
+        private final Thread thread;
     }
 
     // private methods
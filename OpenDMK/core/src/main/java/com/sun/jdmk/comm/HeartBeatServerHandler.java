@@ -63,6 +63,7 @@ import javax.management.MBeanServer;
 // jdmk import
 //
 import com.sun.jdmk.internal.ClassLogger;
+import com.sun.jdmk.internal.VirtualThreads;
 import com.sun.jdmk.ServiceName;
 
 /**
@@ -257,16 +258,25 @@ class HeartBeatServerHandler {
 	    cleanup(hbSessionId);
 	}
 
-	private class WaitPing extends Thread {
+	// Sleeps rather than waits on a lock, so that a virtual thread
+	// does not keep its carrier thread.
+	//
+	private class WaitPing implements Runnable {
+
+	    public void start() {
+		thread.start();
+	    }
+
+	    public boolean isAlive() {
+		return thread.isAlive();
+	    }
 
 	    public void run() {
 		while (!toBeTerminated && timeout > 0) {
 		    // Sleep for a while
 		    //
 		    try {
-			synchronized(lock) {
-			    lock.wait(timeout);
-			}
+			Thread.sleep(timeout);
 		    } catch (InterruptedException ie) {
 			if (toBeTerminated) {
 			    break;
@@ -308,8 +318,8 @@ class HeartBeatServerHandler {
                         hbSessionId + " disconnected.");
 		    cleanupHBClientInfo();
 
-		    synchronized(lock) {
-			lock.notify();
+		    if (thread != Thread.currentThread()) {
+			thread.interrupt();
 		    }
 
 		} else {
@@ -323,7 +333,7 @@ class HeartBeatServerHandler {
 	    private long actualThreadEndTime = 0;
 	    private boolean toBeTerminated = false;
 
-	    private final int[] lock = new int[0];
+	    private final Thread thread = VirtualThreads.newThread(this);
 	}
 
 	private String hbSessionId;
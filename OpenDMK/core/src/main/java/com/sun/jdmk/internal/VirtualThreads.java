@@ -0,0 +1,136 @@
+/*
+ * @(#)file      VirtualThreads.java
+ * @(#)author    Sun Microsystems, Inc.
+ * @(#)version   1.1
+ * @(#)lastedit  07/03/08
+ * @(#)build     @BUILD_TAG_PLACEHOLDER@
+ *
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright (c) 2007 Sun Microsystems, Inc. All Rights Reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU General
+ * Public License Version 2 only ("GPL") or the Common Development and
+ * Distribution License("CDDL")(collectively, the "License"). You may not use
+ * this file except in compliance with the License. You can obtain a copy of the
+ * License at http://opendmk.dev.java.net/legal_notices/licenses.txt or in the 
+ * LEGAL_NOTICES folder that accompanied this code. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file found at
+ *     http://opendmk.dev.java.net/legal_notices/licenses.txt
+ * or in the LEGAL_NOTICES folder that accompanied this code.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.
+ * 
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * 
+ *       "Portions Copyrighted [year] [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding
+ * 
+ *       "[Contributor] elects to include this software in this distribution
+ *        under the [CDDL or GPL Version 2] license."
+ * 
+ * If you don't indicate a single choice of license, a recipient has the option
+ * to distribute your version of this file under either the CDDL or the GPL
+ * Version 2, or to extend the choice of license to its licensees as provided
+ * above. However, if you add GPL Version 2 code and therefore, elected the
+ * GPL Version 2 license, then the option applies only if the new code is made
+ * subject to such option by the copyright holder.
+ * 
+ */
+
+package com.sun.jdmk.internal;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Creates the threads of the adaptors and connectors which mostly wait
+ * for a client.  When the system property
+ * <code>com.sun.jdmk.virtual.threads</code> is <code>true</code> and
+ * the JDK supports them (JDK 21 or later), these threads are virtual
+ * threads, created through reflection.  Otherwise they are platform
+ * threads.
+ *
+ * <p>A virtual thread is cheap while it waits for a socket or sleeps,
+ * but it holds its carrier thread while it waits in a
+ * <code>synchronized</code> block, up to JDK 23.</p>
+ */
+public final class VirtualThreads {
+
+    /**
+     * Name of the system property telling whether the threads waiting
+     * for a client are virtual threads.  Its default value is false.
+     */
+    public static final String VIRTUAL_THREADS =
+	"com.sun.jdmk.virtual.threads";
+
+    private VirtualThreads() {}
+
+    /**
+     * Tells whether the threads waiting for a client are virtual
+     * threads.
+     */
+    public static boolean isEnabled() {
+	return unstarted != null &&
+	    Boolean.valueOf(System.getProperty(VIRTUAL_THREADS)).booleanValue();
+    }
+
+    /**
+     * Returns a new thread, not started yet, running the given job.
+     * It is a virtual thread if {@link #isEnabled} returns true, and
+     * a platform thread otherwise.
+     */
+    public static Thread newThread(Runnable job) {
+	if (isEnabled()) {
+	    try {
+		return (Thread)
+		    unstarted.invoke(ofVirtual.invoke(null, NO_ARGS),
+				     new Object[] {job});
+	    } catch (InvocationTargetException e) {
+		final Throwable t = e.getTargetException();
+		if (t instanceof RuntimeException) {
+		    throw (RuntimeException) t;
+		}
+		if (t instanceof Error) {
+		    throw (Error) t;
+		}
+		throw new IllegalStateException(t.toString());
+	    } catch (IllegalAccessException e) {
+		throw new IllegalStateException(e.toString());
+	    }
+	}
+
+	return new Thread(job);
+    }
+
+    private static final Object[] NO_ARGS = new Object[0];
+
+    private static final Method ofVirtual;
+    private static final Method unstarted;
+
+    static {
+	Method of = null;
+	Method start = null;
+	try {
+	    of = Thread.class.getMethod("ofVirtual", new Class[0]);
+	    start = Class.forName("java.lang.Thread$Builder").getMethod(
+			"unstarted", new Class[] {Runnable.class});
+	} catch (Exception e) {
+	    // before JDK 21
+	    of = null;
+	    start = null;
+	}
+	ofVirtual = of;
+	unstarted = start;
+    }
+}
@@ -0,0 +1,330 @@
+/*
+ * @(#)file      AdmissionControl.java
+ * @(#)author    Sun Microsystems, Inc.
+ * @(#)version   1.1
+ * @(#)lastedit  07/03/08
+ * @(#)build     @BUILD_TAG_PLACEHOLDER@
+ *
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright (c) 2007 Sun Microsystems, Inc. All Rights Reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU General
+ * Public License Version 2 only ("GPL") or the Common Development and
+ * Distribution License("CDDL")(collectively, the "License"). You may not use
+ * this file except in compliance with the License. You can obtain a copy of the
+ * License at http://opendmk.dev.java.net/legal_notices/licenses.txt or in the 
+ * LEGAL_NOTICES folder that accompanied this code. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file found at
+ *     http://opendmk.dev.java.net/legal_notices/licenses.txt
+ * or in the LEGAL_NOTICES folder that accompanied this code.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.
+ * 
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * 
+ *       "Portions Copyrighted [year] [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding
+ * 
+ *       "[Contributor] elects to include this software in this distribution
+ *        under the [CDDL or GPL Version 2] license."
+ * 
+ * If you don't indicate a single choice of license, a recipient has the option
+ * to distribute your version of this file under either the CDDL or the GPL
+ * Version 2, or to extend the choice of license to its licensees as provided
+ * above. However, if you add GPL Version 2 code and therefore, elected the
+ * GPL Version 2 license, then the option applies only if the new code is made
+ * subject to such option by the copyright holder.
+ * 
+ */
+
+package com.sun.jmx.remote.generic;
+
+import java.util.ArrayList;
+
+/**
+ * Limits the requests a connector server has read and not yet
+ * answered, for all its client connections together and for each of
+ * them.  The requests are counted, and so are their bytes when the
+ * transport counts them.
+ *
+ * <p>The reader of a connection asks its {@link Gate} to admit each
+ * request it has read.  When a limit is reached, the reader keeps the
+ * request and stops reading until enough requests are answered, so
+ * that the client is slowed down by TCP flow control instead of
+ * filling the memory of the server.  A request is always admitted if
+ * there is no other request in progress, even if it is larger than the
+ * limit of bytes.</p>
+ */
+public class AdmissionControl {
+
+    /**
+     * Constructs an AdmissionControl with the given limits for all the
+     * client connections of a connector server.
+     *
+     * @param maxRequests the maximum number of requests in progress.
+     * @param maxBytes the maximum number of bytes of the requests in
+     * progress.
+     */
+    public AdmissionControl(int maxRequests, long maxBytes) {
+	if (maxRequests <= 0 || maxBytes <= 0) {
+	    throw new IllegalArgumentException("The limits must be " +
+					       "positive.");
+	}
+
+	this.maxRequests = maxRequests;
+	this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the gate of a new client connection, with the given
+     * limits for this connection.
+     */
+    public Gate newGate(int maxRequests, long maxBytes) {
+	if (maxRequests <= 0 || maxBytes <= 0) {
+	    throw new IllegalArgumentException("The limits must be " +
+					       "positive.");
+	}
+
+	return new Gate(maxRequests, maxBytes);
+    }
+
+    /**
+     * Returns the number of requests in progress.
+     */
+    public int getRequests() {
+	synchronized(lock) {
+	    return requests;
+	}
+    }
+
+    /**
+     * Returns the number of bytes of the requests in progress.
+     */
+    public long getBytes() {
+	synchronized(lock) {
+	    return bytes;
+	}
+    }
+
+    /**
+     * Returns the number of connections whose reader currently waits
+     * for a request to be admitted.
+     */
+    public int getPausedConnections() {
+	synchronized(lock) {
+	    return paused;
+	}
+    }
+
+    /**
+     * Returns the number of times a reader had to wait for a request
+     * to be admitted.
+     */
+    public long getPauseCount() {
+	synchronized(lock) {
+	    return pauseCount;
+	}
+    }
+
+    /**
+     * The limits of a client connection.
+     */
+    public class Gate {
+	private Gate(int maxRequests, long maxBytes) {
+	    this.maxRequests = maxRequests;
+	    this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Admits a request of the given size, waiting until the limits
+	 * allow it.
+	 *
+	 * @return false if this gate is closed.
+	 *
+	 * @exception InterruptedException if the waiting thread is
+	 * interrupted.
+	 */
+	public boolean admit(long size) throws InterruptedException {
+	    synchronized(lock) {
+		if (!closed && !admissible(this)) {
+		    pause();
+		    try {
+			while (!closed && !admissible(this)) {
+			    lock.wait();
+			}
+		    } finally {
+			paused--;
+		    }
+		}
+
+		if (closed) {
+		    return false;
+		}
+
+		add(this, size);
+		return true;
+	    }
+	}
+
+	/**
+	 * Admits a request of the given size if the limits allow it.
+	 * Otherwise the given job is run once when some requests are
+	 * done, and should try again.
+	 *
+	 * @return true if the request is admitted.
+	 */
+	public boolean tryAdmit(long size, Runnable resume) {
+	    synchronized(lock) {
+		if (closed || admissible(this)) {
+		    if (!closed) {
+			add(this, size);
+		    }
+		    return true;
+		}
+
+		pause();
+		this.resume = resume;
+		waiting.add(this);
+		return false;
+	    }
+	}
+
+	/**
+	 * Tells that an admitted request of the given size is done.
+	 */
+	public void release(long size) {
+	    final Runnable[] resumes;
+	    synchronized(lock) {
+		if (closed) {
+		    return;
+		}
+
+		remove(this, 1, size);
+		resumes = wakeUp();
+	    }
+
+	    resume(resumes);
+	}
+
+	/**
+	 * Closes this gate: its requests are no longer counted and its
+	 * reader is not resumed.
+	 */
+	public void close() {
+	    final Runnable[] resumes;
+	    synchronized(lock) {
+		if (closed) {
+		    return;
+		}
+
+		closed = true;
+		if (waiting.remove(this)) {
+		    paused--;
+		    resume = null;
+		}
+		remove(this, requests, bytes);
+		resumes = wakeUp();
+	    }
+
+	    resume(resumes);
+	}
+
+	private final int maxRequests;
+	private final long maxBytes;
+
+	private int requests = 0;
+	private long bytes = 0;
+	private boolean closed = false;
+	private Runnable resume;
+    }
+
+    // called holding the lock
+    private boolean admissible(Gate gate) {
+	return (gate.requests == 0 ||
+		(gate.requests < gate.maxRequests &&
+		 gate.bytes < gate.maxBytes)) &&
+	       (requests == 0 ||
+		(requests < maxRequests && bytes < maxBytes));
+    }
+
+    // called holding the lock
+    private void pause() {
+	paused++;
+	pauseCount++;
+    }
+
+    // called holding the lock
+    private void add(Gate gate, long size) {
+	gate.requests++;
+	gate.bytes += size;
+	requests++;
+	bytes += size;
+    }
+
+    // called holding the lock
+    private void remove(Gate gate, int n, long size) {
+	gate.requests -= n;
+	gate.bytes -= size;
+	requests -= n;
+	bytes -= size;
+    }
+
+    /*
+     * Called holding the lock when some requests are done: the
+     * waiting readers check their limits again.  Returns the jobs to
+     * run, outside of the lock, to resume the readers which do not
+     * wait in a thread.
+     */
+    private Runnable[] wakeUp() {
+	lock.notifyAll();
+
+	if (waiting.isEmpty()) {
+	    return null;
+	}
+
+	final Runnable[] resumes = new Runnable[waiting.size()];
+	for (int i = 0; i < resumes.length; i++) {
+	    final Gate gate = (Gate) waiting.get(i);
+	    resumes[i] = gate.resume;
+	    gate.resume = null;
+	}
+	paused -= resumes.length;
+	waiting.clear();
+
+	return resumes;
+    }
+
+    private static void resume(Runnable[] resumes) {
+	if (resumes == null) {
+	    return;
+	}
+
+	for (int i = 0; i < resumes.length; i++) {
+	    resumes[i].run();
+	}
+    }
+
+    private final int maxRequests;
+    private final long maxBytes;
+
+    private final int[] lock = new int[0];
+
+    private int requests = 0;
+    private long bytes = 0;
+    private int paused = 0;
+    private long pauseCount = 0;
+
+    // the gates to resume when some requests are done
+    private final ArrayList waiting = new ArrayList();
+}
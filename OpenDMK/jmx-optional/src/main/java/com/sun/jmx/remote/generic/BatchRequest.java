@@ -0,0 +1,183 @@
+/*
+ * @(#)file      BatchRequest.java
+ * @(#)author    Sun Microsystems, Inc.
+ * @(#)version   1.1
+ * @(#)lastedit  07/03/08
+ * @(#)build     @BUILD_TAG_PLACEHOLDER@
+ *
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright (c) 2007 Sun Microsystems, Inc. All Rights Reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU General
+ * Public License Version 2 only ("GPL") or the Common Development and
+ * Distribution License("CDDL")(collectively, the "License"). You may not use
+ * this file except in compliance with the License. You can obtain a copy of the
+ * License at http://opendmk.dev.java.net/legal_notices/licenses.txt or in the 
+ * LEGAL_NOTICES folder that accompanied this code. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file found at
+ *     http://opendmk.dev.java.net/legal_notices/licenses.txt
+ * or in the LEGAL_NOTICES folder that accompanied this code.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.
+ * 
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * 
+ *       "Portions Copyrighted [year] [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding
+ * 
+ *       "[Contributor] elects to include this software in this distribution
+ *        under the [CDDL or GPL Version 2] license."
+ * 
+ * If you don't indicate a single choice of license, a recipient has the option
+ * to distribute your version of this file under either the CDDL or the GPL
+ * Version 2, or to extend the choice of license to its licensees as provided
+ * above. However, if you add GPL Version 2 code and therefore, elected the
+ * GPL Version 2 license, then the option applies only if the new code is made
+ * subject to such option by the copyright holder.
+ * 
+ */
+
+package com.sun.jmx.remote.generic;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.Attribute;
+import javax.management.ObjectName;
+import javax.management.QueryExp;
+import javax.management.remote.message.MBeanServerRequestMessage;
+
+/**
+ * A list of <code>MBeanServerConnection</code> operations to be
+ * executed by the connector server in a single round trip, see
+ * {@link BatchMBeanServerConnection#executeBatch}.
+ *
+ * <p>Each method adding an operation returns the index of its result
+ * in the {@link BatchResult}.  The operations are executed in the order
+ * they were added, and the failure of one operation does not prevent
+ * the next ones from being executed.</p>
+ *
+ * <p>This class is not thread-safe.</p>
+ */
+public class BatchRequest {
+
+    public BatchRequest() {}
+
+    /**
+     * Adds a <code>getAttribute</code> operation.
+     */
+    public int getAttribute(ObjectName name, String attribute) {
+	return add(MBeanServerRequestMessage.GET_ATTRIBUTE,
+		   new Object[] {name, attribute});
+    }
+
+    /**
+     * Adds a <code>getAttributes</code> operation, whose result is an
+     * <code>AttributeList</code>.
+     */
+    public int getAttributes(ObjectName name, String[] attributes) {
+	return add(MBeanServerRequestMessage.GET_ATTRIBUTES,
+		   new Object[] {name, attributes});
+    }
+
+    /**
+     * Adds a <code>setAttribute</code> operation, whose result is
+     * <code>null</code>.
+     */
+    public int setAttribute(ObjectName name, Attribute attribute) {
+	return add(MBeanServerRequestMessage.SET_ATTRIBUTE,
+		   new Object[] {name, attribute});
+    }
+
+    /**
+     * Adds an <code>invoke</code> operation.
+     */
+    public int invoke(ObjectName name, String operationName,
+		      Object params[], String signature[]) {
+	return add(MBeanServerRequestMessage.INVOKE,
+		   new Object[] {name, operationName, params, signature});
+    }
+
+    /**
+     * Adds a <code>getMBeanInfo</code> operation.
+     */
+    public int getMBeanInfo(ObjectName name) {
+	return add(MBeanServerRequestMessage.GET_MBEAN_INFO,
+		   new Object[] {name});
+    }
+
+    /**
+     * Adds an <code>isRegistered</code> operation, whose result is a
+     * <code>Boolean</code>.
+     */
+    public int isRegistered(ObjectName name) {
+	return add(MBeanServerRequestMessage.IS_REGISTERED,
+		   new Object[] {name});
+    }
+
+    /**
+     * Adds a <code>queryNames</code> operation, whose result is a
+     * <code>Set</code> of <code>ObjectName</code>.
+     */
+    public int queryNames(ObjectName name, QueryExp query) {
+	return add(MBeanServerRequestMessage.QUERY_NAMES,
+		   new Object[] {name, query});
+    }
+
+    /**
+     * Adds a <code>queryAttributes</code> operation, whose result is a
+     * <code>Map</code> of <code>ObjectName</code> to
+     * <code>AttributeList</code>.
+     *
+     * @see BulkMBeanServerConnection#queryAttributes
+     */
+    public int queryAttributes(ObjectName name, QueryExp query,
+			       String[] attributes) {
+	return add(MBeanServerRequestMessage.QUERY_ATTRIBUTES,
+		   new Object[] {name, query, attributes});
+    }
+
+    /**
+     * Returns the number of operations in this batch.
+     */
+    public int size() {
+	return methodIds.size();
+    }
+
+    /**
+     * Returns the method identifier of an operation, one of the
+     * constants of {@link MBeanServerRequestMessage}.  Used by the
+     * connector.
+     */
+    public int getMethodId(int index) {
+	return ((Integer) methodIds.get(index)).intValue();
+    }
+
+    /**
+     * Returns the parameters of an operation, not wrapped yet.  Used
+     * by the connector.
+     */
+    public Object[] getParams(int index) {
+	return (Object[]) params.get(index);
+    }
+
+    private int add(int methodId, Object[] p) {
+	methodIds.add(new Integer(methodId));
+	params.add(p);
+	return methodIds.size() - 1;
+    }
+
+    private final List methodIds = new ArrayList();
+    private final List params = new ArrayList();
+}
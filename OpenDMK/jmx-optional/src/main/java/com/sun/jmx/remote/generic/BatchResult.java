@@ -0,0 +1,137 @@
+/*
+ * @(#)file      BatchResult.java
+ * @(#)author    Sun Microsystems, Inc.
+ * @(#)version   1.1
+ * @(#)lastedit  07/03/08
+ * @(#)build     @BUILD_TAG_PLACEHOLDER@
+ *
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright (c) 2007 Sun Microsystems, Inc. All Rights Reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU General
+ * Public License Version 2 only ("GPL") or the Common Development and
+ * Distribution License("CDDL")(collectively, the "License"). You may not use
+ * this file except in compliance with the License. You can obtain a copy of the
+ * License at http://opendmk.dev.java.net/legal_notices/licenses.txt or in the 
+ * LEGAL_NOTICES folder that accompanied this code. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file found at
+ *     http://opendmk.dev.java.net/legal_notices/licenses.txt
+ * or in the LEGAL_NOTICES folder that accompanied this code.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.
+ * 
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * 
+ *       "Portions Copyrighted [year] [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding
+ * 
+ *       "[Contributor] elects to include this software in this distribution
+ *        under the [CDDL or GPL Version 2] license."
+ * 
+ * If you don't indicate a single choice of license, a recipient has the option
+ * to distribute your version of this file under either the CDDL or the GPL
+ * Version 2, or to extend the choice of license to its licensees as provided
+ * above. However, if you add GPL Version 2 code and therefore, elected the
+ * GPL Version 2 license, then the option applies only if the new code is made
+ * subject to such option by the copyright holder.
+ * 
+ */
+
+package com.sun.jmx.remote.generic;
+
+import java.io.IOException;
+
+import javax.management.JMException;
+
+import com.sun.jmx.remote.opt.util.EnvHelp;
+
+/**
+ * The results of the operations of a {@link BatchRequest}, in the order
+ * they were added to the batch.
+ */
+public class BatchResult {
+
+    /**
+     * Constructs the results of a batch.  Used by the connector.
+     *
+     * @param results the result of each operation, or the exception
+     * it threw.
+     * @param exceptions tells for each operation whether it threw an
+     * exception.
+     */
+    public BatchResult(Object[] results, boolean[] exceptions) {
+	if (results.length != exceptions.length) {
+	    throw new IllegalArgumentException("Inconsistent batch result");
+	}
+	this.results = results;
+	this.exceptions = exceptions;
+    }
+
+    /**
+     * Returns the number of results.
+     */
+    public int size() {
+	return results.length;
+    }
+
+    /**
+     * Tells whether the operation with the given index threw an
+     * exception.
+     */
+    public boolean isException(int index) {
+	return exceptions[index];
+    }
+
+    /**
+     * Returns the result of the operation with the given index.
+     *
+     * @exception JMException if the operation threw a
+     * <code>JMException</code>.
+     * @exception IOException if the operation threw an exception
+     * which is neither a <code>JMException</code> nor a
+     * <code>RuntimeException</code>, as its cause.
+     */
+    public Object getResult(int index) throws JMException, IOException {
+	if (!exceptions[index]) {
+	    return results[index];
+	}
+
+	final Object e = results[index];
+	if (e instanceof JMException) {
+	    throw (JMException) e;
+	}
+	if (e instanceof RuntimeException) {
+	    throw (RuntimeException) e;
+	}
+	if (e instanceof IOException) {
+	    throw (IOException) e;
+	}
+	final IOException ioe = new IOException("Unexpected exception: " + e);
+	if (e instanceof Throwable) {
+	    EnvHelp.initCause(ioe, (Throwable) e);
+	}
+	throw ioe;
+    }
+
+    /**
+     * Returns the exception thrown by the operation with the given
+     * index, or null if it succeeded.
+     */
+    public Exception getException(int index) {
+	return exceptions[index] ? (Exception) results[index] : null;
+    }
+
+    private final Object[] results;
+    private final boolean[] exceptions;
+}
@@ -0,0 +1,556 @@
+/*
+ * @(#)file      BinaryMessageCodec.java
+ * @(#)author    Sun Microsystems, Inc.
+ * @(#)version   1.1
+ * @(#)lastedit  07/03/08
+ * @(#)build     @BUILD_TAG_PLACEHOLDER@
+ *
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright (c) 2007 Sun Microsystems, Inc. All Rights Reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU General
+ * Public License Version 2 only ("GPL") or the Common Development and
+ * Distribution License("CDDL")(collectively, the "License"). You may not use
+ * this file except in compliance with the License. You can obtain a copy of the
+ * License at http://opendmk.dev.java.net/legal_notices/licenses.txt or in the 
+ * LEGAL_NOTICES folder that accompanied this code. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file found at
+ *     http://opendmk.dev.java.net/legal_notices/licenses.txt
+ * or in the LEGAL_NOTICES folder that accompanied this code.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.
+ * 
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * 
+ *       "Portions Copyrighted [year] [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding
+ * 
+ *       "[Contributor] elects to include this software in this distribution
+ *        under the [CDDL or GPL Version 2] license."
+ * 
+ * If you don't indicate a single choice of license, a recipient has the option
+ * to distribute your version of this file under either the CDDL or the GPL
+ * Version 2, or to extend the choice of license to its licensees as provided
+ * above. However, if you add GPL Version 2 code and therefore, elected the
+ * GPL Version 2 license, then the option applies only if the new code is made
+ * subject to such option by the copyright holder.
+ * 
+ */
+
+package com.sun.jmx.remote.generic;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.management.remote.message.CloseMessage;
+import javax.management.remote.message.HandshakeBeginMessage;
+import javax.management.remote.message.HandshakeEndMessage;
+import javax.management.remote.message.HandshakeErrorMessage;
+import javax.management.remote.message.MBeanServerRequestMessage;
+import javax.management.remote.message.MBeanServerResponseMessage;
+import javax.management.remote.message.Message;
+import javax.management.remote.message.NotificationRequestMessage;
+import javax.management.remote.message.NotificationResponseMessage;
+import javax.management.remote.message.VersionMessage;
+import javax.security.auth.Subject;
+
+import com.sun.jmx.remote.opt.util.EnvHelp;
+
+/**
+ * A compact binary encoding of the JMXMP messages.  Each message class
+ * defined by the protocol has its own hand-written encoding, and the
+ * values found in the messages are encoded without any class descriptor
+ * when they are <code>null</code>, primitive wrappers, strings,
+ * <code>ObjectName</code>, <code>Attribute</code>,
+ * <code>AttributeList</code>, byte arrays (the wrapped objects of the
+ * default {@link ObjectWrappingImpl}), string arrays or object arrays.
+ * Any other value or message is written with Java serialization.
+ *
+ * <p>The lengths read come from the peer, so a message is rejected with
+ * an <code>IOException</code> when the bytes and elements it declares
+ * add up to more than a maximum size, see {@link
+ * DefaultConfig#BINARY_MAX_SIZE}, or when its values are nested deeper
+ * than {@link #MAX_DEPTH}, which the writer encodes with Java
+ * serialization instead.  Nothing is allocated from a declared length
+ * before the corresponding bytes have been received.</p>
+ */
+public class BinaryMessageCodec implements MessageCodec {
+
+    public BinaryMessageCodec() {
+	this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Creates a codec which rejects the messages declaring more than
+     * <code>maxSize</code> bytes and elements.
+     */
+    public BinaryMessageCodec(int maxSize) {
+	if (maxSize <= 0) {
+	    throw new IllegalArgumentException("Invalid maximum size: " +
+					       maxSize);
+	}
+	this.maxSize = maxSize;
+    }
+
+    public void writeMessage(Message msg, DataOutputStream out)
+	    throws IOException {
+
+	if (msg.getClass() == MBeanServerRequestMessage.class) {
+	    final MBeanServerRequestMessage req =
+		(MBeanServerRequestMessage) msg;
+	    // the timeout is only written when there is one, so that
+	    // these requests are read by older versions of this codec
+	    final long timeout = req.getTimeout();
+	    out.writeByte(timeout == 0 ?
+			  MBEAN_SERVER_REQUEST : MBEAN_SERVER_REQUEST_TIMEOUT);
+	    out.writeLong(req.getMessageId());
+	    out.writeInt(req.getMethodId());
+	    final Object[] params = req.getParams();
+	    out.writeInt(params.length);
+	    for (int i = 0; i < params.length; i++) {
+		writeValue(params[i], out, 0);
+	    }
+	    writeValue(req.getDelegationSubject(), out, 0);
+	    if (timeout != 0) {
+		out.writeLong(timeout);
+	    }
+	} else if (msg.getClass() == MBeanServerResponseMessage.class) {
+	    final MBeanServerResponseMessage resp =
+		(MBeanServerResponseMessage) msg;
+	    out.writeByte(MBEAN_SERVER_RESPONSE);
+	    out.writeLong(resp.getMessageId());
+	    out.writeBoolean(resp.isException());
+	    writeValue(resp.getWrappedResult(), out, 0);
+	} else if (msg.getClass() == NotificationRequestMessage.class) {
+	    final NotificationRequestMessage req =
+		(NotificationRequestMessage) msg;
+	    out.writeByte(NOTIFICATION_REQUEST);
+	    out.writeLong(req.getClientSequenceNumber());
+	    out.writeInt(req.getMaxNotifications());
+	    out.writeLong(req.getTimeout());
+	} else if (msg.getClass() == NotificationResponseMessage.class) {
+	    out.writeByte(NOTIFICATION_RESPONSE);
+	    writeValue(((NotificationResponseMessage) msg)
+		       .getWrappedNotificationResult(), out, 0);
+	} else if (msg.getClass() == CloseMessage.class) {
+	    out.writeByte(CLOSE);
+	    writeValue(((CloseMessage) msg).getMessage(), out, 0);
+	} else if (msg.getClass() == HandshakeBeginMessage.class) {
+	    final HandshakeBeginMessage begin = (HandshakeBeginMessage) msg;
+	    out.writeByte(HANDSHAKE_BEGIN);
+	    writeValue(begin.getProfiles(), out, 0);
+	    writeValue(begin.getVersion(), out, 0);
+	} else if (msg.getClass() == HandshakeEndMessage.class) {
+	    final HandshakeEndMessage end = (HandshakeEndMessage) msg;
+	    out.writeByte(HANDSHAKE_END);
+	    writeValue(end.getContext(), out, 0);
+	    writeValue(end.getConnectionId(), out, 0);
+	} else if (msg.getClass() == HandshakeErrorMessage.class) {
+	    out.writeByte(HANDSHAKE_ERROR);
+	    writeValue(((HandshakeErrorMessage) msg).getDetail(), out, 0);
+	} else if (msg.getClass() == VersionMessage.class) {
+	    out.writeByte(VERSION);
+	    writeValue(((VersionMessage) msg).getVersion(), out, 0);
+	} else {
+	    // profile messages and unknown messages
+	    out.writeByte(SERIALIZED_MESSAGE);
+	    writeSerialized(msg, out);
+	}
+    }
+
+    public Message readMessage(DataInputStream in, ClassLoader loader)
+	    throws IOException, ClassNotFoundException {
+
+	final int type = in.readUnsignedByte();
+	remaining = maxSize;
+
+	switch (type) {
+	case MBEAN_SERVER_REQUEST:
+	case MBEAN_SERVER_REQUEST_TIMEOUT: {
+	    final long id = in.readLong();
+	    final int methodId = in.readInt();
+	    final Object[] params = readArray(in, loader, new Object[0], 0);
+	    final Subject delegationSubject =
+		(Subject) readValue(in, loader, 0);
+	    final long timeout = (type == MBEAN_SERVER_REQUEST_TIMEOUT) ?
+		in.readLong() : 0;
+
+	    return new MBeanServerRequestMessage(id, methodId, params,
+						 delegationSubject, timeout);
+	}
+	case MBEAN_SERVER_RESPONSE: {
+	    final long id = in.readLong();
+	    final boolean isException = in.readBoolean();
+	    return new MBeanServerResponseMessage(id,
+						  readValue(in, loader, 0),
+						  isException);
+	}
+	case NOTIFICATION_REQUEST: {
+	    final long clientSequenceNumber = in.readLong();
+	    final int maxNotifications = in.readInt();
+	    final long timeout = in.readLong();
+	    return new NotificationRequestMessage(clientSequenceNumber,
+						  maxNotifications,
+						  timeout);
+	}
+	case NOTIFICATION_RESPONSE:
+	    return new NotificationResponseMessage(readValue(in, loader, 0));
+	case CLOSE:
+	    return new CloseMessage((String) readValue(in, loader, 0));
+	case HANDSHAKE_BEGIN: {
+	    final String profiles = (String) readValue(in, loader, 0);
+	    final String version = (String) readValue(in, loader, 0);
+	    return new HandshakeBeginMessage(profiles, version);
+	}
+	case HANDSHAKE_END: {
+	    final Object context = readValue(in, loader, 0);
+	    final String connectionId = (String) readValue(in, loader, 0);
+	    return new HandshakeEndMessage(context, connectionId);
+	}
+	case HANDSHAKE_ERROR:
+	    return new HandshakeErrorMessage((String) readValue(in, loader, 0));
+	case VERSION:
+	    return new VersionMessage((String) readValue(in, loader, 0));
+	case SERIALIZED_MESSAGE:
+	    return (Message) readSerialized(in, loader);
+	default:
+	    throw new IOException("Unknown message type: " + type);
+	}
+    }
+
+//----------------------------------------------
+// private methods
+//----------------------------------------------
+
+    private void writeValue(Object value, DataOutputStream out, int depth)
+	    throws IOException {
+
+	if (value == null) {
+	    out.writeByte(NULL);
+	    return;
+	}
+
+	final Class c = value.getClass();
+
+	if (depth >= MAX_DEPTH) {
+	    // the reader would reject it
+	    out.writeByte(SERIALIZED);
+	    writeSerialized(value, out);
+	    return;
+	}
+
+	if (c == String.class) {
+	    out.writeByte(STRING);
+	    writeString((String) value, out);
+	} else if (c == byte[].class) {
+	    final byte[] bytes = (byte[]) value;
+	    out.writeByte(BYTE_ARRAY);
+	    out.writeInt(bytes.length);
+	    out.write(bytes);
+	} else if (c == ObjectName.class) {
+	    out.writeByte(OBJECT_NAME);
+	    writeString(value.toString(), out);
+	} else if (c == Integer.class) {
+	    out.writeByte(INTEGER);
+	    out.writeInt(((Integer) value).intValue());
+	} else if (c == Long.class) {
+	    out.writeByte(LONG);
+	    out.writeLong(((Long) value).longValue());
+	} else if (c == Boolean.class) {
+	    out.writeByte(BOOLEAN);
+	    out.writeBoolean(((Boolean) value).booleanValue());
+	} else if (c == Attribute.class) {
+	    final Attribute attr = (Attribute) value;
+	    out.writeByte(ATTRIBUTE);
+	    writeString(attr.getName(), out);
+	    writeValue(attr.getValue(), out, depth + 1);
+	} else if (c == AttributeList.class) {
+	    final AttributeList list = (AttributeList) value;
+	    out.writeByte(ATTRIBUTE_LIST);
+	    out.writeInt(list.size());
+	    for (Iterator it = list.iterator(); it.hasNext(); ) {
+		writeValue(it.next(), out, depth + 1);
+	    }
+	} else if (c == String[].class) {
+	    final String[] strings = (String[]) value;
+	    out.writeByte(STRING_ARRAY);
+	    out.writeInt(strings.length);
+	    for (int i = 0; i < strings.length; i++) {
+		writeValue(strings[i], out, depth + 1);
+	    }
+	} else if (c == Object[].class) {
+	    final Object[] objects = (Object[]) value;
+	    out.writeByte(OBJECT_ARRAY);
+	    out.writeInt(objects.length);
+	    for (int i = 0; i < objects.length; i++) {
+		writeValue(objects[i], out, depth + 1);
+	    }
+	} else if (c == Double.class) {
+	    out.writeByte(DOUBLE);
+	    out.writeDouble(((Double) value).doubleValue());
+	} else if (c == Float.class) {
+	    out.writeByte(FLOAT);
+	    out.writeFloat(((Float) value).floatValue());
+	} else if (c == Short.class) {
+	    out.writeByte(SHORT);
+	    out.writeShort(((Short) value).shortValue());
+	} else if (c == Byte.class) {
+	    out.writeByte(BYTE);
+	    out.writeByte(((Byte) value).byteValue());
+	} else if (c == Character.class) {
+	    out.writeByte(CHARACTER);
+	    out.writeChar(((Character) value).charValue());
+	} else if (c == WrappedObject.class) {
+	    // Wrapped by DeferredObjectWrapping: an inline value gets the
+	    // compact encoding, anything else its nested stream.
+	    final WrappedObject wrapped = (WrappedObject) value;
+	    out.writeByte(WRAPPED);
+	    out.writeBoolean(wrapped.isInline());
+	    if (wrapped.isInline()) {
+		writeValue(wrapped.getValue(), out, depth + 1);
+	    } else {
+		wrapped.writeNested(out);
+	    }
+	} else {
+	    out.writeByte(SERIALIZED);
+	    writeSerialized(value, out);
+	}
+    }
+
+    private Object readValue(DataInputStream in, ClassLoader loader,
+			     int depth)
+	    throws IOException, ClassNotFoundException {
+
+	if (depth > MAX_DEPTH) {
+	    throw new IOException("Values nested deeper than " + MAX_DEPTH);
+	}
+
+	final int type = in.readUnsignedByte();
+
+	switch (type) {
+	case NULL:
+	    return null;
+	case STRING:
+	    return readString(in);
+	case BYTE_ARRAY:
+	    return readBytes(in, checkLength(in.readInt()));
+	case OBJECT_NAME:
+	    try {
+		return ObjectName.getInstance(readString(in));
+	    } catch (MalformedObjectNameException e) {
+		final IOException ioe = new IOException(e.toString());
+		EnvHelp.initCause(ioe, e);
+		throw ioe;
+	    }
+	case INTEGER:
+	    return new Integer(in.readInt());
+	case LONG:
+	    return new Long(in.readLong());
+	case BOOLEAN:
+	    return in.readBoolean() ? Boolean.TRUE : Boolean.FALSE;
+	case ATTRIBUTE: {
+	    final String name = readString(in);
+	    return new Attribute(name, readValue(in, loader, depth + 1));
+	}
+	case ATTRIBUTE_LIST: {
+	    final Object[] values =
+		readArray(in, loader, new Object[0], depth + 1);
+	    final AttributeList list = new AttributeList(values.length);
+	    for (int i = 0; i < values.length; i++) {
+		list.add(values[i]);
+	    }
+	    return list;
+	}
+	case STRING_ARRAY:
+	    return readArray(in, loader, new String[0], depth + 1);
+	case OBJECT_ARRAY:
+	    return readArray(in, loader, new Object[0], depth + 1);
+	case DOUBLE:
+	    return new Double(in.readDouble());
+	case FLOAT:
+	    return new Float(in.readFloat());
+	case SHORT:
+	    return new Short(in.readShort());
+	case BYTE:
+	    return new Byte(in.readByte());
+	case CHARACTER:
+	    return new Character(in.readChar());
+	case SERIALIZED:
+	    return readSerialized(in, loader);
+	case WRAPPED:
+	    if (in.readBoolean()) {
+		return WrappedObject.inline(readValue(in, loader, depth + 1));
+	    } else {
+		return WrappedObject.nested(
+		    readBytes(in, checkLength(in.readInt())));
+	    }
+	default:
+	    throw new IOException("Unknown value type: " + type);
+	}
+    }
+
+    /*
+     * Strings are written in UTF-8 with an int length, because
+     * writeUTF is limited to 64K bytes.
+     */
+    private static void writeString(String s, DataOutputStream out)
+	    throws IOException {
+	final byte[] bytes = s.getBytes(UTF8);
+	out.writeInt(bytes.length);
+	out.write(bytes);
+    }
+
+    private String readString(DataInputStream in) throws IOException {
+	return new String(readBytes(in, checkLength(in.readInt())), UTF8);
+    }
+
+    /*
+     * Reads an array or a list of values of the type of the given
+     * array.  Its declared length is only trusted as far as the
+     * elements actually received, each of which is at least one byte.
+     */
+    private Object[] readArray(DataInputStream in, ClassLoader loader,
+			       Object[] type, int depth)
+	    throws IOException, ClassNotFoundException {
+	final int length = checkLength(in.readInt());
+	final Class elementClass = type.getClass().getComponentType();
+	final ArrayList list = new ArrayList(Math.min(length, CHUNK_SIZE));
+	for (int i = 0; i < length; i++) {
+	    final Object value = readValue(in, loader, depth);
+	    if (value != null && !elementClass.isInstance(value)) {
+		throw new IOException("Unexpected element: " +
+				      value.getClass().getName());
+	    }
+	    list.add(value);
+	}
+	return list.toArray(type);
+    }
+
+    private void writeSerialized(Object obj, DataOutputStream out)
+	    throws IOException {
+	final byte[] bytes = (byte[]) serialization.wrap(obj);
+	out.writeInt(bytes.length);
+	out.write(bytes);
+    }
+
+    private Object readSerialized(DataInputStream in, ClassLoader loader)
+	    throws IOException, ClassNotFoundException {
+	return serialization.unwrap(readBytes(in, checkLength(in.readInt())),
+				    loader);
+    }
+
+    /*
+     * Counts a length read from the peer against what remains of the
+     * maximum size of the message being read.
+     */
+    private int checkLength(int length) throws IOException {
+	if (length < 0) {
+	    throw new IOException("Negative length: " + length);
+	}
+	if (length > remaining) {
+	    throw new IOException("Message larger than the maximum size " +
+				  maxSize);
+	}
+	remaining -= length;
+	return length;
+    }
+
+    /**
+     * Reads the given number of bytes.  A large array is grown as its
+     * bytes arrive, so that a length declared by the peer does not
+     * allocate more than twice what it has sent.
+     */
+    static byte[] readBytes(DataInput in, int length) throws IOException {
+	byte[] bytes = new byte[Math.min(length, CHUNK_SIZE)];
+	int count = 0;
+	while (true) {
+	    in.readFully(bytes, count, bytes.length - count);
+	    count = bytes.length;
+	    if (count == length) {
+		return bytes;
+	    }
+	    final byte[] b = new byte[(int) Math.min(length, 2L * count)];
+	    System.arraycopy(bytes, 0, b, 0, count);
+	    bytes = b;
+	}
+    }
+
+//----------------------------------------------
+// private variables
+//----------------------------------------------
+
+    // message types
+    private static final int SERIALIZED_MESSAGE = 0;
+    private static final int MBEAN_SERVER_REQUEST = 1;
+    private static final int MBEAN_SERVER_RESPONSE = 2;
+    private static final int NOTIFICATION_REQUEST = 3;
+    private static final int NOTIFICATION_RESPONSE = 4;
+    private static final int CLOSE = 5;
+    private static final int HANDSHAKE_BEGIN = 6;
+    private static final int HANDSHAKE_END = 7;
+    private static final int HANDSHAKE_ERROR = 8;
+    private static final int VERSION = 9;
+    private static final int MBEAN_SERVER_REQUEST_TIMEOUT = 10;
+
+    // value types
+    private static final int NULL = 0;
+    private static final int STRING = 1;
+    private static final int BYTE_ARRAY = 2;
+    private static final int OBJECT_NAME = 3;
+    private static final int INTEGER = 4;
+    private static final int LONG = 5;
+    private static final int BOOLEAN = 6;
+    private static final int ATTRIBUTE = 7;
+    private static final int ATTRIBUTE_LIST = 8;
+    private static final int STRING_ARRAY = 9;
+    private static final int OBJECT_ARRAY = 10;
+    private static final int DOUBLE = 11;
+    private static final int FLOAT = 12;
+    private static final int SHORT = 13;
+    private static final int BYTE = 14;
+    private static final int CHARACTER = 15;
+    private static final int SERIALIZED = 16;
+    private static final int WRAPPED = 17;
+
+    private static final String UTF8 = "UTF-8";
+
+    /**
+     * The default maximum size of a message, 64 megabytes.
+     */
+    static final int DEFAULT_MAX_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * The deepest nesting of values read, in arrays, lists and
+     * attributes.
+     */
+    public static final int MAX_DEPTH = 32;
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final ObjectWrappingImpl serialization = new ObjectWrappingImpl();
+
+    private final int maxSize;
+
+    // What remains of maxSize for the message being read; readMessage
+    // is called by one thread at a time.
+    private int remaining;
+}
@@ -0,0 +1,93 @@
+/*
+ * @(#)file      BulkMBeanServerConnection.java
+ * @(#)author    Sun Microsystems, Inc.
+ * @(#)version   1.1
+ * @(#)lastedit  07/03/08
+ * @(#)build     @BUILD_TAG_PLACEHOLDER@
+ *
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright (c) 2007 Sun Microsystems, Inc. All Rights Reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU General
+ * Public License Version 2 only ("GPL") or the Common Development and
+ * Distribution License("CDDL")(collectively, the "License"). You may not use
+ * this file except in compliance with the License. You can obtain a copy of the
+ * License at http://opendmk.dev.java.net/legal_notices/licenses.txt or in the 
+ * LEGAL_NOTICES folder that accompanied this code. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file found at
+ *     http://opendmk.dev.java.net/legal_notices/licenses.txt
+ * or in the LEGAL_NOTICES folder that accompanied this code.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.
+ * 
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * 
+ *       "Portions Copyrighted [year] [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding
+ * 
+ *       "[Contributor] elects to include this software in this distribution
+ *        under the [CDDL or GPL Version 2] license."
+ * 
+ * If you don't indicate a single choice of license, a recipient has the option
+ * to distribute your version of this file under either the CDDL or the GPL
+ * Version 2, or to extend the choice of license to its licensees as provided
+ * above. However, if you add GPL Version 2 code and therefore, elected the
+ * GPL Version 2 license, then the option applies only if the new code is made
+ * subject to such option by the copyright holder.
+ * 
+ */
+
+package com.sun.jmx.remote.generic;
+
+import java.io.IOException;
+import java.util.Map;
+
+import javax.management.ObjectName;
+import javax.management.QueryExp;
+
+/**
+ * Reads attributes of several MBeans in a single request to the
+ * connector server.
+ *
+ * <p>The <code>MBeanServerConnection</code> objects returned by a
+ * {@link javax.management.remote.generic.GenericConnector} implement
+ * this interface.  The connector server must support the
+ * {@link javax.management.remote.message.MBeanServerRequestMessage#QUERY_ATTRIBUTES
+ * QUERY_ATTRIBUTES} request.</p>
+ */
+public interface BulkMBeanServerConnection {
+
+    /**
+     * Reads the given attributes of every MBean selected by the
+     * <code>name</code> pattern and the <code>query</code>, as
+     * <code>queryNames</code> followed by <code>getAttributes</code> on
+     * each name would do.
+     *
+     * @param name the object name pattern, or null for all MBeans.
+     * @param query the query applied to the MBeans, or null.
+     * @param attributes the names of the attributes to read.
+     *
+     * @return a <code>Map</code> whose keys are the
+     * <code>ObjectName</code> of the selected MBeans and whose values
+     * are the <code>AttributeList</code> read from them.  An MBean that
+     * is unregistered or whose attributes cannot be read while the
+     * request is executed is left out.
+     *
+     * @exception IOException if the request could not be sent or its
+     * result could not be received.
+     */
+    public Map queryAttributes(ObjectName name, QueryExp query,
+			       String[] attributes)
+	throws IOException;
+}
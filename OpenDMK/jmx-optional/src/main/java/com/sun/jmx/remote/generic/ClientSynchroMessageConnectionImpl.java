@@ -53,6 +53,7 @@ package com.sun.jmx.remote.generic;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.io.IOException;
 import java.io.InterruptedIOException;
 import javax.security.auth.Subject;
@@ -114,7 +115,8 @@ public class ClientSynchroMessageConnectionImpl implements ClientSynchroMessageC
 		this.env = newEnv;
 
 		reader = new MessageReader();
-		threads = new ThreadService(1, 1);
+		threads = new ThreadService(1, 1, true,
+					    EnvHelp.getVirtualThreads(newEnv));
 		threads.handoff(reader);
 
 		state = CONNECTED;
@@ -142,9 +144,21 @@ public class ClientSynchroMessageConnectionImpl implements ClientSynchroMessageC
 
 		// reconnect. forbid all other requests
 		synchronized(connectionLock) {
-		    connection.connect(this.env);
+		    try {
+			connection.connect(this.env);
+
+			connection = clientAdmin.connectionOpen(connection);
+		    } catch (IOException ioe) {
+			// allow a later attempt
+			state = FAILED;
+			stateLock.notifyAll();
+			throw ioe;
+		    }
+		}
 
-		    connection = clientAdmin.connectionOpen(connection);
+		// pushed notifications of the old connection
+		synchronized(notifLock) {
+		    notifResps.clear();
 		}
 
 		// wakeup all waiting threads		
@@ -158,20 +172,14 @@ public class ClientSynchroMessageConnectionImpl implements ClientSynchroMessageC
 				 "The connection has been closed by the server.");
 
 		// Attention: lock order:
-		// stateLock before waitingList before ResponseMsgWrapper
+		// stateLock before waitingList before ResponseFuture
 		synchronized(waitingList) {
 		    for (Iterator iter = waitingList.keySet().iterator();
 			 iter.hasNext();) {
 			Long id = (Long)iter.next();
 
-			ResponseMsgWrapper rm = (ResponseMsgWrapper)waitingList.get(id);
-			synchronized(rm) {
-			    if (!rm.got) { // see whether the response has arrived.
-				rm.got = true;
-				rm.msg = ce;
-			    }
-			    rm.notify();
-			}
+			ResponseFuture rm = (ResponseFuture)waitingList.get(id);
+			rm.done(ce); // unless the response has arrived.
 		    }
 
 		    waitingList.clear();
@@ -220,14 +228,16 @@ public class ClientSynchroMessageConnectionImpl implements ClientSynchroMessageC
 		logger.trace("sendWithReturn", "Send a NotificationRequestMessage.");
 	    }
 
-	    notifResp = null;
+	    synchronized(notifLock) {
+		notifResps.clear();
+	    }
 
 	    synchronized(connectionLock) {
 		connection.writeMessage(msg);
 	    }
 
 	    synchronized(notifLock) {
-		while(notifResp == null) {
+		while(notifResps.isEmpty()) {
 		    checkState();
 
 		    try {
@@ -239,16 +249,13 @@ public class ClientSynchroMessageConnectionImpl implements ClientSynchroMessageC
 		    }
 		}
 
-	        ret = notifResp;
-		notifResp = null;
+	        ret = (Message) notifResps.removeFirst();
 	    }
 	} else if (msg instanceof MBeanServerRequestMessage) {
 	    if (logger.traceOn()) {
 		logger.trace("sendWithReturn", "Send a MBeanServerRequestMessage.");
 	    }
 
-	    final Long id = new Long(((MBeanServerRequestMessage)msg).getMessageId());
-
 	    // When receiving CloseMessage, it is possible that the server closes
 	    // itself by timeout, so we will do reconnection and then wakeup all
 	    // threads which are waiting a response by a ConnectionClosedException,
@@ -260,61 +267,13 @@ public class ClientSynchroMessageConnectionImpl implements ClientSynchroMessageC
 	    boolean retried = false;
 
 	    while (true) {
-		ResponseMsgWrapper mwrapper = new ResponseMsgWrapper();
-
-		synchronized(waitingList) {
-		    waitingList.put(id, mwrapper);
-		}
-
-		// send out the msg
-		synchronized(connectionLock) {
-		    connection.writeMessage(msg);
-		}
-	    
-		long remainingTime = wtimeout;
-		final long startTime = System.currentTimeMillis();
-
-		synchronized(mwrapper) {
-		    while(!mwrapper.got && remainingTime > 0) {
-			try {
-			    mwrapper.wait(remainingTime);
-			} catch (InterruptedException ie) {
-			    // OK
-			    // This is a user thread, so it is possible that the
-			    // user wants to stop waiting.
-			    break;
-			}
-
-			remainingTime = wtimeout -
-			    (System.currentTimeMillis() - startTime);
-		    }
-		}
-	    
-		synchronized(waitingList) {
-		    waitingList.remove(id);
-		}
-	    
-		// at this point mwrapper has been already removed from the waitinglist
-		// and it will not be modified any more. Synchronizing on mwrapper
-		// is no longer needed.
-		//
-		if (!mwrapper.got) {
-		    if (!isTerminated()) {
-			throw new InterruptedIOException("Waiting response timeout: "
-							 +wtimeout);
-		    } else {
-			throw new 
-			    IOException("The connection has been closed or broken.");
-		    }
-		}
-	    
-		if (mwrapper.msg instanceof MBeanServerResponseMessage) {
-		    ret = (MBeanServerResponseMessage)mwrapper.msg;
+		try {
+		    ret = sendAsync(msg).getResponse();
 
 		    break;
-		} else if (mwrapper.msg instanceof ConnectionClosedException) {
+		} catch (ConnectionClosedException cce) {
 		    if (isTerminated() || retried) {
-			throw (ConnectionClosedException)mwrapper.msg;
+			throw cce;
 		    }
 
 		    if (logger.traceOn()) {
@@ -323,10 +282,6 @@ public class ClientSynchroMessageConnectionImpl implements ClientSynchroMessageC
 		    }
 
 		    retried = true;
-
-		    continue;
-		} else {
-		    throw new IOException("Got wrong response: "+mwrapper.msg);
 		}
 	    }
 	} else {
@@ -336,6 +291,80 @@ public class ClientSynchroMessageConnectionImpl implements ClientSynchroMessageC
 	return ret;
     }
 
+    /**
+     * Sends a <code>MBeanServerRequestMessage</code> without waiting for
+     * its response.  The returned object is used to get the response
+     * later, so a single thread can have many requests in progress on
+     * this connection.  Unlike <code>sendWithReturn</code>, a request
+     * failed because of a reconnection is not sent again.
+     */
+    public ResponseFuture sendAsync(Message msg) throws IOException {
+	if (logger.traceOn()) {
+	    logger.trace("sendAsync", "Send a message without waiting.");
+	}
+
+	if (!(msg instanceof MBeanServerRequestMessage)) {
+	    throw new IOException("Unknow message type: "+msg);
+	}
+
+	checkState();
+
+	final Long id = new Long(((MBeanServerRequestMessage)msg).getMessageId());
+	final ResponseFuture future =
+	    new ResponseFuture(id, this, wtimeout);
+
+	synchronized(waitingList) {
+	    waitingList.put(id, future);
+	}
+
+	try {
+	    synchronized(connectionLock) {
+		connection.writeMessage(msg);
+	    }
+	} catch (IOException ioe) {
+	    synchronized(waitingList) {
+		waitingList.remove(id);
+	    }
+
+	    throw ioe;
+	}
+
+	return future;
+    }
+
+    /**
+     * Waits for a <code>NotificationResponseMessage</code> that the
+     * server pushed without being asked by a
+     * <code>NotificationRequestMessage</code>.  Returns null if there
+     * is none after <code>timeout</code> milliseconds.
+     */
+    public NotificationResponseMessage receiveNotification(long timeout)
+	    throws IOException {
+	checkState();
+
+	final long end = System.currentTimeMillis() + timeout;
+	synchronized(notifLock) {
+	    while(notifResps.isEmpty()) {
+		checkState();
+
+		final long left = end - System.currentTimeMillis();
+		if (left <= 0) {
+		    return null;
+		}
+
+		try {
+		    notifLock.wait(left);
+		} catch (InterruptedException ire) {
+		    InterruptedIOException iioe = new InterruptedIOException(ire.toString());
+		    EnvHelp.initCause(iioe, ire);
+		    throw iioe;
+		}
+	    }
+
+	    return (NotificationResponseMessage) notifResps.removeFirst();
+	}
+    }
+
     public void close() throws IOException {
 	if (logger.traceOn()) {
 	    logger.trace("close", "Closing this SynchroMessageConnection.");
@@ -378,17 +407,11 @@ public class ClientSynchroMessageConnectionImpl implements ClientSynchroMessageC
 	    synchronized(waitingList) {
 		for (Iterator iter=waitingList.values().iterator(); iter.hasNext();) {
 
-		    ResponseMsgWrapper rm = (ResponseMsgWrapper)iter.next();
+		    ResponseFuture rm = (ResponseFuture)iter.next();
 			
 		    final ConnectionClosedException ce = new ConnectionClosedException(
 			       "The connection has been closed by the server.");
-		    synchronized(rm) {
-			if (!rm.got) { // see whether the response has arrived.
-			    rm.got = true;
-			    rm.msg = ce;
-			}
-			rm.notify();
-		    }
+		    rm.done(ce); // unless the response has arrived.
 		}
 		    
 		waitingList.clear();
@@ -461,14 +484,14 @@ public class ClientSynchroMessageConnectionImpl implements ClientSynchroMessageC
 		    
 		    if (msg instanceof NotificationResponseMessage) {
 			synchronized(notifLock) {
-			    notifResp = (NotificationResponseMessage)msg;
+			    notifResps.addLast(msg);
 			    
 			    notifLock.notify();
 			}
 		    } else if (msg instanceof MBeanServerResponseMessage) {
-			ResponseMsgWrapper mwrapper;
+			ResponseFuture mwrapper;
 			synchronized(waitingList) {
-			    mwrapper = (ResponseMsgWrapper)waitingList.get(
+			    mwrapper = (ResponseFuture)waitingList.remove(
                                 new Long(((MBeanServerResponseMessage)msg).getMessageId()));
 			}
 
@@ -479,11 +502,7 @@ public class ClientSynchroMessageConnectionImpl implements ClientSynchroMessageC
 				logger.trace("MessageReader-run",
 				      "Receive a MBeanServerResponseMessage but no one is waiting it.");
 			} else {
-			    synchronized(mwrapper) {
-				mwrapper.setMsg(msg);
-				
-				mwrapper.notify();
-			    }
+			    mwrapper.done(msg);
 			}
 		    } else { // unknown message, protocol error	    
 			threads.handoff(new RemoteJob(msg));
@@ -542,18 +561,6 @@ public class ClientSynchroMessageConnectionImpl implements ClientSynchroMessageC
     }
 
 
-    private static class ResponseMsgWrapper {
-	public boolean got = false;
-	public Object msg = null;
-
-	public ResponseMsgWrapper() {}
-
-	public void setMsg(Message msg) {
-	    got = true;
-	    this.msg = msg;
-	}
-    }
-
     private class RemoteJob implements Runnable {
         public RemoteJob(Message msg) {
             this.msg = msg;
@@ -620,6 +627,50 @@ public class ClientSynchroMessageConnectionImpl implements ClientSynchroMessageC
 	}
     }
  
+    /**
+     * Called by a <code>ResponseFuture</code> whose response has not
+     * arrived in time: forgets the request, and cancels it unless the
+     * connection is closed.  Returns the exception to throw.
+     */
+    IOException responseTimeout(Long id, long timeout) {
+	synchronized(waitingList) {
+	    waitingList.remove(id);
+	}
+
+	if (isTerminated()) {
+	    return new IOException("The connection has been closed or broken.");
+	}
+
+	sendCancel(id);
+	return new InterruptedIOException("Waiting response timeout: "+timeout);
+    }
+
+    /*
+     * Tells the server that nobody waits for the response of a request
+     * any longer, so that it does not execute it or stops executing it.
+     * An older server answers with an exception which is ignored as a
+     * late response.
+     */
+    private void sendCancel(Long id) {
+	if (logger.traceOn()) {
+	    logger.trace("sendCancel", "Cancel the request " + id);
+	}
+
+	final MBeanServerRequestMessage cancel =
+	    new MBeanServerRequestMessage(MBeanServerRequestMessage.CANCEL,
+					  new Object[] {id}, null);
+	try {
+	    synchronized(connectionLock) {
+		connection.writeMessage(cancel);
+	    }
+	} catch (IOException ioe) {
+	    // OK: the request is only executed for nothing.
+	    if (logger.traceOn()) {
+		logger.trace("sendCancel", "Failed to cancel: " + ioe);
+	    }
+	}
+    }
+
     private boolean isTerminated() {
 	synchronized(stateLock) {
 	    return (state == TERMINATED);
@@ -649,18 +700,20 @@ public class ClientSynchroMessageConnectionImpl implements ClientSynchroMessageC
     private transient long wtimeout;
 
     /**
-     * Maps message id to ResponseMsgWrapper, locked at itself when the map is updated.
-     * A ResponseMsgWrapper is used to wait for response for given request.
+     * Maps message id to ResponseFuture, locked at itself when the map is updated.
+     * A ResponseFuture is used to wait for response for given request.
      * Sychronizing on it to do wait/notify
      */
     private transient HashMap waitingList = new HashMap();
 
     // notif stuff.
-    private transient Message notifResp = null;
+    // Received NotificationResponseMessages: a single one in answer to
+    // a NotificationRequestMessage, or the ones pushed by the server.
+    private transient final LinkedList notifResps = new LinkedList();
 
     /**
-     * Controls access to notifResp field; used in wait/notify so
-     * waiting thread can be informed when a notifResp is set.
+     * Controls access to notifResps field; used in wait/notify so
+     * waiting thread can be informed when a notifResp is added.
      */
     private transient final int[] notifLock = new int[0];
 
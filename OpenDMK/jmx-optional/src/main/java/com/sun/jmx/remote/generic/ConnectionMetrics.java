@@ -0,0 +1,220 @@
+/*
+ * @(#)file      ConnectionMetrics.java
+ * @(#)author    Sun Microsystems, Inc.
+ * @(#)version   1.1
+ * @(#)lastedit  07/03/08
+ * @(#)build     @BUILD_TAG_PLACEHOLDER@
+ *
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright (c) 2007 Sun Microsystems, Inc. All Rights Reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU General
+ * Public License Version 2 only ("GPL") or the Common Development and
+ * Distribution License("CDDL")(collectively, the "License"). You may not use
+ * this file except in compliance with the License. You can obtain a copy of the
+ * License at http://opendmk.dev.java.net/legal_notices/licenses.txt or in the 
+ * LEGAL_NOTICES folder that accompanied this code. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file found at
+ *     http://opendmk.dev.java.net/legal_notices/licenses.txt
+ * or in the LEGAL_NOTICES folder that accompanied this code.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.
+ * 
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * 
+ *       "Portions Copyrighted [year] [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding
+ * 
+ *       "[Contributor] elects to include this software in this distribution
+ *        under the [CDDL or GPL Version 2] license."
+ * 
+ * If you don't indicate a single choice of license, a recipient has the option
+ * to distribute your version of this file under either the CDDL or the GPL
+ * Version 2, or to extend the choice of license to its licensees as provided
+ * above. However, if you add GPL Version 2 code and therefore, elected the
+ * GPL Version 2 license, then the option applies only if the new code is made
+ * subject to such option by the copyright holder.
+ * 
+ */
+
+package com.sun.jmx.remote.generic;
+
+import java.util.ArrayList;
+
+import javax.management.remote.generic.MessageConnection;
+
+/**
+ * Records the requests of a client connection in the
+ * {@link ConnectorMetrics} of its connector server, and in statistics
+ * of its own if the connector server keeps them for each connection.
+ */
+public class ConnectionMetrics {
+
+    ConnectionMetrics(ConnectorMetrics owner, String connectionId,
+		      MessageConnection mc, boolean detailed) {
+	this.owner = owner;
+	this.connectionId = connectionId;
+	this.mc = mc;
+
+	if (detailed) {
+	    latency = new LatencyHistogram();
+	    queueWait = new LatencyHistogram();
+	    counts = new long[ConnectorMetrics.operationCount()];
+	} else {
+	    latency = null;
+	    queueWait = null;
+	    counts = null;
+	}
+    }
+
+    /**
+     * Records the execution of a request.
+     *
+     * @param methodId the method id of the
+     * {@link javax.management.remote.message.MBeanServerRequestMessage}.
+     * @param nanos the time spent executing the request, in
+     * nanoseconds.
+     * @param failed true if the request ended with an exception.
+     */
+    public void requestDone(int methodId, long nanos, boolean failed) {
+	final int index = ConnectorMetrics.index(methodId);
+	final long micros = nanos / 1000;
+
+	owner.requestDone(index, micros, failed);
+
+	if (counts != null) {
+	    latency.record(micros);
+	    synchronized(counts) {
+		counts[index]++;
+		if (failed) {
+		    failures++;
+		}
+	    }
+	}
+    }
+
+    /**
+     * Records a request which is not executed, or whose execution is
+     * abandoned, because its client no longer waits for it.
+     *
+     * @param expired true if the time during which the client waits
+     * elapsed before the request was executed, false if the client
+     * cancelled the request.
+     */
+    public void requestDropped(boolean expired) {
+	owner.requestDropped(expired);
+    }
+
+    /**
+     * Records the time a request waited for a thread before being
+     * executed.
+     *
+     * @param nanos the waiting time in nanoseconds.
+     */
+    public void requestQueued(long nanos) {
+	final long micros = nanos / 1000;
+
+	owner.requestQueued(micros);
+
+	if (queueWait != null) {
+	    queueWait.record(micros);
+	}
+    }
+
+    /**
+     * Records notifications that the client is told it lost.
+     *
+     * @param count the number of notifications lost.
+     */
+    public void notificationsLost(long count) {
+	owner.notificationsLost(count);
+
+	synchronized(this) {
+	    lostNotifications += count;
+	}
+    }
+
+    /**
+     * Tells that the connection is closed.  Its bytes are kept in the
+     * totals of the connector server.
+     */
+    public void closed() {
+	owner.connectionClosed(this);
+    }
+
+    String getConnectionId() {
+	return connectionId;
+    }
+
+    long getBytesRead() {
+	return (mc instanceof CountingMessageConnection) ?
+	    ((CountingMessageConnection) mc).getBytesRead() : 0;
+    }
+
+    long getBytesWritten() {
+	return (mc instanceof CountingMessageConnection) ?
+	    ((CountingMessageConnection) mc).getBytesWritten() : 0;
+    }
+
+    String[] getStatistics() {
+	final ArrayList lines = new ArrayList();
+	final long lost;
+	synchronized(this) {
+	    lost = lostNotifications;
+	}
+	lines.add("bytesReceived=" + getBytesRead() +
+		  " bytesSent=" + getBytesWritten() +
+		  " notifsLost=" + lost);
+
+	if (counts != null) {
+	    synchronized(counts) {
+		lines.add("requests " + latency.summary() +
+			  " failed=" + failures);
+		for (int i = 0; i < counts.length; i++) {
+		    if (counts[i] > 0) {
+			lines.add(ConnectorMetrics.operationName(i) +
+				  " count=" + counts[i]);
+		    }
+		}
+	    }
+	    lines.add("queueWait " + queueWait.summary());
+	}
+
+	return (String[]) lines.toArray(new String[lines.size()]);
+    }
+
+    void reset() {
+	if (counts != null) {
+	    latency.reset();
+	    queueWait.reset();
+	    synchronized(counts) {
+		for (int i = 0; i < counts.length; i++) {
+		    counts[i] = 0;
+		}
+		failures = 0;
+	    }
+	}
+    }
+
+    private final ConnectorMetrics owner;
+    private final String connectionId;
+    private final MessageConnection mc;
+
+    // null unless the connection keeps statistics of its own
+    private final LatencyHistogram latency;
+    private final LatencyHistogram queueWait;
+    private final long[] counts;
+    private long failures;
+    private long lostNotifications;
+}
@@ -0,0 +1,448 @@
+/*
+ * @(#)file      ConnectorMetrics.java
+ * @(#)author    Sun Microsystems, Inc.
+ * @(#)version   1.1
+ * @(#)lastedit  07/03/08
+ * @(#)build     @BUILD_TAG_PLACEHOLDER@
+ *
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright (c) 2007 Sun Microsystems, Inc. All Rights Reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU General
+ * Public License Version 2 only ("GPL") or the Common Development and
+ * Distribution License("CDDL")(collectively, the "License"). You may not use
+ * this file except in compliance with the License. You can obtain a copy of the
+ * License at http://opendmk.dev.java.net/legal_notices/licenses.txt or in the 
+ * LEGAL_NOTICES folder that accompanied this code. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file found at
+ *     http://opendmk.dev.java.net/legal_notices/licenses.txt
+ * or in the LEGAL_NOTICES folder that accompanied this code.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.
+ * 
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * 
+ *       "Portions Copyrighted [year] [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding
+ * 
+ *       "[Contributor] elects to include this software in this distribution
+ *        under the [CDDL or GPL Version 2] license."
+ * 
+ * If you don't indicate a single choice of license, a recipient has the option
+ * to distribute your version of this file under either the CDDL or the GPL
+ * Version 2, or to extend the choice of license to its licensees as provided
+ * above. However, if you add GPL Version 2 code and therefore, elected the
+ * GPL Version 2 license, then the option applies only if the new code is made
+ * subject to such option by the copyright holder.
+ * 
+ */
+
+package com.sun.jmx.remote.generic;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import javax.management.remote.generic.MessageConnection;
+
+import com.sun.jmx.remote.opt.internal.NotificationBuffer;
+import com.sun.jmx.remote.opt.security.TLSStatistics;
+
+/**
+ * Statistics of the requests executed by a connector server.  The
+ * connector server gets a {@link ConnectionMetrics} for each client
+ * connection, which records the requests of the connection here.
+ */
+public class ConnectorMetrics implements ConnectorMetricsMBean {
+
+    /**
+     * Constructs the statistics of a connector server.
+     *
+     * @param perConnection true if the requests of each connection
+     * are also recorded separately.
+     */
+    public ConnectorMetrics(boolean perConnection) {
+	this.perConnection = perConnection;
+
+	for (int i = 0; i < latencies.length; i++) {
+	    latencies[i] = new LatencyHistogram();
+	}
+    }
+
+    /**
+     * Returns the object recording the requests of a new client
+     * connection.
+     *
+     * @param connectionId the identifier of the connection.
+     * @param mc the transport of the connection, whose bytes are
+     * counted if it is a {@link CountingMessageConnection}.  Can be
+     * null.
+     */
+    public ConnectionMetrics connectionOpened(String connectionId,
+					      MessageConnection mc) {
+	final ConnectionMetrics cm =
+	    new ConnectionMetrics(this, connectionId, mc, perConnection);
+
+	synchronized(connections) {
+	    connections.put(connectionId, cm);
+	    totalConnections++;
+	}
+
+	return cm;
+    }
+
+    /**
+     * Sets the threads shared by the client connections, whose queue
+     * is reported here.
+     */
+    public void setRequestExecutor(RequestExecutor executor) {
+	this.executor = executor;
+    }
+
+    /**
+     * Sets the limits of the requests in progress, whose counts are
+     * reported here.
+     */
+    public void setAdmissionControl(AdmissionControl admission) {
+	this.admission = admission;
+    }
+
+    /**
+     * Sets the serialized results kept by the connector server, whose
+     * use is reported here.
+     */
+    public void setResponseCache(ResponseCache cache) {
+	this.cache = cache;
+    }
+
+    /**
+     * Sets the buffer of the notifications sent to the clients, whose
+     * use is reported here.
+     */
+    public void setNotificationBuffer(NotificationBuffer buffer) {
+	this.notifBuffer = buffer;
+    }
+
+    // called by ConnectionMetrics
+
+    void connectionClosed(ConnectionMetrics cm) {
+	synchronized(connections) {
+	    if (connections.remove(cm.getConnectionId()) != null) {
+		closedBytesRead += cm.getBytesRead();
+		closedBytesWritten += cm.getBytesWritten();
+	    }
+	}
+    }
+
+    void notificationsLost(long count) {
+	synchronized(connections) {
+	    lostNotifications += count;
+	}
+    }
+
+    void requestDone(int index, long micros, boolean failed) {
+	latencies[index].record(micros);
+
+	if (failed) {
+	    synchronized(failures) {
+		failures[index]++;
+	    }
+	}
+    }
+
+    void requestDropped(boolean expired) {
+	synchronized(failures) {
+	    if (expired) {
+		expiredRequests++;
+	    } else {
+		cancelledRequests++;
+	    }
+	}
+    }
+
+    void requestQueued(long micros) {
+	queueWait.record(micros);
+    }
+
+    /*
+     * Returns the index of the statistics of a method, 0 for an
+     * unknown method.
+     */
+    static int index(int methodId) {
+	return (methodId > 0 && methodId < OPERATIONS.length) ? methodId : 0;
+    }
+
+    static String operationName(int index) {
+	return OPERATIONS[index];
+    }
+
+    static int operationCount() {
+	return OPERATIONS.length;
+    }
+
+    //----------------------------------------------
+    // Implementation of ConnectorMetricsMBean
+    //----------------------------------------------
+
+    public int getActiveConnections() {
+	synchronized(connections) {
+	    return connections.size();
+	}
+    }
+
+    public long getTotalConnections() {
+	synchronized(connections) {
+	    return totalConnections;
+	}
+    }
+
+    public long getRequestCount() {
+	long count = 0;
+	for (int i = 0; i < latencies.length; i++) {
+	    count += latencies[i].getCount();
+	}
+	return count;
+    }
+
+    public long getFailedRequestCount() {
+	long count = 0;
+	synchronized(failures) {
+	    for (int i = 0; i < failures.length; i++) {
+		count += failures[i];
+	    }
+	}
+	return count;
+    }
+
+    public long getExpiredRequests() {
+	synchronized(failures) {
+	    return expiredRequests;
+	}
+    }
+
+    public long getCancelledRequests() {
+	synchronized(failures) {
+	    return cancelledRequests;
+	}
+    }
+
+    public long getBytesReceived() {
+	synchronized(connections) {
+	    long bytes = closedBytesRead;
+	    for (Iterator it = connections.values().iterator();
+		 it.hasNext(); ) {
+		bytes += ((ConnectionMetrics) it.next()).getBytesRead();
+	    }
+	    return bytes;
+	}
+    }
+
+    public long getBytesSent() {
+	synchronized(connections) {
+	    long bytes = closedBytesWritten;
+	    for (Iterator it = connections.values().iterator();
+		 it.hasNext(); ) {
+		bytes += ((ConnectionMetrics) it.next()).getBytesWritten();
+	    }
+	    return bytes;
+	}
+    }
+
+    public String[] getOperationStatistics() {
+	final ArrayList lines = new ArrayList();
+	for (int i = 0; i < latencies.length; i++) {
+	    if (latencies[i].getCount() == 0) {
+		continue;
+	    }
+
+	    final long failed;
+	    synchronized(failures) {
+		failed = failures[i];
+	    }
+	    lines.add(OPERATIONS[i] + " " + latencies[i].summary() +
+		      " failed=" + failed);
+	}
+	return (String[]) lines.toArray(new String[lines.size()]);
+    }
+
+    public String getQueueWaitStatistics() {
+	return queueWait.summary();
+    }
+
+    public int getWaitingRequests() {
+	final RequestExecutor re = executor;
+	return (re == null) ? 0 : re.getWaitingRequests();
+    }
+
+    public long getRejectedRequests() {
+	final RequestExecutor re = executor;
+	return (re == null) ? 0 : re.getRejectedRequests();
+    }
+
+    public int getInFlightRequests() {
+	final AdmissionControl ac = admission;
+	return (ac == null) ? 0 : ac.getRequests();
+    }
+
+    public long getPendingRequestBytes() {
+	final AdmissionControl ac = admission;
+	return (ac == null) ? 0 : ac.getBytes();
+    }
+
+    public int getPausedConnections() {
+	final AdmissionControl ac = admission;
+	return (ac == null) ? 0 : ac.getPausedConnections();
+    }
+
+    public long getReadPauseCount() {
+	final AdmissionControl ac = admission;
+	return (ac == null) ? 0 : ac.getPauseCount();
+    }
+
+    public String getTLSHandshakeStatistics() {
+	return TLSStatistics.getServerStatistics().toString();
+    }
+
+    public String getResponseCacheStatistics() {
+	final ResponseCache rc = cache;
+	return (rc == null) ? null : rc.getStatistics();
+    }
+
+    public long getLostNotifications() {
+	synchronized(connections) {
+	    return lostNotifications;
+	}
+    }
+
+    public String getNotificationBufferStatistics() {
+	final NotificationBuffer nb = notifBuffer;
+	return (nb == null) ? null : nb.getStatistics();
+    }
+
+    public String[] getConnectionIds() {
+	synchronized(connections) {
+	    return (String[])
+		connections.keySet().toArray(new String[connections.size()]);
+	}
+    }
+
+    public long getOperationCount(String operation) {
+	return latencies[operationIndex(operation)].getCount();
+    }
+
+    public long getOperationLatency(String operation, double percent) {
+	return latencies[operationIndex(operation)].getPercentile(percent);
+    }
+
+    public long getQueueWaitTime(double percent) {
+	return queueWait.getPercentile(percent);
+    }
+
+    public String[] getConnectionStatistics(String connectionId) {
+	final ConnectionMetrics cm;
+	synchronized(connections) {
+	    cm = (ConnectionMetrics) connections.get(connectionId);
+	}
+	return (cm == null) ? null : cm.getStatistics();
+    }
+
+    public void reset() {
+	for (int i = 0; i < latencies.length; i++) {
+	    latencies[i].reset();
+	}
+	synchronized(failures) {
+	    for (int i = 0; i < failures.length; i++) {
+		failures[i] = 0;
+	    }
+	    expiredRequests = 0;
+	    cancelledRequests = 0;
+	}
+	queueWait.reset();
+
+	final Object[] cms;
+	synchronized(connections) {
+	    cms = connections.values().toArray();
+	}
+	for (int i = 0; i < cms.length; i++) {
+	    ((ConnectionMetrics) cms[i]).reset();
+	}
+    }
+
+    private static int operationIndex(String operation) {
+	for (int i = 0; i < OPERATIONS.length; i++) {
+	    if (OPERATIONS[i].equals(operation)) {
+		return i;
+	    }
+	}
+	throw new IllegalArgumentException("Unknown operation: " + operation);
+    }
+
+    // indexed by the method ids of MBeanServerRequestMessage
+    private static final String[] OPERATIONS = {
+	"UNKNOWN",
+	"ADD_NOTIFICATION_LISTENERS",
+	"ADD_NOTIFICATION_LISTENER_OBJECTNAME",
+	"CREATE_MBEAN",
+	"CREATE_MBEAN_PARAMS",
+	"CREATE_MBEAN_LOADER",
+	"CREATE_MBEAN_LOADER_PARAMS",
+	"GET_ATTRIBUTE",
+	"GET_ATTRIBUTES",
+	"GET_DEFAULT_DOMAIN",
+	"GET_DOMAINS",
+	"GET_MBEAN_COUNT",
+	"GET_MBEAN_INFO",
+	"GET_OBJECT_INSTANCE",
+	"INVOKE",
+	"IS_INSTANCE_OF",
+	"IS_REGISTERED",
+	"QUERY_MBEANS",
+	"QUERY_NAMES",
+	"REMOVE_NOTIFICATION_LISTENER",
+	"REMOVE_NOTIFICATION_LISTENER_FILTER_HANDBACK",
+	"REMOVE_NOTIFICATION_LISTENER_OBJECTNAME",
+	"REMOVE_NOTIFICATION_LISTENER_OBJECTNAME_FILTER_HANDBACK",
+	"SET_ATTRIBUTE",
+	"SET_ATTRIBUTES",
+	"UNREGISTER_MBEAN",
+	"BATCH",
+	"QUERY_ATTRIBUTES",
+	"GET_MBEAN_INFO_IF_CHANGED",
+	"CANCEL",
+	"NOTIFICATION_PUSH",
+	"NOTIFICATION_ACK",
+    };
+
+    private final boolean perConnection;
+
+    // allocated once: recording a request does not allocate
+    private final LatencyHistogram[] latencies =
+	new LatencyHistogram[OPERATIONS.length];
+    private final long[] failures = new long[OPERATIONS.length];
+    private long expiredRequests;
+    private long cancelledRequests;
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+
+    private volatile RequestExecutor executor;
+    private volatile AdmissionControl admission;
+    private volatile ResponseCache cache;
+    private volatile NotificationBuffer notifBuffer;
+
+    private final Map connections = new HashMap();
+    private long totalConnections;
+    private long closedBytesRead;
+    private long closedBytesWritten;
+    private long lostNotifications;
+}
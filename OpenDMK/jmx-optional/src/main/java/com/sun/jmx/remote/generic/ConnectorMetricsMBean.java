@@ -0,0 +1,250 @@
+/*
+ * @(#)file      ConnectorMetricsMBean.java
+ * @(#)author    Sun Microsystems, Inc.
+ * @(#)version   1.1
+ * @(#)lastedit  07/03/08
+ * @(#)build     @BUILD_TAG_PLACEHOLDER@
+ *
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright (c) 2007 Sun Microsystems, Inc. All Rights Reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU General
+ * Public License Version 2 only ("GPL") or the Common Development and
+ * Distribution License("CDDL")(collectively, the "License"). You may not use
+ * this file except in compliance with the License. You can obtain a copy of the
+ * License at http://opendmk.dev.java.net/legal_notices/licenses.txt or in the 
+ * LEGAL_NOTICES folder that accompanied this code. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file found at
+ *     http://opendmk.dev.java.net/legal_notices/licenses.txt
+ * or in the LEGAL_NOTICES folder that accompanied this code.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.
+ * 
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * 
+ *       "Portions Copyrighted [year] [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding
+ * 
+ *       "[Contributor] elects to include this software in this distribution
+ *        under the [CDDL or GPL Version 2] license."
+ * 
+ * If you don't indicate a single choice of license, a recipient has the option
+ * to distribute your version of this file under either the CDDL or the GPL
+ * Version 2, or to extend the choice of license to its licensees as provided
+ * above. However, if you add GPL Version 2 code and therefore, elected the
+ * GPL Version 2 license, then the option applies only if the new code is made
+ * subject to such option by the copyright holder.
+ * 
+ */
+
+package com.sun.jmx.remote.generic;
+
+/**
+ * Management interface of the statistics of a
+ * {@link javax.management.remote.generic.GenericConnectorServer},
+ * registered by the connector server when its
+ * {@link DefaultConfig#SERVER_METRICS} attribute is true.
+ *
+ * <p>The operations are the methods of
+ * {@link javax.management.MBeanServerConnection} called by the clients,
+ * named after the constants of
+ * {@link javax.management.remote.message.MBeanServerRequestMessage},
+ * for example <code>GET_ATTRIBUTE</code>.  Durations are given in
+ * microseconds.</p>
+ */
+public interface ConnectorMetricsMBean {
+
+    /**
+     * Returns the number of client connections currently open.
+     */
+    public int getActiveConnections();
+
+    /**
+     * Returns the number of client connections opened since the
+     * connector server was started.
+     */
+    public long getTotalConnections();
+
+    /**
+     * Returns the number of requests executed since the statistics
+     * were reset.
+     */
+    public long getRequestCount();
+
+    /**
+     * Returns the number of requests which ended with an exception
+     * since the statistics were reset.
+     */
+    public long getFailedRequestCount();
+
+    /**
+     * Returns the number of requests not executed because the client
+     * had stopped waiting for their response, since the statistics
+     * were reset.
+     *
+     * @see DefaultConfig#REQUEST_WAITING_TIME
+     */
+    public long getExpiredRequests();
+
+    /**
+     * Returns the number of requests cancelled by their client while
+     * they were waiting or being executed, since the statistics were
+     * reset.
+     */
+    public long getCancelledRequests();
+
+    /**
+     * Returns the number of bytes received from the clients.
+     */
+    public long getBytesReceived();
+
+    /**
+     * Returns the number of bytes sent to the clients.
+     */
+    public long getBytesSent();
+
+    /**
+     * Returns one line for each operation called since the statistics
+     * were reset, with its count, failures and latency distribution.
+     */
+    public String[] getOperationStatistics();
+
+    /**
+     * Returns the distribution of the time the requests waited for a
+     * thread before being executed.
+     */
+    public String getQueueWaitStatistics();
+
+    /**
+     * Returns the number of requests waiting for a thread shared by the
+     * client connections, or 0 if each connection has its own threads.
+     *
+     * @see DefaultConfig#SERVER_SHARED_THREADS
+     */
+    public int getWaitingRequests();
+
+    /**
+     * Returns the number of requests not queued for a shared thread
+     * because too many requests were waiting, since the connector
+     * server was started.
+     *
+     * @see DefaultConfig#SERVER_SHARED_QUEUE_SIZE
+     */
+    public long getRejectedRequests();
+
+    /**
+     * Returns the number of requests being executed or waiting to be,
+     * or 0 if the requests in progress are not limited.
+     *
+     * @see DefaultConfig#SERVER_MAX_REQUESTS
+     */
+    public int getInFlightRequests();
+
+    /**
+     * Returns the number of bytes of the requests in progress, or 0
+     * if the requests in progress are not limited.
+     *
+     * @see DefaultConfig#SERVER_MAX_PENDING_BYTES
+     */
+    public long getPendingRequestBytes();
+
+    /**
+     * Returns the number of client connections not read because too
+     * many of their requests are in progress.
+     */
+    public int getPausedConnections();
+
+    /**
+     * Returns the number of times a client connection stopped being
+     * read because of the limits of the requests in progress.
+     */
+    public long getReadPauseCount();
+
+    /**
+     * Returns the statistics of the TLS handshakes made by the
+     * connector servers of this Java virtual machine, such as
+     * <code>full=2 mean=41230us resumed=30 mean=2105us failed=0
+     * max=52310us</code>.
+     */
+    public String getTLSHandshakeStatistics();
+
+    /**
+     * Returns the use of the serialized results kept by the connector
+     * server, such as <code>size=120 hits=5400 misses=130</code>, or
+     * null if it keeps none.
+     *
+     * @see DefaultConfig#SERVER_RESPONSE_CACHE_SIZE
+     */
+    public String getResponseCacheStatistics();
+
+    /**
+     * Returns the number of notifications that the clients were told
+     * they lost, because they were dropped from the notification
+     * buffer before being sent.
+     */
+    public long getLostNotifications();
+
+    /**
+     * Returns the use of the buffer of the notifications sent to the
+     * clients, such as <code>notifs=950 capacity=1024 maxNotifs=100000
+     * bytes=1046520 maxBytes=1048576 maxBytesPerMBean=0 dropped=0
+     * evicted=120 quotaEvicted=0</code>, or null if no client has
+     * listened to notifications yet.
+     *
+     * @see com.sun.jmx.remote.opt.util.EnvHelp#BUFFER_MAX_BYTES_PROPERTY
+     */
+    public String getNotificationBufferStatistics();
+
+    /**
+     * Returns the identifiers of the client connections currently
+     * open.
+     */
+    public String[] getConnectionIds();
+
+    /**
+     * Returns the number of calls to the given operation.
+     *
+     * @exception IllegalArgumentException if the operation is unknown.
+     */
+    public long getOperationCount(String operation);
+
+    /**
+     * Returns the latency under which the given percentage of the
+     * calls to an operation were executed, for example 99 for the
+     * 99th percentile.
+     *
+     * @exception IllegalArgumentException if the operation is unknown.
+     */
+    public long getOperationLatency(String operation, double percent);
+
+    /**
+     * Returns the time under which the given percentage of the
+     * requests waited for a thread.
+     */
+    public long getQueueWaitTime(double percent);
+
+    /**
+     * Returns the statistics of a client connection, or null if the
+     * connection is not open.  The requests are only detailed if the
+     * {@link DefaultConfig#SERVER_METRICS_PER_CONNECTION} attribute
+     * of the connector server is true.
+     */
+    public String[] getConnectionStatistics(String connectionId);
+
+    /**
+     * Resets the counts and distributions of the requests.  The
+     * connection and byte counts are not reset.
+     */
+    public void reset();
+}
@@ -98,6 +98,427 @@ public class DefaultConfig {
 						 1, 1, Integer.MAX_VALUE);
     }
 
+    /**
+     * <p>Name of the attribute that specifies the number of selector
+     * threads used by a
+     * {@link com.sun.jmx.remote.socket.ChannelConnectionServer} to
+     * wait for the requests of all its client connections.</p>
+     */
+    public final static String SERVER_SELECTOR_THREADS =
+	"jmx.remote.x.server.selector.threads";
+
+    /**
+     * Returns the number of selector threads used at server side
+     * to wait for the requests of the client connections.  Its
+     * default value is 2.
+     */
+    public static int getServerSelectorThreads(Map env) {
+	return (int) EnvHelp.getIntegerAttribute(env, SERVER_SELECTOR_THREADS,
+						 2, 1, Integer.MAX_VALUE);
+    }
+
+    /**
+     * <p>Name of the attribute that specifies the time in milliseconds
+     * that a {@link com.sun.jmx.remote.socket.ChannelConnectionServer}
+     * waits for a client which stopped in the middle of a message it
+     * was sending or receiving, before closing its connection.  Zero
+     * means no timeout.</p>
+     */
+    public final static String SERVER_IO_TIMEOUT =
+	"jmx.remote.x.server.io.timeout";
+
+    /**
+     * Returns the time waited at server side for a client which
+     * stopped in the middle of a message.  Its default value is 60000
+     * milliseconds.
+     */
+    public static long getServerIoTimeout(Map env) {
+	return EnvHelp.getIntegerAttribute(env, SERVER_IO_TIMEOUT,
+					   60000, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * <p>Name of the attribute that specifies the number of MBeans
+     * selected by a <code>QUERY_ATTRIBUTES</code> request from which
+     * the server reads them in parallel.</p>
+     */
+    public final static String SERVER_BULK_PARALLEL_THRESHOLD =
+	"jmx.remote.x.server.bulk.parallel.threshold";
+
+    /**
+     * Returns the number of MBeans from which a
+     * <code>QUERY_ATTRIBUTES</code> request is executed in parallel.
+     * Its default value is 32.
+     */
+    public static int getServerBulkParallelThreshold(Map env) {
+	return (int) EnvHelp.getIntegerAttribute(env,
+						 SERVER_BULK_PARALLEL_THRESHOLD,
+						 32, 1, Integer.MAX_VALUE);
+    }
+
+    /**
+     * <p>Name of the attribute that specifies the maximum number of
+     * threads used at the server side for each client connection to
+     * execute a <code>QUERY_ATTRIBUTES</code> request in
+     * parallel.</p>
+     */
+    public final static String SERVER_BULK_THREADS =
+	"jmx.remote.x.server.bulk.threads";
+
+    /**
+     * Returns the maximum number of threads used to execute a
+     * <code>QUERY_ATTRIBUTES</code> request in parallel.  Its default
+     * value is the number of available processors.
+     */
+    public static int getServerBulkThreads(Map env) {
+	return (int) EnvHelp.getIntegerAttribute(env, SERVER_BULK_THREADS,
+			       Runtime.getRuntime().availableProcessors(),
+						 1, Integer.MAX_VALUE);
+    }
+
+    /**
+     * <p>Name of the attribute that specifies the number of threads
+     * shared by all the client connections of a connector server to
+     * execute their requests.  If it is 0, each client connection has
+     * its own threads.  Otherwise the maximum number of threads of a
+     * connection, {@link #SERVER_MAX_THREADS}, is the maximum number
+     * of its requests executed at once by the shared threads.</p>
+     */
+    public final static String SERVER_SHARED_THREADS =
+	"jmx.remote.x.server.shared.threads";
+
+    /**
+     * Returns the number of threads shared by the client connections
+     * of a connector server.  Its default value is 0.
+     */
+    public static int getServerSharedThreads(Map env) {
+	return (int) EnvHelp.getIntegerAttribute(env, SERVER_SHARED_THREADS,
+						 0, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * <p>Name of the attribute that specifies the number of threads
+     * shared by the client connections which are kept when they are
+     * idle.  The other shared threads end when they have been idle for
+     * {@link #SERVER_SHARED_KEEP_ALIVE} milliseconds.</p>
+     */
+    public final static String SERVER_SHARED_CORE_THREADS =
+	"jmx.remote.x.server.shared.core.threads";
+
+    /**
+     * Returns the number of shared threads kept when idle.  Its
+     * default value is 0, and it is at most the number of shared
+     * threads.
+     */
+    public static int getServerSharedCoreThreads(Map env) {
+	return (int) EnvHelp.getIntegerAttribute(env,
+				 SERVER_SHARED_CORE_THREADS, 0, 0,
+				 getServerSharedThreads(env));
+    }
+
+    /**
+     * <p>Name of the attribute that specifies the time in milliseconds
+     * after which an idle shared thread above
+     * {@link #SERVER_SHARED_CORE_THREADS} ends.</p>
+     */
+    public final static String SERVER_SHARED_KEEP_ALIVE =
+	"jmx.remote.x.server.shared.keep.alive";
+
+    /**
+     * Returns the keep-alive time of the idle shared threads.  Its
+     * default value is 60000 milliseconds.
+     */
+    public static long getServerSharedKeepAlive(Map env) {
+	return EnvHelp.getIntegerAttribute(env, SERVER_SHARED_KEEP_ALIVE,
+					   60000, 1, Long.MAX_VALUE);
+    }
+
+    /**
+     * <p>Name of the attribute that specifies the maximum number of
+     * requests waiting for a thread shared by the client connections.
+     * A request exceeding this number is executed by the thread which
+     * read it, and the connection is not read meanwhile.</p>
+     */
+    public final static String SERVER_SHARED_QUEUE_SIZE =
+	"jmx.remote.x.server.shared.queue.size";
+
+    /**
+     * Returns the maximum number of requests waiting for a shared
+     * thread.  Its default value is {@link Integer#MAX_VALUE}.
+     */
+    public static int getServerSharedQueueSize(Map env) {
+	return (int) EnvHelp.getIntegerAttribute(env, SERVER_SHARED_QUEUE_SIZE,
+						 Integer.MAX_VALUE, 0,
+						 Integer.MAX_VALUE);
+    }
+
+    /**
+     * <p>Name of the attribute that specifies the maximum number of
+     * requests executed or waiting at the same time over all the
+     * client connections of a connector server.  A connection is not
+     * read while this number is reached.</p>
+     */
+    public final static String SERVER_MAX_REQUESTS =
+	"jmx.remote.x.server.max.requests";
+
+    /**
+     * Returns the maximum number of requests in progress in a
+     * connector server.  Its default value is {@link Integer#MAX_VALUE}.
+     */
+    public static int getServerMaxRequests(Map env) {
+	return (int) EnvHelp.getIntegerAttribute(env, SERVER_MAX_REQUESTS,
+						 Integer.MAX_VALUE, 1,
+						 Integer.MAX_VALUE);
+    }
+
+    /**
+     * <p>Name of the attribute that specifies the maximum number of
+     * bytes of the requests in progress over all the client
+     * connections of a connector server.  The size of a request is
+     * only known if its transport counts the bytes it reads.</p>
+     */
+    public final static String SERVER_MAX_PENDING_BYTES =
+	"jmx.remote.x.server.max.pending.bytes";
+
+    /**
+     * Returns the maximum number of bytes of the requests in progress
+     * in a connector server.  Its default value is
+     * {@link Long#MAX_VALUE}.
+     */
+    public static long getServerMaxPendingBytes(Map env) {
+	return EnvHelp.getIntegerAttribute(env, SERVER_MAX_PENDING_BYTES,
+					   Long.MAX_VALUE, 1, Long.MAX_VALUE);
+    }
+
+    /**
+     * <p>Name of the attribute that specifies the maximum number of
+     * requests executed or waiting at the same time for one client
+     * connection.</p>
+     */
+    public final static String SERVER_CONNECTION_MAX_REQUESTS =
+	"jmx.remote.x.server.connection.max.requests";
+
+    /**
+     * Returns the maximum number of requests in progress for a client
+     * connection.  Its default value is {@link Integer#MAX_VALUE}.
+     */
+    public static int getServerConnectionMaxRequests(Map env) {
+	return (int)
+	    EnvHelp.getIntegerAttribute(env, SERVER_CONNECTION_MAX_REQUESTS,
+					Integer.MAX_VALUE, 1,
+					Integer.MAX_VALUE);
+    }
+
+    /**
+     * <p>Name of the attribute that specifies the maximum number of
+     * bytes of the requests in progress for one client connection.</p>
+     */
+    public final static String SERVER_CONNECTION_MAX_PENDING_BYTES =
+	"jmx.remote.x.server.connection.max.pending.bytes";
+
+    /**
+     * Returns the maximum number of bytes of the requests in progress
+     * for a client connection.  Its default value is
+     * {@link Long#MAX_VALUE}.
+     */
+    public static long getServerConnectionMaxPendingBytes(Map env) {
+	return EnvHelp.getIntegerAttribute(env,
+					   SERVER_CONNECTION_MAX_PENDING_BYTES,
+					   Long.MAX_VALUE, 1, Long.MAX_VALUE);
+    }
+
+    /**
+     * <p>Name of the attribute that specifies the maximum number of
+     * <code>MBeanInfo</code>s whose serialized form is kept by a
+     * connector server in its {@link ResponseCache}.  With 0 the
+     * results are serialized for each request.</p>
+     */
+    public final static String SERVER_RESPONSE_CACHE_SIZE =
+	"jmx.remote.x.server.response.cache.size";
+
+    /**
+     * Returns the maximum number of <code>MBeanInfo</code>s kept
+     * serialized by a connector server.  Its default value is 1000.
+     */
+    public static int getServerResponseCacheSize(Map env) {
+	return (int) EnvHelp.getIntegerAttribute(env,
+						 SERVER_RESPONSE_CACHE_SIZE,
+						 1000, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * <p>Name of the attribute that specifies whether or not the
+     * thread executing a request cancelled by its client is
+     * interrupted.  A cancelled request which is not yet executed is
+     * skipped in any case.</p>
+     */
+    public final static String SERVER_CANCEL_INTERRUPT =
+	"jmx.remote.x.server.cancel.interrupt";
+
+    /**
+     * Returns a value telling whether or not the thread executing a
+     * cancelled request is interrupted.  Its default value is true.
+     */
+    public static boolean getServerCancelInterrupt(Map env) {
+	final Object o;
+
+	if (env == null || (o = env.get(SERVER_CANCEL_INTERRUPT)) == null)
+	    return true;
+
+	if (o instanceof Boolean) {
+	    return ((Boolean)o).booleanValue();
+	} else if (o instanceof String) {
+	    return Boolean.valueOf((String)o).booleanValue();
+	}
+
+	throw new IllegalArgumentException("Attribute "+
+					   SERVER_CANCEL_INTERRUPT+
+					   " value must be Boolean or String.");
+    }
+
+    /**
+     * <p>Name of the attribute that specifies whether or not a
+     * connector server registers a {@link ConnectorMetricsMBean} in
+     * its MBean server.  Its default value is false.</p>
+     */
+    public final static String SERVER_METRICS =
+	"jmx.remote.x.server.metrics";
+
+    /**
+     * Returns a value telling whether or not a connector server
+     * registers a {@link ConnectorMetricsMBean}.  Its default value
+     * is false.
+     */
+    public static boolean getServerMetrics(Map env) {
+	final Object o;
+
+	if (env == null || (o = env.get(SERVER_METRICS)) == null)
+	    return false;
+
+	if (o instanceof Boolean) {
+	    return ((Boolean)o).booleanValue();
+	} else if (o instanceof String) {
+	    return Boolean.valueOf((String)o).booleanValue();
+	}
+
+	throw new IllegalArgumentException("Attribute "+SERVER_METRICS+
+					   " value must be Boolean or String.");
+    }
+
+    /**
+     * <p>Name of the attribute that specifies whether or not the
+     * {@link ConnectorMetricsMBean} of a connector server also keeps
+     * the statistics of each client connection.  Its default value
+     * is false.</p>
+     */
+    public final static String SERVER_METRICS_PER_CONNECTION =
+	"jmx.remote.x.server.metrics.per.connection";
+
+    /**
+     * Returns a value telling whether or not the statistics of each
+     * client connection are kept.  Its default value is false.
+     */
+    public static boolean getServerMetricsPerConnection(Map env) {
+	final Object o;
+
+	if (env == null ||
+	    (o = env.get(SERVER_METRICS_PER_CONNECTION)) == null)
+	    return false;
+
+	if (o instanceof Boolean) {
+	    return ((Boolean)o).booleanValue();
+	} else if (o instanceof String) {
+	    return Boolean.valueOf((String)o).booleanValue();
+	}
+
+	throw new IllegalArgumentException("Attribute "+
+					   SERVER_METRICS_PER_CONNECTION+
+					   " value must be Boolean or String.");
+    }
+
+    /**
+     * <p>Name of the attribute that specifies whether or not only the
+     * owner of the process can connect to a
+     * {@link com.sun.jmx.remote.socket.UnixSocketConnectionServer}.
+     * Its default value is true.</p>
+     */
+    public final static String SERVER_UNIX_OWNER_ONLY =
+	"jmx.remote.x.server.unix.owner.only";
+
+    /**
+     * Returns a value telling whether or not the socket file of a
+     * Unix domain socket server is restricted to the owner of the
+     * process.  Its default value is true.
+     */
+    public static boolean getServerUnixOwnerOnly(Map env) {
+	final Object o;
+
+	if (env == null || (o = env.get(SERVER_UNIX_OWNER_ONLY)) == null)
+	    return true;
+
+	if (o instanceof Boolean) {
+	    return ((Boolean)o).booleanValue();
+	} else if (o instanceof String) {
+	    return Boolean.valueOf((String)o).booleanValue();
+	}
+
+	throw new IllegalArgumentException("Attribute "+
+					   SERVER_UNIX_OWNER_ONLY+
+					   " value must be Boolean or String.");
+    }
+
+    /**
+     * <p>Name of the attribute that specifies the maximum size of a
+     * message received by a connection using the BINARY profile: the
+     * bytes of its strings, byte arrays and serialized values, plus the
+     * number of elements of its arrays and lists.  A bigger message
+     * closes the connection.</p>
+     */
+    public final static String BINARY_MAX_SIZE =
+	"jmx.remote.x.binary.max.size";
+
+    /**
+     * Returns the maximum size of a message received with the BINARY
+     * profile.  Its default value is 64 megabytes.
+     */
+    public static int getBinaryMaxSize(Map env) {
+	return (int) EnvHelp.getIntegerAttribute(env, BINARY_MAX_SIZE,
+			BinaryMessageCodec.DEFAULT_MAX_SIZE, 1, Integer.MAX_VALUE);
+    }
+
+    /**
+     * <p>Name of the attribute that specifies the size in bytes below
+     * which a message is sent uncompressed by a connection using the
+     * ZLIB profile.</p>
+     */
+    public final static String ZLIB_THRESHOLD =
+	"jmx.remote.x.zlib.threshold";
+
+    /**
+     * Returns the size in bytes below which a message is not
+     * compressed by the ZLIB profile.  Its default value is 512.
+     */
+    public static int getZlibThreshold(Map env) {
+	return (int) EnvHelp.getIntegerAttribute(env, ZLIB_THRESHOLD,
+						 512, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * <p>Name of the attribute that specifies the compression level,
+     * from 0 to 9, used by a connection using the ZLIB profile.</p>
+     */
+    public final static String ZLIB_LEVEL =
+	"jmx.remote.x.zlib.level";
+
+    /**
+     * Returns the compression level used by the ZLIB profile.  Its
+     * default value is 6, the default level of zlib.
+     */
+    public static int getZlibLevel(Map env) {
+	return (int) EnvHelp.getIntegerAttribute(env, ZLIB_LEVEL,
+						 6, 0, 9);
+    }
+
     /**
      * <p>Name of the attribute that specifies the timeout in
      * milliseconds for a client request to wait for its response.
@@ -328,4 +749,200 @@ public class DefaultConfig {
 	throw new IllegalArgumentException("Attribute "+TIMEOUT_RECONNECTION+
 					   " value must be Boolean or String.");
     }
+
+    /**
+     * <p>Name of the attribute that specifies whether or not a client
+     * keeps the <code>MBeanInfo</code>, <code>ObjectInstance</code>
+     * and <code>isInstanceOf</code> results it gets in a
+     * {@link MBeanInfoCache}.  Its default value is false.</p>
+     */
+    public static final String CLIENT_MBEAN_INFO_CACHE =
+	"jmx.remote.x.client.mbeaninfo.cache";
+
+    /**
+     * Returns a value telling whether or not a client caches the
+     * <code>MBeanInfo</code> of MBeans.  Its default value is false.
+     */
+    public static boolean getClientMBeanInfoCache(Map env) {
+	final Object o;
+
+	if (env == null || (o = env.get(CLIENT_MBEAN_INFO_CACHE)) == null)
+	    return false;
+
+	if (o instanceof Boolean) {
+	    return ((Boolean)o).booleanValue();
+	} else if (o instanceof String) {
+	    return Boolean.valueOf((String)o).booleanValue();
+	}
+
+	throw new IllegalArgumentException("Attribute "+
+					   CLIENT_MBEAN_INFO_CACHE+
+					   " value must be Boolean or String.");
+    }
+
+    /**
+     * <p>Name of the attribute that specifies the time in
+     * milliseconds during which a cached <code>MBeanInfo</code> is
+     * returned without asking the server whether it has changed.</p>
+     */
+    public static final String CLIENT_MBEAN_INFO_CACHE_PERIOD =
+	"jmx.remote.x.client.mbeaninfo.cache.period";
+
+    /**
+     * Returns the time in milliseconds during which a cached
+     * <code>MBeanInfo</code> is used without being checked.  Its
+     * default value is 10000.  With 0 it is checked on every call.
+     */
+    public static long getClientMBeanInfoCachePeriod(Map env) {
+	return EnvHelp.getIntegerAttribute(env, CLIENT_MBEAN_INFO_CACHE_PERIOD,
+					   10000, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * <p>Name of the attribute that specifies how many times a
+     * client tries to reconnect to its server after the connection
+     * is lost, before giving up and closing itself.</p>
+     */
+    public static final String CLIENT_RECONNECT_ATTEMPTS =
+	"jmx.remote.x.client.reconnect.attempts";
+
+    /**
+     * Returns the number of reconnection attempts.  Its default value
+     * is 1.
+     */
+    public static int getClientReconnectAttempts(Map env) {
+	return (int) EnvHelp.getIntegerAttribute(env, CLIENT_RECONNECT_ATTEMPTS,
+						 1, 1, Integer.MAX_VALUE);
+    }
+
+    /**
+     * <p>Name of the attribute that specifies the time in
+     * milliseconds a client waits before its first reconnection
+     * attempt.  The time is doubled before each following attempt,
+     * up to {@link #CLIENT_RECONNECT_MAX_DELAY}.</p>
+     */
+    public static final String CLIENT_RECONNECT_DELAY =
+	"jmx.remote.x.client.reconnect.delay";
+
+    /**
+     * Returns the time in milliseconds before the first reconnection
+     * attempt.  Its default value is 0.
+     */
+    public static long getClientReconnectDelay(Map env) {
+	return EnvHelp.getIntegerAttribute(env, CLIENT_RECONNECT_DELAY,
+					   0, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * <p>Name of the attribute that specifies the maximum time in
+     * milliseconds a client waits between two reconnection
+     * attempts.</p>
+     */
+    public static final String CLIENT_RECONNECT_MAX_DELAY =
+	"jmx.remote.x.client.reconnect.max.delay";
+
+    /**
+     * Returns the maximum time in milliseconds between two
+     * reconnection attempts.  Its default value is 60000.
+     */
+    public static long getClientReconnectMaxDelay(Map env) {
+	return EnvHelp.getIntegerAttribute(env, CLIENT_RECONNECT_MAX_DELAY,
+					   60000, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * <p>Name of the attribute that specifies the percentage of each
+     * reconnection delay which is randomly taken off, so that the
+     * clients of a restarted server do not all reconnect at the same
+     * time.</p>
+     */
+    public static final String CLIENT_RECONNECT_JITTER =
+	"jmx.remote.x.client.reconnect.jitter";
+
+    /**
+     * Returns the reconnection jitter as a percentage between 0 and
+     * 100.  Its default value is 50.
+     */
+    public static int getClientReconnectJitter(Map env) {
+	return (int) EnvHelp.getIntegerAttribute(env, CLIENT_RECONNECT_JITTER,
+						 50, 0, 100);
+    }
+
+    /**
+     * <p>Name of the attribute that specifies whether or not a
+     * client asks its server to push the notifications instead of
+     * fetching them.  A server which does not support it is still
+     * asked for the notifications.</p>
+     */
+    public static final String CLIENT_NOTIFICATION_PUSH =
+	"jmx.remote.x.client.notification.push";
+
+    /**
+     * Returns a value telling whether or not a client asks for the
+     * notifications to be pushed.  Its default value is false.
+     */
+    public static boolean getClientNotificationPush(Map env) {
+	final Object o;
+
+	if (env == null || (o = env.get(CLIENT_NOTIFICATION_PUSH)) == null)
+	    return false;
+
+	if (o instanceof Boolean) {
+	    return ((Boolean)o).booleanValue();
+	} else if (o instanceof String) {
+	    return Boolean.valueOf((String)o).booleanValue();
+	}
+
+	throw new IllegalArgumentException("Attribute "+
+					   CLIENT_NOTIFICATION_PUSH+
+					   " value must be Boolean or String.");
+    }
+
+    /**
+     * <p>Name of the attribute that specifies the maximum number of
+     * pushed notification messages which a client has not yet
+     * acknowledged.</p>
+     */
+    public static final String CLIENT_NOTIFICATION_PUSH_WINDOW =
+	"jmx.remote.x.client.notification.push.window";
+
+    /**
+     * Returns the maximum number of unacknowledged pushed
+     * notification messages.  Its default value is 4.
+     */
+    public static int getClientNotificationPushWindow(Map env) {
+	return (int) EnvHelp.getIntegerAttribute(env,
+						 CLIENT_NOTIFICATION_PUSH_WINDOW,
+						 4, 1, Integer.MAX_VALUE);
+    }
+
+    /**
+     * <p>Name of the attribute that specifies whether or not a
+     * connector server pushes the notifications to the clients which
+     * ask for it.</p>
+     */
+    public static final String SERVER_NOTIFICATION_PUSH =
+	"jmx.remote.x.server.notification.push";
+
+    /**
+     * Returns a value telling whether or not a connector server
+     * pushes the notifications to the clients which ask for it.  Its
+     * default value is true.
+     */
+    public static boolean getServerNotificationPush(Map env) {
+	final Object o;
+
+	if (env == null || (o = env.get(SERVER_NOTIFICATION_PUSH)) == null)
+	    return true;
+
+	if (o instanceof Boolean) {
+	    return ((Boolean)o).booleanValue();
+	} else if (o instanceof String) {
+	    return Boolean.valueOf((String)o).booleanValue();
+	}
+
+	throw new IllegalArgumentException("Attribute "+
+					   SERVER_NOTIFICATION_PUSH+
+					   " value must be Boolean or String.");
+    }
 }
@@ -0,0 +1,101 @@
+/*
+ * @(#)file      DeferredObjectWrapping.java
+ * @(#)author    Sun Microsystems, Inc.
+ * @(#)version   1.1
+ * @(#)lastedit  07/03/08
+ * @(#)build     @BUILD_TAG_PLACEHOLDER@
+ *
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright (c) 2007 Sun Microsystems, Inc. All Rights Reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU General
+ * Public License Version 2 only ("GPL") or the Common Development and
+ * Distribution License("CDDL")(collectively, the "License"). You may not use
+ * this file except in compliance with the License. You can obtain a copy of the
+ * License at http://opendmk.dev.java.net/legal_notices/licenses.txt or in the 
+ * LEGAL_NOTICES folder that accompanied this code. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file found at
+ *     http://opendmk.dev.java.net/legal_notices/licenses.txt
+ * or in the LEGAL_NOTICES folder that accompanied this code.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.
+ * 
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * 
+ *       "Portions Copyrighted [year] [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding
+ * 
+ *       "[Contributor] elects to include this software in this distribution
+ *        under the [CDDL or GPL Version 2] license."
+ * 
+ * If you don't indicate a single choice of license, a recipient has the option
+ * to distribute your version of this file under either the CDDL or the GPL
+ * Version 2, or to extend the choice of license to its licensees as provided
+ * above. However, if you add GPL Version 2 code and therefore, elected the
+ * GPL Version 2 license, then the option applies only if the new code is made
+ * subject to such option by the copyright holder.
+ * 
+ */
+
+package com.sun.jmx.remote.generic;
+
+import java.io.IOException;
+
+import javax.management.remote.generic.ObjectWrapping;
+
+/**
+ * An implementation of the interface <code>ObjectWrapping</code> which
+ * defers the serialization of the wrapped objects to the transport.
+ *
+ * <p>With {@link ObjectWrappingImpl} every wrapped object is first
+ * serialized into a new byte array, which is then serialized again
+ * when the message is written to the connection.  This implementation
+ * instead returns a lightweight holder, which writes the object
+ * directly into the connection stream, either inline for the types
+ * known to every class loader, or as a nested stream built in a pooled
+ * buffer.  On the receiving side, a nested stream is kept as bytes
+ * until the object is unwrapped with the class loader of the target
+ * MBean.</p>
+ *
+ * <p>The notifications of a <code>NotificationResult</code> are
+ * written as separate streams, so that a notification sent to many
+ * clients by a connector server is only serialized once.</p>
+ *
+ * <p>This implementation also unwraps the byte arrays produced by
+ * <code>ObjectWrappingImpl</code>, and <code>ObjectWrappingImpl</code>
+ * unwraps the objects it wraps, so it can be specified with the
+ * attribute {@link
+ * javax.management.remote.generic.GenericConnector#OBJECT_WRAPPING}
+ * on one side of a connection only, provided that both sides use this
+ * implementation of the Generic Connector.</p>
+ */
+public class DeferredObjectWrapping implements ObjectWrapping {
+
+    public DeferredObjectWrapping() {}
+
+    public Object wrap(Object obj) throws IOException {
+	return new WrappedObject(obj);
+    }
+
+    public Object unwrap(Object wrapped, ClassLoader cloader)
+	    throws IOException, ClassNotFoundException {
+
+	if (wrapped instanceof WrappedObject) {
+	    return ((WrappedObject) wrapped).getObject(cloader);
+	}
+	return defaultWrapping.unwrap(wrapped, cloader);
+    }
+
+    private final ObjectWrappingImpl defaultWrapping = new ObjectWrappingImpl();
+}
@@ -0,0 +1,220 @@
+/*
+ * @(#)file      DictionaryMessageCodec.java
+ * @(#)author    Sun Microsystems, Inc.
+ * @(#)version   1.1
+ * @(#)lastedit  07/03/08
+ * @(#)build     @BUILD_TAG_PLACEHOLDER@
+ *
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright (c) 2007 Sun Microsystems, Inc. All Rights Reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU General
+ * Public License Version 2 only ("GPL") or the Common Development and
+ * Distribution License("CDDL")(collectively, the "License"). You may not use
+ * this file except in compliance with the License. You can obtain a copy of the
+ * License at http://opendmk.dev.java.net/legal_notices/licenses.txt or in the 
+ * LEGAL_NOTICES folder that accompanied this code. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file found at
+ *     http://opendmk.dev.java.net/legal_notices/licenses.txt
+ * or in the LEGAL_NOTICES folder that accompanied this code.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.
+ * 
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * 
+ *       "Portions Copyrighted [year] [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding
+ * 
+ *       "[Contributor] elects to include this software in this distribution
+ *        under the [CDDL or GPL Version 2] license."
+ * 
+ * If you don't indicate a single choice of license, a recipient has the option
+ * to distribute your version of this file under either the CDDL or the GPL
+ * Version 2, or to extend the choice of license to its licensees as provided
+ * above. However, if you add GPL Version 2 code and therefore, elected the
+ * GPL Version 2 license, then the option applies only if the new code is made
+ * subject to such option by the copyright holder.
+ * 
+ */
+
+package com.sun.jmx.remote.generic;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.remote.message.Message;
+
+/**
+ * A codec which writes the messages with Java serialization, like the
+ * default socket connection, but keeps a per-connection dictionary of
+ * the class descriptors already sent.
+ *
+ * <p>The object stream is still reset between the messages so that the
+ * handle table does not retain the objects of the previous messages,
+ * but a class descriptor is only sent in full the first time it is
+ * used.  Afterwards it is replaced by its index in the dictionary.  On
+ * the reading side the classes resolved for the descriptors are also
+ * cached, so that a message made of known classes costs no class
+ * loader lookup.</p>
+ *
+ * <p>A codec instance holds the state of one connection and must not
+ * be shared.</p>
+ */
+public class DictionaryMessageCodec implements MessageCodec {
+
+    public DictionaryMessageCodec() {}
+
+    public void writeMessage(Message msg, DataOutputStream out)
+	    throws IOException {
+	if (out != dout) {
+	    oout = new DictionaryOutputStream(out);
+	    dout = out;
+	} else {
+	    // Reset before rather than after the message: the reset
+	    // marker must not be left pending in the stream when
+	    // another codec is installed after this message.
+	    oout.reset();
+	}
+
+	oout.writeObject(msg);
+	oout.flush();
+    }
+
+    public Message readMessage(DataInputStream in, ClassLoader loader)
+	    throws IOException, ClassNotFoundException {
+	if (in != din || loader != oinLoader) {
+	    oin = new DictionaryInputStream(in, loader);
+	    din = in;
+	    oinLoader = loader;
+	}
+
+	return (Message) oin.readObject();
+    }
+
+//----------------------------------------------
+// private classes
+//----------------------------------------------
+
+    private static class DictionaryOutputStream extends ObjectOutputStream {
+
+	DictionaryOutputStream(OutputStream out) throws IOException {
+	    super(out);
+	}
+
+	protected void writeClassDescriptor(ObjectStreamClass desc)
+		throws IOException {
+	    final Integer index = (Integer) dictionary.get(desc);
+
+	    if (index != null) {
+		writeByte(DESC_INDEX);
+		writeInt(index.intValue());
+	    } else if (dictionary.size() < MAX_DICTIONARY_SIZE) {
+		final int i = dictionary.size();
+		dictionary.put(desc, new Integer(i));
+		writeByte(DESC_NEW);
+		writeInt(i);
+		super.writeClassDescriptor(desc);
+	    } else {
+		writeByte(DESC_PLAIN);
+		super.writeClassDescriptor(desc);
+	    }
+	}
+
+	private final Map dictionary = new IdentityHashMap();
+    }
+
+    private static class DictionaryInputStream extends ObjectInputStream {
+
+	DictionaryInputStream(InputStream in, ClassLoader cloader)
+		throws IOException {
+	    super(in);
+	    this.cloader = cloader;
+	}
+
+	protected ObjectStreamClass readClassDescriptor()
+		throws IOException, ClassNotFoundException {
+	    final int type = readByte();
+
+	    switch (type) {
+	    case DESC_INDEX: {
+		final int i = readInt();
+		if (i < 0 || i >= dictionary.size()) {
+		    throw new IOException("Unknown class descriptor index: " +
+					  i);
+		}
+		return (ObjectStreamClass) dictionary.get(i);
+	    }
+	    case DESC_NEW: {
+		final int i = readInt();
+		if (i != dictionary.size()) {
+		    throw new IOException("Unexpected class descriptor index: " +
+					  i);
+		}
+		final ObjectStreamClass desc = super.readClassDescriptor();
+		dictionary.add(desc);
+		return desc;
+	    }
+	    case DESC_PLAIN:
+		return super.readClassDescriptor();
+	    default:
+		throw new IOException("Unknown class descriptor type: " + type);
+	    }
+	}
+
+	protected Class resolveClass(ObjectStreamClass desc)
+		throws IOException, ClassNotFoundException {
+	    final String name = desc.getName();
+	    Class c = (Class) resolved.get(name);
+	    if (c == null) {
+		c = (cloader == null) ? super.resolveClass(desc) :
+		    Class.forName(name, false, cloader);
+		resolved.put(name, c);
+	    }
+	    return c;
+	}
+
+	private final ClassLoader cloader;
+	private final List dictionary = new ArrayList();
+	private final Map resolved = new HashMap();
+    }
+
+//----------------------------------------------
+// private variables
+//----------------------------------------------
+
+    private DataOutputStream dout;
+    private ObjectOutputStream oout;
+    private DataInputStream din;
+    private ClassLoader oinLoader;
+    private ObjectInputStream oin;
+
+    private static final int DESC_PLAIN = 0;
+    private static final int DESC_NEW = 1;
+    private static final int DESC_INDEX = 2;
+
+    // Bounds the descriptors retained by a connection which sends an
+    // unusual variety of classes.
+    private static final int MAX_DICTIONARY_SIZE = 4096;
+}
@@ -0,0 +1,170 @@
+/*
+ * @(#)file      LatencyHistogram.java
+ * @(#)author    Sun Microsystems, Inc.
+ * @(#)version   1.1
+ * @(#)lastedit  07/03/08
+ * @(#)build     @BUILD_TAG_PLACEHOLDER@
+ *
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright (c) 2007 Sun Microsystems, Inc. All Rights Reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU General
+ * Public License Version 2 only ("GPL") or the Common Development and
+ * Distribution License("CDDL")(collectively, the "License"). You may not use
+ * this file except in compliance with the License. You can obtain a copy of the
+ * License at http://opendmk.dev.java.net/legal_notices/licenses.txt or in the 
+ * LEGAL_NOTICES folder that accompanied this code. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file found at
+ *     http://opendmk.dev.java.net/legal_notices/licenses.txt
+ * or in the LEGAL_NOTICES folder that accompanied this code.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.
+ * 
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * 
+ *       "Portions Copyrighted [year] [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding
+ * 
+ *       "[Contributor] elects to include this software in this distribution
+ *        under the [CDDL or GPL Version 2] license."
+ * 
+ * If you don't indicate a single choice of license, a recipient has the option
+ * to distribute your version of this file under either the CDDL or the GPL
+ * Version 2, or to extend the choice of license to its licensees as provided
+ * above. However, if you add GPL Version 2 code and therefore, elected the
+ * GPL Version 2 license, then the option applies only if the new code is made
+ * subject to such option by the copyright holder.
+ * 
+ */
+
+package com.sun.jmx.remote.generic;
+
+import java.util.Arrays;
+
+/**
+ * A histogram of durations in microseconds.  The width of its buckets
+ * grows with the values they hold, so that a recorded value is known
+ * within 1/16th of itself whatever its magnitude, as with an HDR
+ * histogram.  Recording a value does not allocate anything.
+ */
+class LatencyHistogram {
+
+    // bits of a value kept below its highest bit
+    private static final int SUB_BITS = 4;
+    private static final int SUB = 1 << SUB_BITS;
+
+    // values of 2^MAX_EXPONENT microseconds (about 19 hours) or more
+    // go to the last bucket
+    private static final int MAX_EXPONENT = 36;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 1) * SUB;
+
+    synchronized void record(long micros) {
+	if (micros < 0) {
+	    micros = 0;
+	}
+
+	counts[index(micros)]++;
+	count++;
+	total += micros;
+	if (micros > max) {
+	    max = micros;
+	}
+    }
+
+    synchronized long getCount() {
+	return count;
+    }
+
+    synchronized long getMax() {
+	return max;
+    }
+
+    synchronized long getMean() {
+	return (count == 0) ? 0 : total / count;
+    }
+
+    /**
+     * Returns the value under which the given percentage of the
+     * recorded values are.
+     */
+    synchronized long getPercentile(double percent) {
+	if (count == 0) {
+	    return 0;
+	}
+
+	long rank = (long) Math.ceil(percent / 100 * count);
+	if (rank < 1) {
+	    rank = 1;
+	}
+
+	long seen = 0;
+	for (int i = 0; i < BUCKETS; i++) {
+	    seen += counts[i];
+	    if (seen >= rank) {
+		return Math.min(highestValue(i), max);
+	    }
+	}
+	return max;
+    }
+
+    synchronized void reset() {
+	Arrays.fill(counts, 0);
+	count = 0;
+	total = 0;
+	max = 0;
+    }
+
+    /**
+     * Returns a summary of this histogram, such as
+     * <code>count=10 mean=42us p50=40us p90=61us p99=95us max=95us</code>.
+     */
+    synchronized String summary() {
+	return "count=" + count +
+	    " mean=" + getMean() + "us" +
+	    " p50=" + getPercentile(50) + "us" +
+	    " p90=" + getPercentile(90) + "us" +
+	    " p99=" + getPercentile(99) + "us" +
+	    " max=" + max + "us";
+    }
+
+    private static int index(long value) {
+	if (value < SUB) {
+	    return (int) value;
+	}
+
+	final int exponent = 63 - Long.numberOfLeadingZeros(value);
+	if (exponent >= MAX_EXPONENT) {
+	    return BUCKETS - 1;
+	}
+
+	final int shift = exponent - SUB_BITS;
+	return (shift + 1) * SUB + (int) ((value >>> shift) & (SUB - 1));
+    }
+
+    // the highest value which goes to the given bucket
+    private static long highestValue(int index) {
+	if (index < SUB) {
+	    return index;
+	}
+
+	final int shift = index / SUB - 1;
+	final long lowest = ((long) (SUB + index % SUB)) << shift;
+	return lowest + (1L << shift) - 1;
+    }
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long total;
+    private long max;
+}
@@ -0,0 +1,195 @@
+/*
+ * @(#)file      LocalObjectWrapping.java
+ * @(#)author    Sun Microsystems, Inc.
+ * @(#)version   1.1
+ * @(#)lastedit  07/03/08
+ * @(#)build     @BUILD_TAG_PLACEHOLDER@
+ *
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright (c) 2007 Sun Microsystems, Inc. All Rights Reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU General
+ * Public License Version 2 only ("GPL") or the Common Development and
+ * Distribution License("CDDL")(collectively, the "License"). You may not use
+ * this file except in compliance with the License. You can obtain a copy of the
+ * License at http://opendmk.dev.java.net/legal_notices/licenses.txt or in the 
+ * LEGAL_NOTICES folder that accompanied this code. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file found at
+ *     http://opendmk.dev.java.net/legal_notices/licenses.txt
+ * or in the LEGAL_NOTICES folder that accompanied this code.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.
+ * 
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * 
+ *       "Portions Copyrighted [year] [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding
+ * 
+ *       "[Contributor] elects to include this software in this distribution
+ *        under the [CDDL or GPL Version 2] license."
+ * 
+ * If you don't indicate a single choice of license, a recipient has the option
+ * to distribute your version of this file under either the CDDL or the GPL
+ * Version 2, or to extend the choice of license to its licensees as provided
+ * above. However, if you add GPL Version 2 code and therefore, elected the
+ * GPL Version 2 license, then the option applies only if the new code is made
+ * subject to such option by the copyright holder.
+ * 
+ */
+
+package com.sun.jmx.remote.generic;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+
+import javax.management.Attribute;
+import javax.management.remote.generic.ObjectWrapping;
+
+/**
+ * An implementation of the interface <code>ObjectWrapping</code> for
+ * a connection whose two sides run in the same Java virtual machine,
+ * such as a <code>jmxmp-local</code> connection.
+ *
+ * <p>A wrapped object is not serialized: the receiving side gets the
+ * object itself, as with a direct call to the MBean server, provided
+ * that the class of the object, and of the elements of the arrays,
+ * collections and maps it is made of, is the class known to the class
+ * loader used to unwrap it.  Otherwise a copy of the object is made
+ * through serialization and deserialized with that class loader, as
+ * {@link ObjectWrappingImpl} would do.</p>
+ *
+ * <p>The wrapped objects cannot be written to a stream: this
+ * implementation must not be used with a connection to another Java
+ * virtual machine.  It unwraps the byte arrays produced by
+ * <code>ObjectWrappingImpl</code>.</p>
+ */
+public class LocalObjectWrapping implements ObjectWrapping {
+
+    public LocalObjectWrapping() {}
+
+    public Object wrap(Object obj) throws IOException {
+	return new SharedObject(obj);
+    }
+
+    public Object unwrap(Object wrapped, ClassLoader cloader)
+	    throws IOException, ClassNotFoundException {
+
+	if (!(wrapped instanceof SharedObject)) {
+	    return defaultWrapping.unwrap(wrapped, cloader);
+	}
+
+	final Object obj = ((SharedObject) wrapped).obj;
+	if (cloader == null || isVisible(obj, cloader, MAX_DEPTH)) {
+	    return obj;
+	}
+
+	// copy the object into the class loader
+	final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+	final ObjectOutputStream oos = new ObjectOutputStream(baos);
+	oos.writeObject(obj);
+	oos.close();
+	return ObjectWrappingImpl.readObject(
+		   new ByteArrayInputStream(baos.toByteArray()), cloader);
+    }
+
+    /*
+     * Tells whether the classes an object is made of are the ones
+     * known to the given class loader.  The contents deeper than
+     * the given depth are not checked but assumed to be visible when
+     * their container is.
+     */
+    private static boolean isVisible(Object obj, ClassLoader cloader,
+				     int depth) {
+	if (obj == null) {
+	    return true;
+	}
+
+	if (!isVisible(obj.getClass(), cloader)) {
+	    return false;
+	}
+
+	if (--depth < 0) {
+	    return true;
+	}
+
+	if (obj instanceof Object[]) {
+	    final Object[] array = (Object[]) obj;
+	    for (int i = 0; i < array.length; i++) {
+		if (!isVisible(array[i], cloader, depth)) {
+		    return false;
+		}
+	    }
+	} else if (obj instanceof Collection) {
+	    for (Iterator it = ((Collection) obj).iterator(); it.hasNext(); ) {
+		if (!isVisible(it.next(), cloader, depth)) {
+		    return false;
+		}
+	    }
+	} else if (obj instanceof Map) {
+	    for (Iterator it = ((Map) obj).entrySet().iterator();
+		 it.hasNext(); ) {
+		final Map.Entry e = (Map.Entry) it.next();
+		if (!isVisible(e.getKey(), cloader, depth) ||
+		    !isVisible(e.getValue(), cloader, depth)) {
+		    return false;
+		}
+	    }
+	} else if (obj instanceof Attribute) {
+	    return isVisible(((Attribute) obj).getValue(), cloader, depth);
+	}
+
+	return true;
+    }
+
+    private static boolean isVisible(Class c, ClassLoader cloader) {
+	while (c.isArray()) {
+	    c = c.getComponentType();
+	}
+
+	// the classes of the bootstrap class loader are known to all
+	if (c.isPrimitive() || c.getClassLoader() == null) {
+	    return true;
+	}
+
+	try {
+	    return Class.forName(c.getName(), false, cloader) == c;
+	} catch (ClassNotFoundException e) {
+	    return false;
+	}
+    }
+
+    /*
+     * The holder of a wrapped object.  It is not serializable, so that
+     * a connection to another Java virtual machine fails instead of
+     * sending a copy that the peer could not unwrap.
+     */
+    private static final class SharedObject {
+	SharedObject(Object obj) {
+	    this.obj = obj;
+	}
+
+	final Object obj;
+    }
+
+    // the nesting checked for the class loaders, e.g. an AttributeList
+    // of Attribute values which are arrays
+    private static final int MAX_DEPTH = 3;
+
+    private final ObjectWrappingImpl defaultWrapping = new ObjectWrappingImpl();
+}
@@ -0,0 +1,389 @@
+/*
+ * @(#)file      MBeanInfoCache.java
+ * @(#)author    Sun Microsystems, Inc.
+ * @(#)version   1.1
+ * @(#)lastedit  07/03/08
+ * @(#)build     @BUILD_TAG_PLACEHOLDER@
+ *
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright (c) 2007 Sun Microsystems, Inc. All Rights Reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU General
+ * Public License Version 2 only ("GPL") or the Common Development and
+ * Distribution License("CDDL")(collectively, the "License"). You may not use
+ * this file except in compliance with the License. You can obtain a copy of the
+ * License at http://opendmk.dev.java.net/legal_notices/licenses.txt or in the 
+ * LEGAL_NOTICES folder that accompanied this code. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file found at
+ *     http://opendmk.dev.java.net/legal_notices/licenses.txt
+ * or in the LEGAL_NOTICES folder that accompanied this code.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.
+ * 
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * 
+ *       "Portions Copyrighted [year] [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding
+ * 
+ *       "[Contributor] elects to include this software in this distribution
+ *        under the [CDDL or GPL Version 2] license."
+ * 
+ * If you don't indicate a single choice of license, a recipient has the option
+ * to distribute your version of this file under either the CDDL or the GPL
+ * Version 2, or to extend the choice of license to its licensees as provided
+ * above. However, if you add GPL Version 2 code and therefore, elected the
+ * GPL Version 2 license, then the option applies only if the new code is made
+ * subject to such option by the copyright holder.
+ * 
+ */
+
+package com.sun.jmx.remote.generic;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.management.Descriptor;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanConstructorInfo;
+import javax.management.MBeanFeatureInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanNotificationInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.MBeanServerNotification;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.ObjectInstance;
+import javax.management.ObjectName;
+
+/**
+ * <p>The <code>MBeanInfo</code>, <code>ObjectInstance</code> and
+ * <code>isInstanceOf</code> results that a client got from its
+ * server, kept so that they are not asked again.</p>
+ *
+ * <p>An MBean is removed from the cache when the client receives the
+ * {@link MBeanServerNotification#UNREGISTRATION_NOTIFICATION} for it,
+ * this object being the listener of the MBean server delegate.  An
+ * <code>MBeanInfo</code> held for longer than the validation period
+ * is checked with the server by sending its {@link #fingerprint
+ * fingerprint}, and only fetched again if it has changed.  The other
+ * results of an MBean are dropped when its <code>MBeanInfo</code> is
+ * seen to change, since they depend on its class name.</p>
+ *
+ * <p>A result is only put in the cache if no MBean was removed from it
+ * since the request was sent, as told by {@link #getGeneration()}.
+ * Otherwise a result obtained before an unregistration could be kept
+ * after it.</p>
+ */
+public class MBeanInfoCache implements NotificationListener {
+
+    /**
+     * An <code>MBeanInfo</code> in the cache.
+     */
+    public static class Entry {
+	Entry(MBeanInfo info, long fingerprint, long validated) {
+	    this.info = info;
+	    this.fingerprint = fingerprint;
+	    this.validated = validated;
+	}
+
+	public MBeanInfo getMBeanInfo() {
+	    return info;
+	}
+
+	public long getFingerprint() {
+	    return fingerprint;
+	}
+
+	private final MBeanInfo info;
+	private final long fingerprint;
+	private volatile long validated;
+    }
+
+    /**
+     * Constructs an empty cache.
+     *
+     * @param period the time in milliseconds during which an
+     * <code>MBeanInfo</code> is used without being checked with the
+     * server.
+     */
+    public MBeanInfoCache(long period) {
+	this.period = period;
+    }
+
+    /**
+     * Returns the cached <code>MBeanInfo</code> of the MBean, or null
+     * if there is none.  The entry may need to be validated first, as
+     * told by {@link #isFresh}.
+     */
+    public synchronized Entry getEntry(ObjectName name) {
+	return (Entry) infos.get(name);
+    }
+
+    /**
+     * Tells whether the entry can be used without asking the server,
+     * and counts it as a hit if so.
+     */
+    public boolean isFresh(Entry entry) {
+	if (System.currentTimeMillis() - entry.validated < period) {
+	    synchronized (this) {
+		hits++;
+	    }
+	    return true;
+	}
+	return false;
+    }
+
+    /**
+     * Tells that the server found the <code>MBeanInfo</code> of the
+     * entry unchanged.
+     */
+    public void validated(Entry entry) {
+	entry.validated = System.currentTimeMillis();
+	synchronized (this) {
+	    validations++;
+	}
+    }
+
+    /**
+     * Returns a number which changes whenever an MBean is removed from
+     * the cache.  It is read before sending a request and given back
+     * when putting its result in the cache.
+     */
+    public synchronized long getGeneration() {
+	return generation;
+    }
+
+    /**
+     * Puts the <code>MBeanInfo</code> received from the server in the
+     * cache.  If it replaces a different one, the other results cached
+     * for the MBean are dropped.
+     */
+    public synchronized void putMBeanInfo(ObjectName name, MBeanInfo info,
+					  long fingerprint, long generation) {
+	fetches++;
+	if (generation != this.generation) {
+	    return;
+	}
+
+	final Entry old = (Entry) infos.put(name,
+		new Entry(info, fingerprint, System.currentTimeMillis()));
+	if (old != null && old.fingerprint != fingerprint) {
+	    instances.remove(name);
+	    instanceOfs.remove(name);
+	}
+    }
+
+    /**
+     * Returns the cached <code>ObjectInstance</code> of the MBean, or
+     * null if there is none.
+     */
+    public synchronized ObjectInstance getObjectInstance(ObjectName name) {
+	final ObjectInstance instance = (ObjectInstance) instances.get(name);
+	if (instance != null) {
+	    hits++;
+	}
+	return instance;
+    }
+
+    public synchronized void putObjectInstance(ObjectName name,
+					       ObjectInstance instance,
+					       long generation) {
+	if (generation == this.generation) {
+	    instances.put(name, instance);
+	}
+    }
+
+    /**
+     * Returns the cached result of <code>isInstanceOf</code> for the
+     * MBean and class name, or null if there is none.
+     */
+    public synchronized Boolean isInstanceOf(ObjectName name,
+					     String className) {
+	final Map results = (Map) instanceOfs.get(name);
+	if (results == null) {
+	    return null;
+	}
+
+	final Boolean is = (Boolean) results.get(className);
+	if (is != null) {
+	    hits++;
+	}
+	return is;
+    }
+
+    public synchronized void putInstanceOf(ObjectName name, String className,
+					   boolean is, long generation) {
+	if (generation != this.generation) {
+	    return;
+	}
+
+	Map results = (Map) instanceOfs.get(name);
+	if (results == null) {
+	    results = new HashMap();
+	    instanceOfs.put(name, results);
+	}
+	results.put(className, is ? Boolean.TRUE : Boolean.FALSE);
+    }
+
+    /**
+     * Removes everything cached for the MBean.
+     */
+    public synchronized void invalidate(ObjectName name) {
+	generation++;
+	if (infos.remove(name) != null) {
+	    invalidations++;
+	}
+	instances.remove(name);
+	instanceOfs.remove(name);
+    }
+
+    /**
+     * Empties the cache, for example when notifications have been lost
+     * or the connection has been reestablished.
+     */
+    public synchronized void clear() {
+	generation++;
+	invalidations += infos.size();
+	infos.clear();
+	instances.clear();
+	instanceOfs.clear();
+    }
+
+    /**
+     * Removes the MBean named by an
+     * {@link MBeanServerNotification#UNREGISTRATION_NOTIFICATION}.
+     */
+    public void handleNotification(Notification notification,
+				   Object handback) {
+	if (notification instanceof MBeanServerNotification &&
+	    MBeanServerNotification.UNREGISTRATION_NOTIFICATION.equals(
+						  notification.getType())) {
+	    invalidate(((MBeanServerNotification) notification).getMBeanName());
+	}
+    }
+
+    /**
+     * Returns a line describing the use of the cache.
+     */
+    public synchronized String getStatistics() {
+	return "size=" + infos.size() + " hits=" + hits +
+	    " validations=" + validations + " fetches=" + fetches +
+	    " invalidations=" + invalidations;
+    }
+
+    /**
+     * <p>Returns a fingerprint of the given <code>MBeanInfo</code>.
+     * Two <code>MBeanInfo</code>s with the same class name,
+     * description, descriptor and features described in the same way
+     * and in the same order have the same fingerprint.</p>
+     *
+     * <p>The <code>hashCode</code> of <code>MBeanInfo</code> is not used
+     * because it leaves out descriptions, descriptors and operation
+     * signatures.</p>
+     */
+    public static long fingerprint(MBeanInfo info) {
+	long h = FNV_BASIS;
+
+	h = mix(h, info.getClassName());
+	h = mix(h, info.getDescription());
+	h = mix(h, info.getDescriptor());
+
+	final MBeanAttributeInfo[] attrs = info.getAttributes();
+	h = mix(h, attrs.length);
+	for (int i = 0; i < attrs.length; i++) {
+	    h = mix(h, attrs[i]);
+	    h = mix(h, attrs[i].getType());
+	    h = mix(h, (attrs[i].isReadable() ? 1 : 0) |
+		       (attrs[i].isWritable() ? 2 : 0) |
+		       (attrs[i].isIs() ? 4 : 0));
+	}
+
+	final MBeanOperationInfo[] ops = info.getOperations();
+	h = mix(h, ops.length);
+	for (int i = 0; i < ops.length; i++) {
+	    h = mix(h, ops[i]);
+	    h = mix(h, ops[i].getReturnType());
+	    h = mix(h, ops[i].getImpact());
+	    h = mix(h, ops[i].getSignature());
+	}
+
+	final MBeanConstructorInfo[] ctors = info.getConstructors();
+	h = mix(h, ctors.length);
+	for (int i = 0; i < ctors.length; i++) {
+	    h = mix(h, ctors[i]);
+	    h = mix(h, ctors[i].getSignature());
+	}
+
+	final MBeanNotificationInfo[] notifs = info.getNotifications();
+	h = mix(h, notifs.length);
+	for (int i = 0; i < notifs.length; i++) {
+	    h = mix(h, notifs[i]);
+	    final String[] types = notifs[i].getNotifTypes();
+	    h = mix(h, types.length);
+	    for (int j = 0; j < types.length; j++) {
+		h = mix(h, types[j]);
+	    }
+	}
+
+	return h;
+    }
+
+    private static long mix(long h, MBeanFeatureInfo feature) {
+	h = mix(h, feature.getName());
+	h = mix(h, feature.getDescription());
+	return mix(h, feature.getDescriptor());
+    }
+
+    private static long mix(long h, MBeanParameterInfo[] signature) {
+	h = mix(h, signature.length);
+	for (int i = 0; i < signature.length; i++) {
+	    h = mix(h, signature[i]);
+	    h = mix(h, signature[i].getType());
+	}
+	return h;
+    }
+
+    private static long mix(long h, Descriptor descriptor) {
+	return mix(h, descriptor == null ? 0 : descriptor.hashCode());
+    }
+
+    private static long mix(long h, String s) {
+	return mix(h, s == null ? 0 : s.hashCode());
+    }
+
+    // one FNV-1a step per int
+    private static long mix(long h, int value) {
+	return (h ^ (value & 0xffffffffL)) * FNV_PRIME;
+    }
+
+    private static final long FNV_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final long period;
+
+    // ObjectName -> Entry
+    private final Map infos = new HashMap();
+    // ObjectName -> ObjectInstance
+    private final Map instances = new HashMap();
+    // ObjectName -> Map of class name -> Boolean
+    private final Map instanceOfs = new HashMap();
+
+    private long generation;
+
+    private long hits;
+    private long validations;
+    private long fetches;
+    private long invalidations;
+}
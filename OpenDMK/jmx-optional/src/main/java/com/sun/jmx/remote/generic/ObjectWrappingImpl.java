@@ -75,8 +75,18 @@ public class ObjectWrappingImpl implements ObjectWrapping {
     public Object unwrap(Object wrapped, ClassLoader cloader)
 	    throws IOException, ClassNotFoundException {
 
+	// sent by a peer using DeferredObjectWrapping
+	if (wrapped instanceof WrappedObject) {
+	    return ((WrappedObject)wrapped).getObject(cloader);
+	}
+
 	ByteArrayInputStream bais = new ByteArrayInputStream((byte[])wrapped);
-	ObjectInputStreamWithLoader ois = new ObjectInputStreamWithLoader(bais);
+	return readObject(bais, cloader);
+    }
+
+    static Object readObject(InputStream in, ClassLoader cloader)
+	    throws IOException, ClassNotFoundException {
+	ObjectInputStreamWithLoader ois = new ObjectInputStreamWithLoader(in);
 	return ois.readObject(cloader);
     }
 
@@ -0,0 +1,459 @@
+/*
+ * @(#)file      RequestExecutor.java
+ * @(#)author    Sun Microsystems, Inc.
+ * @(#)version   1.1
+ * @(#)lastedit  07/03/08
+ * @(#)build     @BUILD_TAG_PLACEHOLDER@
+ *
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright (c) 2007 Sun Microsystems, Inc. All Rights Reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU General
+ * Public License Version 2 only ("GPL") or the Common Development and
+ * Distribution License("CDDL")(collectively, the "License"). You may not use
+ * this file except in compliance with the License. You can obtain a copy of the
+ * License at http://opendmk.dev.java.net/legal_notices/licenses.txt or in the 
+ * LEGAL_NOTICES folder that accompanied this code. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file found at
+ *     http://opendmk.dev.java.net/legal_notices/licenses.txt
+ * or in the LEGAL_NOTICES folder that accompanied this code.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.
+ * 
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * 
+ *       "Portions Copyrighted [year] [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding
+ * 
+ *       "[Contributor] elects to include this software in this distribution
+ *        under the [CDDL or GPL Version 2] license."
+ * 
+ * If you don't indicate a single choice of license, a recipient has the option
+ * to distribute your version of this file under either the CDDL or the GPL
+ * Version 2, or to extend the choice of license to its licensees as provided
+ * above. However, if you add GPL Version 2 code and therefore, elected the
+ * GPL Version 2 license, then the option applies only if the new code is made
+ * subject to such option by the copyright holder.
+ * 
+ */
+
+package com.sun.jmx.remote.generic;
+
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.LinkedList;
+
+import com.sun.jmx.remote.opt.util.ClassLogger;
+import com.sun.jmx.remote.opt.util.VirtualThreads;
+
+/**
+ * A pool of threads shared by the client connections of a connector
+ * server to execute their requests.  Each connection hands off its
+ * requests to its own {@link Queue}.  The threads serve the queues in
+ * turn, one request at a time, so that a connection sending many
+ * requests does not delay the requests of the others, and a
+ * connection has at most a given number of requests executed at once.
+ *
+ * <p>The number of requests waiting for a thread can be bounded.  A
+ * request which would exceed the bound is rejected, and the thread
+ * which handed it off should execute it itself: a connection reader
+ * stops reading meanwhile.</p>
+ *
+ * <p>The threads are created when needed, up to the given number.  The
+ * threads above a core number end when they have been idle for a
+ * keep-alive time.  In virtual thread mode a thread ends as soon as
+ * no request is ready, and a new one is started for the next request:
+ * no virtual thread waits idle on the executor monitor.</p>
+ *
+ * @see com.sun.jmx.remote.opt.util.VirtualThreads
+ */
+public class RequestExecutor {
+
+    /**
+     * Constructs a RequestExecutor.
+     *
+     * @param threads the number of threads executing the requests.
+     * @param maxWaiting the maximum number of requests waiting for a
+     * thread.
+     */
+    public RequestExecutor(int threads, int maxWaiting) {
+	this(threads, threads, 0, maxWaiting, false);
+    }
+
+    /**
+     * Constructs a RequestExecutor whose idle threads above a core
+     * number end after a keep-alive time.
+     *
+     * @param coreThreads the number of threads kept when idle.
+     * @param threads the maximum number of threads executing the
+     * requests.
+     * @param keepAlive the time in milliseconds after which an idle
+     * thread above <code>coreThreads</code> ends.
+     * @param maxWaiting the maximum number of requests waiting for a
+     * thread.
+     * @param virtual true if the threads are virtual threads, when the
+     * JDK supports them.  <code>coreThreads</code> and
+     * <code>keepAlive</code> are then not used.
+     */
+    public RequestExecutor(int coreThreads, int threads, long keepAlive,
+			   int maxWaiting, boolean virtual) {
+	if (threads <= 0) {
+	    throw new IllegalArgumentException("Thread number must be " +
+					       "positive: " + threads);
+	}
+
+	if (coreThreads < 0 || coreThreads > threads) {
+	    throw new IllegalArgumentException("Bad core thread number: " +
+					       coreThreads);
+	}
+
+	if (coreThreads < threads && keepAlive <= 0) {
+	    throw new IllegalArgumentException("Keep-alive time must be " +
+					       "positive: " + keepAlive);
+	}
+
+	if (maxWaiting < 0) {
+	    throw new IllegalArgumentException("Negative waiting requests.");
+	}
+
+	this.coreThreads = coreThreads;
+	this.maxThreads = threads;
+	this.keepAlive = keepAlive;
+	this.maxWaiting = maxWaiting;
+	this.virtual = virtual && VirtualThreads.isSupported();
+
+	defaultLoader = getContextClassLoader();
+    }
+
+    /**
+     * Returns a new queue for the requests of a connection.
+     *
+     * @param maxActive the maximum number of requests of this queue
+     * executed at once.
+     */
+    public Queue newQueue(int maxActive) {
+	if (maxActive <= 0) {
+	    throw new IllegalArgumentException("Active requests must be " +
+					       "positive: " + maxActive);
+	}
+
+	return new Queue(maxActive);
+    }
+
+    /**
+     * Terminates this executor.  The waiting requests are dropped and
+     * the threads end when their current request is done.
+     */
+    public void terminate() {
+	synchronized(lock) {
+	    if (terminated) {
+		return;
+	    }
+
+	    terminated = true;
+	    ready.clear();
+	    waiting = 0;
+	    wakeups = 0;
+	    lock.notifyAll();
+	}
+    }
+
+    /**
+     * Returns the number of requests waiting for a thread.
+     */
+    public int getWaitingRequests() {
+	synchronized(lock) {
+	    return waiting;
+	}
+    }
+
+    /**
+     * Returns the number of requests rejected because too many
+     * requests were waiting.
+     */
+    public long getRejectedRequests() {
+	synchronized(lock) {
+	    return rejected;
+	}
+    }
+
+    /**
+     * Returns the number of threads of this executor, executing a
+     * request or idle.
+     */
+    public int getThreads() {
+	synchronized(lock) {
+	    return threads;
+	}
+    }
+
+    /**
+     * Returns the number of threads currently executing a request.
+     */
+    public int getActiveThreads() {
+	synchronized(lock) {
+	    return threads - idle;
+	}
+    }
+
+    /**
+     * The requests of a client connection.
+     */
+    public class Queue {
+	private Queue(int maxActive) {
+	    this.maxActive = maxActive;
+	}
+
+	/**
+	 * Hands off a job to be executed when a thread is available.
+	 * It is never rejected.
+	 *
+	 * @exception IllegalStateException if this queue or the
+	 * executor is terminated.
+	 */
+	public void handoff(Runnable job) {
+	    synchronized(lock) {
+		checkState();
+		add(job);
+	    }
+	}
+
+	/**
+	 * Hands off a request to be executed when a thread is
+	 * available, unless too many requests are waiting.
+	 *
+	 * @return false if the request is rejected.  The caller should
+	 * execute it itself.
+	 *
+	 * @exception IllegalStateException if this queue or the
+	 * executor is terminated.
+	 */
+	public boolean offer(Runnable job) {
+	    synchronized(lock) {
+		checkState();
+
+		if (waiting >= maxWaiting) {
+		    rejected++;
+		    return false;
+		}
+
+		add(job);
+		return true;
+	    }
+	}
+
+	/**
+	 * Terminates this queue: its waiting jobs are dropped.  The jobs
+	 * being executed are not interrupted, their threads serve other
+	 * connections.
+	 */
+	public void terminate() {
+	    synchronized(lock) {
+		if (closed) {
+		    return;
+		}
+
+		closed = true;
+		if (!terminated) {
+		    waiting -= jobs.size();
+		}
+		jobs.clear();
+		ready.remove(this);
+	    }
+	}
+
+	// called holding the lock
+	private void checkState() {
+	    if (closed || terminated) {
+		throw new IllegalStateException("The request queue has " +
+						"been terminated.");
+	    }
+	}
+
+	// called holding the lock
+	private void add(Runnable job) {
+	    if (job == null) {
+		throw new IllegalArgumentException("Null job.");
+	    }
+
+	    jobs.addLast(job);
+	    waiting++;
+
+	    if (jobs.size() == 1 && active < maxActive) {
+		ready.addLast(this);
+		startOrWake();
+	    }
+	}
+
+	// called holding the lock: the queue is taken from the ready list
+	private Runnable next() {
+	    final Runnable job = (Runnable) jobs.removeFirst();
+	    waiting--;
+	    active++;
+
+	    if (!jobs.isEmpty() && active < maxActive) {
+		// come back after the other connections
+		ready.addLast(this);
+	    }
+
+	    return job;
+	}
+
+	// called holding the lock
+	private void done() {
+	    active--;
+
+	    if (!closed && !jobs.isEmpty() && active == maxActive - 1) {
+		ready.addLast(this);
+		startOrWake();
+	    }
+	}
+
+	private final LinkedList jobs = new LinkedList();
+	private final int maxActive;
+	private int active = 0;
+	private boolean closed = false;
+    }
+
+    private class Worker implements Runnable {
+	public void run() {
+	    final Thread currentThread = Thread.currentThread();
+
+	    while (true) {
+		final Queue queue;
+		final Runnable job;
+
+		synchronized(lock) {
+		    while (!terminated && ready.isEmpty()) {
+			if (virtual) {
+			    // no idle virtual thread, leave
+			    threads--;
+			    return;
+			}
+
+			final boolean timed = threads > coreThreads;
+			final long start = timed ?
+			    System.currentTimeMillis() : 0;
+			idle++;
+			try {
+			    lock.wait(timed ? keepAlive : 0);
+			} catch (InterruptedException ie) {
+			    // OK: see whether there is something to do
+			} finally {
+			    idle--;
+			}
+
+			if (wakeups > 0) {
+			    // whichever idle thread wakes up first
+			    // takes the wakeup
+			    wakeups--;
+			} else if (timed && ready.isEmpty() &&
+				   threads > coreThreads &&
+				   System.currentTimeMillis() - start
+				       >= keepAlive) {
+			    threads--;
+			    return;
+			}
+		    }
+
+		    if (terminated) {
+			threads--;
+			return;
+		    }
+
+		    queue = (Queue) ready.removeFirst();
+		    job = queue.next();
+		}
+
+		try {
+		    job.run();
+		} catch (Exception e) {
+		    if (logger.warningOn()) {
+			logger.warning("run", "Got an unexpected exception.", e);
+		    }
+		} finally {
+		    synchronized(lock) {
+			queue.done();
+		    }
+
+		    // the next job may belong to another connection
+		    Thread.interrupted();
+		    setContextClassLoader(currentThread, defaultLoader);
+		}
+	    }
+	}
+    }
+
+    // called holding the lock.  A woken thread only counts itself out
+    // of the idle threads when it gets the lock back, so the wakeups
+    // not taken yet are counted: an idle thread already woken for
+    // another queue cannot serve this one.
+    private void startOrWake() {
+	if (idle > wakeups) {
+	    wakeups++;
+	    lock.notify();
+	} else if (threads < maxThreads) {
+	    threads++;
+	    final Thread t = VirtualThreads.newThread(new Worker(), virtual);
+	    if (!virtual) {
+		t.setName("JMX request executor " + (++counter));
+		t.setDaemon(true);
+	    }
+	    t.start();
+	}
+    }
+
+    private ClassLoader getContextClassLoader() {
+	return (ClassLoader)
+	    AccessController.doPrivileged(new PrivilegedAction() {
+		    public Object run() {
+			return Thread.currentThread().getContextClassLoader();
+		    }
+	    });
+    }
+
+    private void setContextClassLoader(final Thread currentThread,
+				       final ClassLoader classloader) {
+	AccessController.doPrivileged(new PrivilegedAction() {
+		public Object run() {
+		    currentThread.setContextClassLoader(classloader);
+		    return null;
+		}
+	});
+    }
+
+    private final int coreThreads;
+    private final int maxThreads;
+    private final long keepAlive;
+    private final int maxWaiting;
+    private final boolean virtual;
+    private final ClassLoader defaultLoader;
+
+    private final int[] lock = new int[0];
+
+    // the queues with a job to execute, in the order they are served
+    private final LinkedList ready = new LinkedList();
+
+    private int threads = 0;
+    private int idle = 0;
+    private int wakeups = 0;
+    private int waiting = 0;
+    private long rejected = 0;
+    private boolean terminated = false;
+
+    private static long counter = 0;
+
+    private static final ClassLogger logger =
+	new ClassLogger("javax.management.remote.misc", "RequestExecutor");
+}
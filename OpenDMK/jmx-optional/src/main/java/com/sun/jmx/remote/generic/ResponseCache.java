@@ -0,0 +1,292 @@
+/*
+ * @(#)file      ResponseCache.java
+ * @(#)author    Sun Microsystems, Inc.
+ * @(#)version   1.1
+ * @(#)lastedit  07/03/08
+ * @(#)build     @BUILD_TAG_PLACEHOLDER@
+ *
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright (c) 2007 Sun Microsystems, Inc. All Rights Reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU General
+ * Public License Version 2 only ("GPL") or the Common Development and
+ * Distribution License("CDDL")(collectively, the "License"). You may not use
+ * this file except in compliance with the License. You can obtain a copy of the
+ * License at http://opendmk.dev.java.net/legal_notices/licenses.txt or in the 
+ * LEGAL_NOTICES folder that accompanied this code. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file found at
+ *     http://opendmk.dev.java.net/legal_notices/licenses.txt
+ * or in the LEGAL_NOTICES folder that accompanied this code.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.
+ * 
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * 
+ *       "Portions Copyrighted [year] [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding
+ * 
+ *       "[Contributor] elects to include this software in this distribution
+ *        under the [CDDL or GPL Version 2] license."
+ * 
+ * If you don't indicate a single choice of license, a recipient has the option
+ * to distribute your version of this file under either the CDDL or the GPL
+ * Version 2, or to extend the choice of license to its licensees as provided
+ * above. However, if you add GPL Version 2 code and therefore, elected the
+ * GPL Version 2 license, then the option applies only if the new code is made
+ * subject to such option by the copyright holder.
+ * 
+ */
+
+package com.sun.jmx.remote.generic;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerDelegate;
+import javax.management.MBeanServerNotification;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+import javax.management.remote.generic.ObjectWrapping;
+
+import com.sun.jmx.remote.opt.util.ClassLogger;
+
+/**
+ * <p>The wrapped form of the <code>MBeanInfo</code>,
+ * <code>getDomains</code> and <code>getDefaultDomain</code> results
+ * sent by a connector server, shared by all its client connections so
+ * that the same result is not serialized again for each request.</p>
+ *
+ * <p>The method is still called on the MBean server for every
+ * request, so that its access checks are made and a changed result
+ * is seen.  The cached bytes are only sent if the result equals the
+ * cached one.  The <code>MBeanInfo</code> of an MBean is removed when
+ * an MBean with its name is registered or unregistered, as told by the
+ * notifications of the MBean server delegate.</p>
+ *
+ * <p>The cache is only used with {@link ObjectWrappingImpl}, whose
+ * wrapped byte arrays can be sent on any connection.</p>
+ */
+public class ResponseCache implements NotificationListener {
+
+    private static class Entry {
+	Entry(Object value) {
+	    this.value = value;
+	}
+
+	final Object value;
+	Object wrapped;
+	Long fingerprint;
+    }
+
+    /**
+     * Constructs an empty cache.
+     *
+     * @param maxEntries the maximum number of <code>MBeanInfo</code>s
+     * kept.  Once reached, new ones are not cached until MBeans are
+     * unregistered.
+     */
+    public ResponseCache(int maxEntries) {
+	this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Starts listening for the registrations and unregistrations of
+     * the given MBean server.  If that fails the cache still returns
+     * correct results, but it keeps the <code>MBeanInfo</code> of
+     * unregistered MBeans.
+     */
+    public void start(MBeanServer mbs) {
+	try {
+	    mbs.addNotificationListener(MBeanServerDelegate.DELEGATE_NAME,
+					this, null, null);
+	    this.mbs = mbs;
+	} catch (Exception e) {
+	    logger.warning("start", "Can't listen for registrations: " + e);
+	    if (logger.debugOn()) logger.debug("start", e);
+	}
+    }
+
+    /**
+     * Stops listening for registrations and empties the cache.
+     */
+    public void stop() {
+	if (mbs != null) {
+	    try {
+		mbs.removeNotificationListener(
+			      MBeanServerDelegate.DELEGATE_NAME, this);
+	    } catch (Exception e) {
+		if (logger.debugOn()) logger.debug("stop", e);
+	    }
+	    mbs = null;
+	}
+
+	if (logger.traceOn()) {
+	    logger.trace("stop", getStatistics());
+	}
+
+	synchronized (this) {
+	    infos.clear();
+	    domains = null;
+	    defaultDomain = null;
+	}
+    }
+
+    /**
+     * Returns the wrapped form of the <code>MBeanInfo</code> of an
+     * MBean, reusing the cached one if the <code>MBeanInfo</code> has
+     * not changed.
+     */
+    public Object wrapMBeanInfo(ObjectName name, MBeanInfo info,
+				ObjectWrapping wrapping) throws IOException {
+	return wrap(getInfoEntry(name, info), wrapping);
+    }
+
+    /**
+     * Returns the {@link MBeanInfoCache#fingerprint fingerprint} of
+     * the <code>MBeanInfo</code> of an MBean, reusing the cached one
+     * if the <code>MBeanInfo</code> has not changed.
+     */
+    public long getFingerprint(ObjectName name, MBeanInfo info) {
+	final Entry entry = getInfoEntry(name, info);
+	synchronized (entry) {
+	    if (entry.fingerprint == null) {
+		entry.fingerprint = new Long(MBeanInfoCache.fingerprint(info));
+	    }
+	    return entry.fingerprint.longValue();
+	}
+    }
+
+    /**
+     * Returns the wrapped form of the result of
+     * <code>getDomains</code>.
+     */
+    public Object wrapDomains(String[] result, ObjectWrapping wrapping)
+	    throws IOException {
+	Entry entry;
+	synchronized (this) {
+	    entry = domains;
+	    if (entry == null ||
+		!Arrays.equals((String[]) entry.value, result)) {
+		entry = new Entry(result.clone());
+		domains = entry;
+	    }
+	}
+	return wrap(entry, wrapping);
+    }
+
+    /**
+     * Returns the wrapped form of the result of
+     * <code>getDefaultDomain</code>.
+     */
+    public Object wrapDefaultDomain(String result, ObjectWrapping wrapping)
+	    throws IOException {
+	Entry entry;
+	synchronized (this) {
+	    entry = defaultDomain;
+	    if (entry == null || !entry.value.equals(result)) {
+		entry = new Entry(result);
+		defaultDomain = entry;
+	    }
+	}
+	return wrap(entry, wrapping);
+    }
+
+    /**
+     * Removes the <code>MBeanInfo</code> of an MBean which is
+     * registered or unregistered.  The domains may have changed too.
+     */
+    public void handleNotification(Notification notification,
+				   Object handback) {
+	if (notification instanceof MBeanServerNotification) {
+	    final ObjectName name =
+		((MBeanServerNotification) notification).getMBeanName();
+	    synchronized (this) {
+		infos.remove(name);
+		domains = null;
+	    }
+	}
+    }
+
+    /**
+     * Returns a line describing the use of the cache.
+     */
+    public synchronized String getStatistics() {
+	return "size=" + infos.size() + " hits=" + hits +
+	    " misses=" + misses;
+    }
+
+    /*
+     * Returns the entry of the given MBeanInfo, replacing the cached
+     * one if it is different.  An MBeanInfo that cannot be cached
+     * gets an entry of its own.
+     */
+    private synchronized Entry getInfoEntry(ObjectName name, MBeanInfo info) {
+	Entry entry = (Entry) infos.get(name);
+	if (entry != null && isSame((MBeanInfo) entry.value, info)) {
+	    return entry;
+	}
+
+	entry = new Entry(info);
+	if (infos.size() < maxEntries || infos.containsKey(name)) {
+	    infos.put(name, entry);
+	}
+	return entry;
+    }
+
+    /*
+     * A standard MBean returns the same MBeanInfo object each time.
+     * Equal MBeanInfos of different classes are not serialized in the
+     * same way.
+     */
+    private static boolean isSame(MBeanInfo cached, MBeanInfo info) {
+	return cached == info ||
+	    (cached.getClass() == info.getClass() && cached.equals(info));
+    }
+
+    private Object wrap(Entry entry, ObjectWrapping wrapping)
+	    throws IOException {
+	synchronized (entry) {
+	    if (entry.wrapped == null) {
+		entry.wrapped = wrapping.wrap(entry.value);
+		synchronized (this) {
+		    misses++;
+		}
+	    } else {
+		synchronized (this) {
+		    hits++;
+		}
+	    }
+	    return entry.wrapped;
+	}
+    }
+
+    private final int maxEntries;
+    private volatile MBeanServer mbs;
+
+    // ObjectName -> Entry
+    private final Map infos = new HashMap();
+    private Entry domains;
+    private Entry defaultDomain;
+
+    private long hits;
+    private long misses;
+
+    private static final ClassLogger logger =
+	new ClassLogger("javax.management.remote.misc", "ResponseCache");
+}
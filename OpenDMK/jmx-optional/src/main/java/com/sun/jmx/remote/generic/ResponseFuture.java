@@ -0,0 +1,163 @@
+/*
+ * @(#)file      ResponseFuture.java
+ * @(#)author    Sun Microsystems, Inc.
+ * @(#)version   1.1
+ * @(#)lastedit  07/03/08
+ * @(#)build     @BUILD_TAG_PLACEHOLDER@
+ *
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright (c) 2007 Sun Microsystems, Inc. All Rights Reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU General
+ * Public License Version 2 only ("GPL") or the Common Development and
+ * Distribution License("CDDL")(collectively, the "License"). You may not use
+ * this file except in compliance with the License. You can obtain a copy of the
+ * License at http://opendmk.dev.java.net/legal_notices/licenses.txt or in the 
+ * LEGAL_NOTICES folder that accompanied this code. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file found at
+ *     http://opendmk.dev.java.net/legal_notices/licenses.txt
+ * or in the LEGAL_NOTICES folder that accompanied this code.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.
+ * 
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * 
+ *       "Portions Copyrighted [year] [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding
+ * 
+ *       "[Contributor] elects to include this software in this distribution
+ *        under the [CDDL or GPL Version 2] license."
+ * 
+ * If you don't indicate a single choice of license, a recipient has the option
+ * to distribute your version of this file under either the CDDL or the GPL
+ * Version 2, or to extend the choice of license to its licensees as provided
+ * above. However, if you add GPL Version 2 code and therefore, elected the
+ * GPL Version 2 license, then the option applies only if the new code is made
+ * subject to such option by the copyright holder.
+ * 
+ */
+
+package com.sun.jmx.remote.generic;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import javax.management.remote.message.MBeanServerResponseMessage;
+import javax.management.remote.message.Message;
+
+/**
+ * The pending response of a request sent with
+ * {@link ClientSynchroMessageConnectionImpl#sendAsync sendAsync}.
+ * The response is set by the reader thread of the connection when it
+ * arrives, so many requests can be sent on the same connection
+ * before waiting for any of their responses.
+ */
+public class ResponseFuture {
+
+    ResponseFuture(Long id, ClientSynchroMessageConnectionImpl connection,
+		   long timeout) {
+	this.id = id;
+	this.connection = connection;
+	this.timeout = timeout;
+    }
+
+    /**
+     * Returns the identifier of the request message.
+     */
+    public long getMessageId() {
+	return id.longValue();
+    }
+
+    /**
+     * Tells whether the response has arrived or the connection has
+     * failed.
+     */
+    public synchronized boolean isDone() {
+	return got;
+    }
+
+    /**
+     * Waits for the response, at most the request timeout of the
+     * connection.
+     */
+    public Message getResponse() throws IOException {
+	return getResponse(timeout);
+    }
+
+    /**
+     * Waits at most the given time in milliseconds for the response.
+     *
+     * @exception InterruptedIOException if the response has not arrived
+     * in time.  The request is then cancelled and its response, if any,
+     * will be ignored.
+     * @exception IOException if the connection has been closed or broken
+     * before the response arrived.
+     */
+    public Message getResponse(long timeout) throws IOException {
+	long remainingTime = timeout;
+	final long startTime = System.currentTimeMillis();
+	final boolean received;
+	final Object response;
+
+	synchronized(this) {
+	    while(!got && remainingTime > 0) {
+		try {
+		    wait(remainingTime);
+		} catch (InterruptedException ie) {
+		    // OK
+		    // the user wants to stop waiting.
+		    break;
+		}
+
+		remainingTime = timeout -
+		    (System.currentTimeMillis() - startTime);
+	    }
+
+	    received = got;
+	    response = msg;
+	}
+
+	if (!received) {
+	    throw connection.responseTimeout(id, timeout);
+	}
+
+	if (response instanceof MBeanServerResponseMessage) {
+	    return (Message)response;
+	} else if (response instanceof IOException) {
+	    throw (IOException)response;
+	} else {
+	    throw new IOException("Got wrong response: "+response);
+	}
+    }
+
+    /**
+     * Sets the response, or the exception telling that the connection
+     * failed, if nothing has been set before.
+     */
+    synchronized void done(Object msg) {
+	if (!got) {
+	    got = true;
+	    this.msg = msg;
+	}
+
+	notifyAll();
+    }
+
+    boolean got = false;
+    Object msg = null;
+
+    private final Long id;
+    private final ClientSynchroMessageConnectionImpl connection;
+    private final long timeout;
+}
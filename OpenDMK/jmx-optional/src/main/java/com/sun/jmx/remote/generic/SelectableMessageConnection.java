@@ -0,0 +1,96 @@
+/*
+ * @(#)file      SelectableMessageConnection.java
+ * @(#)author    Sun Microsystems, Inc.
+ * @(#)version   1.1
+ * @(#)lastedit  07/03/08
+ * @(#)build     @BUILD_TAG_PLACEHOLDER@
+ *
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright (c) 2007 Sun Microsystems, Inc. All Rights Reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU General
+ * Public License Version 2 only ("GPL") or the Common Development and
+ * Distribution License("CDDL")(collectively, the "License"). You may not use
+ * this file except in compliance with the License. You can obtain a copy of the
+ * License at http://opendmk.dev.java.net/legal_notices/licenses.txt or in the 
+ * LEGAL_NOTICES folder that accompanied this code. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file found at
+ *     http://opendmk.dev.java.net/legal_notices/licenses.txt
+ * or in the LEGAL_NOTICES folder that accompanied this code.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.
+ * 
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * 
+ *       "Portions Copyrighted [year] [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding
+ * 
+ *       "[Contributor] elects to include this software in this distribution
+ *        under the [CDDL or GPL Version 2] license."
+ * 
+ * If you don't indicate a single choice of license, a recipient has the option
+ * to distribute your version of this file under either the CDDL or the GPL
+ * Version 2, or to extend the choice of license to its licensees as provided
+ * above. However, if you add GPL Version 2 code and therefore, elected the
+ * GPL Version 2 license, then the option applies only if the new code is made
+ * subject to such option by the copyright holder.
+ * 
+ */
+
+package com.sun.jmx.remote.generic;
+
+import java.io.IOException;
+
+import javax.management.remote.generic.MessageConnection;
+
+/**
+ * A <code>MessageConnection</code> whose incoming messages can be
+ * waited for by an event loop of the transport instead of by a
+ * thread blocked in {@link MessageConnection#readMessage readMessage}.
+ * A server connection implementing this interface lets
+ * {@link ServerSynchroMessageConnectionImpl} read a client only when
+ * a request has arrived, so no thread is kept for an idle client.
+ */
+public interface SelectableMessageConnection extends MessageConnection {
+
+    /**
+     * Tells whether the incoming messages of this connection can
+     * currently be waited for with {@link #selectRead selectRead}.
+     * A connection stops being selectable when a profile (TLS or
+     * SASL for example) has replaced its socket or its streams, in
+     * which case a caller must come back to a blocking
+     * <code>readMessage</code> loop.
+     */
+    public boolean isSelectable();
+
+    /**
+     * Asks this connection to run the given task once as soon as
+     * some input is available.  The task is called by an event loop
+     * thread of the transport, so it must only hand off the work of
+     * reading the message(s) to another thread.  A new call must be
+     * made to be informed of the next incoming input.
+     *
+     * @exception IOException if the connection cannot be waited for,
+     * for example because it has been closed.
+     */
+    public void selectRead(Runnable task) throws IOException;
+
+    /**
+     * Tells whether some input has already been received and is
+     * buffered by this connection, in which case a caller should
+     * continue to read messages before calling <code>selectRead</code>
+     * again.
+     */
+    public boolean hasBufferedInput();
+}
@@ -70,15 +70,31 @@ public class ServerSynchroMessageConnectionImpl implements ServerSynchroMessageC
 
     public ServerSynchroMessageConnectionImpl(MessageConnection mc, Map env) 
 	throws IOException {
+	this(mc, env, null, null);
+    }
+
+    /**
+     * Constructs a ServerSynchroMessageConnectionImpl whose requests
+     * are executed by the given shared threads, or by its own threads
+     * if <code>executor</code> is null, and are admitted by the given
+     * admission control, if not null.
+     */
+    public ServerSynchroMessageConnectionImpl(MessageConnection mc, Map env,
+					      RequestExecutor executor,
+					      AdmissionControl admission) 
+	throws IOException {
 	if (mc == null) {
 	    throw new IllegalArgumentException("Null message connection.");
 	}
 	
 	this.env = env;
+	this.executor = executor;
+	this.admission = admission;
 
 	waitConnectedState = DefaultConfig.getTimeoutForWaitConnectedState(env);
 
 	this.serverAdmin = DefaultConfig.getServerAdmin(this.env);
+	cancelInterrupt = DefaultConfig.getServerCancelInterrupt(this.env);
 
 	connection = mc;
     }
@@ -139,11 +155,50 @@ public class ServerSynchroMessageConnectionImpl implements ServerSynchroMessageC
 	}
 	callback = cb;
 
-	threads = new ThreadService(DefaultConfig.getServerMinThreads(env),
-				    DefaultConfig.getServerMaxThreads(env));
+	if (admission != null) {
+	    gate = admission.newGate(
+		       DefaultConfig.getServerConnectionMaxRequests(env),
+		       DefaultConfig.getServerConnectionMaxPendingBytes(env));
+	}
+
+	if (connection instanceof SelectableMessageConnection &&
+	    ((SelectableMessageConnection)connection).isSelectable()) {
+	    // the transport tells us when a request is coming, no thread
+	    // needs to be kept for this connection.
+	    if (executor != null) {
+		// the reader may wait for the rest of a message, so it is
+		// not run by the shared threads
+		requests = executor.newQueue(
+			       DefaultConfig.getServerMaxThreads(env));
+		threads = new ThreadService(0, 1, true,
+					    EnvHelp.getVirtualThreads(env));
+	    } else {
+		threads = new ThreadService(0,
+					DefaultConfig.getServerMaxThreads(env),
+					true, EnvHelp.getVirtualThreads(env));
+	    }
+
+	    SelectedMessageReader sreader = new SelectedMessageReader(
+				  (SelectableMessageConnection)connection);
+	    reader = sreader;
+	    sreader.select();
+	} else {
+	    if (executor != null) {
+		// only the reader has its own thread
+		requests = executor.newQueue(
+			       DefaultConfig.getServerMaxThreads(env));
+		threads = new ThreadService(0, 1, true,
+					    EnvHelp.getVirtualThreads(env));
+	    } else {
+		threads = new ThreadService(
+				DefaultConfig.getServerMinThreads(env),
+				DefaultConfig.getServerMaxThreads(env),
+				true, EnvHelp.getVirtualThreads(env));
+	    }
 
-	reader = new MessageReader();
-	threads.handoff(reader);
+	    reader = new MessageReader();
+	    threads.handoff(reader);
+	}
     }
 
     public String getConnectionId() {
@@ -175,6 +230,32 @@ public class ServerSynchroMessageConnectionImpl implements ServerSynchroMessageC
 		threads = null;
 	    }
 
+	    if (requests != null) {
+		requests.terminate();
+	    }
+
+	    if (gate != null) {
+		gate.close();
+	    }
+
+	    // nobody will read the responses of the requests in progress
+	    final Object[] jobs;
+	    synchronized(inProgress) {
+		jobs = inProgress.values().toArray();
+		inProgress.clear();
+	    }
+	    for (int i = 0; i < jobs.length; i++) {
+		((RemoteJob) jobs[i]).cancel(false);
+	    }
+
+	    synchronized(this) {
+		if (notifThreads != null) {
+		    notifThreads.terminate();
+
+		    notifThreads = null;
+		}
+	    }
+
 	    if (logger.traceOn()) {
 		logger.trace("close", "Closing the underlying connection.");
 	    }
@@ -193,6 +274,14 @@ public class ServerSynchroMessageConnectionImpl implements ServerSynchroMessageC
 	}
     }
 
+    /**
+     * Sets the object recording the time the requests wait for a
+     * thread.
+     */
+    public void setMetrics(ConnectionMetrics metrics) {
+	this.metrics = metrics;
+    }
+
     /**
      * Returns the underlying asynchronous trasport.
      */
@@ -220,6 +309,7 @@ public class ServerSynchroMessageConnectionImpl implements ServerSynchroMessageC
 		    }
 
 		    msg = null;
+		    final long start = getBytesRead();
 		    
 		    try {
 			msg = (Message)connection.readMessage();
@@ -237,8 +327,23 @@ public class ServerSynchroMessageConnectionImpl implements ServerSynchroMessageC
 		    if (stopped()) {		
 			break;
 		    }
+
+		    if (isCancel(msg)) {
+			cancel((MBeanServerRequestMessage) msg);
+			continue;
+		    }
+
+		    final RemoteJob job =
+			new RemoteJob(msg, getBytesRead() - start);
+		    if (job.counted()) {
+			// stops reading while the limits are reached
+			if (!gate.admit(job.size)) {
+			    break;
+			}
+			job.admitted = true;
+		    }
 		    
-		    threads.handoff(new RemoteJob(msg));
+		    execute(job);
 		    
 		    if (msg instanceof CloseMessage) {
 			break;
@@ -279,22 +384,166 @@ public class ServerSynchroMessageConnectionImpl implements ServerSynchroMessageC
 	    }
 	}
 
-	private boolean stopped() {
+	boolean stopped() {
 	    synchronized(stateLock) {
 		return (state != CONNECTED || executingThreadInterrupted);
 	    }
 	}
 
-	private Thread executingThread;
+	Thread executingThread;
 
 	// This flag is used to ensure that we interrupt the executingThread
 	// only when it is running in this MessageReader object.
-	private boolean executingThreadInterrupted = false;
+	boolean executingThreadInterrupted = false;
+    }
+
+    /*
+     * Reader used with a selectable connection: it is handed off to the
+     * thread service only when the transport tells that some input is
+     * available, reads the message(s) received and asks the transport
+     * to wait again.
+     */
+    private class SelectedMessageReader extends MessageReader {
+	public SelectedMessageReader(SelectableMessageConnection smc) {
+	    this.smc = smc;
+	}
+
+	public void run() {
+	    synchronized(stateLock) {
+		if (executingThreadInterrupted) {
+		    return;
+		}
+		executingThread = Thread.currentThread();
+	    }
+
+	    try {
+		Message msg;
+
+		if (held != null) {
+		    // resumed after some requests are done
+		    final RemoteJob job = held;
+		    if (!admit(job)) {
+			return;
+		    }
+		    held = null;
+		    execute(job);
+		}
+
+		do {
+		    if (stopped()) {
+			return;
+		    }
+
+		    final long start = getBytesRead();
+		    try {
+			msg = (Message)connection.readMessage();
+		    } catch (Exception e) {
+			if (!stopped()) {
+			    callback.connectionException(e);
+			}
+
+			return;
+		    }
+
+		    if (stopped()) {
+			return;
+		    }
+
+		    if (isCancel(msg)) {
+			cancel((MBeanServerRequestMessage) msg);
+			continue;
+		    }
+
+		    final RemoteJob job =
+			new RemoteJob(msg, getBytesRead() - start);
+		    // kept before asking, the reader may be resumed at once
+		    held = job;
+		    if (!admit(job)) {
+			// do not select until resumed
+			return;
+		    }
+		    held = null;
+		    execute(job);
+
+		    if (msg instanceof CloseMessage) {
+			return;
+		    }
+		} while (smc.hasBufferedInput());
+
+		select();
+	    } catch (Exception eee) {
+		// need to stop
+		if (logger.traceOn()) {
+		    logger.trace("SelectedMessageReader-run", "stops.");
+		}
+	    } finally {
+		synchronized(stateLock) {
+		    executingThread = null;
+		}
+	    }
+	}
+
+	public void select() {
+	    if (logger.traceOn()) {
+		logger.trace("SelectedMessageReader-select",
+			     "Waiting a coming message...");
+	    }
+
+	    try {
+		smc.selectRead(trigger);
+	    } catch (Exception e) {
+		if (!stopped()) {
+		    callback.connectionException(e);
+		}
+	    }
+	}
+
+	private boolean admit(RemoteJob job) {
+	    if (!job.counted()) {
+		return true;
+	    }
+
+	    if (!gate.tryAdmit(job.size, trigger)) {
+		return false;
+	    }
+	    job.admitted = true;
+	    return true;
+	}
+
+	private final Runnable trigger = new Runnable() {
+		public void run() {
+		    final ThreadService ts = threads;
+		    try {
+			if (ts != null) {
+			    ts.handoff(SelectedMessageReader.this);
+			}
+		    } catch (IllegalStateException ise) {
+			// OK: the connection is being closed.
+		    }
+		}
+	    };
+
+	private final SelectableMessageConnection smc;
+
+	// a request read but not yet admitted
+	private volatile RemoteJob held;
     }
 
     private class RemoteJob implements Runnable {
-	public RemoteJob(Message msg) {
+	public RemoteJob(Message msg, long size) {
 	    this.msg = msg;
+	    this.size = size;
+	    received = System.nanoTime();
+	    queued = (metrics == null) ? 0 : received;
+
+	    if (msg instanceof MBeanServerRequestMessage) {
+		id = new Long(((MBeanServerRequestMessage) msg).getMessageId());
+		synchronized(inProgress) {
+		    inProgress.put(id, this);
+		}
+	    } else {
+		id = null;
+	    }
 	}
 
 	public void run() {
@@ -302,8 +551,25 @@ public class ServerSynchroMessageConnectionImpl implements ServerSynchroMessageC
 		logger.trace("RemoteJob-run", "Receive a new request.");
 	    }
 
+	    final ConnectionMetrics m = metrics;
+	    if (m != null && queued != 0) {
+		m.requestQueued(System.nanoTime() - queued);
+	    }
+
 	    try {
-	       Message resp = callback.execute(msg);
+	       if (!begin()) {
+		   return;
+	       }
+
+	       Message resp;
+	       try {
+		   resp = callback.execute(msg);
+	       } finally {
+		   if (end()) {
+		       // nobody waits for the response
+		       resp = null;
+		   }
+	       }
 
 	       if (resp != null) {
 		   synchronized(connectionLock) {
@@ -317,10 +583,105 @@ public class ServerSynchroMessageConnectionImpl implements ServerSynchroMessageC
 			callback.connectionException(ie);
 		    }
 		}
+	    } finally {
+		if (admitted) {
+		    gate.release(size);
+		}
+	    }
+	}
+
+	/*
+	 * Tells whether the request is to be executed.  It is not if it
+	 * was cancelled, or if its client stopped waiting for it while
+	 * it was waiting for a thread.
+	 */
+	private boolean begin() {
+	    if (id == null) {
+		return true;
+	    }
+
+	    final long timeout = ((MBeanServerRequestMessage) msg).getTimeout();
+	    if (timeout > 0 &&
+		(System.nanoTime() - received) / 1000000 >= timeout) {
+		if (logger.traceOn()) {
+		    logger.trace("RemoteJob-begin", "Skip the expired request " +
+				 id + ", timeout: " + timeout);
+		}
+		forget();
+		final ConnectionMetrics m = metrics;
+		if (m != null) {
+		    m.requestDropped(true);
+		}
+		return false;
+	    }
+
+	    synchronized(this) {
+		if (cancelled) {
+		    if (logger.traceOn()) {
+			logger.trace("RemoteJob-begin",
+				     "Skip the cancelled request " + id);
+		    }
+		    return false;
+		}
+		thread = Thread.currentThread();
+	    }
+	    return true;
+	}
+
+	/*
+	 * Returns true if the request was cancelled while executed.
+	 */
+	private boolean end() {
+	    if (id == null) {
+		return false;
+	    }
+
+	    final boolean wasCancelled;
+	    synchronized(this) {
+		thread = null;
+		wasCancelled = cancelled;
+	    }
+	    if (wasCancelled) {
+		// the interrupt must not reach the next job of this thread
+		Thread.interrupted();
+	    }
+	    forget();
+	    return wasCancelled;
+	}
+
+	synchronized void cancel(boolean interrupt) {
+	    cancelled = true;
+	    if (interrupt && thread != null) {
+		thread.interrupt();
+	    }
+	}
+
+	private void forget() {
+	    synchronized(inProgress) {
+		if (inProgress.get(id) == this) {
+		    inProgress.remove(id);
+		}
 	    }
 	}
 
+	/* Fetching notifications may block for a long time and a close
+	   must never wait, so they are not subject to admission control. */
+	boolean counted() {
+	    return gate != null &&
+		!(msg instanceof NotificationRequestMessage) &&
+		!(msg instanceof CloseMessage);
+	}
+
 	private Message msg;
+	private final Long id;
+	private final long received;
+	private final long queued;
+	private final long size;
+	private boolean admitted;
+
+	// guarded by this
+	private boolean cancelled;
+	private Thread thread;
     }
 
     public Subject getSubject() {
@@ -330,6 +691,71 @@ public class ServerSynchroMessageConnectionImpl implements ServerSynchroMessageC
 //----------------------------------------------
 // private methods
 //----------------------------------------------
+    private void execute(RemoteJob job) {
+	if (requests == null) {
+	    threads.handoff(job);
+	} else if (job.msg instanceof NotificationRequestMessage) {
+	    // a fetch waits for the notifications, it must not keep
+	    // a shared thread
+	    getNotifThreads().handoff(job);
+	} else if (!requests.offer(job)) {
+	    // too many waiting requests: stop reading until this one is done
+	    job.run();
+	}
+    }
+
+    private static boolean isCancel(Message msg) {
+	return msg instanceof MBeanServerRequestMessage &&
+	    ((MBeanServerRequestMessage) msg).getMethodId() ==
+	    MBeanServerRequestMessage.CANCEL;
+    }
+
+    /*
+     * Cancels the request named by a CANCEL message.  Nothing is sent
+     * back, even if the request is already done.
+     */
+    private void cancel(MBeanServerRequestMessage msg) {
+	final Object[] params = msg.getParams();
+	if (params.length != 1 || !(params[0] instanceof Long)) {
+	    logger.info("cancel", "Invalid CANCEL request ignored.");
+	    return;
+	}
+
+	final RemoteJob job;
+	synchronized(inProgress) {
+	    job = (RemoteJob) inProgress.remove(params[0]);
+	}
+	if (job == null) {
+	    return;
+	}
+
+	if (logger.traceOn()) {
+	    logger.trace("cancel", "Cancel the request " + params[0]);
+	}
+	job.cancel(cancelInterrupt);
+
+	final ConnectionMetrics m = metrics;
+	if (m != null) {
+	    m.requestDropped(false);
+	}
+    }
+
+    private long getBytesRead() {
+	// only counting transports can tell the size of a request
+	return (connection instanceof CountingMessageConnection) ?
+	    ((CountingMessageConnection) connection).getBytesRead() : 0;
+    }
+
+    private synchronized ThreadService getNotifThreads() {
+	if (notifThreads == null) {
+	    notifThreads =
+		new ThreadService(0, DefaultConfig.getServerMaxThreads(env),
+				  true, EnvHelp.getVirtualThreads(env));
+	}
+
+	return notifThreads;
+    }
+
     private void waitConnected() throws IOException {
 	synchronized(stateLock) {
 	    if (state == CONNECTED) {
@@ -377,6 +803,16 @@ public class ServerSynchroMessageConnectionImpl implements ServerSynchroMessageC
 
     private transient SynchroCallback callback;
     private transient ThreadService threads;
+    private transient ThreadService notifThreads;
+    private final RequestExecutor executor;
+    private transient RequestExecutor.Queue requests;
+    private final AdmissionControl admission;
+    private transient AdmissionControl.Gate gate;
+    private volatile ConnectionMetrics metrics;
+
+    // Long message id -> RemoteJob, until the request is executed
+    private final Map inProgress = new HashMap();
+    private final boolean cancelInterrupt;
     private transient MessageReader reader;
 
     // state issues
@@ -57,6 +57,7 @@ import javax.management.remote.JMXServiceURL;
 import javax.management.remote.generic.*;
 
 import com.sun.jmx.remote.opt.util.ClassLogger;
+import com.sun.jmx.remote.opt.util.EnvHelp;
 
 public class SynchroMessageConnectionServerImpl implements SynchroMessageConnectionServer  {
     public SynchroMessageConnectionServerImpl(MessageConnectionServer msServer,
@@ -77,6 +78,27 @@ public class SynchroMessageConnectionServerImpl implements SynchroMessageConnect
 	}
 
 	msServer.start(env);
+
+	final Map config = (env == null) ? this.env : env;
+	final int sharedThreads = DefaultConfig.getServerSharedThreads(config);
+	if (sharedThreads > 0) {
+	    executor = new RequestExecutor(
+			       DefaultConfig.getServerSharedCoreThreads(config),
+			       sharedThreads,
+			       DefaultConfig.getServerSharedKeepAlive(config),
+			       DefaultConfig.getServerSharedQueueSize(config),
+			       EnvHelp.getVirtualThreads(config));
+	}
+
+	final int maxRequests = DefaultConfig.getServerMaxRequests(config);
+	final long maxBytes = DefaultConfig.getServerMaxPendingBytes(config);
+	if (maxRequests < Integer.MAX_VALUE || maxBytes < Long.MAX_VALUE ||
+	    DefaultConfig.getServerConnectionMaxRequests(config) <
+	        Integer.MAX_VALUE ||
+	    DefaultConfig.getServerConnectionMaxPendingBytes(config) <
+	        Long.MAX_VALUE) {
+	    admission = new AdmissionControl(maxRequests, maxBytes);
+	}
     }
 
     public ServerSynchroMessageConnection accept() throws IOException {
@@ -84,7 +106,8 @@ public class SynchroMessageConnectionServerImpl implements SynchroMessageConnect
 	    logger.trace("accept", "Waiting a coming client...");
 	}
 
-	return new ServerSynchroMessageConnectionImpl(msServer.accept(), env);
+	return new ServerSynchroMessageConnectionImpl(msServer.accept(), env,
+						      executor, admission);
     }
 
     public void stop() throws IOException {
@@ -92,13 +115,35 @@ public class SynchroMessageConnectionServerImpl implements SynchroMessageConnect
 	    logger.trace("stop", "Stops a SynchroMessageConnectionServerImpl object.");
 	}
 
-	msServer.stop();
+	try {
+	    msServer.stop();
+	} finally {
+	    if (executor != null) {
+		executor.terminate();
+	    }
+	}
     }
 
     public JMXServiceURL getAddress() {
 	return msServer.getAddress();
     }
 
+    /**
+     * Returns the threads shared by the client connections, or null if
+     * each connection has its own threads.
+     */
+    public RequestExecutor getRequestExecutor() {
+	return executor;
+    }
+
+    /**
+     * Returns the limits of the requests in progress, or null if
+     * there are none.
+     */
+    public AdmissionControl getAdmissionControl() {
+	return admission;
+    }
+
     /**
      * Returns the underlying asynchronous trasport.
      */
@@ -108,6 +153,8 @@ public class SynchroMessageConnectionServerImpl implements SynchroMessageConnect
 
     private MessageConnectionServer msServer;
     private Map env;
+    private RequestExecutor executor;
+    private AdmissionControl admission;
 
     private final ServerAdmin serverAdmin;
 
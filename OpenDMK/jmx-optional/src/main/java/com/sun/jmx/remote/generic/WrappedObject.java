@@ -0,0 +1,409 @@
+/*
+ * @(#)file      WrappedObject.java
+ * @(#)author    Sun Microsystems, Inc.
+ * @(#)version   1.1
+ * @(#)lastedit  07/03/08
+ * @(#)build     @BUILD_TAG_PLACEHOLDER@
+ *
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright (c) 2007 Sun Microsystems, Inc. All Rights Reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU General
+ * Public License Version 2 only ("GPL") or the Common Development and
+ * Distribution License("CDDL")(collectively, the "License"). You may not use
+ * this file except in compliance with the License. You can obtain a copy of the
+ * License at http://opendmk.dev.java.net/legal_notices/licenses.txt or in the 
+ * LEGAL_NOTICES folder that accompanied this code. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file found at
+ *     http://opendmk.dev.java.net/legal_notices/licenses.txt
+ * or in the LEGAL_NOTICES folder that accompanied this code.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.
+ * 
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * 
+ *       "Portions Copyrighted [year] [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding
+ * 
+ *       "[Contributor] elects to include this software in this distribution
+ *        under the [CDDL or GPL Version 2] license."
+ * 
+ * If you don't indicate a single choice of license, a recipient has the option
+ * to distribute your version of this file under either the CDDL or the GPL
+ * Version 2, or to extend the choice of license to its licensees as provided
+ * above. However, if you add GPL Version 2 code and therefore, elected the
+ * GPL Version 2 license, then the option applies only if the new code is made
+ * subject to such option by the copyright holder.
+ * 
+ */
+
+package com.sun.jmx.remote.generic;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Iterator;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.Notification;
+import javax.management.ObjectName;
+import javax.management.remote.NotificationResult;
+import javax.management.remote.TargetedNotification;
+
+import com.sun.jmx.remote.opt.internal.SharedTargetedNotification;
+
+/**
+ * An object wrapped by {@link DeferredObjectWrapping}.  The wrapped
+ * object is not serialized when it is wrapped but when the message
+ * containing it is written to the connection, directly into the
+ * connection stream.
+ *
+ * <p>Objects whose classes are all known to the bootstrap class loader
+ * (strings, boxed primitives, <code>ObjectName</code>, primitive arrays,
+ * and arrays or attribute lists of such objects) do not need a separate
+ * class loader and are written inline.  Any other object is written as
+ * a nested serialization stream, built in a pooled buffer, which the
+ * receiver keeps as bytes until {@link #getObject} is called with the
+ * right class loader.</p>
+ *
+ * <p>A <code>NotificationResult</code> is written as a nested stream
+ * of its own, in which each notification is a separate serialization
+ * stream.  The serialized form shared by the targets of a buffered
+ * notification, see {@link SharedTargetedNotification}, is copied
+ * as is, so a notification sent to many clients is serialized once.
+ * The notifications are serialized when the result is wrapped, so
+ * that an unserializable one is reported by {@link
+ * DeferredObjectWrapping#wrap}.</p>
+ */
+class WrappedObject implements Serializable {
+
+    private static final long serialVersionUID = -3281722693658410625L;
+
+    WrappedObject(Object value) throws IOException {
+	this.value = value;
+	this.inline = isInline(value, 0);
+	if (value instanceof NotificationResult) {
+	    notifs = serializeNotifs((NotificationResult) value);
+	}
+    }
+
+    private WrappedObject() {
+    }
+
+    /**
+     * Returns the wrapped object, deserializing it with the given class
+     * loader if it was received as a nested stream.
+     */
+    synchronized Object getObject(ClassLoader cloader)
+	    throws IOException, ClassNotFoundException {
+	if (bytes != null) {
+	    final ByteArrayInputStream bin =
+		new ByteArrayInputStream(bytes, 0, bytes.length);
+	    if (bytes.length >= 2 &&
+		((bytes[0] & 0xff) << 8 | (bytes[1] & 0xff)) == NOTIFS_MAGIC) {
+		value = readNotifs(new DataInputStream(bin), cloader);
+	    } else {
+		value = ObjectWrappingImpl.readObject(bin, cloader);
+	    }
+	    bytes = null;
+	}
+	return value;
+    }
+
+    boolean isInline() {
+	return inline;
+    }
+
+    Object getValue() {
+	return value;
+    }
+
+    /**
+     * Writes the nested serialization stream of a wrapped object that
+     * is not inline, preceded by its length.
+     */
+    void writeNested(DataOutput out) throws IOException {
+	if (notifs != null) {
+	    writeNotifs(out);
+	    return;
+	}
+
+	final PooledOutputStream buf = takeBuffer();
+	try {
+	    final ObjectOutputStream oos = new ObjectOutputStream(buf);
+	    oos.writeObject(value);
+	    oos.flush();
+	    out.writeInt(buf.size());
+	    buf.writeTo(out);
+	} finally {
+	    releaseBuffer(buf);
+	}
+    }
+
+    /**
+     * Reads a nested serialization stream written by
+     * {@link #writeNested}, of at most <code>maxLength</code> bytes.
+     * The object is not deserialized until {@link #getObject} is
+     * called.
+     */
+    static WrappedObject readNested(DataInput in, int maxLength)
+	    throws IOException {
+	final int length = in.readInt();
+	if (length < 0) {
+	    throw new IOException("Negative length: " + length);
+	}
+	if (length > maxLength) {
+	    throw new IOException("Nested stream larger than the maximum " +
+				  "size " + maxLength + ": " + length);
+	}
+	return nested(BinaryMessageCodec.readBytes(in, length));
+    }
+
+    /**
+     * Returns a wrapped object received as the given nested stream.
+     */
+    static WrappedObject nested(byte[] bytes) {
+	final WrappedObject w = new WrappedObject();
+	w.bytes = bytes;
+	return w;
+    }
+
+    /*
+     * The nested stream of a NotificationResult starts with
+     * NOTIFS_MAGIC, which a serialization stream cannot start with,
+     * followed by the sequence numbers, and then by the listener id
+     * and the length and serialized form of each notification.
+     */
+    private void writeNotifs(DataOutput out) throws IOException {
+	final NotificationResult nr = (NotificationResult) value;
+	final TargetedNotification[] tns = nr.getTargetedNotifications();
+
+	int length = 2 + 8 + 8 + 4;
+	for (int i = 0; i < notifs.length; i++) {
+	    length += 4 + 4 + notifs[i].length;
+	}
+
+	out.writeInt(length);
+	out.writeShort(NOTIFS_MAGIC);
+	out.writeLong(nr.getEarliestSequenceNumber());
+	out.writeLong(nr.getNextSequenceNumber());
+	out.writeInt(notifs.length);
+	for (int i = 0; i < notifs.length; i++) {
+	    out.writeInt(tns[i].getListenerID().intValue());
+	    out.writeInt(notifs[i].length);
+	    out.write(notifs[i]);
+	}
+    }
+
+    private static NotificationResult readNotifs(DataInputStream in,
+						 ClassLoader cloader)
+	    throws IOException, ClassNotFoundException {
+	in.readShort();
+	final long earliest = in.readLong();
+	final long next = in.readLong();
+	final int count = in.readInt();
+	// each notification takes at least 8 bytes
+	if (count < 0 || count > in.available() / 8) {
+	    throw new IOException("Invalid count: " + count);
+	}
+
+	final TargetedNotification[] tns = new TargetedNotification[count];
+	for (int i = 0; i < count; i++) {
+	    final Integer listenerID = new Integer(in.readInt());
+	    final int length = in.readInt();
+	    if (length < 0 || length > in.available()) {
+		throw new IOException("Invalid length: " + length);
+	    }
+	    final byte[] b = new byte[length];
+	    in.readFully(b);
+	    final Object notif =
+		ObjectWrappingImpl.readObject(new ByteArrayInputStream(b),
+					      cloader);
+	    if (!(notif instanceof Notification)) {
+		throw new IOException("Not a Notification: " +
+				      notif.getClass().getName());
+	    }
+	    tns[i] = new TargetedNotification((Notification) notif,
+					      listenerID);
+	}
+	return new NotificationResult(earliest, next, tns);
+    }
+
+    /*
+     * Returns the serialized form of each notification, shared with
+     * the other clients if the notification comes from the buffer.
+     */
+    private static byte[][] serializeNotifs(NotificationResult nr)
+	    throws IOException {
+	final TargetedNotification[] tns = nr.getTargetedNotifications();
+	final byte[][] forms = new byte[tns.length][];
+	for (int i = 0; i < tns.length; i++) {
+	    if (tns[i] instanceof SharedTargetedNotification) {
+		forms[i] = ((SharedTargetedNotification) tns[i]).
+		    getSerializedNotification();
+		continue;
+	    }
+
+	    // the same notification may be targeted at several listeners
+	    if (i > 0 && tns[i].getNotification() ==
+		tns[i - 1].getNotification()) {
+		forms[i] = forms[i - 1];
+		continue;
+	    }
+
+	    final PooledOutputStream buf = takeBuffer();
+	    try {
+		final ObjectOutputStream oos = new ObjectOutputStream(buf);
+		oos.writeObject(tns[i].getNotification());
+		oos.flush();
+		forms[i] = buf.toByteArray();
+	    } finally {
+		releaseBuffer(buf);
+	    }
+	}
+	return forms;
+    }
+
+    static WrappedObject inline(Object value) {
+	final WrappedObject w = new WrappedObject();
+	w.value = value;
+	w.inline = true;
+	return w;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+	out.defaultWriteObject();
+	out.writeBoolean(inline);
+	if (inline) {
+	    out.writeObject(value);
+	} else {
+	    writeNested(out);
+	}
+    }
+
+    private void readObject(ObjectInputStream in)
+	    throws IOException, ClassNotFoundException {
+	in.defaultReadObject();
+	inline = in.readBoolean();
+	if (inline) {
+	    value = in.readObject();
+	} else {
+	    bytes = readNested(in, BinaryMessageCodec.DEFAULT_MAX_SIZE).bytes;
+	}
+    }
+
+    /*
+     * An object is inline if it is certain that the receiver can
+     * deserialize it without knowing the class loader of the target
+     * MBean.  Only the exact classes are accepted, a subclass could be
+     * loaded by any class loader.
+     */
+    private static boolean isInline(Object o, int depth) {
+	if (o == null) {
+	    return true;
+	}
+	if (depth > MAX_INLINE_DEPTH) {
+	    return false;
+	}
+
+	final Class c = o.getClass();
+	if (c == String.class || c == Integer.class || c == Long.class ||
+	    c == Boolean.class || c == Double.class || c == Float.class ||
+	    c == Short.class || c == Byte.class || c == Character.class ||
+	    c == ObjectName.class || c == String[].class) {
+	    return true;
+	}
+	if (c.isArray() && c.getComponentType().isPrimitive()) {
+	    return true;
+	}
+	if (c == Object[].class) {
+	    final Object[] objects = (Object[]) o;
+	    for (int i = 0; i < objects.length; i++) {
+		if (!isInline(objects[i], depth + 1)) {
+		    return false;
+		}
+	    }
+	    return true;
+	}
+	if (c == Attribute.class) {
+	    return isInline(((Attribute) o).getValue(), depth + 1);
+	}
+	if (c == AttributeList.class) {
+	    for (Iterator it = ((AttributeList) o).iterator(); it.hasNext(); ) {
+		if (!isInline(it.next(), depth + 1)) {
+		    return false;
+		}
+	    }
+	    return true;
+	}
+	return false;
+    }
+
+    private static PooledOutputStream takeBuffer() {
+	synchronized (pool) {
+	    if (poolSize > 0) {
+		final PooledOutputStream buf = pool[--poolSize];
+		pool[poolSize] = null;
+		return buf;
+	    }
+	}
+	return new PooledOutputStream();
+    }
+
+    private static void releaseBuffer(PooledOutputStream buf) {
+	// Do not keep the buffers which grew for a big object.
+	if (buf.capacity() > MAX_POOLED_BUFFER_SIZE) {
+	    return;
+	}
+	buf.reset();
+	synchronized (pool) {
+	    if (poolSize < pool.length) {
+		pool[poolSize++] = buf;
+	    }
+	}
+    }
+
+    private static class PooledOutputStream extends ByteArrayOutputStream {
+	PooledOutputStream() {
+	    super(1024);
+	}
+
+	int capacity() {
+	    return buf.length;
+	}
+
+	void writeTo(DataOutput out) throws IOException {
+	    out.write(buf, 0, count);
+	}
+    }
+
+    private transient Object value;
+    private transient byte[] bytes;
+    private transient boolean inline;
+    private transient byte[][] notifs;
+
+    private static final int MAX_INLINE_DEPTH = 8;
+    private static final int NOTIFS_MAGIC = 0x4e52;
+    private static final int MAX_POOLED_BUFFER_SIZE = 64 * 1024;
+
+    private static final PooledOutputStream[] pool = new PooledOutputStream[16];
+    private static int poolSize = 0;
+}
@@ -0,0 +1,265 @@
+/*
+ * @(#)file      LocalConnection.java
+ * @(#)author    Sun Microsystems, Inc.
+ * @(#)version   1.1
+ * @(#)lastedit  07/03/08
+ * @(#)build     @BUILD_TAG_PLACEHOLDER@
+ *
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright (c) 2007 Sun Microsystems, Inc. All Rights Reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU General
+ * Public License Version 2 only ("GPL") or the Common Development and
+ * Distribution License("CDDL")(collectively, the "License"). You may not use
+ * this file except in compliance with the License. You can obtain a copy of the
+ * License at http://opendmk.dev.java.net/legal_notices/licenses.txt or in the 
+ * LEGAL_NOTICES folder that accompanied this code. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file found at
+ *     http://opendmk.dev.java.net/legal_notices/licenses.txt
+ * or in the LEGAL_NOTICES folder that accompanied this code.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.
+ * 
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * 
+ *       "Portions Copyrighted [year] [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding
+ * 
+ *       "[Contributor] elects to include this software in this distribution
+ *        under the [CDDL or GPL Version 2] license."
+ * 
+ * If you don't indicate a single choice of license, a recipient has the option
+ * to distribute your version of this file under either the CDDL or the GPL
+ * Version 2, or to extend the choice of license to its licensees as provided
+ * above. However, if you add GPL Version 2 code and therefore, elected the
+ * GPL Version 2 license, then the option applies only if the new code is made
+ * subject to such option by the copyright holder.
+ * 
+ */
+
+package com.sun.jmx.remote.local;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.LinkedList;
+import java.util.Map;
+
+import javax.management.remote.generic.MessageConnection;
+import javax.management.remote.message.Message;
+
+import com.sun.jmx.remote.opt.util.ClassLogger;
+
+/**
+ * This class realizes a JMX connection between a client and a
+ * {@link LocalConnectionServer} running in the same Java virtual
+ * machine.  The messages are handed over to the other side as they
+ * are: nothing is serialized, copied or written to a socket.
+ *
+ * <p>The two sides of a connection are instances of this class.  The
+ * client side is created with the name of the server and is paired
+ * with a new server side when it is connected.</p>
+ */
+public class LocalConnection implements MessageConnection {
+
+    /**
+     * Constructs the client side of a connection to the local server
+     * of the given name.
+     *
+     * @param name the name of the server, as given in its address
+     * <code>service:jmx:jmxmp-local://<em>name</em></code>.
+     */
+    public LocalConnection(String name) {
+	if (name == null) {
+	    throw new NullPointerException("Null server name.");
+	}
+
+	if (logger.traceOn()) {
+	    logger.trace("constructor", "Creates a client connection to " +
+			 name);
+	}
+
+	this.name = name;
+	this.client = true;
+    }
+
+    /*
+     * Constructs the server side of a connection, already paired
+     * with the given client side.
+     */
+    LocalConnection(String name, LocalConnection peer, String connectionId) {
+	this.name = name;
+	this.client = false;
+	this.peer = peer;
+	this.connectionId = connectionId;
+    }
+
+// implements MessageConnection interface
+
+    public void connect(Map env) throws IOException {
+	synchronized(inbox) {
+	    if (state == TERMINATED) {
+		throw new IllegalStateException("The connection has been closed.");
+	    }
+
+	    if (!client) {
+		// paired by the server when accepted
+		state = CONNECTED;
+		return;
+	    }
+
+	    if (state == CONNECTED) {
+		// reconnecting: leave the former server side
+		if (logger.traceOn()) {
+		    logger.trace("connect", "Try to re-connect to the server.");
+		}
+
+		peer.closed();
+		inbox.clear();
+	    }
+
+	    final LocalConnection server = new LocalConnection(name, this,
+							       newId(name));
+	    LocalConnectionServer.connect(name, server);
+
+	    peer = server;
+	    peerClosed = false;
+	    connectionId = server.connectionId;
+	    state = CONNECTED;
+	    inbox.notifyAll();
+	}
+    }
+
+    public Message readMessage() throws IOException, ClassNotFoundException {
+	synchronized(inbox) {
+	    while (true) {
+		if (!inbox.isEmpty()) {
+		    return (Message) inbox.removeFirst();
+		}
+
+		if (state != CONNECTED) {
+		    throw new IOException("The connection is not connected.");
+		}
+
+		if (peerClosed) {
+		    throw new IOException("The connection has been closed " +
+					  "by the other side.");
+		}
+
+		try {
+		    inbox.wait();
+		} catch (InterruptedException ie) {
+		    throw new InterruptedIOException(ie.toString());
+		}
+	    }
+	}
+    }
+
+    public void writeMessage(Message msg) throws IOException {
+	final LocalConnection to;
+	synchronized(inbox) {
+	    if (state != CONNECTED) {
+		throw new IOException("The connection is not connected.");
+	    }
+
+	    if (peerClosed) {
+		throw new IOException("The connection has been closed " +
+				      "by the other side.");
+	    }
+
+	    to = peer;
+	}
+
+	to.deliver(msg);
+    }
+
+    public void close() throws IOException {
+	if (logger.traceOn()) {
+	    logger.trace("close", "Close the connection " + connectionId);
+	}
+
+	final LocalConnection to;
+	synchronized(inbox) {
+	    if (state == TERMINATED) {
+		return;
+	    }
+
+	    state = TERMINATED;
+	    inbox.notifyAll();
+	    to = peer;
+	}
+
+	if (to != null) {
+	    to.closed();
+	}
+    }
+
+    public String getConnectionId() {
+	return connectionId;
+    }
+
+// private methods
+
+    private void deliver(Message msg) throws IOException {
+	synchronized(inbox) {
+	    if (state == TERMINATED) {
+		throw new IOException("The connection has been closed " +
+				      "by the other side.");
+	    }
+
+	    inbox.addLast(msg);
+	    inbox.notifyAll();
+	}
+    }
+
+    /*
+     * Called when the other side is closed: the messages it sent
+     * before can still be read.
+     */
+    private void closed() {
+	synchronized(inbox) {
+	    peerClosed = true;
+	    inbox.notifyAll();
+	}
+    }
+
+    private static String newId(String name) {
+	final long n;
+	synchronized(LocalConnection.class) {
+	    n = ++connectionCount;
+	}
+
+	return "jmxmp-local://" + name + " " + n;
+    }
+
+// private variables
+    private final String name;
+    private final boolean client;
+
+    // the messages received and not yet read, also the lock of the state
+    private final LinkedList inbox = new LinkedList();
+
+    private LocalConnection peer;
+    private boolean peerClosed = false;
+    private String connectionId;
+
+    private int state = UNCONNECTED;
+
+    private static final int UNCONNECTED = 1;
+    private static final int CONNECTED = 2;
+    private static final int TERMINATED = 3;
+
+    private static long connectionCount = 0;
+
+    private final ClassLogger logger = new ClassLogger("javax.management.remote.misc", "LocalConnection");
+}
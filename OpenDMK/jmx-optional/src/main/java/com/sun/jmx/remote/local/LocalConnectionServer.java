@@ -0,0 +1,238 @@
+/*
+ * @(#)file      LocalConnectionServer.java
+ * @(#)author    Sun Microsystems, Inc.
+ * @(#)version   1.1
+ * @(#)lastedit  07/03/08
+ * @(#)build     @BUILD_TAG_PLACEHOLDER@
+ *
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright (c) 2007 Sun Microsystems, Inc. All Rights Reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU General
+ * Public License Version 2 only ("GPL") or the Common Development and
+ * Distribution License("CDDL")(collectively, the "License"). You may not use
+ * this file except in compliance with the License. You can obtain a copy of the
+ * License at http://opendmk.dev.java.net/legal_notices/licenses.txt or in the 
+ * LEGAL_NOTICES folder that accompanied this code. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file found at
+ *     http://opendmk.dev.java.net/legal_notices/licenses.txt
+ * or in the LEGAL_NOTICES folder that accompanied this code.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.
+ * 
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * 
+ *       "Portions Copyrighted [year] [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding
+ * 
+ *       "[Contributor] elects to include this software in this distribution
+ *        under the [CDDL or GPL Version 2] license."
+ * 
+ * If you don't indicate a single choice of license, a recipient has the option
+ * to distribute your version of this file under either the CDDL or the GPL
+ * Version 2, or to extend the choice of license to its licensees as provided
+ * above. However, if you add GPL Version 2 code and therefore, elected the
+ * GPL Version 2 license, then the option applies only if the new code is made
+ * subject to such option by the copyright holder.
+ * 
+ */
+
+package com.sun.jmx.remote.local;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.BindException;
+import java.net.ConnectException;
+import java.net.MalformedURLException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+
+import javax.management.remote.JMXServiceURL;
+import javax.management.remote.generic.MessageConnection;
+import javax.management.remote.generic.MessageConnectionServer;
+
+import com.sun.jmx.remote.opt.util.ClassLogger;
+
+/**
+ * This class realizes a JMX connection server for the clients running
+ * in the same Java virtual machine.  Its address is
+ * <code>service:jmx:jmxmp-local://<em>name</em></code>, where the
+ * name identifies the server within the Java virtual machine.  If the
+ * address given has no name, a unique name is chosen when the server
+ * is constructed.
+ *
+ * <p>The connections are {@link LocalConnection} objects which hand
+ * the messages over without serializing them.</p>
+ */
+public class LocalConnectionServer implements MessageConnectionServer {
+
+    public LocalConnectionServer(JMXServiceURL addr, Map env)
+	    throws IOException {
+
+	if (logger.traceOn()) {
+	    logger.trace("constructor", "Constructs a LocalConnectionServer on "+addr);
+	}
+
+	if (addr == null) {
+	    throw new NullPointerException("Null address.");
+	}
+
+	if (!PROTOCOL.equalsIgnoreCase(addr.getProtocol())) {
+	    throw new MalformedURLException("Unknown protocol: " +
+					    addr.getProtocol());
+	}
+
+	if (addr.getPort() != 0 || !addr.getURLPath().equals("")) {
+	    throw new MalformedURLException("A " + PROTOCOL + " address " +
+					    "has no port and no path: " + addr);
+	}
+
+	if (addr.getHost().equals("")) {
+	    name = newName();
+	    this.addr = new JMXServiceURL(PROTOCOL, name, 0);
+	} else {
+	    name = addr.getHost();
+	    this.addr = addr;
+	}
+    }
+
+// implements MessageConnectionServer interface
+
+    public void start(Map env) throws IOException {
+	if (logger.traceOn()) {
+	    logger.trace("start", "Starts the server now.");
+	}
+
+	synchronized(servers) {
+	    final LocalConnectionServer other =
+		(LocalConnectionServer) servers.get(name);
+	    if (other == this) {
+		return;
+	    } else if (other != null) {
+		throw new BindException("A server already uses the name " +
+					name);
+	    }
+
+	    servers.put(name, this);
+	}
+
+	synchronized(pending) {
+	    stopped = false;
+	}
+    }
+
+    public MessageConnection accept() throws IOException {
+	if (logger.traceOn()) {
+	    logger.trace("accept", "Waiting a new connection...");
+	}
+
+	synchronized(pending) {
+	    while (pending.isEmpty()) {
+		if (stopped) {
+		    throw new IOException("The server has been stopped.");
+		}
+
+		try {
+		    pending.wait();
+		} catch (InterruptedException ie) {
+		    throw new InterruptedIOException(ie.toString());
+		}
+	    }
+
+	    return (MessageConnection) pending.removeFirst();
+	}
+    }
+
+    public void stop() throws IOException {
+	if (logger.traceOn()) {
+	    logger.trace("stop", "Stops the server now.");
+	}
+
+	synchronized(servers) {
+	    if (servers.get(name) == this) {
+		servers.remove(name);
+	    }
+	}
+
+	final LinkedList refused;
+	synchronized(pending) {
+	    stopped = true;
+	    refused = new LinkedList(pending);
+	    pending.clear();
+	    pending.notifyAll();
+	}
+
+	for (Iterator it = refused.iterator(); it.hasNext(); ) {
+	    ((LocalConnection) it.next()).close();
+	}
+    }
+
+    public JMXServiceURL getAddress() {
+	return addr;
+    }
+
+    /*
+     * Hands the server side of a new connection to the server of the
+     * given name, which will return it from accept.
+     */
+    static void connect(String name, LocalConnection connection)
+	    throws IOException {
+	final LocalConnectionServer server;
+	synchronized(servers) {
+	    server = (LocalConnectionServer) servers.get(name);
+	}
+
+	if (server == null) {
+	    throw new ConnectException("No local server named " + name);
+	}
+
+	synchronized(server.pending) {
+	    if (server.stopped) {
+		throw new ConnectException("The local server " + name +
+					   " has been stopped.");
+	    }
+
+	    server.pending.addLast(connection);
+	    server.pending.notifyAll();
+	}
+    }
+
+    private static String newName() {
+	synchronized(servers) {
+	    String name;
+	    do {
+		name = "server-" + (++serverCount);
+	    } while (servers.containsKey(name));
+	    return name;
+	}
+    }
+
+// private variables
+    private final JMXServiceURL addr;
+    private final String name;
+
+    // the connections not yet accepted, also the lock of stopped
+    private final LinkedList pending = new LinkedList();
+    private boolean stopped = true;
+
+    // the started servers by name
+    private static final Map servers = new HashMap();
+    private static long serverCount = 0;
+
+    private static final String PROTOCOL = "jmxmp-local";
+
+    private final ClassLogger logger = new ClassLogger("javax.management.remote.misc", "LocalConnectionServer");
+}
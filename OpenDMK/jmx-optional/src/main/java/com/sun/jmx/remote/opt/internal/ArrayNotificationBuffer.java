@@ -48,6 +48,7 @@
 package com.sun.jmx.remote.opt.internal;
 
 import java.io.IOException;
+import java.lang.reflect.Array;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.security.PrivilegedActionException;
@@ -56,11 +57,16 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
 
+import javax.management.AttributeChangeNotification;
 import javax.management.InstanceNotFoundException;
 import javax.management.ListenerNotFoundException;
 import javax.management.MalformedObjectNameException;
@@ -81,10 +87,31 @@ import javax.management.remote.TargetedNotification;
 import com.sun.jmx.remote.opt.util.EnvHelp;
 import com.sun.jmx.remote.opt.util.ClassLogger;
 
-/** A circular buffer of notifications received from an MBean server. */
+/**
+ * A circular buffer of notifications received from an MBean server.
+ *
+ * <p>The notifications are kept in a preallocated ring indexed by
+ * sequence number.  Notifications are added one at a time under
+ * {@link #ringLock}, but readers take no lock: each of them only
+ * holds its own sequence number and checks that the slot it reads has
+ * not been overwritten.  Readers waiting for a notification are
+ * parked and woken up by the next one added.</p>
+ *
+ * <p>The buffer keeps at most {@link EnvHelp#BUFFER_SIZE_PROPERTY}
+ * notifications.  It can also be bounded by the bytes of its
+ * notifications, estimated when they are added, see {@link
+ * EnvHelp#BUFFER_MAX_BYTES_PROPERTY}.  The oldest notifications are
+ * then dropped to stay under the limit, and the ring only grows to
+ * its maximum number of notifications when needed.  The
+ * notifications of an MBean over its quota of bytes, see {@link
+ * EnvHelp#BUFFER_MAX_BYTES_PER_MBEAN_PROPERTY}, are replaced by a
+ * tombstone, so that the clients listening to that MBean are told
+ * that notifications were lost.  When sharers ask for different
+ * limits, the loosest ones apply.</p>
+ */
 public class ArrayNotificationBuffer implements NotificationBuffer {
     
-    private boolean disposed = false;
+    private volatile boolean disposed = false;
     
     // FACTORY STUFF, INCLUDING SHARING
     
@@ -98,13 +125,17 @@ public class ArrayNotificationBuffer implements NotificationBuffer {
 	
 	//Find out queue size	
 	int queueSize = EnvHelp.getNotifBufferSize(env);
+	long maxBytes = EnvHelp.getNotifBufferMaxBytes(env);
+	long maxBytesPerMBean = EnvHelp.getNotifBufferMaxBytesPerMBean(env);
+	boolean serializedSize = EnvHelp.getNotifBufferSerializedSize(env);
 	
 	ArrayNotificationBuffer buf = (ArrayNotificationBuffer)mbsToBuffer.get(mbs);
 	if (buf == null) {
-	    buf = new ArrayNotificationBuffer(mbs, queueSize);
+	    buf = new ArrayNotificationBuffer(mbs, queueSize, maxBytes);
 	    mbsToBuffer.put(mbs, buf);
 	}
-	return buf.new ShareBuffer(queueSize);
+	return buf.new ShareBuffer(queueSize, maxBytes, maxBytesPerMBean,
+				   serializedSize);
     }
     
     public static synchronized void removeNotificationBuffer(MBeanServer mbs) {
@@ -115,6 +146,7 @@ public class ArrayNotificationBuffer implements NotificationBuffer {
 	if (sharer.getSize() > queueSize)
 	    resize(sharer.getSize());
 	sharers.add(sharer);
+	updateLimits();
     }
 
     void removeSharer(ShareBuffer sharer) {
@@ -132,6 +164,7 @@ public class ArrayNotificationBuffer implements NotificationBuffer {
 		}
                 if (max < queueSize)
                     resize(max);
+                updateLimits();
             }
         }
         if (empty)
@@ -141,15 +174,68 @@ public class ArrayNotificationBuffer implements NotificationBuffer {
     private void resize(int newSize) {
 	if (newSize == queueSize)
 	    return;
-	while (queue.size() > newSize)
-	    dropNotification();
-	queue.resize(newSize);
-	queueSize = newSize;
+	synchronized (ringLock) {
+	    queueSize = newSize;
+	    /* A buffer bounded by bytes grows when needed, see
+	       addNotification.  */
+	    if (maxBytes == 0 || ring.length() > newSize)
+		reallocate(newSize);
+	}
+    }
+
+    /* Sets the byte limits to the loosest ones of the sharers, 0
+       meaning no limit.  Called with this buffer locked.  */
+    private void updateLimits() {
+	long bytes = -1;
+	long bytesPerMBean = -1;
+	boolean serialized = false;
+	for (Iterator it = sharers.iterator(); it.hasNext(); ) {
+	    ShareBuffer buf = (ShareBuffer) it.next();
+	    bytes = loosest(bytes, buf.maxBytes);
+	    bytesPerMBean = loosest(bytesPerMBean, buf.maxBytesPerMBean);
+	    serialized |= buf.serializedSize;
+	}
+	synchronized (ringLock) {
+	    maxBytes = Math.max(bytes, 0);
+	    maxBytesPerMBean = Math.max(bytesPerMBean, 0);
+	    serializedSize = serialized;
+	}
+    }
+
+    private static long loosest(long limit1, long limit2) {
+	return (limit1 == 0 || limit2 == 0) ? 0 : Math.max(limit1, limit2);
+    }
+
+    /**
+     * Moves the notifications to a ring of the given capacity,
+     * dropping the oldest ones that do not fit.  Must be called with
+     * <code>ringLock</code> held.
+     */
+    private void reallocate(int capacity) {
+	final AtomicReferenceArray newRing = new AtomicReferenceArray(capacity);
+	final long next = nextSequenceNumber;
+	final long earliest =
+	    Math.max(earliestSequenceNumber, next - capacity);
+	for (long seq = earliestSequenceNumber; seq < earliest; seq++) {
+	    release(notificationAt(seq));
+	    droppedCount++;
+	}
+	for (long seq = earliest; seq < next; seq++) {
+	    newRing.set(index(seq, capacity), notificationAt(seq));
+	}
+	/* Publish the new ring before the earliest and next sequence
+	   numbers can move again, see fetchNotifications.  */
+	earliestSequenceNumber = earliest;
+	ring = newRing;
     }
 
     private class ShareBuffer implements NotificationBuffer {
-	ShareBuffer(int size) {
+	ShareBuffer(int size, long maxBytes, long maxBytesPerMBean,
+		    boolean serializedSize) {
 	    this.size = size;
+	    this.maxBytes = maxBytes;
+	    this.maxBytesPerMBean = maxBytesPerMBean;
+	    this.serializedSize = serializedSize;
 	    addSharer(this);
 	}
 
@@ -164,6 +250,14 @@ public class ArrayNotificationBuffer implements NotificationBuffer {
 					  timeout, maxNotifications);
 	}
 
+	public void runOnArrival(long nextSequenceNumber, Runnable task) {
+	    ArrayNotificationBuffer.this.runOnArrival(nextSequenceNumber, task);
+	}
+
+	public String getStatistics() {
+	    return ArrayNotificationBuffer.this.getStatistics();
+	}
+
 	public void dispose() {
 	    ArrayNotificationBuffer.this.removeSharer(this);
 	}
@@ -173,21 +267,28 @@ public class ArrayNotificationBuffer implements NotificationBuffer {
 	}
 
 	private final int size;
+	private final long maxBytes;
+	private final long maxBytesPerMBean;
+	private final boolean serializedSize;
     }
 
 
     // ARRAYNOTIFICATIONBUFFER IMPLEMENTATION
 
-    private ArrayNotificationBuffer(MBeanServer mbs, int queueSize) {
+    private ArrayNotificationBuffer(MBeanServer mbs, int queueSize,
+                                    long maxBytes) {
         if (logger.traceOn())
-            logger.trace("Constructor", "queueSize=" + queueSize);
+            logger.trace("Constructor", "queueSize=" + queueSize +
+                         "; maxBytes=" + maxBytes);
 
         if (mbs == null || queueSize < 1)
             throw new IllegalArgumentException("Bad args");
 
         this.mBeanServer = mbs;
         this.queueSize = queueSize;
-        this.queue = new ArrayQueue(queueSize);
+        this.maxBytes = maxBytes;
+        this.ring = new AtomicReferenceArray(maxBytes == 0 ? queueSize :
+                             Math.min(queueSize, INITIAL_CAPACITY));
         this.earliestSequenceNumber = System.currentTimeMillis();
         this.nextSequenceNumber = this.earliestSequenceNumber;
 
@@ -196,7 +297,7 @@ public class ArrayNotificationBuffer implements NotificationBuffer {
         logger.trace("Constructor", "ends");
     }
 
-    private synchronized boolean isDisposed() {
+    private boolean isDisposed() {
 	return disposed;
     }
 
@@ -206,15 +307,41 @@ public class ArrayNotificationBuffer implements NotificationBuffer {
 	synchronized(this) {
 	    removeNotificationBuffer(mBeanServer);
 	    disposed = true;
-	    //Notify potential waiting fetchNotification call
-	    notifyAll();
 	}
+	//Wake up potential waiting fetchNotification calls
+	wakeUpWaiters();
 
         destroyListeners();
 	
         logger.trace("dispose", "ends");
     }
 
+    public void runOnArrival(long nextSequenceNumber, Runnable task) {
+        arrivalTasks.add(task);
+        /* Check again once registered, otherwise we could miss a
+           notification added meanwhile.  */
+        if ((nextSequenceNumber() > nextSequenceNumber || isDisposed())
+            && arrivalTasks.remove(task))
+            task.run();
+    }
+
+    /**
+     * Returns a line describing the notifications kept, such as
+     * <code>notifs=950 capacity=1024 maxNotifs=100000 bytes=1046520
+     * maxBytes=1048576 maxBytesPerMBean=0 dropped=0 evicted=120
+     * quotaEvicted=0</code>.
+     */
+    public String getStatistics() {
+        synchronized (ringLock) {
+            return "notifs=" + (nextSequenceNumber - earliestSequenceNumber) +
+                " capacity=" + ring.length() + " maxNotifs=" + queueSize +
+                " bytes=" + bytesHeld + " maxBytes=" + maxBytes +
+                " maxBytesPerMBean=" + maxBytesPerMBean +
+                " dropped=" + droppedCount + " evicted=" + evictedCount +
+                " quotaEvicted=" + quotaEvictedCount;
+        }
+    }
+
     /**
      * <p>Fetch notifications that match the given listeners.</p>
      *
@@ -256,11 +383,10 @@ public class ArrayNotificationBuffer implements NotificationBuffer {
         logger.trace("fetchNotifications", "starts");
 
 	if (startSequenceNumber < 0 || isDisposed()) {
-	    synchronized(this) {
-		return new NotificationResult(earliestSequenceNumber(), 
-					      nextSequenceNumber(), 
-					      new TargetedNotification[0]);
-	    }
+	    final long next = nextSequenceNumber();
+	    return new NotificationResult(earliestSequenceNumber(), 
+					  next, 
+					  new TargetedNotification[0]);
 	}
 	
         // Check arg validity
@@ -305,6 +431,12 @@ public class ArrayNotificationBuffer implements NotificationBuffer {
         long nextSeq = startSequenceNumber;
         List/*<TargetedNotification>*/ notifs = new ArrayList();
 
+        /* The first sequence number examined, and the one after the
+           last tombstone that our listeners could have selected, see
+           below.  */
+        long firstSeq = -1;
+        long lostSeq = -1;
+
         /* On exit from this loop, notifs, earliestSeq, and nextSeq must
            all be correct values for the returned NotificationResult.  */
         while (true) {
@@ -313,78 +445,118 @@ public class ArrayNotificationBuffer implements NotificationBuffer {
             NamedNotification candidate;
 
             /* Get the next available notification regardless of filters,
-               or wait for one to arrive if there is none.  */
-            synchronized (this) {
-		
-                /* First time through.  The current earliestSequenceNumber
-                   is the first one we could have examined.  */
-                if (earliestSeq < 0) {
-                    earliestSeq = earliestSequenceNumber();
-                    if (logger.debugOn()) {
-                        logger.debug("fetchNotifications",
-                              "earliestSeq=" + earliestSeq);
-                    }
-                    if (nextSeq < earliestSeq) {
-                        nextSeq = earliestSeq;
-                        logger.debug("fetchNotifications", 
-				     "nextSeq=earliestSeq");
-                    }
-                } else
-                    earliestSeq = earliestSequenceNumber();
-
-                /* If many notifications have been dropped since the
-                   last time through, nextSeq could now be earlier
-                   than the current earliest.  If so, notifications
-                   may have been lost and we return now so the caller
-                   can see this next time it calls.  */
+               or wait for one to arrive if there is none.  The next
+               sequence number is read before the ring and the earliest
+               sequence number, so that the ring holds every notification
+               before it that has not been dropped since.  */
+            final long next = nextSequenceNumber();
+            final AtomicReferenceArray ring = this.ring;
+
+            final long earliest = earliestSequenceNumber();
+
+            /* First time through.  The current earliestSequenceNumber
+               is the first one we could have examined.  */
+            if (earliestSeq < 0) {
+                earliestSeq = earliest;
+                if (logger.debugOn()) {
+                    logger.debug("fetchNotifications",
+                          "earliestSeq=" + earliestSeq);
+                }
                 if (nextSeq < earliestSeq) {
-                    logger.trace("fetchNotifications",
-                          "nextSeq=" + nextSeq + " < " + "earliestSeq=" +
-                          earliestSeq + " so may have lost notifs");
+                    nextSeq = earliestSeq;
+                    logger.debug("fetchNotifications", 
+                                 "nextSeq=earliestSeq");
+                }
+                firstSeq = nextSeq;
+            }
+
+            /* If many notifications have been dropped since the
+               last time through, nextSeq could now be earlier
+               than the current earliest.  If so, notifications
+               may have been lost and we return now so the caller
+               can see this next time it calls.  The result keeps
+               the earliestSeq of the first time through, otherwise
+               the caller would count the same lost notifications
+               twice.  */
+            if (nextSeq < earliest) {
+                logger.trace("fetchNotifications",
+                      "nextSeq=" + nextSeq + " < " + "earliest=" +
+                      earliest + " so may have lost notifs");
+                break;
+            }
+
+            if (nextSeq < next) {
+                candidate = (NamedNotification)
+                    ring.get(index(nextSeq, ring.length()));
+                if (candidate == null
+                    || candidate.getSequenceNumber() != nextSeq) {
+                    /* Overwritten since we read earliestSeq.  The
+                       earliest sequence number is moved before a slot
+                       is overwritten, so the next time through will
+                       see that it was dropped.  */
+                    continue;
+                }
+                if (logger.debugOn()) {
+                    logger.debug("fetchNotifications", "candidate: " + 
+                                 candidate);
+                    logger.debug("fetchNotifications", "nextSeq now " + 
+                                 nextSeq);
+                }
+            } else {
+                /* nextSeq is the largest sequence number.  If we
+                   already got notifications, return them now.
+                   Otherwise wait for some to arrive, with
+                   timeout.  */
+                if (notifs.size() > 0) {
+                    logger.debug("fetchNotifications",
+                          "no more notifs but have some so don't wait");
+                    break;
+                }
+                long toWait = endTime - System.currentTimeMillis();
+                if (toWait <= 0) {
+                    logger.debug("fetchNotifications", "timeout");
                     break;
                 }
 
-                if (nextSeq < nextSequenceNumber()) {
-                    candidate = notificationAt(nextSeq);
-                    if (logger.debugOn()) {
-                        logger.debug("fetchNotifications", "candidate: " + 
-				     candidate);
-                        logger.debug("fetchNotifications", "nextSeq now " + 
-				     nextSeq);
-                    }
-                } else {
-                    /* nextSeq is the largest sequence number.  If we
-                       already got notifications, return them now.
-                       Otherwise wait for some to arrive, with
-                       timeout.  */
-                    if (notifs.size() > 0) {
+                /* dispose called */
+                if (isDisposed()) {
+                    if (logger.debugOn())
+                        logger.debug("fetchNotifications", 
+                                     "dispose callled, no wait");
+                    final long nextSeqNo = nextSequenceNumber();
+                    return new NotificationResult(earliestSequenceNumber(),
+                                                  nextSeqNo, 
+                                                  new TargetedNotification[0]);
+                }
+
+                if (logger.debugOn())
+                    logger.debug("fetchNotifications", 
+                                 "park(" + toWait + ")");
+                park(next, toWait);
+
+                continue;
+            }
+
+            /* A tombstone left by a notification dropped because its
+               MBean was over its quota.  If our listeners could have
+               selected it, the result starts at the next sequence
+               number, so that the client counts the lost ones from
+               here.  What we have before it is returned first.  */
+            if (candidate.getNotification() == null) {
+                final boolean selected;
+                synchronized (listeners) {
+                    selected = mayMatch(listeners, candidate.getObjectName());
+                }
+                if (selected) {
+                    if (nextSeq > firstSeq && nextSeq != lostSeq) {
                         logger.debug("fetchNotifications",
-                              "no more notifs but have some so don't wait");
-                        break;
-                    }
-                    long toWait = endTime - System.currentTimeMillis();
-                    if (toWait <= 0) {
-                        logger.debug("fetchNotifications", "timeout");
+                                     "tombstone, return what we have");
                         break;
                     }
-		    
-		    /* dispose called */
-		    if (isDisposed()) {
-			if (logger.debugOn())
-			    logger.debug("fetchNotifications", 
-					 "dispose callled, no wait");
-			return new NotificationResult(earliestSequenceNumber(),
-						  nextSequenceNumber(), 
-						  new TargetedNotification[0]);
-		    }
-		    
-		    if (logger.debugOn())
-			logger.debug("fetchNotifications", 
-				     "wait(" + toWait + ")");
-		    wait(toWait);
-		    
-                    continue;
+                    lostSeq = nextSeq + 1;
                 }
+                ++nextSeq;
+                continue;
             }
 	    
             /* We have a candidate notification.  See if it matches
@@ -398,26 +570,33 @@ public class ArrayNotificationBuffer implements NotificationBuffer {
             logger.debug("fetchNotifications", 
 			 "applying filters to candidate");
             synchronized (listeners) {
-                for (Iterator it = listeners.iterator(); it.hasNext(); ) {
-                    ListenerInfo li = (ListenerInfo) it.next();
-                    ObjectName pattern = li.getObjectName();
-                    NotificationFilter filter = li.getNotificationFilter();
-
-                    if (logger.debugOn()) {
-                        logger.debug("fetchNotifications",
-                              "pattern=<" + pattern + ">; filter=" + filter);
-                    }
+                /* An indexed Set only looks at the listeners that
+                   can select this notification.  */
+                if (listeners instanceof ListenerIndex) {
+                    ((ListenerIndex) listeners).match(name, notif,
+                                                      matchedNotifs);
+                } else {
+                    for (Iterator it = listeners.iterator(); it.hasNext(); ) {
+                        ListenerInfo li = (ListenerInfo) it.next();
+                        ObjectName pattern = li.getObjectName();
+                        NotificationFilter filter = li.getNotificationFilter();
+
+                        if (logger.debugOn()) {
+                            logger.debug("fetchNotifications",
+                                  "pattern=<" + pattern + ">; filter=" + filter);
+                        }
 
-                    if (pattern.apply(name)) {
-                        logger.debug("fetchNotifications", "pattern matches");
-                        if (filter == null
-                            || filter.isNotificationEnabled(notif)) {
-                            logger.debug("fetchNotifications", 
-					 "filter matches");
-                            Integer listenerID = li.getListenerID();
-                            TargetedNotification tn =
-                                new TargetedNotification(notif, listenerID);
-                            matchedNotifs.add(tn);
+                        if (pattern.apply(name)) {
+                            logger.debug("fetchNotifications", "pattern matches");
+                            if (filter == null
+                                || filter.isNotificationEnabled(notif)) {
+                                logger.debug("fetchNotifications", 
+					     "filter matches");
+                                Integer listenerID = li.getListenerID();
+                                TargetedNotification tn =
+                                    new TargetedNotification(notif, listenerID);
+                                matchedNotifs.add(tn);
+                            }
                         }
                     }
                 }
@@ -438,6 +617,7 @@ public class ArrayNotificationBuffer implements NotificationBuffer {
                 if (logger.debugOn())
                     logger.debug("fetchNotifications", "add: " + 
 				 matchedNotifs);
+                candidate.share(matchedNotifs);
                 notifs.addAll(matchedNotifs);
             }
 
@@ -450,7 +630,8 @@ public class ArrayNotificationBuffer implements NotificationBuffer {
             new TargetedNotification[nnotifs];
         notifs.toArray(resultNotifs);
         NotificationResult nr =
-            new NotificationResult(earliestSeq, nextSeq, resultNotifs);
+            new NotificationResult(Math.max(earliestSeq, lostSeq), nextSeq,
+                                   resultNotifs);
         if (logger.debugOn())
             logger.debug("fetchNotifications", nr.toString());
         logger.trace("fetchNotifications", "ends");
@@ -458,53 +639,309 @@ public class ArrayNotificationBuffer implements NotificationBuffer {
         return nr;
     }
 
-    synchronized long earliestSequenceNumber() {
+    long earliestSequenceNumber() {
         return earliestSequenceNumber;
     }
 
-    synchronized long nextSequenceNumber() {
+    long nextSequenceNumber() {
         return nextSequenceNumber;
     }
 
-    synchronized void addNotification(NamedNotification notif) {
-        if (logger.traceOn())
-            logger.trace("addNotification", notif.toString());
-
-        while (queue.size() >= queueSize) {
-	    dropNotification();
-            if (logger.debugOn()) {
-                logger.debug("addNotification",
-                      "dropped oldest notif, earliestSeq=" +
-                      earliestSequenceNumber);
+    void addNotification(ObjectName sender, Notification notif) {
+        /* The size is estimated before taking the lock, it may
+           serialize the notification.  */
+        final SharedTargetedNotification.SerializedForm form =
+            new SharedTargetedNotification.SerializedForm(notif);
+        final long size = (maxBytes > 0 || maxBytesPerMBean > 0) ?
+            estimateSize(notif, form) : 0;
+
+        synchronized (ringLock) {
+            final long seq = nextSequenceNumber;
+            final NamedNotification named =
+                new NamedNotification(seq, sender, notif, form, size);
+            if (logger.traceOn())
+                logger.trace("addNotification", named.toString());
+
+            if (size > 0)
+                makeRoom(named);
+
+            if (seq - earliestSequenceNumber >= ring.length()
+                && ring.length() < queueSize)
+                reallocate(Math.min(queueSize, 2 * ring.length()));
+
+            /* The earliest sequence number moves before its slot is
+               overwritten, see fetchNotifications.  */
+            final int capacity = ring.length();
+            if (seq - earliestSequenceNumber >= capacity) {
+                final long earliest = seq - capacity + 1;
+                for (long s = earliestSequenceNumber; s < earliest; s++)
+                    release(notificationAt(s));
+                droppedCount += earliest - earliestSequenceNumber;
+                earliestSequenceNumber = earliest;
+                if (logger.debugOn()) {
+                    logger.debug("addNotification",
+                          "dropped oldest notif, earliestSeq=" +
+                          earliestSequenceNumber);
+                }
             }
+            ring.set(index(seq, capacity), named);
+            if (size > 0) {
+                bytesHeld += size;
+                if (maxBytesPerMBean > 0) {
+                    final SourceUsage usage = sourceUsage(sender);
+                    usage.entries.addLast(named);
+                    usage.bytes += size;
+                }
+            }
+            nextSequenceNumber = seq + 1;
+            if (logger.debugOn())
+                logger.debug("addNotification", "nextSeq=" + (seq + 1));
         }
-        queue.add(notif);
-        nextSequenceNumber++;
-        if (logger.debugOn())
-            logger.debug("addNotification", "nextSeq=" + nextSequenceNumber);
-        notifyAll();
+        wakeUpWaiters();
     }
 
-    private void dropNotification() {
-	queue.remove(0);
-	earliestSequenceNumber++;
+    /**
+     * Returns the notification with the given sequence number, or
+     * null if it has been overwritten.  Must be called with
+     * <code>ringLock</code> held.
+     */
+    private NamedNotification notificationAt(long seqNo) {
+        final NamedNotification n =
+            (NamedNotification) ring.get(index(seqNo, ring.length()));
+        return (n != null && n.getSequenceNumber() == seqNo) ? n : null;
     }
 
-    synchronized NamedNotification notificationAt(long seqNo) {
-        long index = seqNo - earliestSequenceNumber;
-        if (index < 0 || index > Integer.MAX_VALUE) {
-            final String msg = "Bad sequence number: " + seqNo + " (earliest "
-                + earliestSequenceNumber + ")";
-            logger.trace("notificationAt", msg);
-            throw new IllegalArgumentException(msg);
+    private static int index(long seqNo, int length) {
+        return (int) (seqNo % length);
+    }
+
+    /**
+     * Drops notifications until a new one fits in the byte limits:
+     * the oldest ones of its MBean if it is over its quota, then the
+     * oldest ones of the buffer.  A notification bigger than the
+     * limits is kept alone.  Must be called with <code>ringLock</code>
+     * held.
+     */
+    private void makeRoom(NamedNotification named) {
+        final long size = named.getSize();
+
+        if (maxBytesPerMBean > 0) {
+            final SourceUsage usage = sourceUsage(named.getObjectName());
+            while (usage.bytes + size > maxBytesPerMBean
+                   && !usage.entries.isEmpty()) {
+                final NamedNotification old =
+                    (NamedNotification) usage.entries.getFirst();
+                ring.set(index(old.getSequenceNumber(), ring.length()),
+                         new NamedNotification(old.getSequenceNumber(),
+                                               old.getObjectName(),
+                                               null, null, 0));
+                release(old);
+                quotaEvictedCount++;
+            }
+        }
+
+        if (maxBytes > 0) {
+            while (bytesHeld + size > maxBytes
+                   && earliestSequenceNumber < named.getSequenceNumber()) {
+                final long earliest = earliestSequenceNumber;
+                final NamedNotification old = notificationAt(earliest);
+                /* The earliest sequence number moves before its slot
+                   is emptied, see fetchNotifications.  */
+                earliestSequenceNumber = earliest + 1;
+                ring.set(index(earliest, ring.length()), null);
+                release(old);
+                if (old != null && old.getNotification() != null)
+                    evictedCount++;
+            }
+        }
+    }
+
+    /**
+     * Removes the bytes of a notification leaving the buffer from
+     * the counts.  Must be called with <code>ringLock</code> held.
+     */
+    private void release(NamedNotification named) {
+        if (named == null || named.getSize() == 0)
+            return;
+        bytesHeld -= named.getSize();
+        final SourceUsage usage =
+            (SourceUsage) sources.get(named.getObjectName());
+        if (usage != null && usage.entries.remove(named)) {
+            usage.bytes -= named.getSize();
+            if (usage.entries.isEmpty())
+                sources.remove(named.getObjectName());
+        }
+    }
+
+    private SourceUsage sourceUsage(ObjectName sender) {
+        SourceUsage usage = (SourceUsage) sources.get(sender);
+        if (usage == null) {
+            usage = new SourceUsage();
+            sources.put(sender, usage);
+        }
+        return usage;
+    }
+
+    /* The notifications of an MBean counted against its quota, oldest
+       first.  */
+    private static class SourceUsage {
+        final LinkedList/*<NamedNotification>*/ entries = new LinkedList();
+        long bytes;
+    }
+
+    /**
+     * Returns true if a listener could select the notifications of
+     * the given MBean, whatever its filter.  Must be called with
+     * <code>listeners</code> locked.
+     */
+    private static boolean mayMatch(Set/*<ListenerInfo>*/ listeners,
+                                    ObjectName name) {
+        if (listeners instanceof ListenerIndex)
+            return ((ListenerIndex) listeners).selects(name);
+        for (Iterator it = listeners.iterator(); it.hasNext(); ) {
+            ListenerInfo li = (ListenerInfo) it.next();
+            if (li.getObjectName().apply(name))
+                return true;
+        }
+        return false;
+    }
+
+    /*
+     * The bytes of a notification: its serialized size if asked for,
+     * otherwise a rough estimate of the heap it retains, counting its
+     * strings and the arrays, strings and collections in its user
+     * data.
+     */
+    private long estimateSize(Notification notif,
+                              SharedTargetedNotification.SerializedForm form) {
+        if (serializedSize) {
+            try {
+                return form.getBytes().length;
+            } catch (IOException e) {
+                logger.debug("estimateSize", e);
+            }
+        }
+
+        long size = NOTIFICATION_OVERHEAD;
+        try {
+            size += estimateSize(notif.getType(), 0);
+            size += estimateSize(notif.getMessage(), 0);
+            size += estimateSize(notif.getUserData(), 0);
+            if (notif instanceof AttributeChangeNotification) {
+                final AttributeChangeNotification acn =
+                    (AttributeChangeNotification) notif;
+                size += estimateSize(acn.getOldValue(), 0);
+                size += estimateSize(acn.getNewValue(), 0);
+            }
+        } catch (RuntimeException e) {
+            // user data changed while we were looking at it
+            logger.debug("estimateSize", e);
+        }
+        return size;
+    }
+
+    private static long estimateSize(Object o, int depth) {
+        if (o == null)
+            return 0;
+        if (o instanceof String)
+            return OBJECT_OVERHEAD + 2L * ((String) o).length();
+
+        final Class c = o.getClass();
+        if (c.isArray()) {
+            final Class t = c.getComponentType();
+            final int length = Array.getLength(o);
+            if (t == byte.class || t == boolean.class)
+                return OBJECT_OVERHEAD + length;
+            if (t == char.class || t == short.class)
+                return OBJECT_OVERHEAD + 2L * length;
+            if (t == int.class || t == float.class)
+                return OBJECT_OVERHEAD + 4L * length;
+            if (t == long.class || t == double.class)
+                return OBJECT_OVERHEAD + 8L * length;
+            long size = OBJECT_OVERHEAD + 8L * length;
+            if (depth < MAX_ESTIMATE_DEPTH) {
+                final Object[] array = (Object[]) o;
+                for (int i = 0; i < array.length; i++)
+                    size += estimateSize(array[i], depth + 1);
+            }
+            return size;
+        }
+        if (depth < MAX_ESTIMATE_DEPTH) {
+            if (o instanceof Collection) {
+                long size = OBJECT_OVERHEAD;
+                for (Iterator it = ((Collection) o).iterator(); it.hasNext(); )
+                    size += OBJECT_OVERHEAD + estimateSize(it.next(), depth + 1);
+                return size;
+            }
+            if (o instanceof Map) {
+                long size = OBJECT_OVERHEAD;
+                for (Iterator it = ((Map) o).entrySet().iterator();
+                     it.hasNext(); ) {
+                    final Map.Entry e = (Map.Entry) it.next();
+                    size += OBJECT_OVERHEAD +
+                        estimateSize(e.getKey(), depth + 1) +
+                        estimateSize(e.getValue(), depth + 1);
+                }
+                return size;
+            }
         }
-        return (NamedNotification) queue.get((int) index);
+        return OBJECT_OVERHEAD;
+    }
+
+    /**
+     * Parks the calling thread until a notification is added after
+     * <code>next</code>, the buffer is disposed, or the timeout
+     * expires.
+     */
+    private void park(long next, long timeout) throws InterruptedException {
+        final Thread me = Thread.currentThread();
+        waiters.add(me);
+        try {
+            /* Check again once registered, otherwise we could miss
+               the wake-up of a notification added meanwhile.  */
+            if (nextSequenceNumber() == next && !isDisposed())
+                LockSupport.parkNanos(this, Math.min(timeout,
+                                     Long.MAX_VALUE / 1000000L) * 1000000L);
+        } finally {
+            waiters.remove(me);
+        }
+        if (Thread.interrupted())
+            throw new InterruptedException();
+    }
+
+    private void wakeUpWaiters() {
+        for (Iterator it = waiters.iterator(); it.hasNext(); )
+            LockSupport.unpark((Thread) it.next());
+        for (Runnable task; (task = (Runnable) arrivalTasks.poll()) != null; )
+            task.run();
     }
 
     private static class NamedNotification {
-        NamedNotification(ObjectName sender, Notification notif) {
+        /* A null notification is the tombstone of a notification
+           dropped because its MBean was over its quota.  */
+        NamedNotification(long seqNo, ObjectName sender, Notification notif,
+                          SharedTargetedNotification.SerializedForm form,
+                          long size) {
+            this.sequenceNumber = seqNo;
             this.sender = sender;
             this.notification = notif;
+            this.form = form;
+            this.size = size;
+        }
+
+        /* Replaces the targets of this notification by ones sharing
+           its serialized form.  */
+        void share(List/*<TargetedNotification>*/ targets) {
+            for (int i = 0; i < targets.size(); i++) {
+                final TargetedNotification tn =
+                    (TargetedNotification) targets.get(i);
+                targets.set(i, new SharedTargetedNotification(form,
+                                                   tn.getListenerID()));
+            }
+        }
+
+        long getSequenceNumber() {
+            return sequenceNumber;
         }
 
         ObjectName getObjectName() {
@@ -515,12 +952,20 @@ public class ArrayNotificationBuffer implements NotificationBuffer {
             return notification;
         }
 
+        long getSize() {
+            return size;
+        }
+
         public String toString() {
-            return "NamedNotification(" + sender + ", " + notification + ")";
+            return "NamedNotification(" + sequenceNumber + ", " + sender +
+                ", " + notification + ")";
         }
 
+        private final long sequenceNumber;
         private final ObjectName sender;
         private final Notification notification;
+        private final SharedTargetedNotification.SerializedForm form;
+        private final long size;
     }
 
     /*
@@ -727,7 +1172,7 @@ public class ArrayNotificationBuffer implements NotificationBuffer {
 		      "notif=" + notif + "; handback=" + handback);
 	    }
 	    ObjectName name = (ObjectName) handback;
-	    addNotification(new NamedNotification(name, notif));
+	    addNotification(name, notif);
 	}
     }
 
@@ -809,10 +1254,39 @@ public class ArrayNotificationBuffer implements NotificationBuffer {
     }
 
     private final MBeanServer mBeanServer;
-    private final ArrayQueue queue;
-    private int queueSize;
-    private long earliestSequenceNumber;
-    private long nextSequenceNumber;
+
+    /* The ring, its size and the sequence numbers are only changed
+       with ringLock held, and are read by fetchNotifications without
+       it.  */
+    private final Object ringLock = new Object();
+    private volatile AtomicReferenceArray/*<NamedNotification>*/ ring;
+    private volatile int queueSize;
+    private volatile long earliestSequenceNumber;
+    private volatile long nextSequenceNumber;
+
+    /* The byte limits, 0 if none, and the bytes held, see
+       makeRoom.  The counts are only changed with ringLock held.  */
+    private volatile long maxBytes;
+    private volatile long maxBytesPerMBean;
+    private volatile boolean serializedSize;
+    private long bytesHeld;
+    private final Map/*<ObjectName,SourceUsage>*/ sources = new HashMap();
+    private long droppedCount;
+    private long evictedCount;
+    private long quotaEvictedCount;
+
+    private static final int INITIAL_CAPACITY = 256;
+    private static final int MAX_ESTIMATE_DEPTH = 4;
+    private static final long OBJECT_OVERHEAD = 16;
+    private static final long NOTIFICATION_OVERHEAD = 128;
+
+    /* Threads parked in fetchNotifications.  */
+    private final Collection/*<Thread>*/ waiters =
+        new ConcurrentLinkedQueue();
+
+    /* Tasks to run when the next notification arrives.  */
+    private final ConcurrentLinkedQueue/*<Runnable>*/ arrivalTasks =
+        new ConcurrentLinkedQueue();
     private Set createdDuringQuery;
 
     static final String broadcasterClass =
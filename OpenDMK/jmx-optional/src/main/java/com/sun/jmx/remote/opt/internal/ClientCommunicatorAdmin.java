@@ -48,13 +48,31 @@ package com.sun.jmx.remote.opt.internal;
 
 import java.io.IOException;
 import java.io.InterruptedIOException;
+import java.util.Random;
 
 import com.sun.jmx.remote.opt.util.ClassLogger;
 import com.sun.jmx.remote.opt.util.EnvHelp;
 
 public abstract class ClientCommunicatorAdmin {
     public ClientCommunicatorAdmin(long period) {
+	this(period, 1, 0, 0, 0);
+    }
+
+    /**
+     * Creates an object which makes up to <code>attempts</code>
+     * attempts to re-start a client.  Before the n-th attempt it
+     * waits <code>delay * 2^(n-1)</code> milliseconds, bounded by
+     * <code>maxDelay</code>, of which a random part of up to
+     * <code>jitter</code> percent is taken off, so that clients which
+     * lost their server at the same time do not come back together.
+     */
+    public ClientCommunicatorAdmin(long period, int attempts, long delay,
+				   long maxDelay, int jitter) {
 	this.period = period;
+	this.attempts = Math.max(1, attempts);
+	this.delay = Math.max(0, delay);
+	this.maxDelay = Math.max(this.delay, maxDelay);
+	this.jitter = Math.min(100, Math.max(0, jitter));
 
 	if (period > 0) {
 	    checker = new Checker();
@@ -141,43 +159,113 @@ public abstract class ClientCommunicatorAdmin {
 	}
 
 	// re-starting
-	try {
-	    doStart();
-	    synchronized(lock) {
-		if (state == TERMINATED) {
-		    throw new IOException("The client has been closed.");
+	Exception failure = null;
+	for (int n = 0; n < attempts; n++) {
+	    try {
+		backoff(n);
+	    } catch (InterruptedIOException iioe) {
+		failure = iioe;
+		break;
+	    }
+
+	    try {
+		doStart();
+		synchronized(lock) {
+		    if (state == TERMINATED) {
+			throw new IOException("The client has been closed.");
+		    }
+
+		    state = CONNECTED;
+
+		    lock.notifyAll();
+		}
+
+		return;
+	    } catch (Exception e) {
+		failure = e;
+
+		synchronized(lock) {
+		    if (state == TERMINATED) {
+			break;
+		    }
 		}
 
-		state = CONNECTED;
+		if (n + 1 < attempts && logger.traceOn()) {
+		    logger.trace("restart", "Attempt " + (n + 1) + " of " +
+				 attempts + " failed: " + e);
+		}
+	    }
+	}
 
-		lock.notifyAll();
+	logger.warning("restart", "Failed to restart: " + failure);
+	logger.debug("restart",failure);
+
+	synchronized(lock) {
+	    if (state == TERMINATED) {
+		throw new IOException("The client has been closed.");
 	    }
 
+	    state = FAILED;
+
+	    lock.notifyAll();
+	}
+
+	try {
+	    doStop();
+	} catch (Exception eee) {
+	    // OK.
+	    // We know there is a problem.
+	}
+
+	terminate();
+
+	throw ioe;
+    }
+
+    /**
+     * Waits before the attempt <code>n</code> (counted from 0) to
+     * re-start.  Returns at once if no delay is configured; throws an
+     * <code>InterruptedIOException</code> if this object is
+     * terminated or the thread is interrupted while waiting.
+     */
+    private void backoff(int n) throws InterruptedIOException {
+	if (delay == 0) {
 	    return;
-	} catch (Exception e) {
-	    logger.warning("restart", "Failed to restart: " + e);
-	    logger.debug("restart",e);
+	}
 
-	    synchronized(lock) {
-		if (state == TERMINATED) {
-		    throw new IOException("The client has been closed.");
-		}
+	long wait = delay;
+	for (int i = 0; i < n && wait < maxDelay; i++) {
+	    wait *= 2;
+	}
+	wait = Math.min(wait, maxDelay);
 
-		state = FAILED;
+	if (jitter > 0) {
+	    wait -= (long) (wait * random.nextDouble() * jitter / 100);
+	}
 
-		lock.notifyAll();
-	    }
+	if (logger.traceOn()) {
+	    logger.trace("backoff", "Waiting " + wait + " ms before attempt " +
+			 (n + 1) + " to restart.");
+	}
 
-	    try {
-		doStop();
-	    } catch (Exception eee) {
-		// OK.
-		// We know there is a problem.
-	    }
+	final long end = System.currentTimeMillis() + wait;
+	synchronized(lock) {
+	    for (long left = wait; left > 0 && state != TERMINATED;
+		 left = end - System.currentTimeMillis()) {
+		try {
+		    lock.wait(left);
+		} catch (InterruptedException ire) {
+		    InterruptedIOException iioe =
+			new InterruptedIOException(ire.toString());
+		    EnvHelp.initCause(iioe, ire);
 
-	    terminate();
+		    throw iioe;
+		}
+	    }
 
-	    throw ioe;
+	    if (state == TERMINATED) {
+		throw new InterruptedIOException("The client has been closed.");
+	    }
 	}
     }
 
@@ -255,6 +343,14 @@ public abstract class ClientCommunicatorAdmin {
     private final Checker checker;
     private long period;
 
+    // re-start attempts and the delays between them
+    private final int attempts;
+    private final long delay;
+    private final long maxDelay;
+    private final int jitter;
+
+    private static final Random random = new Random();
+
     // state
     private final static int CONNECTED = 0;
     private final static int RE_CONNECTING = 1;
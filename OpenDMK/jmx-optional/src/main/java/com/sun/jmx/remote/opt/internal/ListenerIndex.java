@@ -0,0 +1,363 @@
+/*
+ * @(#)ListenerIndex.java	1.1
+ *
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright (c) 2007 Sun Microsystems, Inc. All Rights Reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU General
+ * Public License Version 2 only ("GPL") or the Common Development and
+ * Distribution License("CDDL")(collectively, the "License"). You may not use
+ * this file except in compliance with the License. You can obtain a copy of the
+ * License at http://opendmk.dev.java.net/legal_notices/licenses.txt or in the 
+ * LEGAL_NOTICES folder that accompanied this code. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file found at
+ *     http://opendmk.dev.java.net/legal_notices/licenses.txt
+ * or in the LEGAL_NOTICES folder that accompanied this code.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.
+ * 
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * 
+ *       "Portions Copyrighted [year] [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding
+ * 
+ *       "[Contributor] elects to include this software in this distribution
+ *        under the [CDDL or GPL Version 2] license."
+ * 
+ * If you don't indicate a single choice of license, a recipient has the option
+ * to distribute your version of this file under either the CDDL or the GPL
+ * Version 2, or to extend the choice of license to its licensees as provided
+ * above. However, if you add GPL Version 2 code and therefore, elected the
+ * GPL Version 2 license, then the option applies only if the new code is made
+ * subject to such option by the copyright holder.
+ * 
+ */
+
+
+package com.sun.jmx.remote.opt.internal;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.Vector;
+
+import javax.management.Notification;
+import javax.management.NotificationFilter;
+import javax.management.NotificationFilterSupport;
+import javax.management.ObjectName;
+
+import javax.management.remote.TargetedNotification;
+
+/**
+ * <p>A Set of {@link ListenerInfo} indexed for matching notifications.
+ * Listeners on a single MBean are found by its ObjectName, and among
+ * them those with a <code>NotificationFilterSupport</code> filter are
+ * found by the enabled type prefixes.  Only listeners on ObjectName
+ * patterns and listeners with other filters are checked one by
+ * one.</p>
+ *
+ * <p>Like the <code>HashSet</code> it replaces, this Set is not
+ * synchronized: callers synchronize on the Set object.</p>
+ */
+public class ListenerIndex extends AbstractSet {
+
+    /**
+     * Adds to <code>matched</code> a {@link TargetedNotification}
+     * for each listener selecting a notification from the MBean
+     * <code>name</code>.
+     */
+    public void match(ObjectName name, Notification notif, List matched) {
+	final Bucket bucket = (Bucket) exact.get(name);
+	if (bucket != null) {
+	    bucket.match(notif, matched);
+	}
+
+	for (Iterator it = patterns.iterator(); it.hasNext(); ) {
+	    final ListenerInfo li = (ListenerInfo) it.next();
+	    final ObjectName pattern = li.getObjectName();
+	    if (pattern != null && pattern.apply(name)) {
+		addIfEnabled(li, notif, matched);
+	    }
+	}
+    }
+
+    /**
+     * Returns true if a listener could select a notification from the
+     * MBean <code>name</code>, whatever its filter.
+     */
+    public boolean selects(ObjectName name) {
+	if (exact.containsKey(name)) {
+	    return true;
+	}
+
+	for (Iterator it = patterns.iterator(); it.hasNext(); ) {
+	    final ObjectName pattern = ((ListenerInfo) it.next()).getObjectName();
+	    if (pattern != null && pattern.apply(name)) {
+		return true;
+	    }
+	}
+	return false;
+    }
+
+    public boolean add(Object o) {
+	final ListenerInfo li = (ListenerInfo) o;
+	if (infos.containsKey(li.getListenerID())) {
+	    return false;
+	}
+
+	infos.put(li.getListenerID(), li);
+
+	final ObjectName name = li.getObjectName();
+	if (name == null || name.isPattern()) {
+	    patterns.add(li);
+	} else {
+	    Bucket bucket = (Bucket) exact.get(name);
+	    if (bucket == null) {
+		bucket = new Bucket();
+		exact.put(name, bucket);
+	    }
+	    bucket.add(li);
+	}
+	return true;
+    }
+
+    /**
+     * Removes the listener with the same listener id as
+     * <code>o</code>, see {@link ListenerInfo#equals}.
+     */
+    public boolean remove(Object o) {
+	if (!(o instanceof ListenerInfo)) {
+	    return false;
+	}
+
+	final ListenerInfo li = (ListenerInfo)
+	    infos.remove(((ListenerInfo) o).getListenerID());
+	if (li == null) {
+	    return false;
+	}
+
+	unindex(li);
+	return true;
+    }
+
+    public boolean contains(Object o) {
+	return (o instanceof ListenerInfo) &&
+	    infos.containsKey(((ListenerInfo) o).getListenerID());
+    }
+
+    public void clear() {
+	infos.clear();
+	exact.clear();
+	patterns.clear();
+    }
+
+    public int size() {
+	return infos.size();
+    }
+
+    public Iterator iterator() {
+	final Iterator it = infos.values().iterator();
+	return new Iterator() {
+	    public boolean hasNext() {
+		return it.hasNext();
+	    }
+
+	    public Object next() {
+		last = (ListenerInfo) it.next();
+		return last;
+	    }
+
+	    public void remove() {
+		it.remove();
+		unindex(last);
+	    }
+
+	    private ListenerInfo last;
+	};
+    }
+
+    private void unindex(ListenerInfo li) {
+	final ObjectName name = li.getObjectName();
+	if (name == null || name.isPattern()) {
+	    patterns.remove(li);
+	} else {
+	    final Bucket bucket = (Bucket) exact.get(name);
+	    if (bucket != null && bucket.remove(li)) {
+		exact.remove(name);
+	    }
+	}
+    }
+
+    private static void addIfEnabled(ListenerInfo li, Notification notif,
+				     List matched) {
+	final NotificationFilter filter = li.getNotificationFilter();
+	if (filter == null || filter.isNotificationEnabled(notif)) {
+	    matched.add(new TargetedNotification(notif, li.getListenerID()));
+	}
+    }
+
+    /**
+     * Returns the enabled types of a filter whose selection depends
+     * on them only, or null.  A subclass of
+     * <code>NotificationFilterSupport</code> may select differently.
+     */
+    private static Vector enabledTypes(NotificationFilter filter) {
+	if (filter == null ||
+	    filter.getClass() != NotificationFilterSupport.class) {
+	    return null;
+	}
+	return ((NotificationFilterSupport) filter).getEnabledTypes();
+    }
+
+    /**
+     * The listeners on one MBean.
+     */
+    private static class Bucket {
+	void add(ListenerInfo li) {
+	    final Vector types = enabledTypes(li.getNotificationFilter());
+	    if (types == null) {
+		others.add(li);
+		return;
+	    }
+
+	    /* A NotificationFilterSupport enables a notification whose
+	       type starts with one of its enabled types.  */
+	    for (Iterator it = types.iterator(); it.hasNext(); ) {
+		final String prefix = (String) it.next();
+		List list = (List) byPrefix.get(prefix);
+		if (list == null) {
+		    list = new ArrayList(1);
+		    byPrefix.put(prefix, list);
+		    addLength(prefix.length());
+		}
+		list.add(li);
+	    }
+	}
+
+	/**
+	 * Removes a listener and returns true if the bucket is then
+	 * empty.
+	 */
+	boolean remove(ListenerInfo li) {
+	    final Vector types = enabledTypes(li.getNotificationFilter());
+	    if (types == null) {
+		others.remove(li);
+	    } else {
+		for (Iterator it = types.iterator(); it.hasNext(); ) {
+		    final String prefix = (String) it.next();
+		    final List list = (List) byPrefix.get(prefix);
+		    if (list != null && list.remove(li) && list.isEmpty()) {
+			byPrefix.remove(prefix);
+			removeLength(prefix.length());
+		    }
+		}
+	    }
+	    return others.isEmpty() && byPrefix.isEmpty();
+	}
+
+	void match(Notification notif, List matched) {
+	    for (Iterator it = others.iterator(); it.hasNext(); ) {
+		addIfEnabled((ListenerInfo) it.next(), notif, matched);
+	    }
+
+	    final String type = notif.getType();
+	    if (type == null || byPrefix.isEmpty()) {
+		return;
+	    }
+
+	    /* A listener enabling several prefixes of the type is only
+	       selected once.  */
+	    Set selected = null;
+	    for (int i = 0; i < prefixLengths.length; i++) {
+		final int len = prefixLengths[i];
+		if (len > type.length()) {
+		    break;
+		}
+		final List list = (List) byPrefix.get(type.substring(0, len));
+		if (list == null) {
+		    continue;
+		}
+		for (Iterator it = list.iterator(); it.hasNext(); ) {
+		    final ListenerInfo li = (ListenerInfo) it.next();
+		    if (enabledTypes(li.getNotificationFilter()).size() > 1) {
+			if (selected == null) {
+			    selected = new HashSet();
+			}
+			if (!selected.add(li)) {
+			    continue;
+			}
+		    }
+		    matched.add(new TargetedNotification(notif,
+							 li.getListenerID()));
+		}
+	    }
+	}
+
+	private void addLength(int len) {
+	    final Integer key = new Integer(len);
+	    final Integer count = (Integer) lengthCounts.get(key);
+	    lengthCounts.put(key,
+			     new Integer(count == null ? 1 : count.intValue() + 1));
+	    if (count == null) {
+		updateLengths();
+	    }
+	}
+
+	private void removeLength(int len) {
+	    final Integer key = new Integer(len);
+	    final int count = ((Integer) lengthCounts.get(key)).intValue();
+	    if (count == 1) {
+		lengthCounts.remove(key);
+		updateLengths();
+	    } else {
+		lengthCounts.put(key, new Integer(count - 1));
+	    }
+	}
+
+	private void updateLengths() {
+	    final Set sorted = new TreeSet(lengthCounts.keySet());
+	    prefixLengths = new int[sorted.size()];
+	    int i = 0;
+	    for (Iterator it = sorted.iterator(); it.hasNext(); ) {
+		prefixLengths[i++] = ((Integer) it.next()).intValue();
+	    }
+	}
+
+	// listeners whose filter is not indexed
+	private final List/*<ListenerInfo>*/ others = new ArrayList(1);
+
+	// enabled type -> listeners enabling it
+	private final Map/*<String,List<ListenerInfo>>*/ byPrefix =
+	    new HashMap();
+
+	// distinct lengths of the keys of byPrefix, ascending
+	private final Map/*<Integer,Integer>*/ lengthCounts = new HashMap();
+	private int[] prefixLengths = new int[0];
+    }
+
+    // listener id -> listener
+    private final Map/*<Integer,ListenerInfo>*/ infos = new HashMap();
+
+    // ObjectName -> listeners on that MBean
+    private final Map/*<ObjectName,Bucket>*/ exact = new HashMap();
+
+    // listeners on an ObjectName pattern
+    private final List/*<ListenerInfo>*/ patterns = new ArrayList();
+}
@@ -90,6 +90,26 @@ public interface NotificationBuffer {
                            int maxNotifications)
             throws InterruptedException;
 
+    /**
+     * <p>Run a task once a notification has been added after
+     * <code>nextSequenceNumber</code>, or this buffer has been
+     * discarded.  The task is run at once if this already happened.
+     * It may be run by a thread sending a notification, so it must
+     * not block.</p>
+     *
+     * @param nextSequenceNumber the <code>nextSequenceNumber</code> of
+     * the last {@link NotificationResult} seen by the caller.
+     * @param task the task to run.
+     */
+    public void runOnArrival(long nextSequenceNumber, Runnable task);
+
+    /**
+     * <p>Returns a line describing the notifications kept by this
+     * buffer, such as their number and bytes and how many were
+     * dropped.</p>
+     */
+    public String getStatistics();
+
     /**
      * <p>Discard this buffer.</p>
      */
@@ -49,9 +49,19 @@ package com.sun.jmx.remote.opt.internal;
 import java.io.IOException;
 
 import com.sun.jmx.remote.opt.util.ClassLogger;
+import com.sun.jmx.remote.opt.util.VirtualThreads;
 
 public abstract class ServerCommunicatorAdmin {
     public ServerCommunicatorAdmin(long timeout) {
+	this(timeout, false);
+    }
+
+    /**
+     * Constructs a ServerCommunicatorAdmin whose timeout is watched
+     * by a virtual thread if <code>virtual</code> is true and the JDK
+     * supports them.
+     */
+    public ServerCommunicatorAdmin(long timeout, boolean virtual) {
 	if (logger.traceOn()) {
 	    logger.trace("Constructor",
 			 "Creates a new ServerCommunicatorAdmin object "+
@@ -63,11 +73,12 @@ public abstract class ServerCommunicatorAdmin {
 	timestamp = 0;
         if (timeout < Long.MAX_VALUE) {
             Runnable timeoutTask = new Timeout();
-            final Thread t = new Thread(timeoutTask);
+            final Thread t = VirtualThreads.newThread(timeoutTask, virtual);
             t.setName("JMX server connection timeout " + t.getName());
             // If you change this name you will need to change a unit test
 	    // (NoServerTimeoutTest)
             t.setDaemon(true);
+            timeoutThread = t;
             t.start();
         }
     }
@@ -113,8 +124,7 @@ public abstract class ServerCommunicatorAdmin {
 	    if (--currentJobs == 0) {
 		timestamp = System.currentTimeMillis();
 		logtime("Admin: Timestamp=",timestamp);
-		// tells the adminor to restart waiting with timeout
-		lock.notify();
+		// the adminor will see the new timestamp when it wakes up
 	    }
 	    return terminated;
 	}
@@ -141,89 +151,92 @@ public abstract class ServerCommunicatorAdmin {
 	    }
 
 	    terminated = true;
+	}
 
-	    // tell Timeout to terminate
-	    lock.notify();
+	// tell Timeout to terminate
+	if (timeoutThread != null && timeoutThread != Thread.currentThread()) {
+	    timeoutThread.interrupt();
 	}
     }
 
 // --------------------------------------------------------------
 // private classes 
 // --------------------------------------------------------------
+    /*
+     * The adminor sleeps outside of the lock, so that a virtual thread
+     * does not keep its carrier while waiting.  It is interrupted when
+     * this object is terminated.
+     */
     private class Timeout implements Runnable {
 	public void run() {
-	    boolean stopping = false;
-
 	    synchronized(lock) {
 		if (timestamp == 0) timestamp = System.currentTimeMillis();
 		logtime("Admin: timeout=",timeout);
 		logtime("Admin: Timestamp=",timestamp);
-		
-		while(!terminated) {
-		    try {
-			// wait until there is no more job
-			while(!terminated && currentJobs != 0) {
-			    if (logger.traceOn()) {
-				logger.trace("Timeout-run", 
-					     "Waiting without timeout.");
-			    }
-			    
-			    lock.wait();
-			}
-
-			if (terminated) return;
+	    }
 
-			final long remaining =
-			    timeout - (System.currentTimeMillis() - timestamp);
-			    
-			logtime("Admin: remaining timeout=",remaining);
+	    while(true) {
+		long remaining;
 
-			if (remaining > 0) {
-				
-			    if (logger.traceOn()) {
-				logger.trace("Timeout-run", 
-					     "Waiting with timeout: "+
-					     remaining + " ms remaining");
-			    }
+		synchronized(lock) {
+		    if (terminated) return;
 
-			    lock.wait(remaining);
+		    if (currentJobs != 0) {
+			// check again after a timeout, the timestamp will
+			// be updated when there is no more job
+			if (logger.traceOn()) {
+			    logger.trace("Timeout-run", 
+					 "Waiting while there are jobs.");
 			}
 
-			if (currentJobs > 0) continue;
-
+			remaining = Math.max(timeout, MIN_JOB_CHECK);
+		    } else {
 			final long elapsed = 
 			    System.currentTimeMillis() - timestamp;
 			logtime("Admin: elapsed=",elapsed);
 
-			if (!terminated && elapsed > timeout) {
+			remaining = timeout - elapsed;
+			logtime("Admin: remaining timeout=",remaining);
+
+			if (remaining <= 0) {
 			    if (logger.traceOn()) {
 				logger.trace("Timeout-run", 
 					     "timeout elapsed");
 			    }
 			    logtime("Admin: timeout elapsed! "+
 				    elapsed+">",timeout);
-				// stopping
+			    // stopping
 			    terminated = true;
-			    
-			    stopping = true;
 			    break;
 			}
-		    } catch (InterruptedException ire) {
-			logger.warning("Timeout-run","Unexpected Exception: "+
-				       ire);
-			logger.debug("Timeout-run",ire);
-			return;
-		    }	
+
+			if (logger.traceOn()) {
+			    logger.trace("Timeout-run", 
+					 "Waiting with timeout: "+
+					 remaining + " ms remaining");
+			}
+		    }
 		}
-	    }
 
-	    if (stopping) {
-		if (logger.traceOn()) {
-		    logger.trace("Timeout-run", "Call the doStop.");
+		try {
+		    Thread.sleep(remaining);
+		} catch (InterruptedException ire) {
+		    synchronized(lock) {
+			if (terminated) return;
+		    }
+
+		    logger.warning("Timeout-run","Unexpected Exception: "+
+				   ire);
+		    logger.debug("Timeout-run",ire);
+		    return;
 		}
-		
-		doStop();
 	    }
+
+	    if (logger.traceOn()) {
+		logger.trace("Timeout-run", "Call the doStop.");
+	    }
+
+	    doStop();
 	}
     }
 
@@ -240,6 +253,10 @@ public abstract class ServerCommunicatorAdmin {
     private int currentJobs = 0;
 
     private long timeout;
+    private Thread timeoutThread;
+
+    // the shortest period to check whether the jobs are finished
+    private static final long MIN_JOB_CHECK = 1000;
 
     // state issue
     private boolean terminated = false;
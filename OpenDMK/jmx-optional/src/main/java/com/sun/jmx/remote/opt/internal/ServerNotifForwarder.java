@@ -53,7 +53,6 @@ import java.security.PrivilegedAction;
 import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
 import java.util.Set;
-import java.util.HashSet;
 import java.util.Map;
 
 import javax.management.ObjectInstance;
@@ -219,6 +218,15 @@ public class ServerNotifForwarder {
         return nr;
     }
 
+    /**
+     * Runs a task once a notification has been added after
+     * <code>nextSequenceNumber</code>, see {@link
+     * NotificationBuffer#runOnArrival}.
+     */
+    public void runOnArrival(long nextSequenceNumber, Runnable task) {
+        notifBuffer.runOnArrival(nextSequenceNumber, task);
+    }
+
     public void terminate() {
         if (logger.traceOn()) {
             logger.trace("terminate", "Be called.");
@@ -313,7 +321,7 @@ public class ServerNotifForwarder {
     private final static int[] listenerCounterLock = new int[0];
 
     private NotificationBuffer notifBuffer;
-    private Set listenerList = new HashSet();
+    private Set listenerList = new ListenerIndex();
 
     private boolean terminated = false;
     private final int[] terminationLock = new int[0];
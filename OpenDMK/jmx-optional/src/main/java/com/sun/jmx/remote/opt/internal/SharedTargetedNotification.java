@@ -0,0 +1,120 @@
+/*
+ * @(#)SharedTargetedNotification.java	1.1
+ *
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright (c) 2007 Sun Microsystems, Inc. All Rights Reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU General
+ * Public License Version 2 only ("GPL") or the Common Development and
+ * Distribution License("CDDL")(collectively, the "License"). You may not use
+ * this file except in compliance with the License. You can obtain a copy of the
+ * License at http://opendmk.dev.java.net/legal_notices/licenses.txt or in the 
+ * LEGAL_NOTICES folder that accompanied this code. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file found at
+ *     http://opendmk.dev.java.net/legal_notices/licenses.txt
+ * or in the LEGAL_NOTICES folder that accompanied this code.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.
+ * 
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * 
+ *       "Portions Copyrighted [year] [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding
+ * 
+ *       "[Contributor] elects to include this software in this distribution
+ *        under the [CDDL or GPL Version 2] license."
+ * 
+ * If you don't indicate a single choice of license, a recipient has the option
+ * to distribute your version of this file under either the CDDL or the GPL
+ * Version 2, or to extend the choice of license to its licensees as provided
+ * above. However, if you add GPL Version 2 code and therefore, elected the
+ * GPL Version 2 license, then the option applies only if the new code is made
+ * subject to such option by the copyright holder.
+ * 
+ */
+
+
+package com.sun.jmx.remote.opt.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+
+import javax.management.Notification;
+
+import javax.management.remote.TargetedNotification;
+
+/**
+ * <p>A {@link TargetedNotification} returned by {@link
+ * ArrayNotificationBuffer}.  All the targets of a notification in the
+ * buffer share its serialized form, which is made the first time it is
+ * asked for and released with the buffered notification.  A transport
+ * sending the same notification to many clients can then write these
+ * bytes for each of them instead of serializing the notification
+ * again.</p>
+ *
+ * <p>This class is not sent itself: it is serialized as a plain
+ * <code>TargetedNotification</code>.</p>
+ */
+public class SharedTargetedNotification extends TargetedNotification {
+
+    private static final long serialVersionUID = 4196738651208841712L;
+
+    SharedTargetedNotification(SerializedForm form, Integer listenerID) {
+	super(form.notification, listenerID);
+	this.form = form;
+    }
+
+    /**
+     * Returns the output of {@link ObjectOutputStream#writeObject(Object)}
+     * for the notification.  The returned array must not be modified.
+     *
+     * @exception IOException if the notification cannot be serialized,
+     * for example a <code>NotSerializableException</code> because of
+     * its user data.
+     */
+    public byte[] getSerializedNotification() throws IOException {
+	return form.getBytes();
+    }
+
+    private Object writeReplace() {
+	return new TargetedNotification(getNotification(), getListenerID());
+    }
+
+    /*
+     * The serialized form of a notification, kept by the buffer as
+     * long as the notification.
+     */
+    static class SerializedForm {
+	SerializedForm(Notification notification) {
+	    this.notification = notification;
+	}
+
+	synchronized byte[] getBytes() throws IOException {
+	    if (bytes == null) {
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		final ObjectOutputStream oos = new ObjectOutputStream(baos);
+		oos.writeObject(notification);
+		oos.close();
+		bytes = baos.toByteArray();
+	    }
+	    return bytes;
+	}
+
+	final Notification notification;
+	private byte[] bytes;
+    }
+
+    private final transient SerializedForm form;
+}
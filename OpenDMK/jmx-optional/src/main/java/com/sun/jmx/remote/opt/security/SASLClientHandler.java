@@ -104,6 +104,10 @@ public class SASLClientHandler implements ProfileClient {
         } else {
             throw new IOException("Not an instance of SocketConnectionIf");
         }
+        if (socket == null) {
+            // a Unix domain socket connection for example
+            throw new IOException("The connection has no socket");
+        }
 
         // Prepare parameters for creating SASL client
         //
@@ -251,14 +255,25 @@ public class SASLClientHandler implements ProfileClient {
             // Replace the current input/output streams in
             // MessageConnection by the SASL input/output streams
             //
+            SocketConnectionIf sc = (SocketConnectionIf)mc;
+            stats = new SASLStatistics();
             SASLInputStream saslis =
-                new SASLInputStream(saslClnt, socket.getInputStream());
+                new SASLInputStream(saslClnt, sc.getInputStream(), stats);
             SASLOutputStream saslos =
-                new SASLOutputStream(saslClnt, socket.getOutputStream());
-            ((SocketConnectionIf)mc).replaceStreams(saslis, saslos);
+                new SASLOutputStream(saslClnt, sc.getOutputStream(), stats);
+            sc.replaceStreams(saslis, saslos);
         }
     }
 
+    /**
+     * Returns the statistics of the SASL buffers of the connection,
+     * or null if the negotiated quality of protection is
+     * authentication only or the profile has not been activated.
+     */
+    public SASLStatistics getStatistics() {
+	return stats;
+    }
+
     public void terminate() throws IOException {
         saslClnt.dispose();
     }
@@ -351,6 +366,7 @@ public class SASLClientHandler implements ProfileClient {
     private Map env = null;
     private MessageConnection mc = null;
     private Socket socket = null;
+    private SASLStatistics stats = null;
     private String mechanism = null;
     private String profile = null;
     private static final byte[] EMPTY = new byte[0];
@@ -62,23 +62,36 @@ import com.sun.jmx.remote.opt.util.ClassLogger;
 /**
  * This class is used by clients of the Java SASL that need
  * to create streams using SaslClient's wrap/unwrap.
+ *
+ * <p>The bytes of the underlying stream are read ahead in a buffer
+ * reused for all the SASL buffers, so that a length and its SASL
+ * buffer, or several small SASL buffers, are usually read at
+ * once.</p>
  */
 public class SASLInputStream extends InputStream {
 
     private int recvMaxBufSize = 65536;
     private byte[] saslBuffer;	         // buffer for storing raw bytes
-    private byte[] lenBuf = new byte[4]; // buffer for storing length
+    private int rawPos = 0;		 // next raw byte in saslBuffer
+    private int rawCount = 0;		 // raw bytes stored in saslBuffer
     private byte[] buf = new byte[0];    // buffer for storing processed bytes
     private int bufPos = 0;		 // read position in buf
     private InputStream in;		 // underlying input stream
     private SaslClient sc;
     private SaslServer ss;
+    private final SASLStatistics stats;
 
     public SASLInputStream(SaslClient sc, InputStream in) throws IOException {
+	this(sc, in, new SASLStatistics());
+    }
+
+    SASLInputStream(SaslClient sc, InputStream in, SASLStatistics stats)
+	    throws IOException {
 	super();
 	this.in = in;
 	this.sc = sc;
 	this.ss = null;
+	this.stats = stats;
 
 	String str = (String) sc.getNegotiatedProperty(Sasl.MAX_BUFFER);
 	if (str != null) {
@@ -89,14 +102,20 @@ public class SASLInputStream extends InputStream {
 		    " property must be numeric string: " + str);
 	    }
 	}
-	saslBuffer = new byte[recvMaxBufSize];
+	saslBuffer = new byte[recvMaxBufSize + 4];
     }
 
     public SASLInputStream(SaslServer ss, InputStream in) throws IOException {
+	this(ss, in, new SASLStatistics());
+    }
+
+    SASLInputStream(SaslServer ss, InputStream in, SASLStatistics stats)
+	    throws IOException {
 	super();
 	this.in = in;
 	this.ss = ss;
 	this.sc = null;
+	this.stats = stats;
 
 	String str = (String) ss.getNegotiatedProperty(Sasl.MAX_BUFFER);
 	if (str != null) {
@@ -107,29 +126,24 @@ public class SASLInputStream extends InputStream {
 		    " property must be numeric string: " + str);
 	    }
 	}
-	saslBuffer = new byte[recvMaxBufSize];
+	saslBuffer = new byte[recvMaxBufSize + 4];
     }
 
     public int read() throws IOException {
-	byte[] inBuf = new byte[1];
-	int count = read(inBuf, 0, 1);
-	if (count > 0) {
-	    return inBuf[0];
-	} else {
+	if (bufPos >= buf.length && !fillNonEmpty()) {
 	    return -1;
 	}
+	return buf[bufPos++] & 0xff;
     }
 
     public int read(byte[] inBuf, int start, int count) throws IOException {
 
-	if (bufPos >= buf.length) {
-	    int actual = fill();   // read and unwrap next SASL buffer
-	    while (actual == 0) {  // ignore zero length content
-		actual = fill();
-	    }
-	    if (actual == -1) {
-		return -1;    // EOF
-	    }
+	if (count == 0) {
+	    return 0;
+	}
+
+	if (bufPos >= buf.length && !fillNonEmpty()) {
+	    return -1;    // EOF
 	}
 
 	int avail = buf.length - bufPos;
@@ -149,6 +163,18 @@ public class SASLInputStream extends InputStream {
 	}
     }
 
+    /**
+     * Reads and unwraps SASL buffers until some bytes are available.
+     * @return false on EOF
+     */
+    private boolean fillNonEmpty() throws IOException {
+	int actual = fill();   // read and unwrap next SASL buffer
+	while (actual == 0) {  // ignore zero length content
+	    actual = fill();
+	}
+	return actual != -1;
+    }
+
     /**
      * Fills the buf with more data by reading a SASL buffer, unwrapping it,
      * and leaving the bytes in buf for read() to return.
@@ -156,13 +182,12 @@ public class SASLInputStream extends InputStream {
      */
     private int fill() throws IOException {
 	// Read in length of buffer
-	int actual = readFully(lenBuf, 4);
-	if (actual != 4) {
+	if (!readAhead(4)) {
 	    return -1;
 	}
-	int len = networkByteOrderToInt(lenBuf, 0, 4);
+	int len = networkByteOrderToInt(saslBuffer, rawPos, 4);
 
-	if (len > recvMaxBufSize) {
+	if (len < 0 || len > recvMaxBufSize) {
 	    throw new IOException(
 		len + "exceeds the negotiated receive buffer size limit:" + 
 		recvMaxBufSize);
@@ -173,48 +198,59 @@ public class SASLInputStream extends InputStream {
 	}
 
 	// Read SASL buffer
-	actual = readFully(saslBuffer, len);
-	if (actual != len) {
+	if (!readAhead(4 + len)) {
 	    throw new EOFException("Expecting to read " + len +
-		" bytes but got " + actual + " bytes before EOF");
+		" bytes but got " + (rawCount - rawPos - 4) +
+		" bytes before EOF");
 	}
 
 	// Unwrap
+	final long start = System.nanoTime();
 	if (sc != null)
-	    buf = sc.unwrap(saslBuffer, 0, len);
+	    buf = sc.unwrap(saslBuffer, rawPos + 4, len);
 	else
-	    buf = ss.unwrap(saslBuffer, 0, len);
+	    buf = ss.unwrap(saslBuffer, rawPos + 4, len);
+	stats.frameRead(buf.length, len + 4,
+			(System.nanoTime() - start) / 1000);
 
+	rawPos += 4 + len;
 	bufPos = 0;
 
 	return buf.length;
     }
 
     /**
-     * Read requested number of bytes before returning.
-     * @return The number of bytes actually read; -1 if none read
+     * Reads from the underlying stream until the given number of raw
+     * bytes is stored, reading as many bytes as are available.
+     * @return false if EOF is reached before
      */
-    private int readFully(byte[] inBuf, int total) throws IOException {
-	int count, pos = 0;
+    private boolean readAhead(int total) throws IOException {
+	if (rawCount - rawPos >= total) {
+	    return true;
+	}
 
-	if (logger.traceOn()) {
-	    logger.trace("readFully", "readFully " + total + " from " + in);
+	// move the remaining bytes to the start of the buffer
+	if (rawPos > 0) {
+	    System.arraycopy(saslBuffer, rawPos, saslBuffer, 0,
+			     rawCount - rawPos);
+	    rawCount -= rawPos;
+	    rawPos = 0;
 	}
 
-	while (total > 0) {
-	    count = in.read(inBuf, pos, total);
+	while (rawCount < total) {
+	    int count = in.read(saslBuffer, rawCount,
+				saslBuffer.length - rawCount);
 
 	    if (logger.traceOn()) {
-		logger.trace("readFully", "readFully read " + count);
+		logger.trace("readAhead", "read " + count + " from " + in);
 	    }
 
-	    if (count == -1 ) {
-		return (pos == 0? -1 : pos);
+	    if (count == -1) {
+		return false;
 	    }
-	    pos += count;
-	    total -= count;
+	    rawCount += count;
 	}
-	return pos;
+	return true;
     }
 
     public int available() throws IOException {
@@ -58,21 +58,41 @@ import java.io.OutputStream;
 
 import com.sun.jmx.remote.opt.util.ClassLogger;
 
+/**
+ * This class is used by clients of the Java SASL that need
+ * to create streams using SaslClient's wrap/unwrap.
+ *
+ * <p>The bytes written are collected until they fill a SASL buffer
+ * of the negotiated raw send size, or until the stream is flushed.
+ * The connection flushes its stream after each message, so a message
+ * smaller than the raw send size is wrapped as one SASL buffer, which
+ * is written with its length in one write to the underlying
+ * stream.</p>
+ */
 public class SASLOutputStream extends OutputStream {
 
     private int rawSendSize = 65536;
-    private byte[] lenBuf = new byte[4];  // buffer for storing length
+    private byte[] saslBuffer;		  // bytes not yet wrapped
+    private int count = 0;		  // bytes stored in saslBuffer
+    private byte[] frame = new byte[0];   // length and wrapped token
     private OutputStream out;		  // underlying output stream
     private SaslClient sc;
     private SaslServer ss;
+    private final SASLStatistics stats;
 
     public SASLOutputStream(SaslClient sc, OutputStream out)
 	throws IOException {
+	this(sc, out, new SASLStatistics());
+    }
+
+    SASLOutputStream(SaslClient sc, OutputStream out, SASLStatistics stats)
+	throws IOException {
 
 	super();
 	this.out = out;
 	this.sc = sc;
 	this.ss = null;
+	this.stats = stats;
 
 	String str = (String) sc.getNegotiatedProperty(Sasl.RAW_SEND_SIZE);
 	if (str != null) {
@@ -83,15 +103,22 @@ public class SASLOutputStream extends OutputStream {
 		    " property must be numeric string: " + str);
 	    }
 	}
+	saslBuffer = new byte[rawSendSize];
     }
 
     public SASLOutputStream(SaslServer ss, OutputStream out)
 	throws IOException {
+	this(ss, out, new SASLStatistics());
+    }
+
+    SASLOutputStream(SaslServer ss, OutputStream out, SASLStatistics stats)
+	throws IOException {
 
 	super();
 	this.out = out;
 	this.ss = ss;
 	this.sc = null;
+	this.stats = stats;
 
 	String str = (String) ss.getNegotiatedProperty(Sasl.RAW_SEND_SIZE);
 	if (str != null) {
@@ -102,54 +129,94 @@ public class SASLOutputStream extends OutputStream {
 		    " property must be numeric string: " + str);
 	    }
 	}
+	saslBuffer = new byte[rawSendSize];
     }
 
     public void write(int b) throws IOException {
-	byte[] buffer = new byte[1];
-	buffer[0] = (byte)b;
-	write(buffer, 0, 1);
+	if (count == rawSendSize) {
+	    writeFrame(saslBuffer, 0, count);
+	    count = 0;
+	}
+	saslBuffer[count++] = (byte)b;
     }
 
     public void write(byte[] buffer, int offset, int total) throws IOException {
-	int count;
-	byte[] wrappedToken, saslBuffer;
-	    
-	// "Packetize" buffer to be within rawSendSize
 	if (logger.traceOn()) {
 	    logger.trace("write", "Total size: " + total);
 	}
 
-	for (int i = 0; i < total; i += rawSendSize) {
-
-	    // Calculate length of current "packet"
-	    count = (total - i) < rawSendSize ? (total - i) : rawSendSize;
-
-	    // Generate wrapped token 
-	    if (sc != null)
-		wrappedToken = sc.wrap(buffer, offset+i, count);
-	    else
-		wrappedToken = ss.wrap(buffer, offset+i, count);
+	while (total > 0) {
+	    if (count == 0 && total >= rawSendSize) {
+		// a whole "packet" is wrapped without copying it
+		writeFrame(buffer, offset, rawSendSize);
+		offset += rawSendSize;
+		total -= rawSendSize;
+		continue;
+	    }
 
-	    // Write out length
-	    intToNetworkByteOrder(wrappedToken.length, lenBuf, 0, 4);
+	    int n = Math.min(total, rawSendSize - count);
+	    System.arraycopy(buffer, offset, saslBuffer, count, n);
+	    count += n;
+	    offset += n;
+	    total -= n;
 
-	    if (logger.traceOn()) {
-		logger.trace("write", "sending size: " + wrappedToken.length);
+	    if (count == rawSendSize) {
+		writeFrame(saslBuffer, 0, count);
+		count = 0;
 	    }
+	}
+    }
 
-	    out.write(lenBuf, 0, 4);
-
-	    // Write out wrapped token
-	    out.write(wrappedToken, 0, wrappedToken.length);
+    public void flush() throws IOException {
+	if (count > 0) {
+	    writeFrame(saslBuffer, 0, count);
+	    count = 0;
 	}
+	out.flush();
     }
 
     public void close() throws IOException {
+	try {
+	    flush();
+	} finally {
+	    if (sc != null)
+		sc.dispose();
+	    else
+		ss.dispose();
+	    out.close();
+	}
+    }
+
+    /**
+     * Wraps the given bytes and writes the length and the wrapped
+     * token.
+     */
+    private void writeFrame(byte[] buffer, int offset, int len)
+	throws IOException {
+
+	// Generate wrapped token 
+	final long start = System.nanoTime();
+	byte[] wrappedToken;
 	if (sc != null)
-	    sc.dispose();
+	    wrappedToken = sc.wrap(buffer, offset, len);
 	else
-	    ss.dispose();
-	out.close();
+	    wrappedToken = ss.wrap(buffer, offset, len);
+	final long micros = (System.nanoTime() - start) / 1000;
+
+	if (logger.traceOn()) {
+	    logger.trace("writeFrame", "sending size: " + wrappedToken.length);
+	}
+
+	// Write out length and wrapped token
+	final int size = 4 + wrappedToken.length;
+	if (frame.length < size) {
+	    frame = new byte[size];
+	}
+	intToNetworkByteOrder(wrappedToken.length, frame, 0, 4);
+	System.arraycopy(wrappedToken, 0, frame, 4, wrappedToken.length);
+	out.write(frame, 0, size);
+
+	stats.frameWritten(len, size, micros);
     }
 
     /**
@@ -101,6 +101,10 @@ public class SASLServerHandler implements ProfileServer {
         } else {
             throw new IOException("Not an instance of SocketConnectionIf");
         }
+        if (socket == null) {
+            // a Unix domain socket connection for example
+            throw new IOException("The connection has no socket");
+        }
 
         // Prepare parameters for creating SASL server
         //
@@ -182,11 +186,13 @@ public class SASLServerHandler implements ProfileServer {
 	    // Replace the current input/output streams in
 	    // MessageConnection by the SASL input/output streams
 	    //
+	    SocketConnectionIf sc = (SocketConnectionIf)mc;
+	    stats = new SASLStatistics();
 	    SASLInputStream saslis =
-		new SASLInputStream(saslServer, socket.getInputStream());
+		new SASLInputStream(saslServer, sc.getInputStream(), stats);
 	    SASLOutputStream saslos =
-		new SASLOutputStream(saslServer, socket.getOutputStream());
-	    ((SocketConnectionIf)mc).replaceStreams(saslis, saslos);
+		new SASLOutputStream(saslServer, sc.getOutputStream(), stats);
+	    sc.replaceStreams(saslis, saslos);
 	}
 	// Retrieve authorization id
 	//
@@ -202,6 +208,15 @@ public class SASLServerHandler implements ProfileServer {
 	return subject;
     }
 
+    /**
+     * Returns the statistics of the SASL buffers of the connection,
+     * or null if the negotiated quality of protection is
+     * authentication only or the profile has not been activated.
+     */
+    public SASLStatistics getStatistics() {
+	return stats;
+    }
+
     public void terminate() throws IOException {
         saslServer.dispose();
     }
@@ -224,6 +239,7 @@ public class SASLServerHandler implements ProfileServer {
     private Map env = null;
     private MessageConnection mc = null;
     private Socket socket = null;
+    private SASLStatistics stats = null;
     private String mechanism = null;
     private String profile = null;
     private Subject subject = null;
@@ -0,0 +1,155 @@
+/*
+ * @(#)file      SASLStatistics.java
+ * @(#)author    Sun Microsystems, Inc.
+ * @(#)version   1.1
+ * @(#)lastedit  07/03/08
+ * @(#)build     @BUILD_TAG_PLACEHOLDER@
+ *
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright (c) 2007 Sun Microsystems, Inc. All Rights Reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU General
+ * Public License Version 2 only ("GPL") or the Common Development and
+ * Distribution License("CDDL")(collectively, the "License"). You may not use
+ * this file except in compliance with the License. You can obtain a copy of the
+ * License at http://opendmk.dev.java.net/legal_notices/licenses.txt or in the 
+ * LEGAL_NOTICES folder that accompanied this code. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file found at
+ *     http://opendmk.dev.java.net/legal_notices/licenses.txt
+ * or in the LEGAL_NOTICES folder that accompanied this code.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.
+ * 
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * 
+ *       "Portions Copyrighted [year] [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding
+ * 
+ *       "[Contributor] elects to include this software in this distribution
+ *        under the [CDDL or GPL Version 2] license."
+ * 
+ * If you don't indicate a single choice of license, a recipient has the option
+ * to distribute your version of this file under either the CDDL or the GPL
+ * Version 2, or to extend the choice of license to its licensees as provided
+ * above. However, if you add GPL Version 2 code and therefore, elected the
+ * GPL Version 2 license, then the option applies only if the new code is made
+ * subject to such option by the copyright holder.
+ * 
+ */
+
+package com.sun.jmx.remote.opt.security;
+
+/**
+ * Statistics of the SASL frames of a connection whose negotiated
+ * quality of protection is integrity or privacy.  The data bytes are
+ * counted before wrapping and after unwrapping, the wire bytes are
+ * the wrapped tokens with their length.
+ */
+public class SASLStatistics {
+
+    SASLStatistics() {
+    }
+
+    synchronized void frameWritten(int size, int wireSize, long micros) {
+	framesWritten++;
+	bytesWritten += size;
+	wireBytesWritten += wireSize;
+	wrapMicros += micros;
+    }
+
+    synchronized void frameRead(int size, int wireSize, long micros) {
+	framesRead++;
+	bytesRead += size;
+	wireBytesRead += wireSize;
+	unwrapMicros += micros;
+    }
+
+    /**
+     * Returns the number of frames written.
+     */
+    public synchronized long getFramesWritten() {
+	return framesWritten;
+    }
+
+    /**
+     * Returns the number of bytes written by the connection before
+     * wrapping.
+     */
+    public synchronized long getBytesWritten() {
+	return bytesWritten;
+    }
+
+    /**
+     * Returns the number of bytes written on the wire, lengths
+     * included.
+     */
+    public synchronized long getWireBytesWritten() {
+	return wireBytesWritten;
+    }
+
+    /**
+     * Returns the time spent wrapping the frames written, in
+     * microseconds.
+     */
+    public synchronized long getWrapTime() {
+	return wrapMicros;
+    }
+
+    /**
+     * Returns the number of frames read.
+     */
+    public synchronized long getFramesRead() {
+	return framesRead;
+    }
+
+    /**
+     * Returns the number of bytes read by the connection after
+     * unwrapping.
+     */
+    public synchronized long getBytesRead() {
+	return bytesRead;
+    }
+
+    /**
+     * Returns the number of bytes read on the wire, lengths included.
+     */
+    public synchronized long getWireBytesRead() {
+	return wireBytesRead;
+    }
+
+    /**
+     * Returns the time spent unwrapping the frames read, in
+     * microseconds.
+     */
+    public synchronized long getUnwrapTime() {
+	return unwrapMicros;
+    }
+
+    public synchronized String toString() {
+	return "written: " + framesWritten + " frames, " + bytesWritten +
+	    " bytes in " + wireBytesWritten + " on the wire, wrapped in " +
+	    wrapMicros + "us; read: " + framesRead + " frames, " +
+	    bytesRead + " bytes in " + wireBytesRead +
+	    " on the wire, unwrapped in " + unwrapMicros + "us";
+    }
+
+    private long framesWritten;
+    private long bytesWritten;
+    private long wireBytesWritten;
+    private long wrapMicros;
+    private long framesRead;
+    private long bytesRead;
+    private long wireBytesRead;
+    private long unwrapMicros;
+}
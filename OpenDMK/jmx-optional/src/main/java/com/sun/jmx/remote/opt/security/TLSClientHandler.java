@@ -97,16 +97,20 @@ public class TLSClientHandler implements ProfileClient {
         } else {
             throw new IOException("Not an instance of SocketConnectionIf");
         }
+        if (socket == null) {
+            // a Unix domain socket connection for example
+            throw new IOException("The connection has no socket");
+        }
 
         // Get SSLSocketFactory
         //
-        SSLSocketFactory ssf =
-            (SSLSocketFactory) env.get("jmx.remote.tls.socket.factory");
-
-        if (ssf == null)
-            ssf = (SSLSocketFactory) SSLSocketFactory.getDefault();
+        SSLSocketFactory ssf = TLSServerHandler.getSocketFactory(env);
 
-        String hostname = socket.getInetAddress().getHostName();
+        // The server address is the key of the session cache: it must
+        // be the same for every connection to the server for a session
+        // to be resumed when reconnecting.
+        //
+        String hostname = TLSServerHandler.getPeerHost(socket);
         int port = socket.getPort();
 	if (logger.traceOn()) {
 	    logger.trace("initialize", "TLS: Hostname = " + hostname);
@@ -226,7 +230,7 @@ public class TLSClientHandler implements ProfileClient {
 	    logger.trace("activate", ">>>>> TLS handshake <<<<<");
 	    logger.trace("activate", "TLS: Start TLS Handshake");
 	}
-        ts.startHandshake();
+        TLSServerHandler.handshake(ts, TLSStatistics.getClientStatistics());
 	if (logger.traceOn()) {
 	    SSLSession session = ts.getSession();
 	    if (session != null) {
@@ -54,10 +54,15 @@ import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketAddress;
 import java.security.AccessController;
 import java.security.Principal;
 import java.security.PrivilegedAction;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
 import java.util.Map;
 import java.util.StringTokenizer;
 
@@ -70,7 +75,6 @@ import javax.net.ssl.SSLSession;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 import javax.security.auth.Subject;
-import javax.security.cert.X509Certificate;
 
 import com.sun.jmx.remote.generic.ProfileServer;
 import com.sun.jmx.remote.opt.util.ClassLogger;
@@ -193,6 +197,97 @@ public class TLSServerHandler implements ProfileServer {
 	}
     }
 
+    /**
+     * Returns the SSLSocketFactory given in the environment, or the
+     * default one.  The default factory is looked up once: all the
+     * connections share its SSLContext, and so its session caches.
+     */
+    static SSLSocketFactory getSocketFactory(Map env) {
+        SSLSocketFactory ssf =
+            (SSLSocketFactory) env.get("jmx.remote.tls.socket.factory");
+	if (ssf != null) {
+	    return ssf;
+	}
+
+	synchronized (TLSServerHandler.class) {
+	    if (defaultFactory == null) {
+		defaultFactory = (SSLSocketFactory) SSLSocketFactory.getDefault();
+	    }
+	    return defaultFactory;
+	}
+    }
+
+    /**
+     * Returns the host of the peer of the given socket as it was
+     * given when connecting, without a reverse name lookup.  On the
+     * client side the host and port are the key of the session cache,
+     * so that a session is resumed only with the same server address.
+     */
+    static String getPeerHost(Socket socket) {
+	final SocketAddress sa = socket.getRemoteSocketAddress();
+	if (getHostString != null && sa instanceof InetSocketAddress) {
+	    try {
+		return (String) getHostString.invoke(sa, new Object[0]);
+	    } catch (Exception e) {
+		// use the address below
+	    }
+	}
+
+	// Before J2SE 7: InetAddress.toString() is "host/address", with
+	// an empty host if it was given as an address.
+	//
+	final InetAddress address = socket.getInetAddress();
+	final String s = address.toString();
+	final int slash = s.indexOf('/');
+	return (slash > 0) ? s.substring(0, slash) : address.getHostAddress();
+    }
+
+    /**
+     * Performs the handshake of the given socket and records it in
+     * the given statistics.
+     *
+     * <p>A handshake is counted as resumed if its session identifier
+     * was seen before, which is exact up to TLS 1.2.  A TLS 1.3
+     * resumption gets a new identifier in JSSE, but keeps the creation
+     * time of the session it resumes: it is also counted as resumed if
+     * the session was created before the handshake started.  This is
+     * approximate, to a millisecond.</p>
+     */
+    static void handshake(SSLSocket ts, TLSStatistics stats)
+	    throws IOException {
+	final long start = System.currentTimeMillis();
+	final long startNanos = System.nanoTime();
+	try {
+	    ts.startHandshake();
+	} catch (IOException e) {
+	    stats.handshakeFailed();
+	    throw e;
+	}
+	final long micros = (System.nanoTime() - startNanos) / 1000;
+
+	final SSLSession session = ts.getSession();
+	final boolean seen =
+	    session != null && stats.sessionSeen(session.getId());
+	stats.handshakeDone(micros,
+			    seen || (session != null &&
+				     session.getCreationTime() < start));
+    }
+
+    private static SSLSocketFactory defaultFactory;
+
+    // InetSocketAddress.getHostString() of J2SE 7
+    private static final Method getHostString;
+    static {
+	Method m = null;
+	try {
+	    m = InetSocketAddress.class.getMethod("getHostString",
+						  new Class[0]);
+	} catch (Exception e) {
+	    // J2SE 6
+	}
+	getHostString = m;
+    }
+
     //-------------
     // Constructors
     //-------------
@@ -220,16 +315,16 @@ public class TLSServerHandler implements ProfileServer {
         } else {
             throw new IOException("Not an instance of SocketConnectionIf");
         }
+        if (socket == null) {
+            // a Unix domain socket connection for example
+            throw new IOException("The connection has no socket");
+        }
 
         // Get SSLSocketFactory
         //
-        SSLSocketFactory ssf =
-            (SSLSocketFactory) env.get("jmx.remote.tls.socket.factory");
-
-        if (ssf == null)
-            ssf = (SSLSocketFactory) SSLSocketFactory.getDefault();
+        SSLSocketFactory ssf = getSocketFactory(env);
 
-        String hostname = socket.getInetAddress().getHostName();
+        String hostname = getPeerHost(socket);
         int port = socket.getPort();
 	if (logger.traceOn()) {
 	    logger.trace("initialize", "TLS: Hostname = " + hostname);
@@ -377,7 +472,7 @@ public class TLSServerHandler implements ProfileServer {
 	    logger.trace("activate", ">>>>> TLS handshake <<<<<");
 	    logger.trace("activate", "TLS: Start TLS Handshake");
 	}
-        ts.startHandshake();
+        handshake(ts, TLSStatistics.getServerStatistics());
 	SSLSession session = ts.getSession();
 	if (session != null) {
 	    if (logger.traceOn()) {
@@ -393,10 +488,12 @@ public class TLSServerHandler implements ProfileServer {
 	    // certificate, if client authentication was carried out.
 	    //
 	    try {
-		final X509Certificate[] certificate =
-		    session.getPeerCertificateChain();
-		if (certificate != null && certificate[0] != null) {
-		    Principal p = certificate[0].getSubjectDN();
+		final Certificate[] certificate =
+		    session.getPeerCertificates();
+		if (certificate != null &&
+		    certificate[0] instanceof X509Certificate) {
+		    Principal p =
+			((X509Certificate) certificate[0]).getSubjectDN();
 		    final String pn = p.getName();
 		    if (bundledJSSE) {
 			try {
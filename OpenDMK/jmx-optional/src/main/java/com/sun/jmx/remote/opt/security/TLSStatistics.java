@@ -0,0 +1,190 @@
+/*
+ * @(#)file      TLSStatistics.java
+ * @(#)author    Sun Microsystems, Inc.
+ * @(#)version   1.1
+ * @(#)lastedit  07/03/08
+ * @(#)build     @BUILD_TAG_PLACEHOLDER@
+ *
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright (c) 2007 Sun Microsystems, Inc. All Rights Reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU General
+ * Public License Version 2 only ("GPL") or the Common Development and
+ * Distribution License("CDDL")(collectively, the "License"). You may not use
+ * this file except in compliance with the License. You can obtain a copy of the
+ * License at http://opendmk.dev.java.net/legal_notices/licenses.txt or in the 
+ * LEGAL_NOTICES folder that accompanied this code. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file found at
+ *     http://opendmk.dev.java.net/legal_notices/licenses.txt
+ * or in the LEGAL_NOTICES folder that accompanied this code.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.
+ * 
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * 
+ *       "Portions Copyrighted [year] [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding
+ * 
+ *       "[Contributor] elects to include this software in this distribution
+ *        under the [CDDL or GPL Version 2] license."
+ * 
+ * If you don't indicate a single choice of license, a recipient has the option
+ * to distribute your version of this file under either the CDDL or the GPL
+ * Version 2, or to extend the choice of license to its licensees as provided
+ * above. However, if you add GPL Version 2 code and therefore, elected the
+ * GPL Version 2 license, then the option applies only if the new code is made
+ * subject to such option by the copyright holder.
+ * 
+ */
+
+package com.sun.jmx.remote.opt.security;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Statistics of the TLS handshakes of the TLS profile in this Java
+ * virtual machine, one instance for the client side and one for the
+ * server side.  A handshake is resumed when it reused a session
+ * negotiated by an earlier connection, which avoids the public key
+ * operations of a full handshake.
+ */
+public class TLSStatistics {
+
+    private TLSStatistics() {
+    }
+
+    /**
+     * Returns the statistics of the handshakes made by the clients.
+     */
+    public static TLSStatistics getClientStatistics() {
+	return client;
+    }
+
+    /**
+     * Returns the statistics of the handshakes made by the connector
+     * servers.
+     */
+    public static TLSStatistics getServerStatistics() {
+	return server;
+    }
+
+    synchronized void handshakeDone(long micros, boolean resumed) {
+	if (resumed) {
+	    resumedHandshakes++;
+	    resumedMicros += micros;
+	} else {
+	    fullHandshakes++;
+	    fullMicros += micros;
+	}
+	if (micros > maxMicros) {
+	    maxMicros = micros;
+	}
+    }
+
+    synchronized void handshakeFailed() {
+	failedHandshakes++;
+    }
+
+    /**
+     * Records the identifier of a session and tells whether it was
+     * recorded before.  The last {@link #SEEN_SESSIONS} identifiers
+     * are kept.
+     */
+    synchronized boolean sessionSeen(byte[] id) {
+	if (id == null || id.length == 0) {
+	    return false;
+	}
+
+	final char[] key = new char[id.length];
+	for (int i = 0; i < id.length; i++) {
+	    key[i] = (char) (id[i] & 0xff);
+	}
+	return seenSessions.put(new String(key), Boolean.TRUE) != null;
+    }
+
+    /**
+     * Returns the number of handshakes which negotiated a new session.
+     */
+    public synchronized long getFullHandshakes() {
+	return fullHandshakes;
+    }
+
+    /**
+     * Returns the number of handshakes which resumed a session.
+     */
+    public synchronized long getResumedHandshakes() {
+	return resumedHandshakes;
+    }
+
+    /**
+     * Returns the number of handshakes which failed.
+     */
+    public synchronized long getFailedHandshakes() {
+	return failedHandshakes;
+    }
+
+    /**
+     * Returns the mean duration of the full handshakes, in
+     * microseconds.
+     */
+    public synchronized long getFullHandshakeTime() {
+	return (fullHandshakes == 0) ? 0 : fullMicros / fullHandshakes;
+    }
+
+    /**
+     * Returns the mean duration of the resumed handshakes, in
+     * microseconds.
+     */
+    public synchronized long getResumedHandshakeTime() {
+	return (resumedHandshakes == 0) ? 0 :
+	    resumedMicros / resumedHandshakes;
+    }
+
+    /**
+     * Returns the duration of the longest handshake, in microseconds.
+     */
+    public synchronized long getMaxHandshakeTime() {
+	return maxMicros;
+    }
+
+    public synchronized String toString() {
+	return "full=" + fullHandshakes +
+	    " mean=" + getFullHandshakeTime() + "us" +
+	    " resumed=" + resumedHandshakes +
+	    " mean=" + getResumedHandshakeTime() + "us" +
+	    " failed=" + failedHandshakes +
+	    " max=" + maxMicros + "us";
+    }
+
+    private static final TLSStatistics client = new TLSStatistics();
+    private static final TLSStatistics server = new TLSStatistics();
+
+    private static final int SEEN_SESSIONS = 1024;
+
+    // the identifiers of the last sessions, in access order
+    private final Map/*<String,Boolean>*/ seenSessions =
+	new LinkedHashMap(16, 0.75f, true) {
+	    protected boolean removeEldestEntry(Map.Entry eldest) {
+		return size() > SEEN_SESSIONS;
+	    }
+	};
+
+    private long fullHandshakes;
+    private long resumedHandshakes;
+    private long failedHandshakes;
+    private long fullMicros;
+    private long resumedMicros;
+    private long maxMicros;
+}
@@ -349,6 +349,81 @@ public class EnvHelp {
         return queueSize;
     }
 
+    /**
+     * <p>Name of the attribute that specifies the maximum number of
+     * bytes, as estimated when they are added, of the notifications
+     * kept in the notification buffer of a connector server.  The
+     * oldest notifications are dropped to stay under this number, and
+     * the buffer then only grows up to {@link #BUFFER_SIZE_PROPERTY}
+     * notifications as needed.  The default value is 0, meaning that
+     * the buffer is only bounded by its number of notifications.</p>
+     */
+    public static final String BUFFER_MAX_BYTES_PROPERTY =
+        "jmx.remote.x.notification.buffer.bytes";
+
+    /**
+     * Returns the maximum number of bytes of a notification buffer,
+     * or 0 if it is not bounded by bytes.
+     */
+    public static long getNotifBufferMaxBytes(Map env) {
+        return getIntegerAttribute(env, BUFFER_MAX_BYTES_PROPERTY, 0L,
+                                   0, Long.MAX_VALUE);
+    }
+
+    /**
+     * <p>Name of the attribute that specifies the maximum number of
+     * bytes of the notifications of a single MBean kept in the
+     * notification buffer of a connector server.  The oldest
+     * notifications of an MBean over its quota are dropped, and the
+     * clients listening to that MBean are told that notifications
+     * were lost.  The default value is 0, meaning no quota.</p>
+     */
+    public static final String BUFFER_MAX_BYTES_PER_MBEAN_PROPERTY =
+        "jmx.remote.x.notification.buffer.bytes.per.mbean";
+
+    /**
+     * Returns the maximum number of bytes of the notifications of an
+     * MBean in a notification buffer, or 0 if there is no quota.
+     */
+    public static long getNotifBufferMaxBytesPerMBean(Map env) {
+        return getIntegerAttribute(env, BUFFER_MAX_BYTES_PER_MBEAN_PROPERTY,
+                                   0L, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * <p>Name of the attribute that specifies whether the bytes of a
+     * notification added to a notification buffer bounded by bytes
+     * are its serialized size, rather than a quicker estimate from
+     * its user data.  The serialized form is kept and sent to the
+     * clients using {@link
+     * com.sun.jmx.remote.generic.DeferredObjectWrapping}.  The value
+     * associated with this attribute should be a <code>Boolean</code>
+     * or a <code>String</code>.  The default value is false.</p>
+     */
+    public static final String BUFFER_SERIALIZED_SIZE_PROPERTY =
+        "jmx.remote.x.notification.buffer.serialized.size";
+
+    /**
+     * Returns true if the bytes of the notifications in a buffer are
+     * their serialized size.
+     */
+    public static boolean getNotifBufferSerializedSize(Map env) {
+        final Object o =
+            (env == null) ? null : env.get(BUFFER_SERIALIZED_SIZE_PROPERTY);
+
+        if (o == null) {
+            return false;
+        } else if (o instanceof Boolean) {
+            return ((Boolean)o).booleanValue();
+        } else if (o instanceof String) {
+            return Boolean.valueOf((String)o).booleanValue();
+        }
+
+        throw new IllegalArgumentException("Attribute " +
+                                           BUFFER_SERIALIZED_SIZE_PROPERTY +
+                                           " value must be Boolean or String.");
+    }
+
     /**
      * <p>Name of the attribute that specifies the maximum number of
      * notifications that a client will fetch from its server.. The
@@ -677,6 +752,42 @@ public class EnvHelp {
                                    0, Long.MAX_VALUE);
     }
 
+    /**
+     * <p>Name of the attribute that specifies whether the threads
+     * which mostly wait for a connection or a client, such as the
+     * threads reading the requests of a connection, are virtual
+     * threads.  The default value is given by the system property
+     * of the same name, or is false.  The virtual threads need JDK 21
+     * or later: platform threads are used with an older JDK.</p>
+     */
+    public static final String VIRTUAL_THREADS =
+        "jmx.remote.x.virtual.threads";
+
+    /**
+     * Returns a value telling whether the threads waiting for a
+     * connection or a client are virtual threads.
+     */
+    public static boolean getVirtualThreads(Map env) {
+        Object o = (env == null) ? null : env.get(VIRTUAL_THREADS);
+
+        if (o == null) {
+            o = AccessController.doPrivileged(
+                    new GetPropertyAction(VIRTUAL_THREADS));
+            if (o == null) {
+                return false;
+            }
+        }
+
+        if (o instanceof Boolean) {
+            return ((Boolean)o).booleanValue();
+        } else if (o instanceof String) {
+            return Boolean.valueOf((String)o).booleanValue();
+        }
+
+        throw new IllegalArgumentException("Attribute " + VIRTUAL_THREADS +
+                                           " value must be Boolean or String.");
+    }
+
     /**
      * Converts a map into a valid hash table, i.e.
      * it removes all the 'null' values from the map.
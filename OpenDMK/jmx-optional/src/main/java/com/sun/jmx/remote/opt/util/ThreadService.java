@@ -61,6 +61,17 @@ public class ThreadService {
     }
 
     public ThreadService(int min, int max, boolean simple) {
+	this(min, max, simple, false);
+    }
+
+    /**
+     * Constructs a ThreadService which runs its jobs in virtual
+     * threads if <code>virtual</code> is true and the JDK supports
+     * them.  A virtual thread is started when a job is handed off and
+     * ends when there is no more job to run: no thread is kept
+     * waiting, and <code>min</code> is not used.
+     */
+    public ThreadService(int min, int max, boolean simple, boolean virtual) {
 	if (min < 0) {
 	    throw new IllegalArgumentException("Negative minimal thread number.");
 	}
@@ -72,11 +83,12 @@ public class ThreadService {
 	this.min = min;
 	this.max = max;
 	this.simple = simple;
+	this.virtual = virtual && VirtualThreads.isSupported();
 
 	defaultPriority = Thread.currentThread().getPriority();
 	defaultLoader = getContextClassLoader();
 
-	if (min > 0) {
+	if (min > 0 && !this.virtual) {
 	    JobExecutor.handoff(new ThreadServiceJob());
 	}
     }
@@ -91,6 +103,16 @@ public class ThreadService {
 	synchronized(lock) {
 	    jobList.add(job);
 
+	    if (virtual) {
+		// the running threads take the jobs until there is
+		// no more, start another one if allowed
+		if (total < max) {
+		    total++;
+		    VirtualThreads.newThread(new ThreadServiceJob(), true).start();
+		}
+		return;
+	    }
+
 	    // there are enough idle threads
 	    if (jobList.size() <= idle) {
 		lock.notify();
@@ -171,7 +193,13 @@ public class ThreadService {
 	    while (!terminated) {
 		synchronized(lock) {
 		    if (jobList.size() == 0) {
-			if (total > min) {
+			if (virtual) {
+			    // no idle virtual thread, leave
+			    total--;
+			    threadList.remove(currentThread);
+
+			    break;
+			} else if (total > min) {
 			    if (idle == 0) { // keep one with timeout
 				idle++;
 
@@ -303,6 +331,7 @@ public class ThreadService {
     private int min;
     private int max;
     private boolean simple;
+    private boolean virtual;
 
     private int total = 0;
     private int idle = 0;
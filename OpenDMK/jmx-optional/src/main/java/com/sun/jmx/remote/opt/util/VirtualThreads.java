@@ -0,0 +1,135 @@
+/*
+ * @(#)file      VirtualThreads.java
+ * @(#)author    Sun Microsystems, Inc.
+ * @(#)version   1.1
+ * @(#)lastedit  07/03/08
+ * @(#)build     @BUILD_TAG_PLACEHOLDER@
+ *
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright (c) 2007 Sun Microsystems, Inc. All Rights Reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU General
+ * Public License Version 2 only ("GPL") or the Common Development and
+ * Distribution License("CDDL")(collectively, the "License"). You may not use
+ * this file except in compliance with the License. You can obtain a copy of the
+ * License at http://opendmk.dev.java.net/legal_notices/licenses.txt or in the 
+ * LEGAL_NOTICES folder that accompanied this code. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file found at
+ *     http://opendmk.dev.java.net/legal_notices/licenses.txt
+ * or in the LEGAL_NOTICES folder that accompanied this code.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.
+ * 
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * 
+ *       "Portions Copyrighted [year] [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding
+ * 
+ *       "[Contributor] elects to include this software in this distribution
+ *        under the [CDDL or GPL Version 2] license."
+ * 
+ * If you don't indicate a single choice of license, a recipient has the option
+ * to distribute your version of this file under either the CDDL or the GPL
+ * Version 2, or to extend the choice of license to its licensees as provided
+ * above. However, if you add GPL Version 2 code and therefore, elected the
+ * GPL Version 2 license, then the option applies only if the new code is made
+ * subject to such option by the copyright holder.
+ * 
+ */
+
+package com.sun.jmx.remote.opt.util;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Creates the virtual threads of JDK 21 and later through reflection,
+ * so that this code still runs on older JDKs, where platform threads
+ * are created instead.
+ *
+ * <p>A virtual thread is cheap while it waits for a socket or sleeps,
+ * but it holds its carrier thread while it waits in a
+ * <code>synchronized</code> block, up to JDK 23.  The jobs run in
+ * virtual threads should not wait long on a monitor.</p>
+ *
+ * @see EnvHelp#VIRTUAL_THREADS
+ */
+public final class VirtualThreads {
+
+    private VirtualThreads() {}
+
+    /**
+     * Tells whether this JDK supports the virtual threads.
+     */
+    public static boolean isSupported() {
+	return unstarted != null;
+    }
+
+    /**
+     * Returns a new thread, not started yet, running the given job.
+     * It is a virtual thread if <code>virtual</code> is true and the
+     * virtual threads are supported, and a platform thread otherwise.
+     */
+    public static Thread newThread(Runnable job, boolean virtual) {
+	if (virtual && unstarted != null) {
+	    try {
+		return (Thread)
+		    unstarted.invoke(ofVirtual.invoke(null, NO_ARGS),
+				     new Object[] {job});
+	    } catch (InvocationTargetException e) {
+		final Throwable t = e.getTargetException();
+		if (t instanceof RuntimeException) {
+		    throw (RuntimeException) t;
+		}
+		if (t instanceof Error) {
+		    throw (Error) t;
+		}
+		throw new IllegalStateException(t.toString());
+	    } catch (IllegalAccessException e) {
+		throw new IllegalStateException(e.toString());
+	    }
+	}
+
+	if (virtual && logger.traceOn()) {
+	    logger.trace("newThread", "No virtual threads in this JDK, " +
+			 "using a platform thread.");
+	}
+
+	return new Thread(job);
+    }
+
+    private static final Object[] NO_ARGS = new Object[0];
+
+    private static final Method ofVirtual;
+    private static final Method unstarted;
+
+    private static final ClassLogger logger =
+	new ClassLogger("com.sun.jmx.remote.opt.util", "VirtualThreads");
+
+    static {
+	Method of = null;
+	Method start = null;
+	try {
+	    of = Thread.class.getMethod("ofVirtual", new Class[0]);
+	    start = Class.forName("java.lang.Thread$Builder").getMethod(
+			"unstarted", new Class[] {Runnable.class});
+	} catch (Exception e) {
+	    // before JDK 21
+	    of = null;
+	    start = null;
+	}
+	ofVirtual = of;
+	unstarted = start;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * @(#)file      DictionaryClientHandler.java
+ * @(#)author    Sun Microsystems, Inc.
+ * @(#)version   1.1
+ * @(#)lastedit  07/03/08
+ * @(#)build     @BUILD_TAG_PLACEHOLDER@
+ *
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright (c) 2007 Sun Microsystems, Inc. All Rights Reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU General
+ * Public License Version 2 only ("GPL") or the Common Development and
+ * Distribution License("CDDL")(collectively, the "License"). You may not use
+ * this file except in compliance with the License. You can obtain a copy of the
+ * License at http://opendmk.dev.java.net/legal_notices/licenses.txt or in the 
+ * LEGAL_NOTICES folder that accompanied this code. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file found at
+ *     http://opendmk.dev.java.net/legal_notices/licenses.txt
+ * or in the LEGAL_NOTICES folder that accompanied this code.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.
+ * 
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * 
+ *       "Portions Copyrighted [year] [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding
+ * 
+ *       "[Contributor] elects to include this software in this distribution
+ *        under the [CDDL or GPL Version 2] license."
+ * 
+ * If you don't indicate a single choice of license, a recipient has the option
+ * to distribute your version of this file under either the CDDL or the GPL
+ * Version 2, or to extend the choice of license to its licensees as provided
+ * above. However, if you add GPL Version 2 code and therefore, elected the
+ * GPL Version 2 license, then the option applies only if the new code is made
+ * subject to such option by the copyright holder.
+ * 
+ */
+
+package com.sun.jmx.remote.profile.dictionary;
+
+import java.io.IOException;
+import java.util.Map;
+
+import javax.management.remote.generic.MessageConnection;
+import javax.management.remote.message.ProfileMessage;
+
+import com.sun.jmx.remote.generic.DictionaryMessageCodec;
+import com.sun.jmx.remote.generic.ProfileClient;
+import com.sun.jmx.remote.opt.util.ClassLogger;
+import com.sun.jmx.remote.socket.SocketConnectionIf;
+
+/**
+ * This class implements the client side DICTIONARY profile.
+ */
+class DictionaryClientHandler implements ProfileClient {
+
+    //-------------
+    // Constructors
+    //-------------
+
+    public DictionaryClientHandler(String profile, Map env) {
+        this.profile = profile;
+        this.env = env;
+    }
+
+    //---------------------------------------
+    // ProfileClient interface implementation
+    //---------------------------------------
+
+    public void initialize(MessageConnection mc) throws IOException {
+        if (!(mc instanceof SocketConnectionIf)) {
+            throw new IOException("Not an instance of SocketConnectionIf");
+        }
+
+        this.mc = mc;
+    }
+
+    public ProfileMessage produceMessage() throws IOException {
+        DictionaryMessage bpm = new DictionaryMessage(DictionaryMessage.READY);
+	if (logger.traceOn()) {
+	    logger.trace("produceMessage",
+			 ">>>>> DICTIONARY client message <<<<<");
+	    logger.trace("produceMessage",
+			 "Status : " + bpm.getStatus());
+	    logger.trace("produceMessage",
+			 "Version : " + bpm.getVersion());
+	}
+        return bpm;
+    }
+
+    public void consumeMessage(ProfileMessage pm) throws IOException {
+        if (!(pm instanceof DictionaryMessage)) {
+            throw new IOException("Unexpected profile message type: " +
+                                  pm.getClass().getName());
+        }
+        DictionaryMessage bpm = (DictionaryMessage) pm;
+	if (logger.traceOn()) {
+	    logger.trace("consumeMessage",
+			 ">>>>> DICTIONARY server message <<<<<");
+	    logger.trace("consumeMessage",
+			 "Status : " + bpm.getStatus());
+	}
+        if (bpm.getStatus() != DictionaryMessage.PROCEED) {
+            throw new IOException("Unexpected DICTIONARY status [" +
+                                  bpm.getStatus() + "]");
+        }
+        completed = true;
+    }
+
+    public boolean isComplete() {
+	return completed;
+    }
+
+    public void activate() throws IOException {
+	((SocketConnectionIf)mc).setMessageCodec(new DictionaryMessageCodec());
+    }
+
+    public void terminate() throws IOException {
+    }
+
+    public String getName() {
+	return profile;
+    }
+
+    //------------------
+    // Private variables
+    //------------------
+
+    private boolean completed = false;
+    private Map env = null;
+    private MessageConnection mc = null;
+    private String profile = null;
+    private static final ClassLogger logger =
+	new ClassLogger("javax.management.remote.misc", "DictionaryClientHandler");
+}
@@ -0,0 +1,216 @@
+/*
+ * @(#)file      ZlibInputStream.java
+ * @(#)author    Sun Microsystems, Inc.
+ * @(#)version   1.1
+ * @(#)lastedit  07/03/08
+ * @(#)build     @BUILD_TAG_PLACEHOLDER@
+ *
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright (c) 2007 Sun Microsystems, Inc. All Rights Reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU General
+ * Public License Version 2 only ("GPL") or the Common Development and
+ * Distribution License("CDDL")(collectively, the "License"). You may not use
+ * this file except in compliance with the License. You can obtain a copy of the
+ * License at http://opendmk.dev.java.net/legal_notices/licenses.txt or in the 
+ * LEGAL_NOTICES folder that accompanied this code. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file found at
+ *     http://opendmk.dev.java.net/legal_notices/licenses.txt
+ * or in the LEGAL_NOTICES folder that accompanied this code.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.
+ * 
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * 
+ *       "Portions Copyrighted [year] [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding
+ * 
+ *       "[Contributor] elects to include this software in this distribution
+ *        under the [CDDL or GPL Version 2] license."
+ * 
+ * If you don't indicate a single choice of license, a recipient has the option
+ * to distribute your version of this file under either the CDDL or the GPL
+ * Version 2, or to extend the choice of license to its licensees as provided
+ * above. However, if you add GPL Version 2 code and therefore, elected the
+ * GPL Version 2 license, then the option applies only if the new code is made
+ * subject to such option by the copyright holder.
+ * 
+ */
+
+package com.sun.jmx.remote.profile.zlib;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import com.sun.jmx.remote.opt.util.EnvHelp;
+
+/**
+ * An input stream which reads the frames written by a
+ * {@link ZlibOutputStream}.  The lengths of a frame come from the
+ * peer, so a frame longer than the frames the writer produces, see
+ * {@link ZlibOutputStream#MAX_FRAME_SIZE}, is rejected before its
+ * buffer is allocated, and a compressed frame is never inflated to
+ * more than its declared length.
+ */
+class ZlibInputStream extends InputStream {
+
+    ZlibInputStream(InputStream in, ZlibStatistics stats) {
+	this.in = in;
+	this.stats = stats;
+    }
+
+    public int read() throws IOException {
+	if (pos >= count && !fill()) {
+	    return -1;
+	}
+	return buf[pos++] & 0xff;
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+	if (len == 0) {
+	    return 0;
+	}
+	if (pos >= count && !fill()) {
+	    return -1;
+	}
+	final int n = Math.min(len, count - pos);
+	System.arraycopy(buf, pos, b, off, n);
+	pos += n;
+	return n;
+    }
+
+    public int available() throws IOException {
+	return count - pos;
+    }
+
+    public void close() throws IOException {
+	inflater.end();
+	in.close();
+    }
+
+    /**
+     * Reads the next non-empty frame.  Returns false at the end of the
+     * underlying stream.
+     */
+    private boolean fill() throws IOException {
+	do {
+	    final int type = in.read();
+	    if (type < 0) {
+		return false;
+	    }
+	    readFully(header, 4);
+	    final int length = checkLength(readInt(header, 0),
+					   ZlibOutputStream.MAX_FRAME_SIZE);
+	    ensureCapacity(length);
+
+	    switch (type) {
+	    case ZlibOutputStream.RAW:
+		readFully(buf, length);
+		stats.frameRead(length, length + 5, false);
+		break;
+	    case ZlibOutputStream.COMPRESSED: {
+		readFully(header, 4);
+		// the writer only compresses a frame which gets smaller
+		final int compressedLength = checkLength(readInt(header, 0),
+							 length);
+		if (compressedLength > cbuf.length ||
+		    cbuf.length > MAX_RETAINED_SIZE) {
+		    cbuf = new byte[Math.max(compressedLength, INITIAL_SIZE)];
+		}
+		readFully(cbuf, compressedLength);
+		inflate(compressedLength, length);
+		stats.frameRead(length, compressedLength + 9, true);
+		break;
+	    }
+	    default:
+		throw new IOException("Unknown frame type: " + type);
+	    }
+	    pos = 0;
+	    count = length;
+	} while (count == 0);
+
+	return true;
+    }
+
+    private void inflate(int compressedLength, int length) throws IOException {
+	inflater.reset();
+	inflater.setInput(cbuf, 0, compressedLength);
+	try {
+	    int n = 0;
+	    while (n < length && !inflater.finished()) {
+		final int r = inflater.inflate(buf, n, length - n);
+		if (r == 0 && (inflater.needsInput() ||
+			       inflater.needsDictionary())) {
+		    break;
+		}
+		n += r;
+	    }
+	    if (n != length || !inflater.finished()) {
+		throw new IOException("Corrupted compressed frame");
+	    }
+	} catch (DataFormatException e) {
+	    final IOException ioe =
+		new IOException("Corrupted compressed frame: " + e);
+	    EnvHelp.initCause(ioe, e);
+	    throw ioe;
+	}
+    }
+
+    private static int checkLength(int length, int max) throws IOException {
+	if (length < 0 || length > max) {
+	    throw new IOException("Invalid frame length: " + length);
+	}
+	return length;
+    }
+
+    private void ensureCapacity(int size) {
+	// Do not keep the buffer of an unusually big message.
+	if (size > buf.length || buf.length > MAX_RETAINED_SIZE) {
+	    buf = new byte[Math.max(size, INITIAL_SIZE)];
+	}
+    }
+
+    private void readFully(byte[] b, int len) throws IOException {
+	int n = 0;
+	while (n < len) {
+	    final int r = in.read(b, n, len - n);
+	    if (r < 0) {
+		throw new EOFException("Expecting to read " + len +
+				       " bytes but got " + n +
+				       " bytes before EOF");
+	    }
+	    n += r;
+	}
+    }
+
+    private static int readInt(byte[] b, int off) {
+	return ((b[off] & 0xff) << 24) | ((b[off + 1] & 0xff) << 16) |
+	    ((b[off + 2] & 0xff) << 8) | (b[off + 3] & 0xff);
+    }
+
+    private static final int INITIAL_SIZE = 8192;
+    private static final int MAX_RETAINED_SIZE = 256 * 1024;
+
+    private final InputStream in;
+    private final ZlibStatistics stats;
+    private final Inflater inflater = new Inflater();
+    private final byte[] header = new byte[4];
+    private byte[] buf = new byte[INITIAL_SIZE];
+    private byte[] cbuf = new byte[INITIAL_SIZE];
+    private int pos = 0;
+    private int count = 0;
+}
@@ -0,0 +1,128 @@
+/*
+ * @(#)file      ZlibMessage.java
+ * @(#)author    Sun Microsystems, Inc.
+ * @(#)version   1.1
+ * @(#)lastedit  07/03/08
+ * @(#)build     @BUILD_TAG_PLACEHOLDER@
+ *
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright (c) 2007 Sun Microsystems, Inc. All Rights Reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU General
+ * Public License Version 2 only ("GPL") or the Common Development and
+ * Distribution License("CDDL")(collectively, the "License"). You may not use
+ * this file except in compliance with the License. You can obtain a copy of the
+ * License at http://opendmk.dev.java.net/legal_notices/licenses.txt or in the 
+ * LEGAL_NOTICES folder that accompanied this code. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file found at
+ *     http://opendmk.dev.java.net/legal_notices/licenses.txt
+ * or in the LEGAL_NOTICES folder that accompanied this code.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.
+ * 
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * 
+ *       "Portions Copyrighted [year] [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding
+ * 
+ *       "[Contributor] elects to include this software in this distribution
+ *        under the [CDDL or GPL Version 2] license."
+ * 
+ * If you don't indicate a single choice of license, a recipient has the option
+ * to distribute your version of this file under either the CDDL or the GPL
+ * Version 2, or to extend the choice of license to its licensees as provided
+ * above. However, if you add GPL Version 2 code and therefore, elected the
+ * GPL Version 2 license, then the option applies only if the new code is made
+ * subject to such option by the copyright holder.
+ * 
+ */
+
+package com.sun.jmx.remote.profile.zlib;
+
+import javax.management.remote.message.ProfileMessage;
+
+/**
+ * <p>Handshake message between client and server to compress the
+ * messages exchanged on the connection with zlib.</p>
+ *
+ * <p>The client sends a ZlibMessage(READY) with the version of the
+ * framing it wants to use.  If the server supports that version it
+ * replies with a ZlibMessage(PROCEED), which is the last uncompressed
+ * message it writes.  The client wraps the connection streams as soon
+ * as it has read this reply.</p>
+ *
+ * The profile name in this profile message is "ZLIB".
+ */
+public class ZlibMessage implements ProfileMessage {
+
+    private static final long serialVersionUID = -1725520869354717290L;
+
+    /**
+     * This status code is used by a client to indicate that it is ready to
+     * compress the messages.
+     */
+    public static final int READY = 1;
+
+    /**
+     * This status code is used by a server to indicate that it starts
+     * compressing the messages.
+     */
+    public static final int PROCEED = 2;
+
+    /**
+     * The version of the framing implemented by this package.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * Constructs a new ZlibMessage with the specified status.
+     */
+    public ZlibMessage(int status) {
+	this.status = status;
+	this.version = VERSION;
+    }
+
+    /**
+     * The status of the negotiation.
+     */
+    public int getStatus() {
+	return status;
+    }
+
+    /**
+     * The version of the framing used by the sender.
+     */
+    public int getVersion() {
+	return version;
+    }
+
+    /**
+     * The profile name.
+     */
+    public String getProfileName() {
+	return "ZLIB";
+    }
+
+    /**
+     * @serial The status of the negotiation.
+     * @see #getStatus()
+     */
+    private int status;
+
+    /**
+     * @serial The version of the framing.
+     * @see #getVersion()
+     */
+    private int version;
+}
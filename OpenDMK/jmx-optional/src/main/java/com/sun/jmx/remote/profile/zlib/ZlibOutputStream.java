@@ -0,0 +1,217 @@
+/*
+ * @(#)file      ZlibOutputStream.java
+ * @(#)author    Sun Microsystems, Inc.
+ * @(#)version   1.1
+ * @(#)lastedit  07/03/08
+ * @(#)build     @BUILD_TAG_PLACEHOLDER@
+ *
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright (c) 2007 Sun Microsystems, Inc. All Rights Reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU General
+ * Public License Version 2 only ("GPL") or the Common Development and
+ * Distribution License("CDDL")(collectively, the "License"). You may not use
+ * this file except in compliance with the License. You can obtain a copy of the
+ * License at http://opendmk.dev.java.net/legal_notices/licenses.txt or in the 
+ * LEGAL_NOTICES folder that accompanied this code. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file found at
+ *     http://opendmk.dev.java.net/legal_notices/licenses.txt
+ * or in the LEGAL_NOTICES folder that accompanied this code.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.
+ * 
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * 
+ *       "Portions Copyrighted [year] [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding
+ * 
+ *       "[Contributor] elects to include this software in this distribution
+ *        under the [CDDL or GPL Version 2] license."
+ * 
+ * If you don't indicate a single choice of license, a recipient has the option
+ * to distribute your version of this file under either the CDDL or the GPL
+ * Version 2, or to extend the choice of license to its licensees as provided
+ * above. However, if you add GPL Version 2 code and therefore, elected the
+ * GPL Version 2 license, then the option applies only if the new code is made
+ * subject to such option by the copyright holder.
+ * 
+ */
+
+package com.sun.jmx.remote.profile.zlib;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+import com.sun.jmx.remote.opt.util.ClassLogger;
+
+/**
+ * An output stream which collects the bytes written until it is
+ * flushed, then writes them as one frame, compressed if they are at
+ * least as big as the threshold.  The connection flushes its stream
+ * after each message, so a frame normally contains one message.
+ *
+ * <p>A frame is made of a one-byte type, the length of the data and,
+ * for a compressed frame, the length of the compressed data followed
+ * by the data itself.  Each compressed frame is an independent zlib
+ * stream.</p>
+ */
+class ZlibOutputStream extends OutputStream {
+
+    ZlibOutputStream(OutputStream out, int threshold, int level,
+		     ZlibStatistics stats) {
+	this.out = out;
+	this.threshold = threshold;
+	this.stats = stats;
+	this.deflater = new Deflater(level);
+    }
+
+    public void write(int b) throws IOException {
+	if (count == MAX_FRAME_SIZE) {
+	    writeFrame();
+	}
+	ensureCapacity(count + 1);
+	buf[count++] = (byte) b;
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+	// a big message is split, the reader rejects bigger frames
+	while (len > 0) {
+	    if (count == MAX_FRAME_SIZE) {
+		writeFrame();
+	    }
+	    final int n = Math.min(len, MAX_FRAME_SIZE - count);
+	    ensureCapacity(count + n);
+	    System.arraycopy(b, off, buf, count, n);
+	    count += n;
+	    off += n;
+	    len -= n;
+	}
+    }
+
+    public void flush() throws IOException {
+	if (count > 0) {
+	    writeFrame();
+	}
+	out.flush();
+    }
+
+    public void close() throws IOException {
+	try {
+	    flush();
+	} finally {
+	    deflater.end();
+	    out.close();
+	}
+    }
+
+    private void writeFrame() throws IOException {
+	int compressedLength = -1;
+
+	if (count >= threshold) {
+	    deflater.reset();
+	    deflater.setInput(buf, 0, count);
+	    deflater.finish();
+	    compressedLength = 0;
+	    while (!deflater.finished()) {
+		// Give up as soon as the data does not get smaller.
+		if (compressedLength >= count) {
+		    compressedLength = -1;
+		    break;
+		}
+		if (compressedLength == cbuf.length) {
+		    cbuf = grow(cbuf, compressedLength + 1);
+		}
+		compressedLength += deflater.deflate(cbuf, compressedLength,
+						     cbuf.length -
+						     compressedLength);
+	    }
+	}
+
+	if (compressedLength >= 0 && compressedLength < count) {
+	    header[0] = COMPRESSED;
+	    writeInt(count, header, 1);
+	    writeInt(compressedLength, header, 5);
+	    out.write(header, 0, 9);
+	    out.write(cbuf, 0, compressedLength);
+	    stats.frameWritten(count, compressedLength + 9, true);
+	} else {
+	    header[0] = RAW;
+	    writeInt(count, header, 1);
+	    out.write(header, 0, 5);
+	    out.write(buf, 0, count);
+	    stats.frameWritten(count, count + 5, false);
+	}
+
+	if (logger.debugOn()) {
+	    logger.debug("writeFrame", "Frame of " + count + " bytes, " +
+			 (compressedLength >= 0 ?
+			  compressedLength + " compressed" : "raw"));
+	}
+
+	// Do not keep the buffers of an unusually big message.
+	if (buf.length > MAX_RETAINED_SIZE) {
+	    buf = new byte[INITIAL_SIZE];
+	}
+	if (cbuf.length > MAX_RETAINED_SIZE) {
+	    cbuf = new byte[INITIAL_SIZE];
+	}
+	count = 0;
+    }
+
+    private void ensureCapacity(int size) {
+	if (size > buf.length) {
+	    buf = grow(buf, size);
+	}
+    }
+
+    private static byte[] grow(byte[] b, int size) {
+	int n = b.length * 2;
+	if (n < size) {
+	    n = size;
+	}
+	final byte[] nb = new byte[n];
+	System.arraycopy(b, 0, nb, 0, b.length);
+	return nb;
+    }
+
+    static void writeInt(int v, byte[] b, int off) {
+	b[off] = (byte) (v >>> 24);
+	b[off + 1] = (byte) (v >>> 16);
+	b[off + 2] = (byte) (v >>> 8);
+	b[off + 3] = (byte) v;
+    }
+
+    static final int RAW = 0;
+    static final int COMPRESSED = 1;
+
+    private static final int INITIAL_SIZE = 8192;
+    private static final int MAX_RETAINED_SIZE = 256 * 1024;
+    /**
+     * The maximum length of the data of a frame.
+     */
+    static final int MAX_FRAME_SIZE = 4 * 1024 * 1024;
+
+    private final OutputStream out;
+    private final int threshold;
+    private final ZlibStatistics stats;
+    private final Deflater deflater;
+    private final byte[] header = new byte[9];
+    private byte[] buf = new byte[INITIAL_SIZE];
+    private byte[] cbuf = new byte[INITIAL_SIZE];
+    private int count = 0;
+
+    private static final ClassLogger logger =
+	new ClassLogger("javax.management.remote.misc", "ZlibOutputStream");
+}
@@ -0,0 +1,161 @@
+/*
+ * @(#)file      ZlibStatistics.java
+ * @(#)author    Sun Microsystems, Inc.
+ * @(#)version   1.1
+ * @(#)lastedit  07/03/08
+ * @(#)build     @BUILD_TAG_PLACEHOLDER@
+ *
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright (c) 2007 Sun Microsystems, Inc. All Rights Reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU General
+ * Public License Version 2 only ("GPL") or the Common Development and
+ * Distribution License("CDDL")(collectively, the "License"). You may not use
+ * this file except in compliance with the License. You can obtain a copy of the
+ * License at http://opendmk.dev.java.net/legal_notices/licenses.txt or in the 
+ * LEGAL_NOTICES folder that accompanied this code. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file found at
+ *     http://opendmk.dev.java.net/legal_notices/licenses.txt
+ * or in the LEGAL_NOTICES folder that accompanied this code.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.
+ * 
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * 
+ *       "Portions Copyrighted [year] [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding
+ * 
+ *       "[Contributor] elects to include this software in this distribution
+ *        under the [CDDL or GPL Version 2] license."
+ * 
+ * If you don't indicate a single choice of license, a recipient has the option
+ * to distribute your version of this file under either the CDDL or the GPL
+ * Version 2, or to extend the choice of license to its licensees as provided
+ * above. However, if you add GPL Version 2 code and therefore, elected the
+ * GPL Version 2 license, then the option applies only if the new code is made
+ * subject to such option by the copyright holder.
+ * 
+ */
+
+package com.sun.jmx.remote.profile.zlib;
+
+/**
+ * Compression statistics of a connection using the ZLIB profile.  The
+ * sizes are counted in bytes, before compression and on the wire, for
+ * the frames written and read by the connection.
+ */
+public class ZlibStatistics {
+
+    ZlibStatistics() {
+    }
+
+    synchronized void frameWritten(int size, int wireSize,
+				   boolean compressed) {
+	if (compressed) {
+	    compressedFramesWritten++;
+	} else {
+	    rawFramesWritten++;
+	}
+	bytesWritten += size;
+	wireBytesWritten += wireSize;
+    }
+
+    synchronized void frameRead(int size, int wireSize, boolean compressed) {
+	if (compressed) {
+	    compressedFramesRead++;
+	} else {
+	    rawFramesRead++;
+	}
+	bytesRead += size;
+	wireBytesRead += wireSize;
+    }
+
+    /**
+     * Returns the number of frames written compressed.
+     */
+    public synchronized long getCompressedFramesWritten() {
+	return compressedFramesWritten;
+    }
+
+    /**
+     * Returns the number of frames written uncompressed, because they
+     * were below the threshold or did not compress.
+     */
+    public synchronized long getRawFramesWritten() {
+	return rawFramesWritten;
+    }
+
+    /**
+     * Returns the number of bytes written by the connection before
+     * compression.
+     */
+    public synchronized long getBytesWritten() {
+	return bytesWritten;
+    }
+
+    /**
+     * Returns the number of bytes written on the wire, frame headers
+     * included.
+     */
+    public synchronized long getWireBytesWritten() {
+	return wireBytesWritten;
+    }
+
+    /**
+     * Returns the number of compressed frames read.
+     */
+    public synchronized long getCompressedFramesRead() {
+	return compressedFramesRead;
+    }
+
+    /**
+     * Returns the number of uncompressed frames read.
+     */
+    public synchronized long getRawFramesRead() {
+	return rawFramesRead;
+    }
+
+    /**
+     * Returns the number of bytes read by the connection after
+     * decompression.
+     */
+    public synchronized long getBytesRead() {
+	return bytesRead;
+    }
+
+    /**
+     * Returns the number of bytes read on the wire, frame headers
+     * included.
+     */
+    public synchronized long getWireBytesRead() {
+	return wireBytesRead;
+    }
+
+    public synchronized String toString() {
+	return "written: " + compressedFramesWritten + " compressed and " +
+	    rawFramesWritten + " raw frames, " + bytesWritten + " bytes in " +
+	    wireBytesWritten + " on the wire; read: " + compressedFramesRead +
+	    " compressed and " + rawFramesRead + " raw frames, " + bytesRead +
+	    " bytes in " + wireBytesRead + " on the wire";
+    }
+
+    private long compressedFramesWritten;
+    private long rawFramesWritten;
+    private long bytesWritten;
+    private long wireBytesWritten;
+    private long compressedFramesRead;
+    private long rawFramesRead;
+    private long bytesRead;
+    private long wireBytesRead;
+}
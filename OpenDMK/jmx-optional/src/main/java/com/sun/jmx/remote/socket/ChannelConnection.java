@@ -0,0 +1,606 @@
+/*
+ * @(#)file      ChannelConnection.java
+ * @(#)author    Sun Microsystems, Inc.
+ * @(#)version   1.1
+ * @(#)lastedit  07/03/08
+ * @(#)build     @BUILD_TAG_PLACEHOLDER@
+ *
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright (c) 2007 Sun Microsystems, Inc. All Rights Reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU General
+ * Public License Version 2 only ("GPL") or the Common Development and
+ * Distribution License("CDDL")(collectively, the "License"). You may not use
+ * this file except in compliance with the License. You can obtain a copy of the
+ * License at http://opendmk.dev.java.net/legal_notices/licenses.txt or in the 
+ * LEGAL_NOTICES folder that accompanied this code. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file found at
+ *     http://opendmk.dev.java.net/legal_notices/licenses.txt
+ * or in the LEGAL_NOTICES folder that accompanied this code.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.
+ * 
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * 
+ *       "Portions Copyrighted [year] [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding
+ * 
+ *       "[Contributor] elects to include this software in this distribution
+ *        under the [CDDL or GPL Version 2] license."
+ * 
+ * If you don't indicate a single choice of license, a recipient has the option
+ * to distribute your version of this file under either the CDDL or the GPL
+ * Version 2, or to extend the choice of license to its licensees as provided
+ * above. However, if you add GPL Version 2 code and therefore, elected the
+ * GPL Version 2 license, then the option applies only if the new code is made
+ * subject to such option by the copyright holder.
+ * 
+ */
+
+package com.sun.jmx.remote.socket;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.security.Principal;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.message.Message;
+import javax.security.auth.Subject;
+
+import com.sun.jmx.remote.generic.CountingMessageConnection;
+import com.sun.jmx.remote.generic.MessageCodec;
+import com.sun.jmx.remote.generic.SelectableMessageConnection;
+import com.sun.jmx.remote.opt.util.ClassLogger;
+
+/**
+ * This class uses a TCP socket channel to implement a server side JMX
+ * MessageConnection.  The channel stays in blocking mode while the
+ * handshake is running, so that the TLS and SASL profiles can work on
+ * its socket.  If no profile replaced the socket or its streams, the
+ * channel is then switched to non-blocking mode and its input is
+ * waited for by a {@link SelectorLoop}.  A message partially
+ * received or sent is waited for at most the given I/O timeout, after
+ * which the connection is closed.
+ */
+class ChannelConnection
+	implements SocketConnectionIf, SelectableMessageConnection,
+		   CountingMessageConnection {
+
+    //-------------
+    // Constructors
+    //-------------
+
+    ChannelConnection(SocketChannel channel, SelectorLoop loop,
+		      long ioTimeout) throws IOException {
+	if (logger.traceOn()) {
+	    logger.trace("Constructor", "Creating with a channel "+channel);
+	}
+
+	this.channel = channel;
+	this.loop = loop;
+	this.ioTimeout = ioTimeout;
+
+	sock = channel.socket();
+	// see SocketConnection
+	sock.setTcpNoDelay(true);
+
+	countingIn = new CountingInputStream(new ChannelInputStream(), 0);
+	channelIn = new BufferedInputStream(countingIn);
+	// not buffered here: like with a socket stream, the writer of the
+	// messages adds its own buffer, which is dropped with the pending
+	// reset marker of an object stream when a profile switches to a
+	// codec.
+	countingOut = new CountingOutputStream(new ChannelOutputStream(), 0);
+	channelOut = countingOut;
+	replaceStreams(channelIn, channelOut);
+    }
+
+    public void connect(Map env) throws IOException {
+	synchronized(stateLock) {
+	    if (state == TERMINATED) {
+		throw new IllegalStateException("The connection has been closed.");
+	    }
+
+	    if (env != null) {
+		defaultClassLoader = (ClassLoader)
+		    env.get(JMXConnectorFactory.DEFAULT_CLASS_LOADER);
+	    }
+
+	    state = CONNECTED;
+	}
+    }
+
+    //---------------------------------------------------
+    // Implementation of the SocketConnectionIf interface
+    //---------------------------------------------------
+
+    /**
+     * Returns a reference to the underlying socket.
+     */
+    public Socket getSocket() {
+        return sock;
+    }
+
+    /**
+     * Replaces the underlying socket.
+     */
+    public void setSocket(Socket s) throws IOException {
+	sock = s;
+
+	// the counts go on with the streams of the new socket
+	countingIn = new CountingInputStream(sock.getInputStream(),
+					     countingIn.getCount());
+	countingOut = new CountingOutputStream(sock.getOutputStream(),
+					       countingOut.getCount());
+	replaceStreams(countingIn, countingOut);
+    }
+
+    /**
+     * Replaces the current socket's input/output
+     * streams by the ones provided.
+     */
+    public void replaceStreams(InputStream is, OutputStream os)
+	throws IOException {
+	in = is;
+	out = os;
+	replaceInputStreamFlag = true;
+	replaceOutputStreamFlag = true;
+    }
+
+    /**
+     * Returns the current input stream.
+     */
+    public InputStream getInputStream() {
+	return in;
+    }
+
+    /**
+     * Returns the current output stream.
+     */
+    public OutputStream getOutputStream() {
+	return out;
+    }
+
+    /**
+     * Sets the subject authenticated through this socket connection.
+     */
+    public void setSubject(Subject subject) {
+	this.subject = subject;
+    }
+
+    /**
+     * Replaces the Java serialization of the messages by the given
+     * codec.
+     */
+    public void setMessageCodec(MessageCodec codec) throws IOException {
+	this.codec = codec;
+	replaceInputStreamFlag = true;
+	replaceOutputStreamFlag = true;
+    }
+
+    //------------------------------------------------------------
+    // Implementation of the SelectableMessageConnection interface
+    //------------------------------------------------------------
+
+    public boolean isSelectable() {
+	return in == channelIn && out == channelOut &&
+	    sock == channel.socket();
+    }
+
+    public void selectRead(Runnable task) throws IOException {
+	if (!isSelectable()) {
+	    throw new IllegalStateException("The connection is not selectable.");
+	}
+
+	checkState();
+
+	synchronized(stateLock) {
+	    if (channel.isBlocking()) {
+		channel.configureBlocking(false);
+	    }
+	    readTask = task;
+	}
+
+	loop.selectRead(this);
+    }
+
+    public boolean hasBufferedInput() {
+	try {
+	    return channelIn.available() > 0;
+	} catch (IOException ioe) {
+	    return false;
+	}
+    }
+
+    //----------------------------------------------------------
+    // Implementation of the CountingMessageConnection interface
+    //----------------------------------------------------------
+
+    public long getBytesRead() {
+	return countingIn.getCount();
+    }
+
+    public long getBytesWritten() {
+	return countingOut.getCount();
+    }
+
+    //--------------------------------------------------
+    // Implementation of the MessageConnection interface
+    //--------------------------------------------------
+
+    public Message readMessage() throws IOException, ClassNotFoundException {
+	checkState();
+
+	if (logger.debugOn()) {
+	    logger.debug("readMessage", "Read a message ...");
+	}
+
+	if (codec != null) {
+	    if (replaceInputStreamFlag) {
+		if (in instanceof BufferedInputStream) {
+		    din = new DataInputStream(in);
+		} else {
+		    din = new DataInputStream(new BufferedInputStream(in));
+		}
+		replaceInputStreamFlag = false;
+	    }
+
+	    return codec.readMessage(din, defaultClassLoader);
+	}
+
+	if (replaceInputStreamFlag) {		
+	    if (in instanceof BufferedInputStream) {
+		oin = new SocketConnection.ObjectInputStreamWithLoader(
+						      in, defaultClassLoader);
+	    } else {
+		oin = new SocketConnection.ObjectInputStreamWithLoader(
+						      new BufferedInputStream(in),
+						      defaultClassLoader);		    
+	    }
+	    replaceInputStreamFlag = false;
+	}
+	
+	return (Message) oin.readObject();
+    }
+
+    public void writeMessage(Message msg) throws IOException {
+	if (logger.debugOn()) {
+	    logger.debug("writeMessage", "Write a message ...");
+	}
+
+	checkState();
+
+	if (codec != null) {
+	    if (replaceOutputStreamFlag) {
+		if (out instanceof BufferedOutputStream) {
+		    dout = new DataOutputStream(out);
+		} else {
+		    dout = new DataOutputStream(new BufferedOutputStream(out));
+		}
+		replaceOutputStreamFlag = false;
+	    }
+
+	    codec.writeMessage(msg, dout);
+	    dout.flush();
+	    return;
+	}
+
+	if (replaceOutputStreamFlag) {
+	    if (out instanceof BufferedOutputStream) {
+		oout = new ObjectOutputStream(out);
+	    } else {
+		oout = new ObjectOutputStream(new BufferedOutputStream(out));
+	    }
+	    replaceOutputStreamFlag = false;
+	}
+	oout.writeObject(msg);
+	oout.flush();
+	oout.reset();
+    }
+
+    public void close() {
+	if (logger.traceOn()) {
+	    logger.trace("close", "Close the channel connection.");
+	}
+
+	synchronized(stateLock) {
+	    if (state == TERMINATED) {
+		return;
+	    }
+
+	    state = TERMINATED;
+ 
+	    // See bug 4926015 in SocketConnection
+	    if (sock instanceof javax.net.ssl.SSLSocket) {
+		try {
+		    Thread.sleep(1000);
+		} catch  (InterruptedException ire) {
+		    // OK: we are closing
+		}
+	    }
+	    
+	    try {
+		if (oin != null) {
+		    oin.close();
+		}
+	    } catch (Exception e) {
+		if (logger.debugOn()) {
+		    logger.debug("close", e);
+		}
+	    }
+	    
+	    try {
+		if (oout != null) {
+		    oout.close();
+		}
+	    } catch (Exception e) {
+		if (logger.debugOn()) {
+		    logger.debug("close", e);
+		}
+	    }
+	    
+	    try {
+		sock.close();
+		channel.close();
+	    } catch (Exception e) {
+		if (logger.debugOn()) {
+		    logger.debug("close", e);
+		}
+	    }
+
+	    // a reader or a writer waiting for the channel finds it closed
+	    wakeup(readSelector);
+	    wakeup(writeSelector);
+	}
+
+	// releases the key of the closed channel
+	loop.wakeup();
+    }
+
+    public String getConnectionId() {
+	StringBuffer buf = new StringBuffer();
+	buf.append("jmxmp://" +
+		   sock.getInetAddress().getHostName() +
+		   ":" +
+		   sock.getPort() +
+		   " ");
+	if (subject != null) {
+	    Set principals = subject.getPrincipals();
+	    String sep = "";
+	    for (Iterator it = principals.iterator(); it.hasNext(); ) {
+		Principal p = (Principal) it.next();
+		String n = p.getName().replace(' ', '_').replace(';', ':');
+		buf.append(sep).append(n);
+		sep = ";";
+	    }
+	}
+	buf.append(" ").append(System.identityHashCode(this));
+	return buf.toString();
+    }
+
+//----------------------------------------
+// Package methods
+//----------------------------------------
+
+    SocketChannel getChannel() {
+	return channel;
+    }
+
+    /**
+     * Called by the selector loop when some input is available.
+     */
+    void readable() {
+	final Runnable task;
+	synchronized(stateLock) {
+	    task = readTask;
+	    readTask = null;
+	}
+
+	if (task == null) {
+	    return;
+	}
+
+	try {
+	    task.run();
+	} catch (RuntimeException re) {
+	    logger.warning("readable", "Unexpected exception: " + re);
+	    logger.debug("readable", re);
+	}
+    }
+
+//----------------------------------------
+// Private methods
+//----------------------------------------
+
+    private void checkState() throws IllegalStateException {
+	synchronized(stateLock) {
+	    if (state == TERMINATED) {
+		throw new IllegalStateException("The connection has been closed.");
+	    }
+	}
+    }
+
+    /*
+     * Once the channel is in non-blocking mode, a reader or a writer
+     * which cannot progress waits on a selector borrowed from the
+     * SelectorPool; this only happens for a message which is partially
+     * received or sent.  The selector is woken up if the connection is
+     * closed meanwhile.  The callers retry their read or write, so a
+     * spurious wakeup does no harm.  A peer which does not let the
+     * message progress within the I/O timeout would otherwise hold the
+     * waiting thread forever, so the connection is closed.
+     */
+    private void waitFor(int op) throws IOException {
+	final Selector selector = SelectorPool.get();
+	SelectionKey key = null;
+	boolean timedOut = false;
+	try {
+	    synchronized(stateLock) {
+		if (state == TERMINATED) {
+		    throw new IOException("The connection has been closed.");
+		}
+
+		if (op == SelectionKey.OP_READ) {
+		    readSelector = selector;
+		} else {
+		    writeSelector = selector;
+		}
+	    }
+
+	    key = channel.register(selector, op);
+	    if (ioTimeout > 0) {
+		final long start = System.currentTimeMillis();
+		timedOut = selector.select(ioTimeout) == 0 &&
+		    System.currentTimeMillis() - start >= ioTimeout;
+	    } else {
+		selector.select();
+	    }
+	} catch (ClosedChannelException cce) {
+	    throw new IOException("The connection has been closed.");
+	} finally {
+	    synchronized(stateLock) {
+		if (op == SelectionKey.OP_READ) {
+		    readSelector = null;
+		} else {
+		    writeSelector = null;
+		}
+	    }
+	    SelectorPool.release(selector, key);
+	}
+
+	if (Thread.interrupted()) {
+	    throw new InterruptedIOException("Interrupted while waiting.");
+	}
+
+	if (timedOut) {
+	    logger.warning("waitFor", "No progress of a message after " +
+			   ioTimeout + " milliseconds, closing the " +
+			   "connection.");
+	    close();
+	    throw new SocketTimeoutException("Timed out waiting for the " +
+					     "peer.");
+	}
+    }
+
+    private void wakeup(Selector selector) {
+	if (selector != null) {
+	    selector.wakeup();
+	}
+    }
+
+//----------------------------------------
+// Private classes
+//----------------------------------------
+
+    private class ChannelInputStream extends InputStream {
+	public int read() throws IOException {
+	    final int n = read(one, 0, 1);
+
+	    return (n <= 0) ? -1 : (one[0] & 0xff);
+	}
+
+	public int read(byte[] b, int off, int len) throws IOException {
+	    if (len == 0) {
+		return 0;
+	    }
+
+	    final ByteBuffer bb = ByteBuffer.wrap(b, off, len);
+	    int n;
+	    while ((n = channel.read(bb)) == 0) {
+		waitFor(SelectionKey.OP_READ);
+	    }
+
+	    return n;
+	}
+
+	private final byte[] one = new byte[1];
+    }
+
+    private class ChannelOutputStream extends OutputStream {
+	public void write(int b) throws IOException {
+	    one[0] = (byte) b;
+	    write(one, 0, 1);
+	}
+
+	public void write(byte[] b, int off, int len) throws IOException {
+	    final ByteBuffer bb = ByteBuffer.wrap(b, off, len);
+	    while (bb.hasRemaining()) {
+		if (channel.write(bb) == 0) {
+		    waitFor(SelectionKey.OP_WRITE);
+		}
+	    }
+	}
+
+	private final byte[] one = new byte[1];
+    }
+
+//----------------------------------------
+// Private variables
+//----------------------------------------
+
+    private final SocketChannel channel;
+    private final SelectorLoop loop;
+    private final long ioTimeout;
+    private final InputStream channelIn;
+    private final OutputStream channelOut;
+    private volatile CountingInputStream countingIn;
+    private volatile CountingOutputStream countingOut;
+
+    // the selectors waited on, see waitFor
+    private Selector readSelector;
+    private Selector writeSelector;
+    private Runnable readTask;
+
+    private Subject subject;
+    private Socket sock;
+    private InputStream in;
+    private ObjectInputStream oin;
+    private OutputStream out;
+    private ObjectOutputStream oout;
+    private MessageCodec codec;
+    private DataInputStream din;
+    private DataOutputStream dout;
+    private boolean replaceInputStreamFlag = false;
+    private boolean replaceOutputStreamFlag = false;
+    private ClassLoader defaultClassLoader;
+
+    // state issues
+    private static final int UNCONNECTED = 1;
+    private static final int CONNECTED = 4;
+    private static final int TERMINATED = 16;
+
+    private int state = UNCONNECTED;
+    private final int[] stateLock = new int[0];
+
+    private final ClassLogger logger =
+	new ClassLogger("javax.management.remote.misc", "ChannelConnection");
+}
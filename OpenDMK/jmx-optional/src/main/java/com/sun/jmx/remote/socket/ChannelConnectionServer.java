@@ -0,0 +1,228 @@
+/*
+ * @(#)file      ChannelConnectionServer.java
+ * @(#)author    Sun Microsystems, Inc.
+ * @(#)version   1.1
+ * @(#)lastedit  07/03/08
+ * @(#)build     @BUILD_TAG_PLACEHOLDER@
+ *
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright (c) 2007 Sun Microsystems, Inc. All Rights Reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU General
+ * Public License Version 2 only ("GPL") or the Common Development and
+ * Distribution License("CDDL")(collectively, the "License"). You may not use
+ * this file except in compliance with the License. You can obtain a copy of the
+ * License at http://opendmk.dev.java.net/legal_notices/licenses.txt or in the 
+ * LEGAL_NOTICES folder that accompanied this code. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file found at
+ *     http://opendmk.dev.java.net/legal_notices/licenses.txt
+ * or in the LEGAL_NOTICES folder that accompanied this code.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.
+ * 
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * 
+ *       "Portions Copyrighted [year] [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding
+ * 
+ *       "[Contributor] elects to include this software in this distribution
+ *        under the [CDDL or GPL Version 2] license."
+ * 
+ * If you don't indicate a single choice of license, a recipient has the option
+ * to distribute your version of this file under either the CDDL or the GPL
+ * Version 2, or to extend the choice of license to its licensees as provided
+ * above. However, if you add GPL Version 2 code and therefore, elected the
+ * GPL Version 2 license, then the option applies only if the new code is made
+ * subject to such option by the copyright holder.
+ * 
+ */
+
+package com.sun.jmx.remote.socket;
+
+import java.util.Map;
+import java.util.HashMap;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.ServerSocket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import javax.management.remote.JMXServiceURL;
+import javax.management.remote.jmxmp.JMXMPConnectorServer;
+import javax.management.remote.generic.MessageConnection;
+import javax.management.remote.generic.MessageConnectionServer;
+
+import com.sun.jmx.remote.generic.DefaultConfig;
+
+import com.sun.jmx.remote.opt.util.ClassLogger;
+
+/**
+ * This class uses a TCP server socket channel to realize a JMX
+ * connection server.  It speaks the same protocol as
+ * {@link SocketConnectionServer}, but the accepted connections are
+ * multiplexed by a small fixed number of selector threads: once
+ * connected, a client does not hold a thread of the server until it
+ * sends a request.
+ *
+ * <p>This server is used by a JMXMP connector server when it is
+ * specified with the attribute
+ * {@link javax.management.remote.generic.GenericConnectorServer#MESSAGE_CONNECTION_SERVER}.
+ * The number of selector threads is given by the attribute
+ * {@link DefaultConfig#SERVER_SELECTOR_THREADS}, and the time waited
+ * for a client stopped in the middle of a message by the attribute
+ * {@link DefaultConfig#SERVER_IO_TIMEOUT}.</p>
+ */
+public class ChannelConnectionServer implements MessageConnectionServer {
+
+    public ChannelConnectionServer(JMXServiceURL addr, Map env)
+	    throws IOException {
+
+	if (logger.traceOn()) {
+	    logger.trace("constructor", "Constructs a ChannelConnectionServer on "+addr);
+	}
+
+	if (addr == null) {
+	    throw new NullPointerException("Null address.");
+	}
+
+	if (!DEFAULT_PROTOCOL.equalsIgnoreCase(addr.getProtocol())) {
+	    throw new MalformedURLException("Unknown protocol: " +
+					    addr.getProtocol());
+	}
+
+	String wildcardS = null;
+	if (env != null) {
+	    wildcardS =
+		(String)env.get(JMXMPConnectorServer.SERVER_ADDRESS_WILDCARD);
+	}
+
+	wildcard =
+	    (wildcardS == null) ? true : wildcardS.equalsIgnoreCase("true");
+
+	this.addr = addr;
+	this.env = env;
+    }
+
+// implements MessageConnectionServer interface
+
+    public void start(Map env) throws IOException {
+	if (logger.traceOn()) {
+	    logger.trace("start", "Starts the server now.");
+	}
+
+	Map newEnv = new HashMap();
+	if (this.env != null)
+	    newEnv.putAll(this.env);
+	if (env != null)
+	    newEnv.putAll(env);
+
+	final int port = addr.getPort();
+	String host = addr.getHost();
+	if (host.equals(""))
+	    host = InetAddress.getLocalHost().getHostName();
+
+	/* In the wildcard case, the following socket creation just
+	 * serves to check that the address in the URL is a valid
+	 * local address. */
+	if (wildcard) {
+	    ServerSocket ss =
+		new ServerSocket(0, DEFAULT_BACKLOG, InetAddress.getByName(host));
+
+	    ss.close();
+	}
+
+	final InetSocketAddress sa = wildcard ?
+	    new InetSocketAddress(port) : new InetSocketAddress(host, port);
+
+	final int nloops = DefaultConfig.getServerSelectorThreads(newEnv);
+	ioTimeout = DefaultConfig.getServerIoTimeout(newEnv);
+
+	ssc = ServerSocketChannel.open();
+	try {
+	    ssc.socket().setReuseAddress(
+			    DefaultConfig.getServerReuseAddress(newEnv));
+	    ssc.socket().bind(sa, DEFAULT_BACKLOG);
+
+	    loops = new SelectorLoop[nloops];
+	    for (int i = 0; i < nloops; i++) {
+		loops[i] = new SelectorLoop("JMXMP selector " + i + " on port " +
+					    ssc.socket().getLocalPort());
+	    }
+	} catch (IOException ioe) {
+	    stop();
+
+	    throw ioe;
+	}
+
+	addr = new JMXServiceURL(DEFAULT_PROTOCOL, host,
+				 ssc.socket().getLocalPort());
+
+	this.env = newEnv;
+    }
+
+    public MessageConnection accept() throws IOException {
+	if (logger.traceOn()) {
+	    logger.trace("accept", "Waiting a new connection...");
+	}
+
+	final SocketChannel channel = ssc.accept();
+
+	// selector threads are shared by the connections in turn
+	final SelectorLoop loop;
+	synchronized(loops) {
+	    loop = loops[next];
+	    next = (next + 1) % loops.length;
+	}
+
+	return new ChannelConnection(channel, loop, ioTimeout);
+    }
+
+    public void stop() throws IOException {
+	if (logger.traceOn()) {
+	    logger.trace("stop", "Stops the server now.");
+	}
+
+	if (loops != null) {
+	    for (int i = 0; i < loops.length; i++) {
+		if (loops[i] != null) {
+		    loops[i].stop();
+		}
+	    }
+	}
+
+	if (ssc != null) {
+	    ssc.close();
+	}
+    }
+
+    public JMXServiceURL getAddress() {
+	return addr;
+    }
+
+// private variables
+    private ServerSocketChannel ssc;
+    private SelectorLoop[] loops;
+    private int next = 0;
+    private long ioTimeout;
+    private JMXServiceURL addr;
+    private boolean wildcard;
+    private Map env;
+
+    private static final String DEFAULT_PROTOCOL = "jmxmp";
+    private static final int DEFAULT_BACKLOG = 100;
+
+    private final ClassLogger logger = new ClassLogger("javax.management.remote.misc", "ChannelConnectionServer");
+}
@@ -0,0 +1,214 @@
+/*
+ * @(#)file      SelectorLoop.java
+ * @(#)author    Sun Microsystems, Inc.
+ * @(#)version   1.1
+ * @(#)lastedit  07/03/08
+ * @(#)build     @BUILD_TAG_PLACEHOLDER@
+ *
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright (c) 2007 Sun Microsystems, Inc. All Rights Reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU General
+ * Public License Version 2 only ("GPL") or the Common Development and
+ * Distribution License("CDDL")(collectively, the "License"). You may not use
+ * this file except in compliance with the License. You can obtain a copy of the
+ * License at http://opendmk.dev.java.net/legal_notices/licenses.txt or in the 
+ * LEGAL_NOTICES folder that accompanied this code. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file found at
+ *     http://opendmk.dev.java.net/legal_notices/licenses.txt
+ * or in the LEGAL_NOTICES folder that accompanied this code.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.
+ * 
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * 
+ *       "Portions Copyrighted [year] [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding
+ * 
+ *       "[Contributor] elects to include this software in this distribution
+ *        under the [CDDL or GPL Version 2] license."
+ * 
+ * If you don't indicate a single choice of license, a recipient has the option
+ * to distribute your version of this file under either the CDDL or the GPL
+ * Version 2, or to extend the choice of license to its licensees as provided
+ * above. However, if you add GPL Version 2 code and therefore, elected the
+ * GPL Version 2 license, then the option applies only if the new code is made
+ * subject to such option by the copyright holder.
+ * 
+ */
+
+package com.sun.jmx.remote.socket;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import com.sun.jmx.remote.opt.util.ClassLogger;
+
+/**
+ * An event loop thread waiting for the input of a set of
+ * <code>ChannelConnection</code> objects.  When some input is
+ * available on a connection, its interest is removed and the task
+ * given to {@link ChannelConnection#selectRead} is called, so a
+ * connection is never read by two threads at the same time.
+ */
+class SelectorLoop implements Runnable {
+
+    SelectorLoop(String name) throws IOException {
+	selector = Selector.open();
+
+	thread = new Thread(this, name);
+	thread.setDaemon(true);
+	thread.start();
+    }
+
+    /**
+     * Asks to call back the connection when its channel is readable.
+     */
+    void selectRead(ChannelConnection conn) throws IOException {
+	synchronized(lock) {
+	    if (stopped) {
+		throw new IOException("The selector loop has been stopped.");
+	    }
+
+	    pendingList.add(conn);
+	}
+
+	selector.wakeup();
+    }
+
+    /**
+     * Wakes up the loop so that the keys of closed channels are
+     * released.
+     */
+    void wakeup() {
+	selector.wakeup();
+    }
+
+    void stop() {
+	synchronized(lock) {
+	    if (stopped) {
+		return;
+	    }
+
+	    stopped = true;
+	}
+
+	selector.wakeup();
+    }
+
+    public void run() {
+	if (logger.traceOn()) {
+	    logger.trace("run", "Starts the selector loop.");
+	}
+
+	while (!stopped) {
+	    try {
+		selector.select();
+	    } catch (IOException ioe) {
+		logger.warning("run", "Failed to select: " + ioe);
+		logger.debug("run", ioe);
+
+		break;
+	    }
+
+	    registerPending();
+
+	    Iterator it = selector.selectedKeys().iterator();
+	    while (it.hasNext()) {
+		final SelectionKey key = (SelectionKey) it.next();
+		it.remove();
+
+		final ChannelConnection conn =
+		    (ChannelConnection) key.attachment();
+		try {
+		    key.interestOps(0);
+		} catch (CancelledKeyException cke) {
+		    // the channel is closed, the reader of the connection
+		    // will find it.
+		}
+
+		conn.readable();
+	    }
+	}
+
+	final ArrayList remaining;
+	synchronized(lock) {
+	    stopped = true;
+	    remaining = new ArrayList(pendingList);
+	    pendingList.clear();
+	}
+
+	try {
+	    selector.close();
+	} catch (IOException ioe) {
+	    // OK: we are stopping.
+	}
+
+	// the waiting connections must not be forgotten, they will get
+	// an exception when reading.
+	for (Iterator it = remaining.iterator(); it.hasNext(); ) {
+	    ((ChannelConnection) it.next()).readable();
+	}
+
+	if (logger.traceOn()) {
+	    logger.trace("run", "The selector loop is stopped.");
+	}
+    }
+
+    private void registerPending() {
+	final Object[] pending;
+	synchronized(lock) {
+	    if (pendingList.isEmpty()) {
+		return;
+	    }
+
+	    pending = pendingList.toArray();
+	    pendingList.clear();
+	}
+
+	for (int i = 0; i < pending.length; i++) {
+	    final ChannelConnection conn = (ChannelConnection) pending[i];
+	    final SocketChannel channel = conn.getChannel();
+
+	    try {
+		final SelectionKey key = channel.keyFor(selector);
+		if (key == null) {
+		    channel.register(selector, SelectionKey.OP_READ, conn);
+		} else {
+		    key.interestOps(SelectionKey.OP_READ);
+		}
+	    } catch (ClosedChannelException cce) {
+		conn.readable();
+	    } catch (CancelledKeyException cke) {
+		conn.readable();
+	    }
+	}
+    }
+
+    private final Selector selector;
+    private final Thread thread;
+
+    private final ArrayList pendingList = new ArrayList();
+    private volatile boolean stopped = false;
+    private final int[] lock = new int[0];
+
+    private static final ClassLogger logger =
+	new ClassLogger("javax.management.remote.misc", "SelectorLoop");
+}
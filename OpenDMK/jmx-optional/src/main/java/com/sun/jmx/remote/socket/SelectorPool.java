@@ -0,0 +1,130 @@
+/*
+ * @(#)file      SelectorPool.java
+ * @(#)author    Sun Microsystems, Inc.
+ * @(#)version   1.1
+ * @(#)lastedit  07/03/08
+ * @(#)build     @BUILD_TAG_PLACEHOLDER@
+ *
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright (c) 2007 Sun Microsystems, Inc. All Rights Reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU General
+ * Public License Version 2 only ("GPL") or the Common Development and
+ * Distribution License("CDDL")(collectively, the "License"). You may not use
+ * this file except in compliance with the License. You can obtain a copy of the
+ * License at http://opendmk.dev.java.net/legal_notices/licenses.txt or in the 
+ * LEGAL_NOTICES folder that accompanied this code. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file found at
+ *     http://opendmk.dev.java.net/legal_notices/licenses.txt
+ * or in the LEGAL_NOTICES folder that accompanied this code.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.
+ * 
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * 
+ *       "Portions Copyrighted [year] [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding
+ * 
+ *       "[Contributor] elects to include this software in this distribution
+ *        under the [CDDL or GPL Version 2] license."
+ * 
+ * If you don't indicate a single choice of license, a recipient has the option
+ * to distribute your version of this file under either the CDDL or the GPL
+ * Version 2, or to extend the choice of license to its licensees as provided
+ * above. However, if you add GPL Version 2 code and therefore, elected the
+ * GPL Version 2 license, then the option applies only if the new code is made
+ * subject to such option by the copyright holder.
+ * 
+ */
+
+package com.sun.jmx.remote.socket;
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+
+import com.sun.jmx.remote.opt.util.ClassLogger;
+
+/**
+ * A small pool of selectors shared by the <code>ChannelConnection</code>
+ * objects.  Once a channel is in non-blocking mode, a reader or a
+ * writer which cannot progress borrows a selector for the time it
+ * waits, instead of each connection keeping one open for each
+ * direction.  At most {@link #MAX_SIZE} idle selectors are kept; the
+ * extra ones are closed when they are given back.
+ */
+class SelectorPool {
+
+    private SelectorPool() {
+    }
+
+    /**
+     * Returns a selector with no key, which must be given back to
+     * {@link #release}.
+     */
+    static Selector get() throws IOException {
+	synchronized(pool) {
+	    if (!pool.isEmpty()) {
+		return (Selector) pool.remove(pool.size() - 1);
+	    }
+	}
+
+	return Selector.open();
+    }
+
+    /**
+     * Gives back a selector returned by {@link #get}, after cancelling
+     * the key registered with it, if any.
+     */
+    static void release(Selector selector, SelectionKey key) {
+	try {
+	    if (key != null) {
+		key.cancel();
+	    }
+
+	    // deregisters the cancelled key and clears a pending wakeup,
+	    // so that the next user finds the selector empty.
+	    selector.selectNow();
+	    selector.selectedKeys().clear();
+
+	    synchronized(pool) {
+		if (pool.size() < MAX_SIZE) {
+		    pool.add(selector);
+		    return;
+		}
+	    }
+	} catch (IOException ioe) {
+	    if (logger.debugOn()) {
+		logger.debug("release", ioe);
+	    }
+	} catch (ClosedSelectorException cse) {
+	    return;
+	}
+
+	try {
+	    selector.close();
+	} catch (IOException ioe) {
+	    // OK: the selector is no longer used
+	}
+    }
+
+    private static final int MAX_SIZE = 8;
+
+    private static final ArrayList/*<Selector>*/ pool = new ArrayList();
+
+    private static final ClassLogger logger =
+	new ClassLogger("javax.management.remote.misc", "SelectorPool");
+}
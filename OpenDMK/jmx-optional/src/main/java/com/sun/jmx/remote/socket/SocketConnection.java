@@ -52,6 +52,8 @@ package com.sun.jmx.remote.socket;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.InputStream;
 
 import java.io.IOException;
@@ -62,6 +64,7 @@ import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.Socket;
 import java.security.Principal;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
@@ -73,13 +76,16 @@ import javax.management.remote.generic.MessageConnection;
 import javax.management.remote.message.Message;
 import javax.security.auth.Subject;
 
+import com.sun.jmx.remote.generic.CountingMessageConnection;
+import com.sun.jmx.remote.generic.MessageCodec;
 import com.sun.jmx.remote.generic.DefaultConfig;
 import com.sun.jmx.remote.opt.util.ClassLogger;
 
 /**
  * This class uses TCP sockets to implement a JMX client MessageConnection.
  */
-public class SocketConnection implements SocketConnectionIf, MessageConnection {
+public class SocketConnection
+	implements SocketConnectionIf, CountingMessageConnection {
 
     //-------------
     // Constructors
@@ -99,7 +105,10 @@ public class SocketConnection implements SocketConnectionIf, MessageConnection {
 
 	addr = sock.getInetAddress().getHostName();
 	port = sock.getPort();
-	replaceStreams(socket.getInputStream(), socket.getOutputStream());
+	// A message larger than the stream buffer is written in several
+	// segments: do not let the last one wait for the ack of the others.
+	sock.setTcpNoDelay(true);
+	replaceSocketStreams();
     }
 
     /**
@@ -134,7 +143,8 @@ public class SocketConnection implements SocketConnectionIf, MessageConnection {
 		    sock = new Socket(addr, port);
 		}
 
-		replaceStreams(sock.getInputStream(), sock.getOutputStream());
+		sock.setTcpNoDelay(true);
+		replaceSocketStreams();
 
 		if (env != null) {
 		    defaultClassLoader = (ClassLoader)
@@ -165,8 +175,16 @@ public class SocketConnection implements SocketConnectionIf, MessageConnection {
 		state = CONNECTING;
 		stateLock.notifyAll();
 
-		sock = new Socket(addr, port);
-		replaceStreams(sock.getInputStream(), sock.getOutputStream());
+		try {
+		    sock = new Socket(addr, port);
+		    sock.setTcpNoDelay(true);
+		    replaceSocketStreams();
+		} catch (IOException ioe) {
+		    // allow a later attempt
+		    state = FAILED;
+		    stateLock.notifyAll();
+		    throw ioe;
+		}
 
 		state = CONNECTED;
 		stateLock.notifyAll();
@@ -204,7 +222,17 @@ public class SocketConnection implements SocketConnectionIf, MessageConnection {
     public void setSocket(Socket s) throws IOException {
 	sock = s;
 
-	replaceStreams(sock.getInputStream(), sock.getOutputStream());
+	replaceSocketStreams();
+    }
+
+    // The streams of the socket count the bytes of this connection,
+    // the counts go on when the socket is replaced.
+    private void replaceSocketStreams() throws IOException {
+	countingIn = new CountingInputStream(sock.getInputStream(),
+					     getBytesRead());
+	countingOut = new CountingOutputStream(sock.getOutputStream(),
+					       getBytesWritten());
+	replaceStreams(countingIn, countingOut);
     }
 
     /**
@@ -219,6 +247,20 @@ public class SocketConnection implements SocketConnectionIf, MessageConnection {
 	replaceOutputStreamFlag = true;
     }
 
+    /**
+     * Returns the current input stream.
+     */
+    public InputStream getInputStream() {
+	return in;
+    }
+
+    /**
+     * Returns the current output stream.
+     */
+    public OutputStream getOutputStream() {
+	return out;
+    }
+
     /**
      * Sets the subject authenticated through this socket connection.
      */
@@ -226,6 +268,30 @@ public class SocketConnection implements SocketConnectionIf, MessageConnection {
 	this.subject = subject;
     }
 
+    /**
+     * Replaces the Java serialization of the messages by the given
+     * codec.
+     */
+    public void setMessageCodec(MessageCodec codec) throws IOException {
+	this.codec = codec;
+	replaceInputStreamFlag = true;
+	replaceOutputStreamFlag = true;
+    }
+
+    //----------------------------------------------------------
+    // Implementation of the CountingMessageConnection interface
+    //----------------------------------------------------------
+
+    public long getBytesRead() {
+	final CountingInputStream cin = countingIn;
+	return (cin == null) ? 0 : cin.getCount();
+    }
+
+    public long getBytesWritten() {
+	final CountingOutputStream cout = countingOut;
+	return (cout == null) ? 0 : cout.getCount();
+    }
+
     //--------------------------------------------------
     // Implementation of the MessageConnection interface
     //--------------------------------------------------
@@ -237,6 +303,19 @@ public class SocketConnection implements SocketConnectionIf, MessageConnection {
 	    logger.debug("readMessage", "Read a message ...");
 	}
 
+	if (codec != null) {
+	    if (replaceInputStreamFlag) {
+		if (in instanceof BufferedInputStream) {
+		    din = new DataInputStream(in);
+		} else {
+		    din = new DataInputStream(new BufferedInputStream(in));
+		}
+		replaceInputStreamFlag = false;
+	    }
+
+	    return codec.readMessage(din, defaultClassLoader);
+	}
+
 	if (replaceInputStreamFlag) {		
 	    if (in instanceof BufferedInputStream) {
 		oin = new ObjectInputStreamWithLoader(in, defaultClassLoader);
@@ -258,6 +337,21 @@ public class SocketConnection implements SocketConnectionIf, MessageConnection {
 
 	checkState();
 
+	if (codec != null) {
+	    if (replaceOutputStreamFlag) {
+		if (out instanceof BufferedOutputStream) {
+		    dout = new DataOutputStream(out);
+		} else {
+		    dout = new DataOutputStream(new BufferedOutputStream(out));
+		}
+		replaceOutputStreamFlag = false;
+	    }
+
+	    codec.writeMessage(msg, dout);
+	    dout.flush();
+	    return;
+	}
+
 	if (replaceOutputStreamFlag) {
 	    if (out instanceof BufferedOutputStream) {
 		oout = new ObjectOutputStream(out);
@@ -387,7 +481,7 @@ public class SocketConnection implements SocketConnectionIf, MessageConnection {
 // Private variables
 //----------------------------------------
 
-    private static class ObjectInputStreamWithLoader 
+    static class ObjectInputStreamWithLoader 
 	extends ObjectInputStream {
         public ObjectInputStreamWithLoader(InputStream in, ClassLoader cl) 
 	    throws IOException {
@@ -397,11 +491,20 @@ public class SocketConnection implements SocketConnectionIf, MessageConnection {
 
         protected Class resolveClass(ObjectStreamClass aClass) 
 	    throws IOException, ClassNotFoundException {
-	    return cloader == null ? super.resolveClass(aClass) : 
-		Class.forName(aClass.getName(), false, cloader);
+	    // The same classes are resolved again for every message
+	    // since the stream is reset after each of them.
+	    final String name = aClass.getName();
+	    Class c = (Class) resolved.get(name);
+	    if (c == null) {
+		c = cloader == null ? super.resolveClass(aClass) : 
+		    Class.forName(name, false, cloader);
+		resolved.put(name, c);
+	    }
+	    return c;
         }
 
         private final ClassLoader cloader;
+	private final Map resolved = new HashMap();
     }
 
     private Subject subject;
@@ -411,6 +514,11 @@ public class SocketConnection implements SocketConnectionIf, MessageConnection {
     private ObjectInputStream oin;
     private OutputStream out;
     private ObjectOutputStream oout;
+    private volatile CountingInputStream countingIn;
+    private volatile CountingOutputStream countingOut;
+    private MessageCodec codec;
+    private DataInputStream din;
+    private DataOutputStream dout;
     private boolean replaceInputStreamFlag = false;
     private boolean replaceOutputStreamFlag = false;
     private String addr;
@@ -56,6 +56,8 @@ import java.io.OutputStream;
 import java.net.Socket;
 import javax.security.auth.Subject;
 
+import com.sun.jmx.remote.generic.MessageCodec;
+
 /**
  * This interface specifies methods to manipulate the socket
  * and its input/output streams in a socket-based connection.
@@ -80,8 +82,27 @@ public interface SocketConnectionIf {
     public void replaceStreams(InputStream is, OutputStream os)
 	throws IOException;
 
+    /**
+     * Returns the current input stream, which is the socket's input
+     * stream unless it has been replaced.
+     */
+    public InputStream getInputStream();
+
+    /**
+     * Returns the current output stream, which is the socket's output
+     * stream unless it has been replaced.
+     */
+    public OutputStream getOutputStream();
+
     /**
      * Sets the subject authenticated through this socket connection.
      */
     public void setSubject(Subject subject);
+
+    /**
+     * Replaces the Java serialization of the messages by the given
+     * codec for all the messages read or written after this call.
+     */
+    public void setMessageCodec(MessageCodec codec)
+	throws IOException;
 }
@@ -0,0 +1,200 @@
+/*
+ * @(#)file      UnixDomainSockets.java
+ * @(#)author    Sun Microsystems, Inc.
+ * @(#)version   1.1
+ * @(#)lastedit  07/03/08
+ * @(#)build     @BUILD_TAG_PLACEHOLDER@
+ *
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright (c) 2007 Sun Microsystems, Inc. All Rights Reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU General
+ * Public License Version 2 only ("GPL") or the Common Development and
+ * Distribution License("CDDL")(collectively, the "License"). You may not use
+ * this file except in compliance with the License. You can obtain a copy of the
+ * License at http://opendmk.dev.java.net/legal_notices/licenses.txt or in the 
+ * LEGAL_NOTICES folder that accompanied this code. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file found at
+ *     http://opendmk.dev.java.net/legal_notices/licenses.txt
+ * or in the LEGAL_NOTICES folder that accompanied this code.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.
+ * 
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * 
+ *       "Portions Copyrighted [year] [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding
+ * 
+ *       "[Contributor] elects to include this software in this distribution
+ *        under the [CDDL or GPL Version 2] license."
+ * 
+ * If you don't indicate a single choice of license, a recipient has the option
+ * to distribute your version of this file under either the CDDL or the GPL
+ * Version 2, or to extend the choice of license to its licensees as provided
+ * above. However, if you add GPL Version 2 code and therefore, elected the
+ * GPL Version 2 license, then the option applies only if the new code is made
+ * subject to such option by the copyright holder.
+ * 
+ */
+
+package com.sun.jmx.remote.socket;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import com.sun.jmx.remote.opt.util.EnvHelp;
+
+/**
+ * Opens the channels of Unix domain sockets.  They are only available
+ * from JDK 16, so their API is called by reflection.
+ */
+final class UnixDomainSockets {
+
+    private UnixDomainSockets() {
+    }
+
+    /**
+     * Tells whether the running JDK supports Unix domain sockets.
+     */
+    static boolean isSupported() {
+	return unixFamily != null;
+    }
+
+    /**
+     * Opens a channel connected to the Unix domain socket at the
+     * given path.
+     */
+    static SocketChannel connect(String path) throws IOException {
+	checkSupported();
+
+	final SocketChannel channel = (SocketChannel)
+	    invoke(openChannel, null, new Object[] {unixFamily});
+	boolean connected = false;
+	try {
+	    channel.connect(address(path));
+	    connected = true;
+	} finally {
+	    if (!connected) {
+		channel.close();
+	    }
+	}
+	return channel;
+    }
+
+    /**
+     * Opens a server channel bound to the Unix domain socket at the
+     * given path.  The socket file is created by this call.
+     */
+    static ServerSocketChannel bind(String path, int backlog)
+	    throws IOException {
+	checkSupported();
+
+	final ServerSocketChannel channel = (ServerSocketChannel)
+	    invoke(openServerChannel, null, new Object[] {unixFamily});
+	boolean bound = false;
+	try {
+	    invoke(bind, channel, new Object[] {address(path),
+						new Integer(backlog)});
+	    bound = true;
+	} finally {
+	    if (!bound) {
+		channel.close();
+	    }
+	}
+	return channel;
+    }
+
+    private static java.net.SocketAddress address(String path)
+	    throws IOException {
+	return (java.net.SocketAddress)
+	    invoke(addressOf, null, new Object[] {path});
+    }
+
+    /**
+     * Throws an exception if the running JDK does not support Unix
+     * domain sockets.
+     */
+    static void checkSupported() throws IOException {
+	if (unixFamily == null) {
+	    throw new IOException("Unix domain sockets are not supported " +
+				  "by this JDK");
+	}
+    }
+
+    private static Object invoke(Method m, Object target, Object[] args)
+	    throws IOException {
+	try {
+	    return m.invoke(target, args);
+	} catch (InvocationTargetException e) {
+	    final Throwable t = e.getTargetException();
+
+	    if (t instanceof IOException) {
+		throw (IOException) t;
+	    } else if (t instanceof RuntimeException) {
+		throw (RuntimeException) t;
+	    } else if (t instanceof Error) {
+		throw (Error) t;
+	    }
+	    final IOException ioe = new IOException(t.toString());
+	    EnvHelp.initCause(ioe, t);
+	    throw ioe;
+	} catch (IllegalAccessException e) {
+	    final IOException ioe = new IOException(e.toString());
+	    EnvHelp.initCause(ioe, e);
+	    throw ioe;
+	}
+    }
+
+    private static final Object unixFamily;
+    private static final Method openChannel;
+    private static final Method openServerChannel;
+    private static final Method bind;
+    private static final Method addressOf;
+
+    static {
+	Object family = null;
+	Method open = null;
+	Method openServer = null;
+	Method b = null;
+	Method of = null;
+
+	try {
+	    final Class familyClass = Class.forName("java.net.ProtocolFamily");
+	    final Class addressClass =
+		Class.forName("java.net.UnixDomainSocketAddress");
+
+	    family = Class.forName("java.net.StandardProtocolFamily")
+		.getField("UNIX").get(null);
+	    open = SocketChannel.class.getMethod("open",
+						 new Class[] {familyClass});
+	    openServer = ServerSocketChannel.class.getMethod("open",
+						 new Class[] {familyClass});
+	    b = ServerSocketChannel.class.getMethod("bind",
+		new Class[] {java.net.SocketAddress.class, int.class});
+	    of = addressClass.getMethod("of", new Class[] {String.class});
+	} catch (Exception e) {
+	    // OK: JDK older than 16
+	    family = null;
+	}
+
+	unixFamily = family;
+	openChannel = open;
+	openServerChannel = openServer;
+	bind = b;
+	addressOf = of;
+    }
+}
@@ -0,0 +1,535 @@
+/*
+ * @(#)file      UnixSocketConnection.java
+ * @(#)author    Sun Microsystems, Inc.
+ * @(#)version   1.1
+ * @(#)lastedit  07/03/08
+ * @(#)build     @BUILD_TAG_PLACEHOLDER@
+ *
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright (c) 2007 Sun Microsystems, Inc. All Rights Reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU General
+ * Public License Version 2 only ("GPL") or the Common Development and
+ * Distribution License("CDDL")(collectively, the "License"). You may not use
+ * this file except in compliance with the License. You can obtain a copy of the
+ * License at http://opendmk.dev.java.net/legal_notices/licenses.txt or in the 
+ * LEGAL_NOTICES folder that accompanied this code. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file found at
+ *     http://opendmk.dev.java.net/legal_notices/licenses.txt
+ * or in the LEGAL_NOTICES folder that accompanied this code.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.
+ * 
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * 
+ *       "Portions Copyrighted [year] [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding
+ * 
+ *       "[Contributor] elects to include this software in this distribution
+ *        under the [CDDL or GPL Version 2] license."
+ * 
+ * If you don't indicate a single choice of license, a recipient has the option
+ * to distribute your version of this file under either the CDDL or the GPL
+ * Version 2, or to extend the choice of license to its licensees as provided
+ * above. However, if you add GPL Version 2 code and therefore, elected the
+ * GPL Version 2 license, then the option applies only if the new code is made
+ * subject to such option by the copyright holder.
+ * 
+ */
+
+package com.sun.jmx.remote.socket;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.security.Principal;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.message.Message;
+import javax.security.auth.Subject;
+
+import com.sun.jmx.remote.generic.CountingMessageConnection;
+import com.sun.jmx.remote.generic.DefaultConfig;
+import com.sun.jmx.remote.generic.MessageCodec;
+import com.sun.jmx.remote.opt.util.ClassLogger;
+
+/**
+ * This class uses a Unix domain socket to implement a JMX
+ * MessageConnection between two processes of the same host.
+ *
+ * <p>The connection has no {@link Socket}: the profiles which need
+ * one, TLS and SASL, cannot be used with it.  The access to the
+ * connector server is controlled by the permissions of its socket
+ * file instead.</p>
+ */
+public class UnixSocketConnection
+	implements SocketConnectionIf, CountingMessageConnection {
+
+    //-------------
+    // Constructors
+    //-------------
+
+    /**
+     * Constructs a connection from a channel accepted by a
+     * {@link UnixSocketConnectionServer}.
+     *
+     * @param channel a connected Unix domain socket channel.
+     * @param path the path of the socket file.
+     */
+    UnixSocketConnection(SocketChannel channel, String path)
+	    throws IOException {
+	if (logger.traceOn()) {
+	    logger.trace("Constructor", "Creating with a channel "+channel);
+	}
+
+	this.path = path;
+	this.channel = channel;
+
+	replaceChannelStreams();
+    }
+
+    /**
+     * Constructs a client connection to the Unix domain socket at
+     * the given path.
+     *
+     * @param path the path of the socket file of the server.
+     */
+    public UnixSocketConnection(String path) throws IOException {
+	if (logger.traceOn()) {
+	    logger.trace("Constructor", "Creating with a socket path: "+path);
+	}
+
+	if (path == null) {
+	    throw new NullPointerException("Null path.");
+	}
+
+	this.path = path;
+    }
+
+    public void connect(Map env) throws IOException {
+	waitConnectedState = DefaultConfig.getTimeoutForWaitConnectedState(env);
+
+	synchronized(stateLock) {
+	    if (state == UNCONNECTED) {
+                if (logger.traceOn()) {
+		    logger.trace("connect", "First time to connect to the server.");
+		}
+
+		state = CONNECTING;
+		stateLock.notifyAll();
+
+		if (channel == null) {
+		    channel = UnixDomainSockets.connect(path);
+		    replaceChannelStreams();
+		}
+
+		if (env != null) {
+		    defaultClassLoader = (ClassLoader)
+			env.get(JMXConnectorFactory.DEFAULT_CLASS_LOADER);
+		}
+
+		state = CONNECTED;
+		stateLock.notifyAll();
+
+	    } else if (state == FAILED || state == CONNECTED) {
+		// reconnecting
+                if (logger.traceOn()) {
+		    logger.trace("connect", "Try to re-connect to the server.");
+		}
+
+                if (state == CONNECTED) {
+		    state = FAILED;
+		    stateLock.notifyAll();
+
+		    try {
+			channel.close();
+		    } catch (IOException ioe) {
+			// OK.
+			// We are closing the channel.
+		    }
+		}
+
+		state = CONNECTING;
+		stateLock.notifyAll();
+
+		try {
+		    channel = UnixDomainSockets.connect(path);
+		    replaceChannelStreams();
+		} catch (IOException ioe) {
+		    // allow a later attempt
+		    state = FAILED;
+		    stateLock.notifyAll();
+		    throw ioe;
+		}
+
+		state = CONNECTED;
+		stateLock.notifyAll();
+	    } else if (state == TERMINATED) {
+		throw new IllegalStateException("The connection has been closed.");
+	    } else {
+                if (logger.traceOn()) {
+		    logger.trace("connect", "Waiting the state changing.");
+		}
+
+		checkState();
+	    }
+	}
+    }
+
+    //---------------------------------------------------
+    // Implementation of the SocketConnectionIf interface
+    //---------------------------------------------------
+
+    /**
+     * Returns null: a Unix domain socket channel has no
+     * <code>Socket</code>.
+     */
+    public Socket getSocket() {
+        return null;
+    }
+
+    /**
+     * Not supported: a Unix domain socket cannot be replaced by a TCP
+     * socket.
+     *
+     * @exception IOException always.
+     */
+    public void setSocket(Socket s) throws IOException {
+	throw new IOException("A Unix domain socket connection has no " +
+			      "socket to replace");
+    }
+
+    /**
+     * Replaces the current input/output streams by the ones provided.
+     */
+    public void replaceStreams(InputStream is, OutputStream os)
+	throws IOException {
+	in = is;
+	out = os;
+	replaceInputStreamFlag = true;
+	replaceOutputStreamFlag = true;
+    }
+
+    /**
+     * Returns the current input stream.
+     */
+    public InputStream getInputStream() {
+	return in;
+    }
+
+    /**
+     * Returns the current output stream.
+     */
+    public OutputStream getOutputStream() {
+	return out;
+    }
+
+    /**
+     * Sets the subject authenticated through this connection.
+     */
+    public void setSubject(Subject subject) {
+	this.subject = subject;
+    }
+
+    /**
+     * Replaces the Java serialization of the messages by the given
+     * codec.
+     */
+    public void setMessageCodec(MessageCodec codec) throws IOException {
+	this.codec = codec;
+	replaceInputStreamFlag = true;
+	replaceOutputStreamFlag = true;
+    }
+
+    //----------------------------------------------------------
+    // Implementation of the CountingMessageConnection interface
+    //----------------------------------------------------------
+
+    public long getBytesRead() {
+	final CountingInputStream cin = countingIn;
+	return (cin == null) ? 0 : cin.getCount();
+    }
+
+    public long getBytesWritten() {
+	final CountingOutputStream cout = countingOut;
+	return (cout == null) ? 0 : cout.getCount();
+    }
+
+    //--------------------------------------------------
+    // Implementation of the MessageConnection interface
+    //--------------------------------------------------
+
+    public Message readMessage() throws IOException, ClassNotFoundException {
+	checkState();
+
+	if (logger.debugOn()) {
+	    logger.debug("readMessage", "Read a message ...");
+	}
+
+	if (codec != null) {
+	    if (replaceInputStreamFlag) {
+		if (in instanceof BufferedInputStream) {
+		    din = new DataInputStream(in);
+		} else {
+		    din = new DataInputStream(new BufferedInputStream(in));
+		}
+		replaceInputStreamFlag = false;
+	    }
+
+	    return codec.readMessage(din, defaultClassLoader);
+	}
+
+	if (replaceInputStreamFlag) {
+	    if (in instanceof BufferedInputStream) {
+		oin = new SocketConnection.ObjectInputStreamWithLoader(
+						      in, defaultClassLoader);
+	    } else {
+		oin = new SocketConnection.ObjectInputStreamWithLoader(
+						      new BufferedInputStream(in),
+						      defaultClassLoader);
+	    }
+	    replaceInputStreamFlag = false;
+	}
+
+	return (Message) oin.readObject();
+    }
+
+    public void writeMessage(Message msg) throws IOException {
+	if (logger.debugOn()) {
+	    logger.debug("writeMessage", "Write a message ...");
+	}
+
+	checkState();
+
+	if (codec != null) {
+	    if (replaceOutputStreamFlag) {
+		if (out instanceof BufferedOutputStream) {
+		    dout = new DataOutputStream(out);
+		} else {
+		    dout = new DataOutputStream(new BufferedOutputStream(out));
+		}
+		replaceOutputStreamFlag = false;
+	    }
+
+	    codec.writeMessage(msg, dout);
+	    dout.flush();
+	    return;
+	}
+
+	if (replaceOutputStreamFlag) {
+	    if (out instanceof BufferedOutputStream) {
+		oout = new ObjectOutputStream(out);
+	    } else {
+		oout = new ObjectOutputStream(new BufferedOutputStream(out));
+	    }
+	    replaceOutputStreamFlag = false;
+	}
+	oout.writeObject(msg);
+	oout.flush();
+	oout.reset();
+    }
+
+    public void close() {
+	if (logger.traceOn()) {
+	    logger.trace("close", "Close the Unix socket connection.");
+	}
+
+	synchronized(stateLock) {
+	    if (state == TERMINATED) {
+		return;
+	    }
+
+	    state = TERMINATED;
+
+	    if (channel != null) {
+		try {
+		    channel.close();
+		} catch (Exception e) {
+		    if (logger.debugOn()) {
+			logger.debug("close", e);
+		    }
+		}
+	    }
+
+	    stateLock.notify();
+	}
+    }
+
+    public String getConnectionId() {
+	if (channel == null) {
+	    return defaultConnectionId;
+	}
+	StringBuffer buf = new StringBuffer();
+	buf.append("jmxmp+unix://" + path + " ");
+	if (subject != null) {
+	    Set principals = subject.getPrincipals();
+	    String sep = "";
+	    for (Iterator it = principals.iterator(); it.hasNext(); ) {
+		Principal p = (Principal) it.next();
+		String n = p.getName().replace(' ', '_').replace(';', ':');
+		buf.append(sep).append(n);
+		sep = ";";
+	    }
+	}
+	buf.append(" ").append(System.identityHashCode(this));
+	return buf.toString();
+    }
+
+//----------------------------------------
+// Private methods
+//----------------------------------------
+
+    // The streams of the channel count the bytes of this connection,
+    // the counts go on when the channel is reopened.
+    private void replaceChannelStreams() throws IOException {
+	countingIn = new CountingInputStream(
+		new ChannelInputStream(channel), getBytesRead());
+	countingOut = new CountingOutputStream(
+		new ChannelOutputStream(channel), getBytesWritten());
+	replaceStreams(countingIn, countingOut);
+    }
+
+    // check or wait(1s) the state as CONNECTED
+    //
+    private void checkState() throws IllegalStateException {
+	synchronized(stateLock) {
+	    if (state == CONNECTED) {
+		return;
+	    } else if (state == TERMINATED) {
+		throw new IllegalStateException("The connection has been closed.");
+	    }
+
+	    // waiting
+	    long waitingTime = waitConnectedState;
+	    final long endTime = System.currentTimeMillis() + waitingTime;
+
+	    while (state != CONNECTED && state != TERMINATED && waitingTime > 0) {
+		try {
+		    stateLock.wait(waitingTime);
+		} catch (InterruptedException ire) {
+		    break;
+		}
+
+		waitingTime = endTime - System.currentTimeMillis();
+	    }
+
+	    if (state == CONNECTED) {
+		return;
+	    } else {
+		throw new IllegalStateException("The connection is not currently established.");
+	    }
+	}
+    }
+
+//----------------------------------------
+// Private classes
+//----------------------------------------
+
+    /*
+     * Streams of a blocking channel.  Unlike the streams of
+     * java.nio.channels.Channels, they let a thread write while
+     * another one is blocked reading.
+     */
+    private static class ChannelInputStream extends InputStream {
+	ChannelInputStream(SocketChannel channel) {
+	    this.channel = channel;
+	}
+
+	public int read() throws IOException {
+	    final int n = read(one, 0, 1);
+
+	    return (n <= 0) ? -1 : (one[0] & 0xff);
+	}
+
+	public int read(byte[] b, int off, int len) throws IOException {
+	    if (len == 0) {
+		return 0;
+	    }
+
+	    return channel.read(ByteBuffer.wrap(b, off, len));
+	}
+
+	private final SocketChannel channel;
+	private final byte[] one = new byte[1];
+    }
+
+    private static class ChannelOutputStream extends OutputStream {
+	ChannelOutputStream(SocketChannel channel) {
+	    this.channel = channel;
+	}
+
+	public void write(int b) throws IOException {
+	    one[0] = (byte) b;
+	    write(one, 0, 1);
+	}
+
+	public void write(byte[] b, int off, int len) throws IOException {
+	    final ByteBuffer bb = ByteBuffer.wrap(b, off, len);
+	    while (bb.hasRemaining()) {
+		channel.write(bb);
+	    }
+	}
+
+	private final SocketChannel channel;
+	private final byte[] one = new byte[1];
+    }
+
+//----------------------------------------
+// Private variables
+//----------------------------------------
+
+    private final String path;
+    private SocketChannel channel;
+
+    private Subject subject;
+    private InputStream in;
+    private ObjectInputStream oin;
+    private OutputStream out;
+    private ObjectOutputStream oout;
+    private MessageCodec codec;
+    private DataInputStream din;
+    private DataOutputStream dout;
+    private volatile CountingInputStream countingIn;
+    private volatile CountingOutputStream countingOut;
+    private boolean replaceInputStreamFlag = false;
+    private boolean replaceOutputStreamFlag = false;
+    private ClassLoader defaultClassLoader;
+    private final String defaultConnectionId = "Uninitialized connection id";
+
+    // state issues
+    private static final int UNCONNECTED = 1;
+    private static final int CONNECTING = 2;
+    private static final int CONNECTED = 4;
+    private static final int FAILED = 8;
+    private static final int TERMINATED = 16;
+
+    private int state = UNCONNECTED;
+    private int[] stateLock = new int[0];
+
+    private long  waitConnectedState = 1000;
+
+    private final ClassLogger logger = new ClassLogger("javax.management.remote.misc", "UnixSocketConnection");
+}
@@ -0,0 +1,203 @@
+/*
+ * @(#)file      UnixSocketConnectionServer.java
+ * @(#)author    Sun Microsystems, Inc.
+ * @(#)version   1.1
+ * @(#)lastedit  07/03/08
+ * @(#)build     @BUILD_TAG_PLACEHOLDER@
+ *
+ * 
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright (c) 2007 Sun Microsystems, Inc. All Rights Reserved.
+ * 
+ * The contents of this file are subject to the terms of either the GNU General
+ * Public License Version 2 only ("GPL") or the Common Development and
+ * Distribution License("CDDL")(collectively, the "License"). You may not use
+ * this file except in compliance with the License. You can obtain a copy of the
+ * License at http://opendmk.dev.java.net/legal_notices/licenses.txt or in the 
+ * LEGAL_NOTICES folder that accompanied this code. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ * 
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file found at
+ *     http://opendmk.dev.java.net/legal_notices/licenses.txt
+ * or in the LEGAL_NOTICES folder that accompanied this code.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.
+ * 
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * 
+ *       "Portions Copyrighted [year] [name of copyright owner]"
+ * 
+ * Contributor(s):
+ * 
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding
+ * 
+ *       "[Contributor] elects to include this software in this distribution
+ *        under the [CDDL or GPL Version 2] license."
+ * 
+ * If you don't indicate a single choice of license, a recipient has the option
+ * to distribute your version of this file under either the CDDL or the GPL
+ * Version 2, or to extend the choice of license to its licensees as provided
+ * above. However, if you add GPL Version 2 code and therefore, elected the
+ * GPL Version 2 license, then the option applies only if the new code is made
+ * subject to such option by the copyright holder.
+ * 
+ */
+
+package com.sun.jmx.remote.socket;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.BindException;
+import java.net.MalformedURLException;
+import java.nio.channels.ServerSocketChannel;
+import java.util.Map;
+
+import javax.management.remote.JMXServiceURL;
+import javax.management.remote.generic.MessageConnection;
+import javax.management.remote.generic.MessageConnectionServer;
+
+import com.sun.jmx.remote.generic.DefaultConfig;
+import com.sun.jmx.remote.opt.util.ClassLogger;
+
+/**
+ * This class uses a Unix domain socket to realize a JMX connection
+ * server for the clients running on the same host.  Its address is
+ * <code>service:jmx:jmxmp+unix://</code> followed by the absolute path
+ * of the socket file, for example
+ * <code>service:jmx:jmxmp+unix:///var/run/agent/jmx.sock</code>.
+ *
+ * <p>The socket file is created when the server is started and
+ * deleted when it is stopped.  A socket file left by a server which
+ * did not stop is replaced.  Unless the attribute
+ * {@link DefaultConfig#SERVER_UNIX_OWNER_ONLY} is false, only the
+ * owner of the process can connect to the server.  The permissions of
+ * the directory of the socket file can also control who can connect.
+ * The Unix domain sockets need JDK 16 or later.</p>
+ */
+public class UnixSocketConnectionServer implements MessageConnectionServer {
+
+    public UnixSocketConnectionServer(JMXServiceURL addr, Map env)
+	    throws IOException {
+
+	if (logger.traceOn()) {
+	    logger.trace("constructor", "Constructs a UnixSocketConnectionServer on "+addr);
+	}
+
+	if (addr == null) {
+	    throw new NullPointerException("Null address.");
+	}
+
+	if (!PROTOCOL.equalsIgnoreCase(addr.getProtocol())) {
+	    throw new MalformedURLException("Unknown protocol: " +
+					    addr.getProtocol());
+	}
+
+	if (!addr.getHost().equals("") || addr.getPort() != 0) {
+	    throw new MalformedURLException("A " + PROTOCOL + " address " +
+					    "has no host and no port: " + addr);
+	}
+
+	path = addr.getURLPath();
+	if (!path.startsWith("/")) {
+	    throw new MalformedURLException("The path of the socket must " +
+					    "be absolute: " + addr);
+	}
+
+	this.addr = addr;
+	this.env = env;
+    }
+
+// implements MessageConnectionServer interface
+
+    public void start(Map env) throws IOException {
+	if (logger.traceOn()) {
+	    logger.trace("start", "Starts the server now.");
+	}
+
+	UnixDomainSockets.checkSupported();
+
+	final File file = new File(path);
+	if (file.exists()) {
+	    deleteStaleSocket(file);
+	}
+
+	ssc = UnixDomainSockets.bind(path, DEFAULT_BACKLOG);
+
+	if (DefaultConfig.getServerUnixOwnerOnly(env == null ? this.env : env)) {
+	    final boolean restricted =
+		file.setReadable(false, false) &&
+		file.setReadable(true, true) &&
+		file.setWritable(false, false) &&
+		file.setWritable(true, true);
+	    if (!restricted) {
+		stop();
+		throw new IOException("Cannot restrict the access to " + path);
+	    }
+	}
+    }
+
+    public MessageConnection accept() throws IOException {
+	if (logger.traceOn()) {
+	    logger.trace("accept", "Waiting a new connection...");
+	}
+
+	return new UnixSocketConnection(ssc.accept(), path);
+    }
+
+    public void stop() throws IOException {
+	if (logger.traceOn()) {
+	    logger.trace("stop", "Stops the server now.");
+	}
+
+	if (ssc != null) {
+	    try {
+		ssc.close();
+	    } finally {
+		new File(path).delete();
+	    }
+	}
+    }
+
+    public JMXServiceURL getAddress() {
+	return addr;
+    }
+
+    /*
+     * A socket file cannot be bound again: remove it if no server
+     * listens to it any more.  A regular file or a directory is never
+     * removed.
+     */
+    private void deleteStaleSocket(File file) throws IOException {
+	if (file.isFile() || file.isDirectory()) {
+	    throw new BindException("Not a socket file: " + path);
+	}
+
+	try {
+	    UnixDomainSockets.connect(path).close();
+	} catch (IOException e) {
+	    if (logger.traceOn()) {
+		logger.trace("start", "Deleting the stale socket " + path);
+	    }
+	    file.delete();
+	    return;
+	}
+
+	throw new BindException("A server already listens to " + path);
+    }
+
+// private variables
+    private ServerSocketChannel ssc;
+    private final JMXServiceURL addr;
+    private final String path;
+    private final Map env;
+
+    private static final String PROTOCOL = "jmxmp+unix";
+    private static final int DEFAULT_BACKLOG = 100;
+
+    private final ClassLogger logger = new ClassLogger("javax.management.remote.misc", "UnixSocketConnectionServer");
+}
@@ -52,10 +52,12 @@ package javax.management.remote.generic;
 
 import java.io.IOException;
 import java.io.InterruptedIOException;
+import java.io.NotSerializableException;
 import java.io.Serializable;
 import java.util.Set;
 import java.util.Map;
 import java.util.ArrayList;
+import java.util.List;
 
 import java.rmi.NoSuchObjectException;
 
@@ -66,6 +68,7 @@ import javax.management.InstanceAlreadyExistsException;
 import javax.management.InstanceNotFoundException;
 import javax.management.IntrospectionException;
 import javax.management.InvalidAttributeValueException;
+import javax.management.JMException;
 import javax.management.ListenerNotFoundException;
 import javax.management.MBeanException;
 import javax.management.MBeanInfo;
@@ -93,8 +96,14 @@ import javax.management.remote.message.NotificationResponseMessage;
 import javax.security.auth.Subject;
 
 import com.sun.jmx.remote.generic.ObjectWrappingImpl;
+import com.sun.jmx.remote.generic.AsyncResult;
+import com.sun.jmx.remote.generic.BatchRequest;
+import com.sun.jmx.remote.generic.BatchResult;
 import com.sun.jmx.remote.generic.ClientSynchroMessageConnection;
+import com.sun.jmx.remote.generic.ClientSynchroMessageConnectionImpl;
+import com.sun.jmx.remote.generic.ResponseFuture;
 import com.sun.jmx.remote.generic.DefaultConfig;
+import com.sun.jmx.remote.generic.MBeanInfoCache;
 import com.sun.jmx.remote.opt.util.ClassLogger;
 import com.sun.jmx.remote.opt.util.EnvHelp;
 import com.sun.jmx.remote.opt.internal.ClientNotifForwarder;
@@ -128,10 +137,29 @@ class ClientIntermediary {
 
 	communicatorAdmin =
 	    new GenericClientCommunicatorAdmin(
-		  EnvHelp.getConnectionCheckPeriod(env));
+		  EnvHelp.getConnectionCheckPeriod(env),
+		  DefaultConfig.getClientReconnectAttempts(env),
+		  DefaultConfig.getClientReconnectDelay(env),
+		  DefaultConfig.getClientReconnectMaxDelay(env),
+		  DefaultConfig.getClientReconnectJitter(env));
 	notifForwarder = new GenericClientNotifForwarder(env);
 
 	requestTimeoutReconn = DefaultConfig.getTimeoutReconnection(env);
+
+	// sent with each request, so that the server does not execute
+	// a request after the client stopped waiting for it
+	final long timeout = DefaultConfig.getRequestTimeout(env);
+	requestTimeout = (timeout == Long.MAX_VALUE) ? 0 : timeout;
+
+	notifPush = DefaultConfig.getClientNotificationPush(env);
+	notifPushWindow = DefaultConfig.getClientNotificationPushWindow(env);
+
+	if (DefaultConfig.getClientMBeanInfoCache(env)) {
+	    infoCache = new MBeanInfoCache(
+			DefaultConfig.getClientMBeanInfoCachePeriod(env));
+	} else {
+	    infoCache = null;
+	}
     }
 
     //-------------------------------------------------------------
@@ -307,6 +335,11 @@ class ClientIntermediary {
 	    throw e;
 	} catch (Exception e) {
 	    throw appropriateException(e);
+	} finally {
+	    // don't wait for the unregistration notification
+	    if (infoCache != null) {
+		infoCache.invalidate(name);
+	    }
 	}
     }
 
@@ -318,11 +351,28 @@ class ClientIntermediary {
 	logger.trace("getObjectInstance", "called");
 
 	try {
-	    return (ObjectInstance)
+	    final boolean cached = useInfoCache(delegationSubject);
+	    long generation = 0;
+	    if (cached) {
+		final ObjectInstance instance = infoCache.getObjectInstance(name);
+		if (instance != null) {
+		    return instance;
+		}
+		generation = infoCache.getGeneration();
+	    }
+
+	    final ObjectInstance instance = (ObjectInstance)
               mBeanServerRequest(MBeanServerRequestMessage.GET_OBJECT_INSTANCE,
 				   new Object[] {name},
 				   delegationSubject);
+	    if (cached) {
+		infoCache.putObjectInstance(name, instance, generation);
+	    }
+	    return instance;
 	} catch (InstanceNotFoundException e) {
+	    if (infoCache != null) {
+		infoCache.invalidate(name);
+	    }
 	    throw e;
 	} catch (Exception e) {
 	    throw appropriateException(e);
@@ -365,6 +415,26 @@ class ClientIntermediary {
 	}
     }
 
+    public Map queryAttributes(ObjectName name,
+			       QueryExp query,
+			       String[] attributes,
+			       Subject delegationSubject)
+	    throws IOException {
+
+	logger.trace("queryAttributes", "called");
+
+	try {
+	    return (Map)
+		mBeanServerRequest(MBeanServerRequestMessage.QUERY_ATTRIBUTES,
+				   new Object[] {name,
+						 serialization.wrap(query),
+						 attributes},
+				   delegationSubject);
+	} catch (Exception e) {
+	    throw appropriateException(e);
+	}
+    }
+
     public boolean isRegistered(ObjectName name, Subject delegationSubject)
 	    throws IOException {
 
@@ -536,6 +606,107 @@ class ClientIntermediary {
 	}
     }
 
+    // asynchronous variants, used by a GenericConnector
+
+    public AsyncResult getAttributeAsync(ObjectName name,
+					 String attribute,
+					 Subject delegationSubject)
+	    throws IOException {
+
+	logger.trace("getAttributeAsync", "called");
+
+	return mBeanServerRequestAsync(MBeanServerRequestMessage.GET_ATTRIBUTE,
+				       new Object[] {name, attribute},
+				       delegationSubject);
+    }
+
+    public AsyncResult getAttributesAsync(ObjectName name,
+					  String[] attributes,
+					  Subject delegationSubject)
+	    throws IOException {
+
+	logger.trace("getAttributesAsync", "called");
+
+	return mBeanServerRequestAsync(MBeanServerRequestMessage.GET_ATTRIBUTES,
+				       new Object[] {name, attributes},
+				       delegationSubject);
+    }
+
+    public AsyncResult setAttributeAsync(ObjectName name,
+					 Attribute attribute,
+					 Subject delegationSubject)
+	    throws IOException {
+
+	logger.trace("setAttributeAsync", "called");
+
+	return mBeanServerRequestAsync(MBeanServerRequestMessage.SET_ATTRIBUTE,
+				       new Object[] {name,
+						     serialization.wrap(attribute)},
+				       delegationSubject);
+    }
+
+    public AsyncResult invokeAsync(ObjectName name,
+				   String operationName,
+				   Object params[],
+				   String signature[],
+				   Subject delegationSubject)
+	    throws IOException {
+
+	logger.trace("invokeAsync", "called");
+
+	return mBeanServerRequestAsync(MBeanServerRequestMessage.INVOKE,
+				       new Object[] {name,
+						     operationName,
+						     serialization.wrap(params),
+						     signature},
+				       delegationSubject);
+    }
+
+    // batch of operations, used by a GenericConnector
+
+    public BatchResult executeBatch(BatchRequest batch,
+				    Subject delegationSubject)
+	    throws IOException {
+
+	logger.trace("executeBatch", "called");
+
+	final int n = batch.size();
+	if (n == 0) {
+	    return new BatchResult(new Object[0], new boolean[0]);
+	}
+
+	final int[] methodIds = new int[n];
+	final Object[] params = new Object[n];
+	for (int i = 0; i < n; i++) {
+	    methodIds[i] = batch.getMethodId(i);
+	    params[i] = wrapBatchParams(methodIds[i], batch.getParams(i));
+	}
+
+	try {
+	    final Object[] result = (Object[])
+		mBeanServerRequest(MBeanServerRequestMessage.BATCH,
+				   new Object[] {methodIds, params},
+				   delegationSubject);
+	    final Object[] results = (Object[]) result[0];
+	    final boolean[] exceptions = (boolean[]) result[1];
+	    for (int i = 0; i < results.length; i++) {
+		// each result is wrapped on its own by the server, so that
+		// a result that cannot be read only fails its own method
+		try {
+		    results[i] = serialization.unwrap(results[i], myloader);
+		} catch (Exception e) {
+		    IOException ioe = new IOException(e.toString());
+		    EnvHelp.initCause(ioe, e);
+		    results[i] = ioe;
+		    exceptions[i] = true;
+		}
+	    }
+	    return new BatchResult(results, exceptions);
+	} catch (Exception e) {
+	    throw appropriateException(e);
+	}
+    }
+
     public String getDefaultDomain(Subject delegationSubject)
 	    throws IOException {
 
@@ -577,11 +748,18 @@ class ClientIntermediary {
 	logger.trace("getMBeanInfo", "called");
 
 	try {
+	    if (useInfoCache(delegationSubject)) {
+		return getCachedMBeanInfo(name);
+	    }
+
 	    return (MBeanInfo)
 		mBeanServerRequest(MBeanServerRequestMessage.GET_MBEAN_INFO,
 				   new Object[] {name},
 				   delegationSubject);
 	} catch (InstanceNotFoundException e) {
+	    if (infoCache != null) {
+		infoCache.invalidate(name);
+	    }
 	    throw e;
 	} catch (IntrospectionException e) {
 	    throw e;
@@ -601,13 +779,30 @@ class ClientIntermediary {
 	logger.trace("isInstanceOf", "called");
 
 	try {
+	    final boolean cached = useInfoCache(delegationSubject);
+	    long generation = 0;
+	    if (cached) {
+		final Boolean is = infoCache.isInstanceOf(name, className);
+		if (is != null) {
+		    return is.booleanValue();
+		}
+		generation = infoCache.getGeneration();
+	    }
+
 	    Boolean is = (Boolean)
 		mBeanServerRequest(MBeanServerRequestMessage.IS_INSTANCE_OF,
 				   new Object[] {name,
 						 className},
 				   delegationSubject);
+	    if (cached) {
+		infoCache.putInstanceOf(name, className, is.booleanValue(),
+					generation);
+	    }
 	    return is.booleanValue();
 	} catch (InstanceNotFoundException e) {
+	    if (infoCache != null) {
+		infoCache.invalidate(name);
+	    }
 	    throw e;
 	} catch (Exception e) {
 	    throw appropriateException(e);
@@ -807,6 +1002,14 @@ class ClientIntermediary {
 
 	communicatorAdmin.terminate();
 	notifForwarder.terminate();
+
+	if (infoCache != null) {
+	    if (logger.traceOn()) {
+		logger.trace("terminate", "MBeanInfo cache: " +
+			     infoCache.getStatistics());
+	    }
+	    infoCache.clear();
+	}
     }
 
 //----------------------------------------------
@@ -816,8 +1019,10 @@ class ClientIntermediary {
     private class GenericClientCommunicatorAdmin
 	    extends ClientCommunicatorAdmin {
 
-	public GenericClientCommunicatorAdmin(long period) {
-	    super(period);
+	public GenericClientCommunicatorAdmin(long period, int attempts,
+					      long delay, long maxDelay,
+					      int jitter) {
+	    super(period, attempts, delay, maxDelay, jitter);
 	}
 
 	protected void checkConnection() throws IOException {
@@ -850,26 +1055,42 @@ class ClientIntermediary {
 	    ClientListenerInfo[] clis = new ClientListenerInfo[old.length];
 	    int j=0;
 
-	    // reconnect listeners one by one...
+	    // reconnect the listeners of each delegation subject with a
+	    // single request, so that a restarted server is not flooded
+	    // with one request per listener from each of its clients
 	    //
+	    final boolean[] done = new boolean[old.length];
 	    for (int i=0; i<old.length; i++) {
-		try {
-		    Integer id = addListenerWithSubject(
-					 old[i].getObjectName(),
-					 serialization.wrap(old[i].getNotificationFilter()),
-					 old[i].getDelegationSubject(),
-					 false);
-
-		    clis[j++] = new ClientListenerInfo(id,
-						       old[i].getObjectName(),
-						       old[i].getListener(),
-						       old[i].getNotificationFilter(),
-						       old[j].getHandback(),
-						       old[i].getDelegationSubject());
-		} catch (InstanceNotFoundException infe) {
-		    logger.warning("reconnectNotificationListeners",
-				   "Can't reconnect a listener for " +
-				   old[i].getObjectName(), infe);
+		if (done[i]) {
+		    continue;
+		}
+
+		final Subject subject = old[i].getDelegationSubject();
+		final List batch = new ArrayList();
+		for (int k=i; k<old.length; k++) {
+		    // the same Subject object: Subject.equals may need
+		    // a permission to compare private credentials
+		    if (!done[k] && old[k].getDelegationSubject() == subject) {
+			batch.add(old[k]);
+			done[k] = true;
+		    }
+		}
+
+		final ClientListenerInfo[] infos = (ClientListenerInfo[])
+		    batch.toArray(new ClientListenerInfo[batch.size()]);
+		final Integer[] ids = addListenersWithSubject(infos, subject);
+
+		for (int k=0; k<infos.length; k++) {
+		    if (ids[k] == null) {
+			continue;
+		    }
+
+		    clis[j++] = new ClientListenerInfo(ids[k],
+						       infos[k].getObjectName(),
+						       infos[k].getListener(),
+						       infos[k].getNotificationFilter(),
+						       infos[k].getHandback(),
+						       subject);
 		}
 	    }
 
@@ -884,14 +1105,87 @@ class ClientIntermediary {
 	    notifForwarder.postReconnection(clis);
 	}
 
+	/**
+	 * Adds the listeners in one request.  The server adds all of
+	 * them or none, so if an MBean has gone they are added one by
+	 * one, and the ids of those which could not be added are null.
+	 */
+	private Integer[] addListenersWithSubject(ClientListenerInfo[] infos,
+						  Subject subject)
+		throws IOException {
+	    final Integer[] ids = new Integer[infos.length];
+	    int from = 0;
+
+	    if (infos.length > 1) {
+		final ObjectName[] names = new ObjectName[infos.length];
+		final Object[] filters = new Object[infos.length];
+		for (int k=0; k<infos.length; k++) {
+		    names[k] = infos[k].getObjectName();
+		    filters[k] =
+			serialization.wrap(infos[k].getNotificationFilter());
+		}
+
+		final int code =
+		    MBeanServerRequestMessage.ADD_NOTIFICATION_LISTENERS;
+		try {
+		    Object o = mBeanServerRequest(code,
+						  new Object[] {names, filters},
+						  subject, false);
+		    if (o instanceof Integer) {
+			// RI1.0 adds the first listener only: bug 4948444
+			ids[0] = (Integer)o;
+			from = 1;
+		    } else {
+			System.arraycopy((Integer[])o, 0, ids, 0, ids.length);
+			return ids;
+		    }
+		} catch (InstanceNotFoundException infe) {
+		    logger.trace("reconnectNotificationListeners",
+				 "Adding the listeners one by one: " + infe);
+		} catch (Exception e) {
+		    throw appropriateException(e);
+		}
+	    }
+
+	    for (int k=from; k<infos.length; k++) {
+		try {
+		    ids[k] = addListenerWithSubject(
+				   infos[k].getObjectName(),
+				   serialization.wrap(infos[k].getNotificationFilter()),
+				   subject,
+				   false);
+		} catch (InstanceNotFoundException infe) {
+		    logger.warning("reconnectNotificationListeners",
+				   "Can't reconnect a listener for " +
+				   infos[k].getObjectName(), infe);
+		}
+	    }
+
+	    return ids;
+	}
+
 	protected void doStart() throws IOException {
 	    connection = client.reconnect();
 
+	    // the server may not be the same one
+	    if (infoCache != null) {
+		infoCache.clear();
+	    }
+	    notifPushing = false;
+	    notifPushRefused = false;
+
 	    // notif issues
-	    final ClientListenerInfo[] old = notifForwarder.preReconnection();
-	    reconnectNotificationListeners(old);
+	    // the listeners are kept if a previous attempt failed while
+	    // adding them again
+	    if (oldListeners == null) {
+		oldListeners = notifForwarder.preReconnection();
+	    }
+	    reconnectNotificationListeners(oldListeners);
+	    oldListeners = null;
 	}
 
+	private ClientListenerInfo[] oldListeners;
+
 	protected void doStop() {
 	    try {
 		client.close();
@@ -915,6 +1209,14 @@ class ClientIntermediary {
 	    logger.trace("GenericClientNotifForwarder-fetchNotifs",
 			 "fetching notifs...");
 
+	    if (notifPush && !notifPushing && !notifPushRefused &&
+		clientSequenceNumber >= 0 && timeout > 0) {
+		startPush(clientSequenceNumber, maxNotifications);
+	    }
+	    if (notifPushing) {
+		return receivePushed(clientSequenceNumber, timeout);
+	    }
+
 	    final NotificationRequestMessage nreq =
 		new NotificationRequestMessage(clientSequenceNumber,
 					       maxNotifications, timeout);
@@ -922,8 +1224,128 @@ class ClientIntermediary {
 	    final NotificationResponseMessage nresp =
 		(NotificationResponseMessage) connection.sendWithReturn(nreq);
 
+	    return unwrapNotifs(nresp);
+	}
+
+	/*
+	 * Asks the server to push the notifications from now on.  An
+	 * old server does not know the request, and is then asked for
+	 * the notifications as before.
+	 */
+	private void startPush(long start, int max) throws IOException {
+	    if (!(connection instanceof ClientSynchroMessageConnectionImpl)) {
+		notifPushRefused = true;
+		return;
+	    }
+
+	    final Object[] params = {
+		new Long(start),
+		new Integer(max),
+		new Integer(notifPushWindow),
+	    };
+	    try {
+		final Object o = mBeanServerRequest(
+				     MBeanServerRequestMessage.NOTIFICATION_PUSH,
+				     params, null, false);
+		notifPushing = Boolean.TRUE.equals(o);
+	    } catch (IOException ioe) {
+		throw ioe;
+	    } catch (Exception e) {
+		logger.trace("GenericClientNotifForwarder-startPush",
+			     "The server does not push notifications: " + e);
+	    }
+
+	    if (notifPushing) {
+		notifPushAcked = start;
+		notifPushNext = start;
+	    } else {
+		notifPushRefused = true;
+	    }
+	}
+
+	/*
+	 * Acknowledges the results handled up to clientSequenceNumber
+	 * and waits for the next one pushed by the server.
+	 */
+	private NotificationResult receivePushed(long clientSequenceNumber,
+						 long timeout)
+		throws IOException {
+	    // clientSequenceNumber is negative when the fetching starts
+	    // again: the push goes on from where it is
+	    if (clientSequenceNumber < 0 || timeout == 0) {
+		return new NotificationResult(notifPushNext, notifPushNext,
+					      new TargetedNotification[0]);
+	    }
+
+	    if (clientSequenceNumber > notifPushAcked) {
+		sendPushAck(clientSequenceNumber);
+		notifPushAcked = clientSequenceNumber;
+	    }
+
+	    final NotificationResponseMessage nresp =
+		((ClientSynchroMessageConnectionImpl) connection).
+		receiveNotification(timeout);
+	    if (nresp == null) {
+		return new NotificationResult(clientSequenceNumber,
+					      clientSequenceNumber,
+					      new TargetedNotification[0]);
+	    }
+
+	    NotificationResult nr;
+	    try {
+		final Object o =
+		    serialization.unwrap(nresp.getWrappedNotificationResult(),
+					 myloader);
+		if (o instanceof Exception) {
+		    // the server stopped pushing: the notifications not
+		    // handled yet are asked for again
+		    logger.warning("Forwarder.receivePushed",
+				   "The server stopped pushing notifications: " +
+				   o);
+		    notifPushing = false;
+		    notifPushRefused = true;
+		    return new NotificationResult(clientSequenceNumber,
+						  clientSequenceNumber,
+						  new TargetedNotification[0]);
+		}
+		nr = checkNotifs(o);
+	    } catch (ClassNotFoundException e) {
+		nr = null;
+		logger.warning("Forwarder.receivePushed",
+			       "Failed to deserialize notifications: " + e);
+	    } catch (NotSerializableException e) {
+		nr = null;
+		logger.warning("Forwarder.receivePushed",
+			       "Failed to deserialize notifications: " + e);
+	    }
+
+	    if (nr == null) {
+		// the next result shows the notifications as lost
+		sendPushAck(-1);
+		return new NotificationResult(clientSequenceNumber,
+					      clientSequenceNumber,
+					      new TargetedNotification[0]);
+	    }
+
+	    notifPushNext = nr.getNextSequenceNumber();
+	    return nr;
+	}
+
+	private void sendPushAck(long seq) throws IOException {
+	    final Object[] params = {new Long(seq)};
+	    connection.sendOneWay(new MBeanServerRequestMessage(
+				      MBeanServerRequestMessage.NOTIFICATION_ACK,
+				      params, null));
+	}
+
+	private NotificationResult unwrapNotifs(NotificationResponseMessage nresp)
+		throws IOException, ClassNotFoundException {
 	    Object wrapped = nresp.getWrappedNotificationResult();
-	    Object unwrapped = serialization.unwrap(wrapped, myloader);
+	    return checkNotifs(serialization.unwrap(wrapped, myloader));
+	}
+
+	private NotificationResult checkNotifs(Object unwrapped)
+		throws IOException {
 	    if (!(unwrapped instanceof NotificationResult)) {
 		// This is a protocol error, so we close the client.
 		final String msg =
@@ -985,6 +1407,11 @@ class ClientIntermediary {
 	}
 
 	protected void lostNotifs(String message, long number) {
+	    // unregistrations may have been lost too
+	    if (infoCache != null) {
+		infoCache.clear();
+	    }
+
 	    final String notifType = JMXConnectionNotification.NOTIFS_LOST;
 	    final JMXConnectionNotification n =
 		new JMXConnectionNotification(notifType,
@@ -999,6 +1426,62 @@ class ClientIntermediary {
     }
 
 
+    private class PendingRequest implements AsyncResult {
+	public PendingRequest(MBeanServerRequestMessage req,
+			      ResponseFuture future,
+			      MBeanServerResponseMessage resp) {
+	    this.req = req;
+	    this.future = future;
+	    this.resp = resp;
+	}
+
+	public boolean isDone() {
+	    return future == null || future.isDone();
+	}
+
+	public Object getResult() throws JMException, IOException {
+	    return getResult(-1);
+	}
+
+	public Object getResult(long timeout) throws JMException, IOException {
+	    try {
+		return unwrapResponse(getResponse(timeout));
+	    } catch (JMException e) {
+		throw e;
+	    } catch (Exception e) {
+		throw appropriateException(e);
+	    }
+	}
+
+	private synchronized MBeanServerResponseMessage getResponse(long timeout)
+		throws IOException {
+	    if (resp != null) {
+		return resp;
+	    }
+
+	    try {
+		resp = (MBeanServerResponseMessage)
+		    (timeout < 0 ? future.getResponse() :
+		     future.getResponse(timeout));
+	    } catch (IOException e) {
+		// same as a synchronous request: a request lost because of
+		// a connection failure is sent again after reconnection.
+		if (terminated || e instanceof InterruptedIOException) throw e;
+
+		communicatorAdmin.gotIOException(e);
+
+		resp = (MBeanServerResponseMessage)
+		    connection.sendWithReturn(req);
+	    }
+
+	    return resp;
+	}
+
+	private final MBeanServerRequestMessage req;
+	private final ResponseFuture future;
+	private MBeanServerResponseMessage resp;
+    }
+
     // Used by a GenericConnector
     public GenericClientCommunicatorAdmin getCommunicatorAdmin() {
 	return communicatorAdmin;
@@ -1025,7 +1508,8 @@ class ClientIntermediary {
 	MBeanServerRequestMessage req =
 	    new MBeanServerRequestMessage(methodId,
 					  params,
-					  delegationSubject);
+					  delegationSubject,
+					  requestTimeout);
 
 	MBeanServerResponseMessage resp;
 
@@ -1042,6 +1526,151 @@ class ClientIntermediary {
 		connection.sendWithReturn(req);
 	}
 
+	return unwrapResponse(resp);
+    }
+
+    /*
+     * Sends the request without waiting for its response.  If the
+     * connection cannot pipeline requests, the request is done now.
+     */
+    private AsyncResult mBeanServerRequestAsync(int methodId,
+						Object[] params,
+						Subject delegationSubject)
+	    throws IOException {
+
+	MBeanServerRequestMessage req =
+	    new MBeanServerRequestMessage(methodId,
+					  params,
+					  delegationSubject,
+					  requestTimeout);
+
+	if (!(connection instanceof ClientSynchroMessageConnectionImpl)) {
+	    MBeanServerResponseMessage resp;
+	    try {
+		resp = (MBeanServerResponseMessage)
+		    connection.sendWithReturn(req);
+	    } catch (IOException e) {
+		if (terminated || e instanceof InterruptedIOException) throw e;
+
+		communicatorAdmin.gotIOException(e);
+
+		resp = (MBeanServerResponseMessage)
+		    connection.sendWithReturn(req);
+	    }
+
+	    return new PendingRequest(req, null, resp);
+	}
+
+	final ClientSynchroMessageConnectionImpl pipeline =
+	    (ClientSynchroMessageConnectionImpl) connection;
+	ResponseFuture future;
+
+	try {
+	    future = pipeline.sendAsync(req);
+	} catch (IOException e) {
+	    if (terminated || e instanceof InterruptedIOException) throw e;
+	    
+	    communicatorAdmin.gotIOException(e);
+	    
+	    future = pipeline.sendAsync(req);
+	}
+
+	return new PendingRequest(req, future, null);
+    }
+
+    /*
+     * Tells whether a request may use the MBeanInfo cache.  It is not
+     * used with a delegation subject, whose permissions could give
+     * other results.  The cache listens for unregistrations before it
+     * is first used; if that fails, the request goes to the server.
+     */
+    private boolean useInfoCache(Subject delegationSubject) {
+	if (infoCache == null || delegationSubject != null) {
+	    return false;
+	}
+
+	synchronized (infoCache) {
+	    if (infoCacheListening) {
+		return true;
+	    }
+
+	    final NotificationFilterSupport filter =
+		new NotificationFilterSupport();
+	    filter.enableType(
+		 MBeanServerNotification.UNREGISTRATION_NOTIFICATION);
+	    try {
+		addNotificationListener(delegateName, infoCache, filter,
+					null, null);
+		infoCacheListening = true;
+	    } catch (Exception e) {
+		logger.trace("useInfoCache",
+			     "Can't listen for unregistrations", e);
+	    }
+	    return infoCacheListening;
+	}
+    }
+
+    /*
+     * Returns the cached MBeanInfo if it is recent enough, otherwise
+     * sends its fingerprint so that the server only returns the
+     * MBeanInfo if it has changed.
+     */
+    private MBeanInfo getCachedMBeanInfo(ObjectName name) throws Exception {
+	final MBeanInfoCache.Entry entry = infoCache.getEntry(name);
+	if (entry != null && infoCache.isFresh(entry)) {
+	    return entry.getMBeanInfo();
+	}
+
+	final long generation = infoCache.getGeneration();
+	final Long fingerprint =
+	    (entry == null) ? null : new Long(entry.getFingerprint());
+	final Object[] result = (Object[])
+	    mBeanServerRequest(
+		    MBeanServerRequestMessage.GET_MBEAN_INFO_IF_CHANGED,
+		    new Object[] {name, fingerprint},
+		    null);
+
+	if (result == null) {
+	    infoCache.validated(entry);
+	    return entry.getMBeanInfo();
+	}
+
+	final MBeanInfo info = (MBeanInfo) result[0];
+	infoCache.putMBeanInfo(name, info, ((Long) result[1]).longValue(),
+			       generation);
+	return info;
+    }
+
+    /*
+     * Wraps the parameters of a method of a batch as they are wrapped
+     * when the method is called alone.
+     */
+    private Object[] wrapBatchParams(int methodId, Object[] params)
+	    throws IOException {
+	int index;
+
+	switch (methodId) {
+	case MBeanServerRequestMessage.SET_ATTRIBUTE:
+	case MBeanServerRequestMessage.SET_ATTRIBUTES:
+	case MBeanServerRequestMessage.QUERY_NAMES:
+	case MBeanServerRequestMessage.QUERY_MBEANS:
+	case MBeanServerRequestMessage.QUERY_ATTRIBUTES:
+	    index = 1;
+	    break;
+	case MBeanServerRequestMessage.INVOKE:
+	    index = 2;
+	    break;
+	default:
+	    return params;
+	}
+
+	final Object[] wrapped = (Object[]) params.clone();
+	wrapped[index] = serialization.wrap(params[index]);
+	return wrapped;
+    }
+
+    private Object unwrapResponse(MBeanServerResponseMessage resp)
+	    throws Exception {
 	Object wrappedResult = resp.getWrappedResult(); // may throw exception
 	Object result;
 
@@ -1100,6 +1729,20 @@ class ClientIntermediary {
     private boolean terminated;
 
     private final boolean requestTimeoutReconn;
+    private final long requestTimeout;
+
+    // notifications pushed by the server, see GenericClientNotifForwarder;
+    // pushing and refused are reset on reconnection
+    private final boolean notifPush;
+    private final int notifPushWindow;
+    private volatile boolean notifPushing;
+    private volatile boolean notifPushRefused;
+    private long notifPushAcked;
+    private long notifPushNext;
+
+    // null unless the client caches MBeanInfo
+    private final MBeanInfoCache infoCache;
+    private boolean infoCacheListening;
 
     private static final ObjectName delegateName;
     static {
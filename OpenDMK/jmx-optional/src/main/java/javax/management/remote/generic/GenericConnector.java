@@ -71,6 +71,12 @@ import javax.management.remote.JMXServiceURL; // javadoc
 
 import javax.security.auth.Subject;
 
+import com.sun.jmx.remote.generic.AsyncMBeanServerConnection;
+import com.sun.jmx.remote.generic.AsyncResult;
+import com.sun.jmx.remote.generic.BatchMBeanServerConnection;
+import com.sun.jmx.remote.generic.BulkMBeanServerConnection;
+import com.sun.jmx.remote.generic.BatchRequest;
+import com.sun.jmx.remote.generic.BatchResult;
 import com.sun.jmx.remote.generic.ObjectWrappingImpl;
 import com.sun.jmx.remote.generic.DefaultConfig;
 import com.sun.jmx.remote.generic.ClientSynchroMessageConnection;
@@ -416,7 +422,8 @@ public class GenericConnector implements JMXConnector {
 //----------------------------------------------
 
     private static class RemoteMBeanServerConnection
-	    implements MBeanServerConnection {
+	    implements MBeanServerConnection, AsyncMBeanServerConnection,
+		       BatchMBeanServerConnection, BulkMBeanServerConnection {
 
         public RemoteMBeanServerConnection(ClientIntermediary ci) {
 	    this(ci, null);
@@ -642,6 +649,52 @@ public class GenericConnector implements JMXConnector {
             return ci.isInstanceOf(name, className, ds);
         }
 
+        //----------------------------------------------
+        // Implementation of AsyncMBeanServerConnection
+        //----------------------------------------------
+
+        public AsyncResult getAttributeAsync(ObjectName name, String attribute)
+            throws IOException {
+            return ci.getAttributeAsync(name, attribute, ds);
+        }
+
+        public AsyncResult getAttributesAsync(ObjectName name,
+                                              String[] attributes)
+            throws IOException {
+            return ci.getAttributesAsync(name, attributes, ds);
+        }
+
+        public AsyncResult setAttributeAsync(ObjectName name,
+                                             Attribute attribute)
+            throws IOException {
+            return ci.setAttributeAsync(name, attribute, ds);
+        }
+
+        public AsyncResult invokeAsync(ObjectName name, String operationName,
+                                       Object params[], String signature[])
+            throws IOException {
+            return ci.invokeAsync(name, operationName, params, signature, ds);
+        }
+
+        //----------------------------------------------
+        // Implementation of BatchMBeanServerConnection
+        //----------------------------------------------
+
+        public BatchResult executeBatch(BatchRequest batch)
+            throws IOException {
+            return ci.executeBatch(batch, ds);
+        }
+
+        //----------------------------------------------
+        // Implementation of BulkMBeanServerConnection
+        //----------------------------------------------
+
+        public Map queryAttributes(ObjectName name, QueryExp query,
+                                   String[] attributes)
+            throws IOException {
+            return ci.queryAttributes(name, query, attributes, ds);
+        }
+
         private ClientIntermediary ci;
         private Subject ds;
     }
@@ -68,6 +68,7 @@ import javax.management.MBeanServer;
 import javax.management.MBeanRegistration;
 import javax.management.NotificationBroadcasterSupport;
 import javax.management.InstanceNotFoundException;
+import javax.management.ObjectName;
 
 import javax.management.remote.JMXServiceURL;
 import javax.management.remote.JMXConnectorServer;
@@ -78,7 +79,9 @@ import javax.management.remote.MBeanServerForwarder;
 import javax.management.remote.message.HandshakeEndMessage; // javadoc
 import javax.management.remote.message.HandshakeErrorMessage; // javadoc
 
+import com.sun.jmx.remote.generic.ConnectorMetrics;
 import com.sun.jmx.remote.generic.ObjectWrappingImpl;
+import com.sun.jmx.remote.generic.ResponseCache;
 import com.sun.jmx.remote.generic.DefaultConfig;
 import com.sun.jmx.remote.generic.ServerSynchroMessageConnection;
 import com.sun.jmx.remote.generic.ServerSynchroMessageConnectionImpl;
@@ -262,6 +265,14 @@ public class GenericConnectorServer extends JMXConnectorServer {
 	    if (objectWrapping == null)
 		objectWrapping = new ObjectWrappingImpl();
 
+	    // the wrapped form of other ObjectWrappings may not be shared
+	    final int cacheSize = DefaultConfig.getServerResponseCacheSize(env);
+	    if (cacheSize > 0 &&
+		objectWrapping.getClass() == ObjectWrappingImpl.class) {
+		responseCache = new ResponseCache(cacheSize);
+		responseCache.start(mbs);
+	    }
+
 	    final MessageConnectionServer messageServer =
 		(MessageConnectionServer) env.get(MESSAGE_CONNECTION_SERVER);
 	    if (messageServer == null) {
@@ -278,6 +289,21 @@ public class GenericConnectorServer extends JMXConnectorServer {
 	    }
 	    sMsgServer.start(env);
 
+	    if (DefaultConfig.getServerMetrics(env)) {
+		metrics = new ConnectorMetrics(
+			      DefaultConfig.getServerMetricsPerConnection(env));
+		if (sMsgServer instanceof SynchroMessageConnectionServerImpl) {
+		    metrics.setRequestExecutor(
+			((SynchroMessageConnectionServerImpl) sMsgServer).
+			    getRequestExecutor());
+		    metrics.setAdmissionControl(
+			((SynchroMessageConnectionServerImpl) sMsgServer).
+			    getAdmissionControl());
+		}
+		metrics.setResponseCache(responseCache);
+		registerMetrics(mbs);
+	    }
+
 	    state = STARTED;
 
             if (tracing) {
@@ -339,6 +365,21 @@ public class GenericConnectorServer extends JMXConnectorServer {
 	    if(notifBuffer != null)
 		notifBuffer.dispose();
 
+	    if (responseCache != null) {
+		responseCache.stop();
+		responseCache = null;
+	    }
+
+	    if (metricsName != null) {
+		try {
+		    metricsServer.unregisterMBean(metricsName);
+		} catch (Exception e) {
+		    logger.warning("stop","Failed to unregister metrics: " + e);
+		    if (debug) logger.debug("stop",e);
+		}
+		metricsName = null;
+	    }
+
 	    threads.terminate();
 	}
 
@@ -353,6 +394,33 @@ public class GenericConnectorServer extends JMXConnectorServer {
 	}
     }
 
+    // used by ServerIntermediary, null if no metrics are kept
+    ConnectorMetrics getMetrics() {
+	return metrics;
+    }
+
+    // used by ServerIntermediary, null if results are not cached
+    ResponseCache getResponseCache() {
+	return responseCache;
+    }
+
+    private void registerMetrics(MBeanServer mbs) {
+	try {
+	    final ObjectName name =
+		new ObjectName("com.sun.jmx.remote:type=ConnectorMetrics," +
+			       "address=" +
+			       ObjectName.quote(sMsgServer.getAddress()
+						.toString()));
+	    mbs.registerMBean(metrics, name);
+	    metricsServer = mbs;
+	    metricsName = name;
+	} catch (Exception e) {
+	    // the metrics are still kept, only their MBean is missing
+	    logger.warning("start", "Failed to register metrics: " + e);
+	    if (logger.debugOn()) logger.debug("start", e);
+	}
+    }
+
     // used by ServerIntermediary
     void failedConnectionNotif(String connectionId,
 				    String message,
@@ -569,10 +637,13 @@ public class GenericConnectorServer extends JMXConnectorServer {
 
     synchronized NotificationBuffer getNotifBuffer() {
 	//Notification buffer is lazily created when the first client connects
-	if(notifBuffer == null)
+	if(notifBuffer == null) {
 	    notifBuffer = 
 		ArrayNotificationBuffer.getNotificationBuffer(getMBeanServer(),
 							      env);
+	    if (metrics != null)
+		metrics.setNotificationBuffer(notifBuffer);
+	}
 	return notifBuffer;
     }
     
@@ -609,6 +680,11 @@ public class GenericConnectorServer extends JMXConnectorServer {
 
     private NotificationBuffer notifBuffer;
 
+    private ConnectorMetrics metrics;
+    private ResponseCache responseCache;
+    private MBeanServer metricsServer;
+    private ObjectName metricsName;
+
     // client connecting control
     private final long connectingTimeout;
 //     private final int maxConnecting;
@@ -66,13 +66,16 @@ import java.rmi.NoSuchObjectException;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
 import javax.management.Attribute;
 import javax.management.AttributeList;
 import javax.management.InstanceNotFoundException;
+import javax.management.MBeanInfo;
 import javax.management.MBeanServer;
 import javax.management.Notification;
 import javax.management.NotificationFilter;
@@ -95,6 +98,12 @@ import javax.management.remote.message.NotificationResponseMessage;
 import javax.management.remote.message.Message;
 import javax.security.auth.Subject;
 
+import com.sun.jmx.remote.generic.ConnectionMetrics;
+import com.sun.jmx.remote.generic.ConnectorMetrics;
+import com.sun.jmx.remote.generic.DefaultConfig;
+import com.sun.jmx.remote.generic.MBeanInfoCache;
+import com.sun.jmx.remote.generic.ResponseCache;
+import com.sun.jmx.remote.generic.ServerSynchroMessageConnectionImpl;
 import com.sun.jmx.remote.generic.ObjectWrappingImpl;
 import com.sun.jmx.remote.generic.SynchroCallback;
 import com.sun.jmx.remote.generic.ServerSynchroMessageConnection;
@@ -178,7 +187,24 @@ class ServerIntermediary {
 	}
 	isRI10 = "RI1.0.0".equals(s);
 
-	serverCommunicatorAdmin = new GenericServerCommunicatorAdmin(timeout);
+	serverCommunicatorAdmin =
+	    new GenericServerCommunicatorAdmin(timeout,
+					       EnvHelp.getVirtualThreads(this.env));
+
+	final ConnectorMetrics connectorMetrics = myServer.getMetrics();
+	if (connectorMetrics == null) {
+	    metrics = null;
+	} else if (connection instanceof ServerSynchroMessageConnectionImpl) {
+	    final ServerSynchroMessageConnectionImpl impl =
+		(ServerSynchroMessageConnectionImpl) connection;
+	    metrics = connectorMetrics.connectionOpened(clientId,
+					      impl.getAsynchroConnection());
+	    impl.setMetrics(metrics);
+	} else {
+	    metrics = connectorMetrics.connectionOpened(clientId, null);
+	}
+
+	responseCache = myServer.getResponseCache();
     }
 
     private synchronized ServerNotifForwarder getServerNotifFwd() {
@@ -204,8 +230,21 @@ class ServerIntermediary {
 	    return null;
 	}
 
-	final Object[] params = req.getParams();
-	switch (req.getMethodId()) {
+	return handleRequest(req.getMethodId(), req.getParams());
+    }
+
+    private Object handleRequest(int methodId, Object[] params)
+	throws Exception {
+
+	switch (methodId) {
+	case MBeanServerRequestMessage.BATCH:
+	    if (logger.traceOn()) {
+		logger.trace("handleRequest",
+			   "Handle a BATCH request.");
+	    }
+
+	    return handleBatch((int[])params[0], (Object[])params[1]);
+
 	case MBeanServerRequestMessage.CREATE_MBEAN:
 
 	    if (logger.traceOn()) {
@@ -303,6 +342,25 @@ class ServerIntermediary {
 
 	    return mbeanServer.getMBeanInfo((ObjectName)params[0]);
 
+	case MBeanServerRequestMessage.NOTIFICATION_PUSH:
+	    if (logger.traceOn()) {
+		logger.trace("handleRequest",
+			   "Handle a NOTIFICATION_PUSH request.");
+	    }
+
+	    return startNotificationPush(((Long)params[0]).longValue(),
+					 ((Integer)params[1]).intValue(),
+					 ((Integer)params[2]).intValue());
+
+	case MBeanServerRequestMessage.GET_MBEAN_INFO_IF_CHANGED:
+	    if (logger.traceOn()) {
+		logger.trace("handleRequest",
+			   "Handle a GET_MBEAN_INFO_IF_CHANGED request.");
+	    }
+
+	    return getMBeanInfoIfChanged((ObjectName)params[0],
+					 (Long)params[1]);
+
 	case MBeanServerRequestMessage.GET_OBJECT_INSTANCE:
 	    if (logger.traceOn()) {
 		logger.trace("handleRequest",
@@ -364,6 +422,17 @@ class ServerIntermediary {
 		(ObjectName)params[0],
 		(QueryExp)serialization.unwrap(params[1], defaultClassLoader));
 
+	case MBeanServerRequestMessage.QUERY_ATTRIBUTES:
+	    if (logger.traceOn()) {
+		logger.trace("handleRequest",
+			   "Handle a QUERY_ATTRIBUTES request.");
+	    }
+
+	    return queryAttributes(
+		(ObjectName)params[0],
+		(QueryExp)serialization.unwrap(params[1], defaultClassLoader),
+		(String[])params[2]);
+
 	case MBeanServerRequestMessage.SET_ATTRIBUTE:
 	    if (logger.traceOn()) {
 		logger.trace("handleRequest",
@@ -553,11 +622,315 @@ class ServerIntermediary {
 	default:
 	    // trace - log this as an info...
 	    logger.info("handleRequest",
-		       "Unknown request id: " + req.getMethodId());
+		       "Unknown request id: " + methodId);
 
 	    throw new IllegalArgumentException("The specified method is not " +
 					       "found [MethodId=" +
-					       req.getMethodId() + "]");
+					       methodId + "]");
+	}
+    }
+
+    /*
+     * Executes the methods of a BATCH request in order.  The failure
+     * of a method is returned as its result and does not stop the
+     * batch, so that the client gets a result for each method.  Each
+     * result is wrapped on its own, so that a result which cannot be
+     * serialized only fails its own method.  Control requests, which
+     * change the state of the connection, cannot be batched.
+     */
+    private Object[] handleBatch(int[] methodIds, Object[] params) {
+	if (methodIds.length != params.length) {
+	    throw new IllegalArgumentException("Inconsistent batch request");
+	}
+
+	final Object[] results = new Object[methodIds.length];
+	final boolean[] exceptions = new boolean[methodIds.length];
+
+	for (int i = 0; i < methodIds.length; i++) {
+	    try {
+		switch (methodIds[i]) {
+		case MBeanServerRequestMessage.BATCH:
+		case MBeanServerRequestMessage.CANCEL:
+		case MBeanServerRequestMessage.NOTIFICATION_PUSH:
+		case MBeanServerRequestMessage.NOTIFICATION_ACK:
+		    throw new IllegalArgumentException("The method " +
+						       methodIds[i] +
+						       " cannot be batched");
+		}
+		Object[] p = (Object[])params[i];
+		if (p == null) {
+		    p = new Object[0];
+		}
+		results[i] = serialization.wrap(handleRequest(methodIds[i], p));
+	    } catch (Exception e) {
+		e = extractException(e);
+		if (logger.traceOn()) {
+		    logger.trace("handleBatch",
+				 "Got an exception: " + e, e);
+		}
+		results[i] = wrapException(e);
+		exceptions[i] = true;
+	    } catch (Error r) {
+		if (logger.traceOn()) {
+		    logger.trace("handleBatch", "Got an error: " + r, r);
+		}
+		results[i] = wrapException(
+			new JMXServerErrorException(r.toString(), r));
+		exceptions[i] = true;
+	    }
+	}
+
+	return new Object[] {results, exceptions};
+    }
+
+    /*
+     * Wraps an exception sent to the client outside of a response, such
+     * as the failure of a method of a BATCH request.  If the exception
+     * itself cannot be serialized, it is replaced by an IOException
+     * carrying its description.
+     */
+    private Object wrapException(Exception e) {
+	try {
+	    return serialization.wrap(e);
+	} catch (Exception we) {
+	    if (logger.traceOn()) {
+		logger.trace("wrapException",
+			     "Failed to wrap an exception: " + we, we);
+	    }
+	    try {
+		return serialization.wrap(new IOException(e.toString()));
+	    } catch (IOException ioe) {
+		// Should not happen: an IOException is serializable.
+		throw new RuntimeException(ioe.toString());
+	    }
+	}
+    }
+
+    /*
+     * Wraps the result of a request.  The results kept by the
+     * connector server for all its connections are not wrapped again.
+     */
+    private Object wrapResult(MBeanServerRequestMessage request,
+			      Object result) throws IOException {
+	if (responseCache != null && result != null) {
+	    switch (request.getMethodId()) {
+	    case MBeanServerRequestMessage.GET_MBEAN_INFO:
+		return responseCache.wrapMBeanInfo(
+				 (ObjectName) request.getParams()[0],
+				 (MBeanInfo) result,
+				 serialization);
+	    case MBeanServerRequestMessage.GET_DOMAINS:
+		return responseCache.wrapDomains((String[]) result,
+						 serialization);
+	    case MBeanServerRequestMessage.GET_DEFAULT_DOMAIN:
+		return responseCache.wrapDefaultDomain((String) result,
+						       serialization);
+	    }
+	}
+
+	return serialization.wrap(result);
+    }
+
+    /*
+     * Returns null if the MBeanInfo of the MBean still has the
+     * fingerprint held by the client, so that an unchanged MBeanInfo
+     * is not sent again.
+     */
+    private Object[] getMBeanInfoIfChanged(ObjectName name, Long fingerprint)
+	    throws Exception {
+	final MBeanInfo info = mbeanServer.getMBeanInfo(name);
+	final long current = (responseCache == null) ?
+	    MBeanInfoCache.fingerprint(info) :
+	    responseCache.getFingerprint(name, info);
+
+	if (fingerprint != null && fingerprint.longValue() == current) {
+	    return null;
+	}
+	return new Object[] {info, new Long(current)};
+    }
+
+    /*
+     * Reads the given attributes of all the MBeans selected by the
+     * query.  When many MBeans are selected, they are split between
+     * the bulk threads of this connection, which read them with the
+     * access control context of the request.
+     */
+    private Map queryAttributes(ObjectName name, QueryExp query,
+				final String[] attributes)
+	    throws ConnectionClosedException {
+	final Object[] names = mbeanServer.queryNames(name, query).toArray();
+	final Map result = new HashMap(names.length * 2);
+
+	final int threshold = DefaultConfig.getServerBulkParallelThreshold(env);
+	int chunks = 1;
+	if (names.length >= threshold) {
+	    chunks = Math.min(DefaultConfig.getServerBulkThreads(env) + 1,
+			      (names.length + threshold - 1) / threshold);
+	}
+
+	if (chunks <= 1) {
+	    readAttributes(names, 0, names.length, attributes, result);
+	    return result;
+	}
+
+	if (logger.traceOn()) {
+	    logger.trace("queryAttributes", "Read " + names.length +
+			 " MBeans in " + chunks + " chunks.");
+	}
+
+	final AccessControlContext context = AccessController.getContext();
+	final Map[] results = new Map[chunks];
+	final int[] pending = new int[] {chunks - 1};
+	final int size = (names.length + chunks - 1) / chunks;
+	final ThreadService threads = getBulkThreads();
+
+	for (int i = 1; i < chunks; i++) {
+	    final int chunk = i;
+	    final int from = i * size;
+	    final int to = Math.min(from + size, names.length);
+	    results[chunk] = new HashMap((to - from) * 2);
+	    final Runnable job = new Runnable() {
+		    public void run() {
+			try {
+			    AccessController.doPrivileged(new PrivilegedAction() {
+				    public Object run() {
+					readAttributes(names, from, to,
+						       attributes,
+						       results[chunk]);
+					return null;
+				    }
+				}, context);
+			} finally {
+			    synchronized (pending) {
+				pending[0]--;
+				pending.notifyAll();
+			    }
+			}
+		    }
+		};
+	    try {
+		threads.handoff(job);
+	    } catch (IllegalStateException e) {
+		// the connection is being terminated
+		job.run();
+	    }
+	}
+
+	// The first chunk is read by the current thread.
+	readAttributes(names, 0, Math.min(size, names.length), attributes,
+		       result);
+
+	boolean interrupted = false;
+	boolean terminated = false;
+	synchronized (pending) {
+	    while (pending[0] > 0) {
+		// The jobs still queued are dropped if the connection is
+		// terminated.
+		synchronized (stateLock) {
+		    if (state == TERMINATED) {
+			terminated = true;
+			break;
+		    }
+		}
+		try {
+		    pending.wait(1000);
+		} catch (InterruptedException ie) {
+		    interrupted = true;
+		}
+	    }
+	}
+	if (interrupted) {
+	    Thread.currentThread().interrupt();
+	}
+
+	// The maps of the unfinished chunks may still be filled, and
+	// nobody will read the result anyway.
+	if (terminated) {
+	    throw new ConnectionClosedException(
+		"The connection is being terminated by the server");
+	}
+
+	for (int i = 1; i < chunks; i++) {
+	    result.putAll(results[i]);
+	}
+	return result;
+    }
+
+    private void readAttributes(Object[] names, int from, int to,
+				String[] attributes, Map result) {
+	for (int i = from; i < to; i++) {
+	    final ObjectName n = (ObjectName) names[i];
+	    try {
+		result.put(n, mbeanServer.getAttributes(n, attributes));
+	    } catch (Exception e) {
+		// The MBean may have been unregistered since the query,
+		// or may not be readable: leave it out like queryNames.
+		if (logger.debugOn()) {
+		    logger.debug("readAttributes",
+				 "Failed to read " + n + ": " + e);
+		}
+	    }
+	}
+    }
+
+    private synchronized ThreadService getBulkThreads() {
+	// Lazily created when first used by a QUERY_ATTRIBUTES request
+	// selecting many MBeans.
+	if (bulkThreads == null)
+	    bulkThreads =
+		new ThreadService(0, DefaultConfig.getServerBulkThreads(env),
+				  true, EnvHelp.getVirtualThreads(this.env));
+
+	return bulkThreads;
+    }
+
+    /*
+     * Starts pushing the notifications of this connection from the
+     * given sequence number, in place of any previous push.
+     */
+    private Boolean startNotificationPush(long start, int max, int window) {
+	if (!DefaultConfig.getServerNotificationPush(env) ||
+	    start < 0 || max < 0 || window < 1) {
+	    return Boolean.FALSE;
+	}
+
+	final NotificationPusher pusher;
+	synchronized (this) {
+	    if (notifPusher != null) {
+		notifPusher.stop();
+	    }
+
+	    // one push at a time for this connection
+	    if (pushThreads == null) {
+		pushThreads =
+		    new ThreadService(0, 1, true,
+				      EnvHelp.getVirtualThreads(this.env));
+	    }
+
+	    pusher = new NotificationPusher(start, max, window, pushThreads);
+	    notifPusher = pusher;
+	}
+
+	pusher.schedule();
+	return Boolean.TRUE;
+    }
+
+    private void acknowledgeNotifications(MBeanServerRequestMessage req) {
+	final Object[] params = req.getParams();
+	if (params == null || params.length != 1 ||
+	    !(params[0] instanceof Long)) {
+	    logger.info("acknowledgeNotifications",
+			"Invalid NOTIFICATION_ACK request ignored.");
+	    return;
+	}
+
+	final NotificationPusher pusher;
+	synchronized (this) {
+	    pusher = notifPusher;
+	}
+
+	if (pusher != null) {
+	    pusher.acknowledge(((Long)params[0]).longValue());
 	}
     }
 
@@ -613,6 +986,18 @@ class ServerIntermediary {
 	    serverNotifForwarder.terminate();
 	}
 
+	synchronized (this) {
+	    if (bulkThreads != null) {
+		bulkThreads.terminate();
+	    }
+	    if (notifPusher != null) {
+		notifPusher.stop();
+	    }
+	    if (pushThreads != null) {
+		pushThreads.terminate();
+	    }
+	}
+
 	// close the transport protocol
 	//
 	try {
@@ -622,6 +1007,10 @@ class ServerIntermediary {
 	    // We are closing, so ignore it.
 	}
 
+	if (metrics != null) {
+	    metrics.closed();
+	}
+
 	if (serverCommunicatorAdmin != null) {
 	    serverCommunicatorAdmin.terminate();
 	}
@@ -644,6 +1033,184 @@ class ServerIntermediary {
     // private classes
     // ---------------------------------------
 
+    /**
+     * Pushes the notifications of this connection to the client, with
+     * at most <code>window</code> messages that the client has not
+     * acknowledged.  It only runs when there may be notifications to
+     * push and the client can take them, so no thread waits for
+     * notifications in the meantime.
+     */
+    private class NotificationPusher implements Runnable {
+	NotificationPusher(long start, int max, int window,
+			   ThreadService threads) {
+	    this.pushSeq = start;
+	    this.clientSeq = start;
+	    this.max = max;
+	    this.window = window;
+	    this.threads = threads;
+	}
+
+	public void run() {
+	    try {
+		push();
+	    } catch (Exception e) {
+		stop();
+		synchronized(stateLock) {
+		    if (state == TERMINATED) {
+			logger.trace("NotificationPusher-run",
+				     "Stop pushing notifications: " + e);
+			return;
+		    }
+		}
+		logger.warning("NotificationPusher-run",
+			       "Stop pushing notifications: " + e);
+		logger.debug("NotificationPusher-run", e);
+		stopped(e);
+	    }
+	}
+
+	/*
+	 * Tells the client that no more notifications are pushed, by
+	 * pushing an exception instead of a NotificationResult, so that
+	 * it asks for them again.  If that cannot be sent either, the
+	 * connection is closed and the client will reconnect.
+	 */
+	private void stopped(Exception e) {
+	    final Message msg = new NotificationResponseMessage(
+		wrapException(new IOException("Stopped pushing " +
+					      "notifications: " + e)));
+	    try {
+		synchronized (connection) {
+		    connection.sendOneWay(msg);
+		}
+	    } catch (Exception se) {
+		logger.trace("NotificationPusher-stopped",
+			     "Failed to tell the client: " + se);
+		terminate(true, "Failed to push notifications: " + e);
+	    }
+	}
+
+	private void push() throws IOException {
+	    final ServerNotifForwarder forwarder = getServerNotifFwd();
+
+	    while (true) {
+		final long seq;
+		synchronized (this) {
+		    if (stopped || unacked.size() >= window) {
+			scheduled = false;
+			return;
+		    }
+		    seq = pushSeq;
+		}
+
+		final NotificationResult nr =
+		    forwarder.fetchNotifs(seq, 0, max);
+		final long next = nr.getNextSequenceNumber();
+		final boolean lost = nr.getEarliestSequenceNumber() > seq;
+
+		if (nr.getTargetedNotifications().length == 0 && !lost) {
+		    synchronized (this) {
+			pushSeq = next;
+			scheduled = false;
+			if (stopped) {
+			    return;
+			}
+		    }
+		    forwarder.runOnArrival(next, wakeUp);
+		    return;
+		}
+
+		/* Unless some were dropped, the notifications skipped
+		   since the last push matched no listener: the client
+		   has not lost them.  */
+		final NotificationResult pushed =
+		    new NotificationResult(lost ?
+					   nr.getEarliestSequenceNumber() :
+					   clientSeq,
+					   next,
+					   nr.getTargetedNotifications());
+		notifsFetched(clientSeq, pushed);
+		final Message msg =
+		    new NotificationResponseMessage(wrapNotifs(pushed));
+
+		synchronized (this) {
+		    if (stopped) {
+			scheduled = false;
+			return;
+		    }
+		    pushSeq = next;
+		    clientSeq = next;
+		    unacked.addLast(new Long(next));
+		}
+
+		if (logger.traceOn()) {
+		    logger.trace("NotificationPusher-push",
+				 "Push the notifs: " + pushed);
+		}
+
+		synchronized (connection) {
+		    connection.sendOneWay(msg);
+		}
+	    }
+	}
+
+	/*
+	 * The client has handled the pushed results up to the given
+	 * nextSequenceNumber, or one result it could not read if it
+	 * is negative.
+	 */
+	synchronized void acknowledge(long seq) {
+	    if (seq < 0) {
+		if (!unacked.isEmpty()) {
+		    unacked.removeFirst();
+		}
+	    } else {
+		while (!unacked.isEmpty() &&
+		       ((Long) unacked.getFirst()).longValue() <= seq) {
+		    unacked.removeFirst();
+		}
+	    }
+
+	    schedule();
+	}
+
+	synchronized void schedule() {
+	    if (stopped || scheduled) {
+		return;
+	    }
+
+	    scheduled = true;
+	    try {
+		threads.handoff(this);
+	    } catch (IllegalStateException e) {
+		// the connection is being terminated
+		scheduled = false;
+		logger.trace("NotificationPusher-schedule", e);
+	    }
+	}
+
+	synchronized void stop() {
+	    stopped = true;
+	}
+
+	private final Runnable wakeUp = new Runnable() {
+		public void run() {
+		    schedule();
+		}
+	    };
+
+	private final int max;
+	private final int window;
+	private final ThreadService threads;
+
+	// guarded by this
+	private long pushSeq;
+	private long clientSeq;
+	private final LinkedList/*<Long>*/ unacked = new LinkedList();
+	private boolean scheduled;
+	private boolean stopped;
+    }
+
     /**
      * Read a message and distribute to a thread for execution
      */
@@ -665,6 +1232,11 @@ class ServerIntermediary {
 		else if (msg instanceof NotificationRequestMessage)
 		    return handleNotifReqMessage((NotificationRequestMessage)
 						 msg);
+		else if (msg instanceof MBeanServerRequestMessage &&
+			 ((MBeanServerRequestMessage) msg).getMethodId() ==
+			 MBeanServerRequestMessage.NOTIFICATION_ACK)
+		    // no response
+		    acknowledgeNotifications((MBeanServerRequestMessage) msg);
 		else if (msg instanceof MBeanServerRequestMessage)
 		    return handleMBSReqMessage((MBeanServerRequestMessage) 
 					       msg);
@@ -718,26 +1290,8 @@ class ServerIntermediary {
 	    int max = nr.getMaxNotifications();
 	    NotificationResult result =
 		getServerNotifFwd().fetchNotifs(start, timeout, max);
-	    Object wrapped;
-	    try {
-		wrapped = serialization.wrap(result);
-	    } catch (NotSerializableException e) {
-		/* This presumably means that at least one of the
-		   notifications is unserializable, for example
-		   because it contains an unserializable object in
-		   its userData.  This should not happen often
-		   (Notification itself is serializable).  */
-		result = purgeUnserializable(result);
-		wrapped = serialization.wrap(result);
-		/* If even this call to serialization.wrap gets an
-		   exception, then the ObjectWrapping is broken
-		   and we can't reasonably recover.  So propagate
-		   the exception.  We are inside a
-		   catch(IOException) that will swallow the
-		   IOException, but at least it will trace it if
-		   asked.  */
-	    }
-	    return new NotificationResponseMessage(wrapped);
+	    notifsFetched(start, result);
+	    return new NotificationResponseMessage(wrapNotifs(result));
 	}
 
 	private Message handleMBSReqMessage(MBeanServerRequestMessage req)
@@ -746,6 +1300,8 @@ class ServerIntermediary {
 		logger.trace("RequestHandler-execute",
 			     "Receive a MBeanServerRequestMessage.");
 	    }
+	    final long start = (metrics == null) ? 0 : System.nanoTime();
+	    boolean failed = true;
 	    try {
 		final AccessControlContext reqACC;
 		final Subject delegationSubject = req.getDelegationSubject();
@@ -767,6 +1323,7 @@ class ServerIntermediary {
 		Object result =
 		    AccessController.doPrivileged(new PrivilegedRequestJob(req),
 						  reqACC);
+		failed = false;
 		return new MBeanServerResponseMessage(
 				     req.getMessageId(),
 				     result,
@@ -794,6 +1351,11 @@ class ServerIntermediary {
 				      req.getMessageId(),
 				      wrapException(see),
 				      true);
+	    } finally {
+		if (metrics != null) {
+		    metrics.requestDone(req.getMethodId(),
+					System.nanoTime() - start, failed);
+		}
 	    }
 	}
 
@@ -854,6 +1416,18 @@ class ServerIntermediary {
 	}
     }
 
+    /*
+     * Records the notifications that the client will see as lost,
+     * when its sequence number is before the earliest one of the
+     * result.
+     */
+    private void notifsFetched(long clientSeq, NotificationResult result) {
+	final long lost = result.getEarliestSequenceNumber() - clientSeq;
+	if (metrics != null && clientSeq >= 0 && lost > 0) {
+	    metrics.notificationsLost(lost);
+	}
+    }
+
     /* The following stuff handles notifications that are not
        serializable.  This can happen, for example, if the userData of
        a notification is an unserializable object.  This is probably
@@ -967,12 +1541,32 @@ class ServerIntermediary {
 				      tns);
     }
 
+    private Object wrapNotifs(NotificationResult result) throws IOException {
+	try {
+	    return serialization.wrap(result);
+	} catch (NotSerializableException e) {
+	    /* This presumably means that at least one of the
+	       notifications is unserializable, for example
+	       because it contains an unserializable object in
+	       its userData.  This should not happen often
+	       (Notification itself is serializable).  */
+	    result = purgeUnserializable(result);
+	    /* If even this call to serialization.wrap gets an
+	       exception, then the ObjectWrapping is broken
+	       and we can't reasonably recover.  So propagate
+	       the exception.  The callers swallow the
+	       IOException, but at least they trace it if
+	       asked.  */
+	    return serialization.wrap(result);
+	}
+    }
+
     private static final Long ONE_LONG = new Long(1);
 
     private class GenericServerCommunicatorAdmin
 	extends ServerCommunicatorAdmin {
-	public GenericServerCommunicatorAdmin(long timeout) {
-	    super(timeout);
+	public GenericServerCommunicatorAdmin(long timeout, boolean virtual) {
+	    super(timeout, virtual);
 	}
 
 	protected void doStop() {
@@ -988,7 +1582,7 @@ class ServerIntermediary {
 	}
 
 	public Object run() throws Exception {
-	    return serialization.wrap(handleRequest(request));
+	    return wrapResult(request, handleRequest(request));
 	}
 
 	private MBeanServerRequestMessage request;
@@ -1095,6 +1689,17 @@ class ServerIntermediary {
     private final ClassLoaderWithRepository clr;
 
     private ServerNotifForwarder serverNotifForwarder;
+    private ThreadService bulkThreads;
+
+    // pushes the notifications if the client asked for it
+    private NotificationPusher notifPusher;
+    private ThreadService pushThreads;
+
+    private final ConnectionMetrics metrics;
+
+    // shared by the connections of the connector server, null if
+    // results are not cached
+    private final ResponseCache responseCache;
     private Map env;
 
     private GenericServerCommunicatorAdmin serverCommunicatorAdmin;
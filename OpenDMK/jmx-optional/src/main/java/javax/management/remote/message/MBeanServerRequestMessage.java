@@ -58,6 +58,7 @@ import javax.management.ObjectInstance;
 import javax.management.remote.generic.ObjectWrapping;
 import javax.security.auth.Subject;
 
+
 /**
  * <p>An {@link MBeanServerConnection} method call, encoded as an
  * object. Objects of this type are sent from the client end to the
@@ -338,6 +339,121 @@ public class MBeanServerRequestMessage implements Message {
      */
     public final static int UNREGISTER_MBEAN = 25;
 
+    /**
+     * <p>Identifier for several of the methods above executed in a
+     * single request.</p>
+     *
+     * <p>The parameters contained in the
+     * <code>MBeanServerRequestMessage</code> for this method are an
+     * array of <code>int</code> containing the identifier of each
+     * method and an array of <code>Object</code> of the same size.
+     * Each element of the array of <code>Object</code> is the
+     * <code>Object[]</code> of parameters of the corresponding method,
+     * wrapped as specified for that method.  A method cannot be
+     * <code>BATCH</code> itself, nor one of the control methods
+     * <code>CANCEL</code>, <code>NOTIFICATION_PUSH</code> and
+     * <code>NOTIFICATION_ACK</code>.</p>
+     *
+     * <p>The methods are executed in order, even if some of them fail.
+     * The corresponding {@link MBeanServerResponseMessage} contains an
+     * array of two elements: an array of <code>Object</code> with the
+     * result of each method or the exception it threw, each wrapped on
+     * its own, and an array of <code>boolean</code> telling which
+     * elements are exceptions.</p>
+     */
+    public final static int BATCH = 26;
+
+    /**
+     * <p>Identifier for reading the same attributes of all the MBeans
+     * selected by a query, as if by calling {@link
+     * MBeanServerConnection#queryNames(ObjectName, QueryExp)} and then
+     * {@link MBeanServerConnection#getAttributes(ObjectName, String[])}
+     * for each name.</p>
+     *
+     * <p>The parameters contained in the
+     * <code>MBeanServerRequestMessage</code> for this method are the
+     * <code>ObjectName</code> and <code>QueryExp</code> parameters of
+     * <code>queryNames</code> and the <code>String[]</code> of
+     * attribute names.  The <code>QueryExp</code> is wrapped using
+     * {@link ObjectWrapping}.</p>
+     *
+     * <p>The corresponding {@link MBeanServerResponseMessage} contains
+     * a <code>Map</code> whose keys are the selected
+     * <code>ObjectName</code>s and whose values are the
+     * <code>AttributeList</code> returned for them.  An MBean which
+     * cannot be read, for example because it was unregistered after
+     * the query, is left out of the map.</p>
+     */
+    public final static int QUERY_ATTRIBUTES = 27;
+
+    /**
+     * <p>Identifier for the method {@link
+     * MBeanServerConnection#getMBeanInfo(ObjectName)}, when the client
+     * already holds an <code>MBeanInfo</code> for the MBean and only
+     * needs it again if it has changed.</p>
+     *
+     * <p>The parameters contained in the
+     * <code>MBeanServerRequestMessage</code> for this method are the
+     * <code>ObjectName</code> and a <code>Long</code> fingerprint of
+     * the <code>MBeanInfo</code> held by the client, or null if it
+     * holds none.</p>
+     *
+     * <p>If the fingerprint of the current <code>MBeanInfo</code> of
+     * the MBean is the given one, the corresponding {@link
+     * MBeanServerResponseMessage} contains null.  Otherwise it
+     * contains an array of two elements: the <code>MBeanInfo</code>
+     * and its <code>Long</code> fingerprint.</p>
+     */
+    public final static int GET_MBEAN_INFO_IF_CHANGED = 28;
+
+    /**
+     * <p>Identifier for the cancellation of a request sent earlier on
+     * the same connection, whose response the client no longer
+     * waits for.</p>
+     *
+     * <p>The parameter contained in the
+     * <code>MBeanServerRequestMessage</code> for this method is the
+     * <code>Long</code> message identifier of the cancelled request.
+     * If that request is still waiting, it is not executed.  If it is
+     * being executed, its thread may be interrupted.  No response is
+     * sent for this message nor for the cancelled request.</p>
+     */
+    public final static int CANCEL = 29;
+
+    /**
+     * <p>Identifier for asking the server to push the notifications
+     * for the listeners of this connection, instead of waiting for
+     * {@link NotificationRequestMessage}s.</p>
+     *
+     * <p>The parameters contained in the
+     * <code>MBeanServerRequestMessage</code> for this method are the
+     * <code>Long</code> sequence number of the first notification to
+     * consider, the <code>Integer</code> maximum number of
+     * notifications in a {@link NotificationResponseMessage}, and the
+     * <code>Integer</code> maximum number of pushed messages that the
+     * client has not acknowledged with {@link #NOTIFICATION_ACK}.</p>
+     *
+     * <p>The corresponding {@link MBeanServerResponseMessage}
+     * contains <code>Boolean.TRUE</code> if the server pushes the
+     * notifications from now on, or <code>Boolean.FALSE</code> if the
+     * client must keep asking for them.</p>
+     */
+    public final static int NOTIFICATION_PUSH = 30;
+
+    /**
+     * <p>Identifier for the acknowledgement of the notifications
+     * pushed by the server.</p>
+     *
+     * <p>The parameter contained in the
+     * <code>MBeanServerRequestMessage</code> for this method is the
+     * <code>Long</code> <code>nextSequenceNumber</code> of the last
+     * pushed notification result handled by the client, or a
+     * negative value if the client could not read the oldest
+     * unacknowledged result.  No response is sent for this
+     * message.</p>
+     */
+    public final static int NOTIFICATION_ACK = 31;
+
     /**
      * <p>Constructs a message to invoke the method with the given
      * identifier and parameters. Each constructed object gets a
@@ -358,10 +474,65 @@ public class MBeanServerRequestMessage implements Message {
     public MBeanServerRequestMessage(int methodId,
 				     Object[] params,
 				     Subject delegationSubject) {
-        messageId = newId();
+	this(methodId, params, delegationSubject, 0);
+    }
+
+    /**
+     * <p>Constructs a message to invoke the method with the given
+     * identifier and parameters, whose response is only waited for
+     * during the given time.</p>
+     *
+     * @param methodId the identifier of an <code>MBeanServerConnection</code>
+     * method.
+     *
+     * @param params parameters to the method.
+     *
+     * @param delegationSubject the subject on which the authorization checks
+     * are performed for this request, or <code>null</code>.
+     *
+     * @param timeout the time in milliseconds during which the client
+     * waits for the response, or 0 if it waits without limit.  A
+     * request still waiting to be executed when this time has elapsed
+     * since it was received is not executed.
+     */
+    public MBeanServerRequestMessage(int methodId,
+				     Object[] params,
+				     Subject delegationSubject,
+				     long timeout) {
+	this(newId(), methodId, params, delegationSubject, timeout);
+    }
+
+    /**
+     * <p>Constructs a message with the given identifier, such as a
+     * request decoded by a message codec, which keeps the identifier
+     * given by the client.</p>
+     *
+     * @param messageId the identifier of this message.
+     *
+     * @param methodId the identifier of an <code>MBeanServerConnection</code>
+     * method.
+     *
+     * @param params parameters to the method.
+     *
+     * @param delegationSubject the subject on which the authorization checks
+     * are performed for this request, or <code>null</code>.
+     *
+     * @param timeout the time in milliseconds during which the client
+     * waits for the response, or 0 if it waits without limit.
+     */
+    public MBeanServerRequestMessage(long messageId,
+				     int methodId,
+				     Object[] params,
+				     Subject delegationSubject,
+				     long timeout) {
+	if (timeout < 0) {
+	    throw new IllegalArgumentException("Negative timeout: " + timeout);
+	}
+        this.messageId = messageId;
         this.methodId = methodId;
         this.params = (params == null) ? NO_PARAMS : params;
 	this.delegationSubject = delegationSubject;
+	this.timeout = timeout;
     }
 
     /**
@@ -397,9 +568,21 @@ public class MBeanServerRequestMessage implements Message {
         return delegationSubject;
     }
 
+    /**
+     * <p>Returns the time during which the client waits for the
+     * response.</p>
+     *
+     * @return the timeout in milliseconds, or 0 if the client waits
+     * without limit.
+     */
+    public long getTimeout() {
+	return timeout;
+    }
+
     /**
      * <p>Returns this message's unique identifier. Every instance of
-     * this class has a different identifier.</p>
+     * this class constructed without an identifier has a different
+     * one.</p>
      *
      * @return the unique identifier of this message.
      */
@@ -437,6 +620,14 @@ public class MBeanServerRequestMessage implements Message {
      */
     private final Subject delegationSubject;
 
+    /**
+     * @serial The time in milliseconds during which the client waits
+     * for the response, or 0.  Absent, and so 0, in the messages of
+     * older clients.
+     * @see #getTimeout()
+     */
+    private final long timeout;
+
     private static long count = 0;
     private static final int[] counterLock = new int[0];
     private static final Object[] NO_PARAMS = new Object[0];
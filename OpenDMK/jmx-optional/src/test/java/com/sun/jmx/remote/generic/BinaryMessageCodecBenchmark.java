@@ -0,0 +1,189 @@
+package com.sun.jmx.remote.generic;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.ObjectName;
+import javax.management.remote.message.MBeanServerRequestMessage;
+import javax.management.remote.message.MBeanServerResponseMessage;
+import javax.management.remote.message.Message;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@link BinaryMessageCodec} with the Java serialization used
+ * by the socket connections without a codec: an
+ * <code>ObjectOutputStream</code> kept for the connection and reset
+ * after each message.  Each benchmark writes a message and reads it
+ * back.  Run it with
+ * <code>java -cp target/test-classes:&lt;test classpath&gt;
+ * org.openjdk.jmh.Main BinaryMessageCodecBenchmark</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BinaryMessageCodecBenchmark {
+
+    @Param({"binary", "serialization"})
+    public String encoding;
+
+    private Connection connection;
+
+    private MBeanServerRequestMessage getAttribute;
+    private MBeanServerResponseMessage intResult;
+    private MBeanServerResponseMessage attributeList;
+
+    @Setup
+    public void setUp() throws Exception {
+	connection = "binary".equals(encoding) ?
+	    (Connection) new CodecConnection(new BinaryMessageCodec()) :
+	    (Connection) new SerializationConnection();
+
+	final ObjectName name =
+	    new ObjectName("java.lang:type=MemoryPool,name=PS Eden Space");
+	final ObjectWrappingImpl wrapping = new ObjectWrappingImpl();
+
+	getAttribute = new MBeanServerRequestMessage(
+		MBeanServerRequestMessage.GET_ATTRIBUTE,
+		new Object[] {name, "CollectionUsageThreshold"}, null);
+	intResult = new MBeanServerResponseMessage(1,
+		wrapping.wrap(new Long(1024)), false);
+
+	final AttributeList list = new AttributeList();
+	for (int i = 0; i < 10; i++) {
+	    list.add(new Attribute("Attribute" + i, new Integer(i)));
+	}
+	attributeList = new MBeanServerResponseMessage(2,
+		wrapping.wrap(list), false);
+    }
+
+    @Benchmark
+    public Message getAttributeRequest() throws Exception {
+	return connection.roundTrip(getAttribute);
+    }
+
+    @Benchmark
+    public Message getAttributeResponse() throws Exception {
+	return connection.roundTrip(intResult);
+    }
+
+    @Benchmark
+    public Message getAttributesResponse() throws Exception {
+	return connection.roundTrip(attributeList);
+    }
+
+    /**
+     * Writes a message and reads it back through the same streams, as
+     * the two ends of a connection would.
+     */
+    private static abstract class Connection {
+	abstract Message roundTrip(Message msg) throws Exception;
+
+	final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+	final Pipe pipe = new Pipe();
+    }
+
+    private static class CodecConnection extends Connection {
+	CodecConnection(MessageCodec codec) {
+	    this.codec = codec;
+	    out = new DataOutputStream(bout);
+	    in = new DataInputStream(pipe);
+	}
+
+	Message roundTrip(Message msg) throws Exception {
+	    bout.reset();
+	    codec.writeMessage(msg, out);
+	    out.flush();
+	    pipe.add(bout.toByteArray());
+	    return codec.readMessage(in, null);
+	}
+
+	private final MessageCodec codec;
+	private final DataOutputStream out;
+	private final DataInputStream in;
+    }
+
+    private static class SerializationConnection extends Connection {
+	SerializationConnection() throws IOException {
+	    out = new ObjectOutputStream(bout);
+	    out.flush();
+	    pipe.add(bout.toByteArray());
+	    in = new ObjectInputStream(pipe);
+	}
+
+	Message roundTrip(Message msg) throws Exception {
+	    bout.reset();
+	    out.writeObject(msg);
+	    out.flush();
+	    out.reset();
+	    pipe.add(bout.toByteArray());
+	    return (Message) in.readObject();
+	}
+
+	private final ObjectOutputStream out;
+	private final ObjectInputStream in;
+    }
+
+    /**
+     * The bytes written and not read yet.
+     */
+    private static class Pipe extends InputStream {
+	void add(byte[] bytes) {
+	    if (count - pos + bytes.length > buf.length) {
+		final byte[] b = new byte[Math.max(buf.length * 2,
+						   count - pos + bytes.length)];
+		System.arraycopy(buf, pos, b, 0, count - pos);
+		buf = b;
+	    } else {
+		System.arraycopy(buf, pos, buf, 0, count - pos);
+	    }
+	    count -= pos;
+	    pos = 0;
+	    System.arraycopy(bytes, 0, buf, count, bytes.length);
+	    count += bytes.length;
+	}
+
+	public int read() {
+	    return (pos < count) ? (buf[pos++] & 0xff) : -1;
+	}
+
+	public int read(byte[] b, int off, int len) {
+	    if (pos >= count) {
+		return -1;
+	    }
+	    final int n = Math.min(len, count - pos);
+	    System.arraycopy(buf, pos, b, off, n);
+	    pos += n;
+	    return n;
+	}
+
+	public int available() {
+	    return count - pos;
+	}
+
+	private byte[] buf = new byte[1024];
+	private int pos;
+	private int count;
+    }
+}
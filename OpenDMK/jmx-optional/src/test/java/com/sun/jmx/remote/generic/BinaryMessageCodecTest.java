@@ -0,0 +1,477 @@
+package com.sun.jmx.remote.generic;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.Notification;
+import javax.management.ObjectName;
+import javax.management.remote.NotificationResult;
+import javax.management.remote.TargetedNotification;
+import javax.management.remote.message.CloseMessage;
+import javax.management.remote.message.HandshakeBeginMessage;
+import javax.management.remote.message.HandshakeEndMessage;
+import javax.management.remote.message.HandshakeErrorMessage;
+import javax.management.remote.message.MBeanServerRequestMessage;
+import javax.management.remote.message.MBeanServerResponseMessage;
+import javax.management.remote.message.Message;
+import javax.management.remote.message.NotificationRequestMessage;
+import javax.management.remote.message.NotificationResponseMessage;
+import javax.management.remote.message.TLSMessage;
+import javax.management.remote.message.VersionMessage;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Round trips of the messages and of each value type through
+ * {@link BinaryMessageCodec}.
+ */
+public class BinaryMessageCodecTest extends TestCase {
+
+    public BinaryMessageCodecTest(String testName) {
+	super(testName);
+    }
+
+    public static Test suite() {
+	return new TestSuite(BinaryMessageCodecTest.class);
+    }
+
+    public void testValues() throws Exception {
+	final StringBuffer big = new StringBuffer();
+	for (int i = 0; i < 30000; i++) {
+	    big.append("\u00e9\u4e2d");	// more than 64K bytes in UTF-8
+	}
+
+	final AttributeList list = new AttributeList();
+	list.add(new Attribute("a", new Integer(1)));
+	list.add(new Attribute("b", null));
+
+	final Map map = new HashMap();
+	map.put("key", "value");
+
+	final Object[] values = {
+	    null,
+	    "",
+	    "string \u00e9\u4e2d\ud83d\ude00",
+	    big.toString(),
+	    new byte[] {0, 1, -1, 127, -128},
+	    new byte[0],
+	    new ObjectName("d:type=T,name=\"quoted\\\"value\""),
+	    new Integer(Integer.MIN_VALUE),
+	    new Long(Long.MAX_VALUE),
+	    Boolean.TRUE,
+	    Boolean.FALSE,
+	    new Attribute("name", "value"),
+	    list,
+	    new String[] {"a", null, ""},
+	    new Object[] {"a", new Integer(2), null, new Object[] {"nested"}},
+	    new Double(Double.NaN),
+	    new Double(-0.0d),
+	    new Float(1.5f),
+	    new Short(Short.MIN_VALUE),
+	    new Byte((byte) -1),
+	    new Character('\uffff'),
+	    new Date(1234567890L),	// serialized
+	    map,			// serialized
+	};
+
+	final MBeanServerRequestMessage req =
+	    new MBeanServerRequestMessage(MBeanServerRequestMessage.INVOKE,
+					  values, null);
+	final MBeanServerRequestMessage got =
+	    (MBeanServerRequestMessage) roundTrip(req);
+
+	assertEquals(req.getMessageId(), got.getMessageId());
+	assertEquals(req.getMethodId(), got.getMethodId());
+	assertEquals(0, got.getTimeout());
+	assertNull(got.getDelegationSubject());
+
+	final Object[] params = got.getParams();
+	assertEquals(values.length, params.length);
+	for (int i = 0; i < values.length; i++) {
+	    assertValueEquals("param " + i, values[i], params[i]);
+	}
+    }
+
+    public void testValueClassesKept() throws Exception {
+	final Object[] values = {
+	    new Integer(1), new Long(1), new Short((short) 1),
+	    new Byte((byte) 1), new Double(1), new Float(1),
+	    new Character('1'), new String[0], new Object[0],
+	};
+	final Object[] params = ((MBeanServerRequestMessage) roundTrip(
+		new MBeanServerRequestMessage(MBeanServerRequestMessage.INVOKE,
+					      values, null))).getParams();
+	for (int i = 0; i < values.length; i++) {
+	    assertSame(values[i].getClass(), params[i].getClass());
+	}
+    }
+
+    public void testRequestTimeout() throws Exception {
+	final MBeanServerRequestMessage req =
+	    new MBeanServerRequestMessage(MBeanServerRequestMessage.GET_ATTRIBUTE,
+					  new Object[] {new ObjectName("d:k=v"),
+							"Attr"},
+					  null, 1500);
+	final MBeanServerRequestMessage got =
+	    (MBeanServerRequestMessage) roundTrip(req);
+	assertEquals(req.getMessageId(), got.getMessageId());
+	assertEquals(1500, got.getTimeout());
+    }
+
+    public void testMessages() throws Exception {
+	final MBeanServerResponseMessage resp =
+	    (MBeanServerResponseMessage) roundTrip(
+		new MBeanServerResponseMessage(42, "result", false));
+	assertEquals(42, resp.getMessageId());
+	assertEquals("result", resp.getWrappedResult());
+	assertFalse(resp.isException());
+
+	final MBeanServerResponseMessage exc =
+	    (MBeanServerResponseMessage) roundTrip(
+		new MBeanServerResponseMessage(43,
+			new IllegalStateException("bad"), true));
+	assertTrue(exc.isException());
+	assertEquals("bad",
+		     ((Exception) exc.getWrappedResult()).getMessage());
+
+	final NotificationRequestMessage nreq =
+	    (NotificationRequestMessage) roundTrip(
+		new NotificationRequestMessage(7, 100, 60000));
+	assertEquals(7, nreq.getClientSequenceNumber());
+	assertEquals(100, nreq.getMaxNotifications());
+	assertEquals(60000, nreq.getTimeout());
+
+	final NotificationResponseMessage nresp =
+	    (NotificationResponseMessage) roundTrip(
+		new NotificationResponseMessage(new byte[] {1, 2, 3}));
+	assertTrue(Arrays.equals(new byte[] {1, 2, 3},
+		(byte[]) nresp.getWrappedNotificationResult()));
+
+	assertEquals("closing", ((CloseMessage) roundTrip(
+		new CloseMessage("closing"))).getMessage());
+
+	final HandshakeBeginMessage begin = (HandshakeBeginMessage)
+	    roundTrip(new HandshakeBeginMessage("TLS BINARY", "1.0"));
+	assertEquals("TLS BINARY", begin.getProfiles());
+	assertEquals("1.0", begin.getVersion());
+
+	final HandshakeEndMessage end = (HandshakeEndMessage)
+	    roundTrip(new HandshakeEndMessage(null, "id-1"));
+	assertNull(end.getContext());
+	assertEquals("id-1", end.getConnectionId());
+
+	assertEquals("denied", ((HandshakeErrorMessage) roundTrip(
+		new HandshakeErrorMessage("denied"))).getDetail());
+
+	assertEquals("1.0", ((VersionMessage) roundTrip(
+		new VersionMessage("1.0"))).getVersion());
+
+	// written with Java serialization
+	assertEquals(TLSMessage.READY, ((TLSMessage) roundTrip(
+		new TLSMessage(TLSMessage.READY))).getStatus());
+    }
+
+    public void testWrappedObjects() throws Exception {
+	final DeferredObjectWrapping wrapping = new DeferredObjectWrapping();
+
+	final Object inline = wrapping.wrap("inline");
+	final Object nested = wrapping.wrap(new Date(5));
+
+	final Notification notif = new Notification("t", "source", 3);
+	final NotificationResult nr =
+	    new NotificationResult(1, 4, new TargetedNotification[] {
+		new TargetedNotification(notif, new Integer(9))});
+	final Object notifs = wrapping.wrap(nr);
+
+	final Object[] params = ((MBeanServerRequestMessage) roundTrip(
+		new MBeanServerRequestMessage(MBeanServerRequestMessage.INVOKE,
+					      new Object[] {inline, nested,
+							    notifs},
+					      null))).getParams();
+
+	assertEquals("inline", wrapping.unwrap(params[0], null));
+	assertEquals(new Date(5), wrapping.unwrap(params[1], null));
+
+	final NotificationResult got =
+	    (NotificationResult) wrapping.unwrap(params[2], null);
+	assertEquals(1, got.getEarliestSequenceNumber());
+	assertEquals(4, got.getNextSequenceNumber());
+	assertEquals(1, got.getTargetedNotifications().length);
+	final TargetedNotification tn = got.getTargetedNotifications()[0];
+	assertEquals(new Integer(9), tn.getListenerID());
+	assertEquals("t", tn.getNotification().getType());
+	assertEquals(3, tn.getNotification().getSequenceNumber());
+    }
+
+    public void testUnknownType() throws Exception {
+	final DataInputStream in = new DataInputStream(
+		new ByteArrayInputStream(new byte[] {(byte) 200}));
+	try {
+	    new BinaryMessageCodec().readMessage(in, null);
+	    fail("read an unknown message type");
+	} catch (IOException e) {
+	    // OK
+	}
+    }
+
+    /**
+     * A request declaring more parameters than the maximum size is
+     * rejected before anything is allocated.
+     */
+    public void testHugeParamCount() throws Exception {
+	final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+	final DataOutputStream out = new DataOutputStream(bout);
+	out.writeByte(1);		// MBEAN_SERVER_REQUEST
+	out.writeLong(1);
+	out.writeInt(MBeanServerRequestMessage.GET_ATTRIBUTE);
+	out.writeInt(0x7ffffff0);
+	out.flush();
+	assertRejected(new BinaryMessageCodec(), bout.toByteArray());
+
+	// under the maximum size, the missing parameters end the stream
+	final byte[] bytes = bout.toByteArray();
+	bytes[bytes.length - 4] = 0x03;
+	assertRejected(new BinaryMessageCodec(), bytes);
+    }
+
+    /**
+     * A byte array whose declared length has not been sent is
+     * rejected without allocating that length.
+     */
+    public void testHugeByteArray() throws Exception {
+	final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+	final DataOutputStream out = new DataOutputStream(bout);
+	out.writeByte(2);		// MBEAN_SERVER_RESPONSE
+	out.writeLong(1);
+	out.writeBoolean(false);
+	out.writeByte(2);		// BYTE_ARRAY
+	out.writeInt(0x7ffffff0);
+	out.write(new byte[10]);
+	out.flush();
+	assertRejected(new BinaryMessageCodec(), bout.toByteArray());
+	assertRejected(new BinaryMessageCodec(Integer.MAX_VALUE),
+		       bout.toByteArray());
+    }
+
+    /**
+     * The bytes and elements of a message add up to its maximum size.
+     */
+    public void testMaxSize() throws Exception {
+	final char[] chars = new char[600];
+	Arrays.fill(chars, 'x');
+	final String s = new String(chars);
+
+	final Message one = new MBeanServerResponseMessage(1, s, false);
+	final Message two = new MBeanServerResponseMessage(1,
+		new Object[] {s, s}, false);
+
+	assertEquals(s, ((MBeanServerResponseMessage) roundTrip(
+		new BinaryMessageCodec(1000), one)).getWrappedResult());
+	assertRejected(new BinaryMessageCodec(1000), write(two));
+	assertRejected(new BinaryMessageCodec(500), write(one));
+    }
+
+    /**
+     * Values nested too deeply are rejected instead of overflowing the
+     * stack of the reader.
+     */
+    public void testDeepNesting() throws Exception {
+	final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+	final DataOutputStream out = new DataOutputStream(bout);
+	out.writeByte(2);		// MBEAN_SERVER_RESPONSE
+	out.writeLong(1);
+	out.writeBoolean(false);
+	for (int i = 0; i < 200000; i++) {
+	    out.writeByte(10);		// OBJECT_ARRAY
+	    out.writeInt(1);
+	}
+	out.writeByte(0);		// NULL
+	out.flush();
+	assertRejected(new BinaryMessageCodec(), bout.toByteArray());
+    }
+
+    /**
+     * Values nested deeper than the reader accepts are written with
+     * Java serialization.
+     */
+    public void testDeepValueWritten() throws Exception {
+	Object value = "leaf";
+	for (int i = 0; i < BinaryMessageCodec.MAX_DEPTH * 2; i++) {
+	    value = new Object[] {value};
+	}
+	Object got = ((MBeanServerResponseMessage) roundTrip(
+		new MBeanServerResponseMessage(1, value, false)))
+	    .getWrappedResult();
+	for (int i = 0; i < BinaryMessageCodec.MAX_DEPTH * 2; i++) {
+	    got = ((Object[]) got)[0];
+	}
+	assertEquals("leaf", got);
+    }
+
+    /**
+     * A string array holding something else than strings is rejected.
+     */
+    public void testWrongArrayElement() throws Exception {
+	final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+	final DataOutputStream out = new DataOutputStream(bout);
+	out.writeByte(2);		// MBEAN_SERVER_RESPONSE
+	out.writeLong(1);
+	out.writeBoolean(false);
+	out.writeByte(9);		// STRING_ARRAY
+	out.writeInt(1);
+	out.writeByte(4);		// INTEGER
+	out.writeInt(1);
+	out.flush();
+	assertRejected(new BinaryMessageCodec(), bout.toByteArray());
+    }
+
+    /**
+     * The nested stream of a wrapped object is bounded like the other
+     * lengths, in the binary encoding and in Java serialization.
+     */
+    public void testHugeWrappedObject() throws Exception {
+	final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+	final DataOutputStream out = new DataOutputStream(bout);
+	out.writeByte(2);		// MBEAN_SERVER_RESPONSE
+	out.writeLong(1);
+	out.writeBoolean(false);
+	out.writeByte(17);		// WRAPPED
+	out.writeBoolean(false);
+	out.writeInt(0x7ffffff0);
+	out.write(new byte[10]);
+	out.flush();
+	assertRejected(new BinaryMessageCodec(), bout.toByteArray());
+
+	final ByteArrayOutputStream sout = new ByteArrayOutputStream();
+	final ObjectOutputStream oout = new ObjectOutputStream(sout);
+	oout.writeObject(new DeferredObjectWrapping().wrap(new Date(5)));
+	oout.close();
+	final byte[] bytes = sout.toByteArray();
+	// the length before the nested serialization stream
+	final int magic = indexOf(bytes, new byte[] {(byte) 0xac, (byte) 0xed},
+				  4);
+	assertTrue(magic > 4);
+	bytes[magic - 4] = 0x7f;
+	try {
+	    new ObjectInputStream(new ByteArrayInputStream(bytes))
+		.readObject();
+	    fail("read a hostile wrapped object");
+	} catch (IOException e) {
+	    // OK
+	}
+    }
+
+    /**
+     * A wrapped notification result declaring more notifications than
+     * its bytes can hold is rejected.
+     */
+    public void testHugeNotificationCount() throws Exception {
+	final DeferredObjectWrapping wrapping = new DeferredObjectWrapping();
+	final NotificationResult nr =
+	    new NotificationResult(1, 2, new TargetedNotification[] {
+		new TargetedNotification(new Notification("t", "source", 1),
+					 new Integer(9))});
+	final byte[] bytes = write(new NotificationResponseMessage(
+		wrapping.wrap(nr)));
+	// the count follows the magic number and the sequence numbers
+	final int magic = indexOf(bytes, new byte[] {0x4e, 0x52}, 0);
+	bytes[magic + 2 + 8 + 8] = 0x7f;
+
+	final NotificationResponseMessage got = (NotificationResponseMessage)
+	    new BinaryMessageCodec().readMessage(new DataInputStream(
+		new ByteArrayInputStream(bytes)), null);
+	try {
+	    wrapping.unwrap(got.getWrappedNotificationResult(), null);
+	    fail("read a hostile notification result");
+	} catch (IOException e) {
+	    // OK
+	}
+    }
+
+    private static int indexOf(byte[] bytes, byte[] what, int from) {
+	for (int i = from; i <= bytes.length - what.length; i++) {
+	    int j = 0;
+	    while (j < what.length && bytes[i + j] == what[j]) {
+		j++;
+	    }
+	    if (j == what.length) {
+		return i;
+	    }
+	}
+	return -1;
+    }
+
+    private static void assertRejected(BinaryMessageCodec codec,
+				       byte[] bytes) throws Exception {
+	final DataInputStream in =
+	    new DataInputStream(new ByteArrayInputStream(bytes));
+	try {
+	    codec.readMessage(in, null);
+	    fail("read a hostile message");
+	} catch (IOException e) {
+	    // OK
+	}
+    }
+
+    private static byte[] write(Message msg) throws Exception {
+	final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+	final DataOutputStream out = new DataOutputStream(bout);
+	new BinaryMessageCodec().writeMessage(msg, out);
+	out.flush();
+	return bout.toByteArray();
+    }
+
+    private static Message roundTrip(Message msg) throws Exception {
+	return roundTrip(new BinaryMessageCodec(), msg);
+    }
+
+    private static Message roundTrip(BinaryMessageCodec codec, Message msg)
+	    throws Exception {
+	final byte[] bytes = write(msg);
+	final DataInputStream in = new DataInputStream(
+		new ByteArrayInputStream(bytes));
+	final Message got = codec.readMessage(in, null);
+	assertSame(msg.getClass(), got.getClass());
+	assertEquals("bytes left", 0, in.available());
+	return got;
+    }
+
+    private static void assertValueEquals(String what, Object expected,
+					  Object got) {
+	if (expected == null) {
+	    assertNull(what, got);
+	} else if (expected instanceof byte[]) {
+	    assertTrue(what, Arrays.equals((byte[]) expected, (byte[]) got));
+	} else if (expected instanceof Object[]) {
+	    final Object[] e = (Object[]) expected;
+	    final Object[] g = (Object[]) got;
+	    assertEquals(what + " length", e.length, g.length);
+	    for (int i = 0; i < e.length; i++) {
+		assertValueEquals(what + "[" + i + "]", e[i], g[i]);
+	    }
+	} else if (expected instanceof AttributeList) {
+	    assertValueEquals(what, ((AttributeList) expected).toArray(),
+			      ((AttributeList) got).toArray());
+	} else if (expected instanceof Attribute) {
+	    final Attribute e = (Attribute) expected;
+	    final Attribute g = (Attribute) got;
+	    assertEquals(what, e.getName(), g.getName());
+	    assertValueEquals(what, e.getValue(), g.getValue());
+	} else {
+	    assertEquals(what, expected, got);
+	}
+    }
+}
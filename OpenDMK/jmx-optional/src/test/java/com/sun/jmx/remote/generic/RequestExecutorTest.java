@@ -0,0 +1,176 @@
+package com.sun.jmx.remote.generic;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import com.sun.jmx.remote.opt.util.VirtualThreads;
+
+/**
+ * Tests the threads of {@link RequestExecutor}.
+ */
+public class RequestExecutorTest extends TestCase {
+
+    public RequestExecutorTest(String testName) {
+	super(testName);
+    }
+
+    public static Test suite() {
+	return new TestSuite(RequestExecutorTest.class);
+    }
+
+    /**
+     * Two jobs of two connections handed off back to back while one
+     * thread is idle: the second one must not wait behind the first.
+     */
+    public void testIdleCapacityUsed() throws Exception {
+	final RequestExecutor executor =
+	    new RequestExecutor(1, 2, 50, 100, false);
+	try {
+	    final CountDownLatch first = new CountDownLatch(1);
+	    executor.newQueue(1).handoff(countDown(first));
+	    assertTrue(first.await(5, TimeUnit.SECONDS));
+
+	    for (int i = 0; i < 10; i++) {
+		// one idle thread
+		waitIdle(executor, 1);
+
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch blocked = new CountDownLatch(1);
+		final CountDownLatch other = new CountDownLatch(1);
+
+		executor.newQueue(1).handoff(new Runnable() {
+			public void run() {
+			    blocked.countDown();
+			    await(release);
+			}
+		    });
+		executor.newQueue(1).handoff(countDown(other));
+
+		final boolean ran = other.await(5, TimeUnit.SECONDS);
+		release.countDown();
+		assertTrue("second job waited behind the first, round " + i,
+			   ran);
+		assertTrue(blocked.await(5, TimeUnit.SECONDS));
+	    }
+	} finally {
+	    executor.terminate();
+	}
+    }
+
+    /**
+     * The threads of a queue are bounded by its maximum active
+     * requests.
+     */
+    public void testMaxActive() throws Exception {
+	checkMaxActive(new RequestExecutor(0, 8, 1000, 100, false));
+    }
+
+    public void testMaxActiveVirtual() throws Exception {
+	if (!VirtualThreads.isSupported()) {
+	    return;
+	}
+	checkMaxActive(new RequestExecutor(0, 8, 1000, 100, true));
+    }
+
+    private void checkMaxActive(RequestExecutor executor) throws Exception {
+	try {
+	    final RequestExecutor.Queue queue = executor.newQueue(2);
+	    final int jobs = 200;
+	    final CountDownLatch done = new CountDownLatch(jobs);
+	    final int[] state = new int[2]; // active, max active
+
+	    for (int i = 0; i < jobs; i++) {
+		queue.handoff(new Runnable() {
+			public void run() {
+			    synchronized (state) {
+				state[0]++;
+				state[1] = Math.max(state[1], state[0]);
+			    }
+			    Thread.yield();
+			    synchronized (state) {
+				state[0]--;
+			    }
+			    done.countDown();
+			}
+		    });
+	    }
+
+	    assertTrue(done.await(10, TimeUnit.SECONDS));
+	    synchronized (state) {
+		assertTrue("max active " + state[1], state[1] <= 2);
+	    }
+	} finally {
+	    executor.terminate();
+	}
+    }
+
+    /**
+     * The idle threads above the core number end after the keep-alive
+     * time.
+     */
+    public void testKeepAlive() throws Exception {
+	final RequestExecutor executor =
+	    new RequestExecutor(1, 4, 200, 100, false);
+	try {
+	    final CountDownLatch started = new CountDownLatch(4);
+	    final CountDownLatch release = new CountDownLatch(1);
+	    for (int i = 0; i < 4; i++) {
+		executor.newQueue(1).handoff(new Runnable() {
+			public void run() {
+			    started.countDown();
+			    await(release);
+			}
+		    });
+	    }
+	    assertTrue(started.await(5, TimeUnit.SECONDS));
+	    assertEquals(4, executor.getThreads());
+	    release.countDown();
+
+	    final long end = System.currentTimeMillis() + 5000;
+	    while (executor.getThreads() > 1 &&
+		   System.currentTimeMillis() < end) {
+		Thread.sleep(20);
+	    }
+	    assertEquals(1, executor.getThreads());
+
+	    // the core thread still serves
+	    final CountDownLatch again = new CountDownLatch(1);
+	    executor.newQueue(1).handoff(countDown(again));
+	    assertTrue(again.await(5, TimeUnit.SECONDS));
+	} finally {
+	    executor.terminate();
+	}
+    }
+
+    private static Runnable countDown(final CountDownLatch latch) {
+	return new Runnable() {
+		public void run() {
+		    latch.countDown();
+		}
+	    };
+    }
+
+    private static void await(CountDownLatch latch) {
+	try {
+	    latch.await(10, TimeUnit.SECONDS);
+	} catch (InterruptedException e) {
+	    // end the job
+	}
+    }
+
+    private static void waitIdle(RequestExecutor executor, int threads)
+	    throws InterruptedException {
+	final long end = System.currentTimeMillis() + 5000;
+	while ((executor.getActiveThreads() > 0 ||
+		executor.getThreads() != threads) &&
+	       System.currentTimeMillis() < end) {
+	    Thread.sleep(5);
+	}
+	assertEquals(0, executor.getActiveThreads());
+	assertEquals(threads, executor.getThreads());
+    }
+}
@@ -0,0 +1,573 @@
+package com.sun.jmx.remote.opt.internal;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.Notification;
+import javax.management.NotificationBroadcasterSupport;
+import javax.management.ObjectName;
+import javax.management.remote.NotificationResult;
+import javax.management.remote.TargetedNotification;
+
+import com.sun.jmx.remote.opt.util.EnvHelp;
+
+import junit.framework.AssertionFailedError;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests the lock-free ring of {@link ArrayNotificationBuffer}: the
+ * notifications seen by concurrent readers, the notifications lost
+ * when the ring wraps around, the readers waiting for a notification,
+ * and the limits on the bytes held by the buffer and by each MBean.
+ */
+public class ArrayNotificationBufferTest extends TestCase {
+
+    public ArrayNotificationBufferTest(String testName) {
+	super(testName);
+    }
+
+    public static Test suite() {
+	return new TestSuite(ArrayNotificationBufferTest.class);
+    }
+
+    public interface EmitterMBean {
+	public int getCount();
+    }
+
+    public static class Emitter extends NotificationBroadcasterSupport
+	    implements EmitterMBean {
+	public int getCount() {
+	    return count;
+	}
+
+	void send(String type, Object userData) {
+	    final Notification n = new Notification(type, this, count++);
+	    n.setUserData(userData);
+	    sendNotification(n);
+	}
+
+	private int count;
+    }
+
+    protected void setUp() throws Exception {
+	mbs = MBeanServerFactory.newMBeanServer();
+    }
+
+    protected void tearDown() throws Exception {
+	if (buffer != null) {
+	    buffer.dispose();
+	}
+	ArrayNotificationBuffer.removeNotificationBuffer(mbs);
+    }
+
+    /**
+     * Several producers and readers: every reader gets every
+     * notification once, in the order each producer sent them, and
+     * no result starts after the sequence number asked for.
+     */
+    public void testConcurrentContinuity() throws Exception {
+	final int producers = 4;
+	final int readers = 4;
+	final int count = 20000;
+
+	final Emitter[] emitters = new Emitter[producers];
+	for (int i = 0; i < producers; i++) {
+	    emitters[i] = register("d:type=Emitter,i=" + i);
+	}
+	buffer = newBuffer(producers * count);
+	final long start = nextSequenceNumber();
+	final long end = start + producers * count;
+
+	final Reader[] rs = new Reader[readers];
+	for (int r = 0; r < readers; r++) {
+	    final Set listeners = (r % 2 == 0) ? new HashSet() :
+		(Set) new ListenerIndex();
+	    listeners.add(new ListenerInfo(new Integer(r),
+					   new ObjectName("d:*"), null));
+	    rs[r] = new Reader(listeners, start, end, 100);
+	    rs[r].start();
+	}
+
+	final Thread[] ps = new Thread[producers];
+	for (int p = 0; p < producers; p++) {
+	    final Emitter emitter = emitters[p];
+	    ps[p] = new Thread() {
+		    public void run() {
+			for (int i = 0; i < count; i++) {
+			    emitter.send("t", null);
+			}
+		    }
+		};
+	    ps[p].start();
+	}
+
+	join(ps);
+	join(rs);
+	for (int r = 0; r < readers; r++) {
+	    rs[r].check();
+	    assertEquals("reader " + r, producers * count, rs[r].got);
+	    assertEquals("reader " + r, 0, rs[r].lost);
+	}
+    }
+
+    /**
+     * The notifications overwritten before a reader gets them are
+     * reported once through the earliest sequence number.
+     */
+    public void testLostOnWrapAround() throws Exception {
+	final Emitter emitter = register("d:type=Emitter");
+	buffer = newBuffer(100);
+	final long start = nextSequenceNumber();
+
+	for (int i = 0; i < 1000; i++) {
+	    emitter.send("t", null);
+	}
+
+	final Set listeners = listenTo("d:type=Emitter");
+	final NotificationResult nr =
+	    buffer.fetchNotifications(listeners, start, 0, 1000);
+	assertEquals(900, nr.getEarliestSequenceNumber() - start);
+	assertEquals(start + 1000, nr.getNextSequenceNumber());
+
+	final TargetedNotification[] tns = nr.getTargetedNotifications();
+	assertEquals(100, tns.length);
+	for (int i = 0; i < tns.length; i++) {
+	    assertEquals(900 + i, tns[i].getNotification().getSequenceNumber());
+	}
+
+	// nothing is lost again
+	final NotificationResult again =
+	    buffer.fetchNotifications(listeners, nr.getNextSequenceNumber(),
+				      0, 1000);
+	assertEquals(0, again.getTargetedNotifications().length);
+	assertTrue(again.getEarliestSequenceNumber() <=
+		   nr.getNextSequenceNumber());
+    }
+
+    /**
+     * Readers slower than the producer: what each one gets and loses
+     * adds up to what was sent, and it gets it in order.
+     */
+    public void testConcurrentWrapAround() throws Exception {
+	final int count = 100000;
+	final int readers = 4;
+
+	final Emitter emitter = register("d:type=Emitter");
+	buffer = newBuffer(64);
+	final long start = nextSequenceNumber();
+	final long end = start + count;
+
+	final Reader[] rs = new Reader[readers];
+	for (int r = 0; r < readers; r++) {
+	    rs[r] = new Reader(listenTo("d:type=Emitter"), start, end, 10);
+	    rs[r].start();
+	}
+
+	for (int i = 0; i < count; i++) {
+	    emitter.send("t", null);
+	}
+
+	join(rs);
+	for (int r = 0; r < readers; r++) {
+	    rs[r].check();
+	    assertEquals("reader " + r, count, rs[r].got + rs[r].lost);
+	}
+    }
+
+    /**
+     * A reader waiting for a notification is woken up as soon as it
+     * arrives.
+     */
+    public void testWaiterWokenOnArrival() throws Exception {
+	final Emitter emitter = register("d:type=Emitter");
+	buffer = newBuffer(100);
+	final long start = nextSequenceNumber();
+
+	final Fetcher fetcher = new Fetcher(listenTo("d:type=Emitter"), start);
+	fetcher.start();
+	waitParked(fetcher);
+
+	final long sent = System.currentTimeMillis();
+	emitter.send("t", null);
+	fetcher.join(10000);
+
+	rethrow(fetcher.failure);
+	assertEquals(1, fetcher.result.getTargetedNotifications().length);
+	assertTrue("woken after " + (fetcher.endTime - sent) + "ms",
+		   fetcher.endTime - sent < 5000);
+    }
+
+    /**
+     * A reader waiting for a notification returns nothing when its
+     * timeout expires, also if notifications it does not select
+     * arrive meanwhile.
+     */
+    public void testWaiterTimeout() throws Exception {
+	final Emitter emitter = register("d:type=Emitter");
+	final Emitter other = register("d:type=Other");
+	buffer = newBuffer(100);
+	final long start = nextSequenceNumber();
+
+	final long begin = System.currentTimeMillis();
+	final Thread sender = new Thread() {
+		public void run() {
+		    try {
+			for (int i = 0; i < 5; i++) {
+			    Thread.sleep(50);
+			    other.send("t", null);
+			}
+		    } catch (InterruptedException e) {
+			// stop sending
+		    }
+		}
+	    };
+	sender.start();
+
+	final NotificationResult nr =
+	    buffer.fetchNotifications(listenTo("d:type=Emitter"), start,
+				      500, 10);
+	final long elapsed = System.currentTimeMillis() - begin;
+	sender.join();
+
+	assertEquals(0, nr.getTargetedNotifications().length);
+	assertTrue("returned after " + elapsed + "ms", elapsed >= 450);
+	assertTrue("returned after " + elapsed + "ms", elapsed < 5000);
+	assertEquals(start, nr.getEarliestSequenceNumber());
+    }
+
+    /**
+     * A waiting reader is woken up when the buffer is disposed, and
+     * throws InterruptedException when interrupted.
+     */
+    public void testWaiterDisposedOrInterrupted() throws Exception {
+	register("d:type=Emitter");
+	buffer = newBuffer(100);
+	final long start = nextSequenceNumber();
+
+	final Fetcher interrupted =
+	    new Fetcher(listenTo("d:type=Emitter"), start);
+	interrupted.start();
+	waitParked(interrupted);
+	interrupted.interrupt();
+	interrupted.join(10000);
+	assertTrue(String.valueOf(interrupted.failure),
+		   interrupted.failure instanceof InterruptedException);
+
+	final Fetcher disposed =
+	    new Fetcher(listenTo("d:type=Emitter"), start);
+	disposed.start();
+	waitParked(disposed);
+	final long disposeTime = System.currentTimeMillis();
+	buffer.dispose();
+	disposed.join(10000);
+	buffer = null;
+
+	rethrow(disposed.failure);
+	assertEquals(0, disposed.result.getTargetedNotifications().length);
+	assertTrue("woken after " + (disposed.endTime - disposeTime) + "ms",
+		   disposed.endTime - disposeTime < 5000);
+    }
+
+    /**
+     * A buffer bounded by bytes drops its oldest notifications to stay
+     * under the limit, and the readers count them as lost.
+     */
+    public void testMaxBytes() throws Exception {
+	final Emitter emitter = register("d:type=Emitter");
+	buffer = newBuffer(1000, 1000000, 0);
+	final long start = nextSequenceNumber();
+
+	for (int i = 0; i < 30; i++) {
+	    emitter.send("t", new byte[90000]);
+	    assertTrue(statistic("bytes") <= 1000000);
+	}
+	assertEquals(19, statistic("evicted"));
+	assertEquals(11, statistic("notifs"));
+	assertEquals(0, statistic("dropped"));
+
+	final Reader reader =
+	    new Reader(listenTo("d:type=Emitter"), start, start + 30, 100);
+	reader.run();
+	reader.check();
+	assertEquals(11, reader.got);
+	assertEquals(19, reader.lost);
+    }
+
+    /**
+     * A buffer bounded by bytes starts small and grows its ring up to
+     * its maximum number of notifications without dropping any.
+     */
+    public void testRingGrows() throws Exception {
+	final Emitter emitter = register("d:type=Emitter");
+	buffer = newBuffer(10000, 1000000, 0);
+	final long start = nextSequenceNumber();
+	final long initial = statistic("capacity");
+
+	final Reader reader =
+	    new Reader(listenTo("d:type=Emitter"), start, start + 5000, 100);
+	reader.start();
+	for (int i = 0; i < 5000; i++) {
+	    emitter.send("t", null);
+	}
+	join(new Thread[] {reader});
+
+	reader.check();
+	assertEquals(5000, reader.got);
+	assertEquals(0, reader.lost);
+	assertTrue("capacity " + statistic("capacity"),
+		   statistic("capacity") > initial);
+	assertTrue(statistic("capacity") <= 10000);
+	assertEquals(0, statistic("dropped"));
+	assertEquals(0, statistic("evicted"));
+    }
+
+    /**
+     * The notifications of an MBean over its quota leave tombstones:
+     * the readers selecting that MBean count them as lost, the others
+     * do not see them.
+     */
+    public void testQuotaTombstones() throws Exception {
+	final Emitter big = register("d:name=big");
+	final Emitter small = register("d:name=small");
+	buffer = newBuffer(1000, 0, 100000);
+	final long start = nextSequenceNumber();
+
+	for (int i = 0; i < 10; i++) {
+	    big.send("t", new byte[30000]);
+	}
+	for (int i = 0; i < 5; i++) {
+	    small.send("t", "small");
+	}
+	assertEquals(7, statistic("quotaEvicted"));
+	assertEquals(0, statistic("evicted"));
+	assertEquals(0, statistic("dropped"));
+	assertTrue(statistic("bytes") <= 100000 + 5 * 1000);
+
+	final Reader bigReader =
+	    new Reader(listenTo("d:name=big"), start, start + 15, 100);
+	bigReader.run();
+	bigReader.check();
+	assertEquals(3, bigReader.got);
+	assertEquals(7, bigReader.lost);
+
+	final Reader smallReader =
+	    new Reader(listenTo("d:name=small"), start, start + 15, 100);
+	smallReader.run();
+	smallReader.check();
+	assertEquals(5, smallReader.got);
+	assertEquals(0, smallReader.lost);
+
+	final Reader allReader =
+	    new Reader(listenTo("d:*"), start, start + 15, 100);
+	allReader.run();
+	allReader.check();
+	assertEquals(8, allReader.got);
+	assertEquals(7, allReader.lost);
+    }
+
+    /**
+     * A tombstone in the middle of what a reader selects ends the
+     * result before it, so that the notifications before it are not
+     * counted as lost.
+     */
+    public void testQuotaTombstoneBetweenNotifications() throws Exception {
+	final Emitter big = register("d:name=big");
+	final Emitter small = register("d:name=small");
+	buffer = newBuffer(1000, 0, 100000);
+	final long start = nextSequenceNumber();
+
+	small.send("t", "before");
+	for (int i = 0; i < 4; i++) {
+	    big.send("t", new byte[30000]);
+	}
+	small.send("t", "after");
+
+	final Set listeners = listenTo("d:*");
+	final NotificationResult first =
+	    buffer.fetchNotifications(listeners, start, 0, 100);
+	assertEquals(start, first.getEarliestSequenceNumber());
+	assertEquals(1, first.getTargetedNotifications().length);
+	assertEquals("before", first.getTargetedNotifications()[0]
+		     .getNotification().getUserData());
+
+	final NotificationResult second =
+	    buffer.fetchNotifications(listeners,
+				      first.getNextSequenceNumber(), 0, 100);
+	assertEquals(1, second.getEarliestSequenceNumber() -
+		     first.getNextSequenceNumber());
+	assertEquals(4, second.getTargetedNotifications().length);
+	assertEquals(start + 6, second.getNextSequenceNumber());
+    }
+
+    // utilities
+
+    /**
+     * Fetches from a start until an end sequence number, checking that
+     * each result continues the previous one and that the
+     * notifications of each producer come in order.
+     */
+    class Reader extends Thread {
+	Reader(Set listeners, long start, long end, int max) {
+	    this.listeners = listeners;
+	    this.start = start;
+	    this.end = end;
+	    this.max = max;
+	}
+
+	public void run() {
+	    try {
+		long seq = start;
+		while (seq < end) {
+		    final NotificationResult nr =
+			buffer.fetchNotifications(listeners, seq, 1000, max);
+		    if (nr.getEarliestSequenceNumber() > seq) {
+			lost += nr.getEarliestSequenceNumber() - seq;
+		    }
+		    final TargetedNotification[] tns =
+			nr.getTargetedNotifications();
+		    for (int i = 0; i < tns.length; i++) {
+			final Notification n = tns[i].getNotification();
+			final Long previous = (Long) last.get(n.getSource());
+			if (previous != null &&
+			    n.getSequenceNumber() <= previous.longValue()) {
+			    throw new IllegalStateException("Out of order: " +
+				n.getSequenceNumber() + " after " + previous);
+			}
+			last.put(n.getSource(),
+				 new Long(n.getSequenceNumber()));
+			got++;
+		    }
+		    if (nr.getNextSequenceNumber() < seq) {
+			throw new IllegalStateException("Went back from " +
+			    seq + " to " + nr.getNextSequenceNumber());
+		    }
+		    seq = nr.getNextSequenceNumber();
+		}
+	    } catch (Throwable t) {
+		failure = t;
+	    }
+	}
+
+	void check() {
+	    rethrow(failure);
+	    assertFalse("reader still running", isAlive());
+	}
+
+	private final Set listeners;
+	private final long start;
+	private final long end;
+	private final int max;
+	private final Map/*<Object,Long>*/ last = new HashMap();
+
+	volatile long got;
+	volatile long lost;
+	volatile Throwable failure;
+    }
+
+    /**
+     * Fetches once, waiting for a notification.
+     */
+    class Fetcher extends Thread {
+	Fetcher(Set listeners, long start) {
+	    this.listeners = listeners;
+	    this.start = start;
+	}
+
+	public void run() {
+	    try {
+		result = buffer.fetchNotifications(listeners, start,
+						   60000, 10);
+	    } catch (Throwable t) {
+		failure = t;
+	    }
+	    endTime = System.currentTimeMillis();
+	}
+
+	private final Set listeners;
+	private final long start;
+
+	volatile NotificationResult result;
+	volatile Throwable failure;
+	volatile long endTime;
+    }
+
+    static void rethrow(Throwable failure) {
+	if (failure != null) {
+	    final AssertionFailedError e =
+		new AssertionFailedError(failure.toString());
+	    e.initCause(failure);
+	    throw e;
+	}
+    }
+
+    Emitter register(String name) throws Exception {
+	final Emitter emitter = new Emitter();
+	mbs.registerMBean(emitter, new ObjectName(name));
+	return emitter;
+    }
+
+    NotificationBuffer newBuffer(int size) {
+	return newBuffer(size, 0, 0);
+    }
+
+    NotificationBuffer newBuffer(int size, long maxBytes,
+				 long maxBytesPerMBean) {
+	final Map env = new HashMap();
+	env.put(EnvHelp.BUFFER_SIZE_PROPERTY, String.valueOf(size));
+	env.put(EnvHelp.BUFFER_MAX_BYTES_PROPERTY, String.valueOf(maxBytes));
+	env.put(EnvHelp.BUFFER_MAX_BYTES_PER_MBEAN_PROPERTY,
+		String.valueOf(maxBytesPerMBean));
+	return ArrayNotificationBuffer.getNotificationBuffer(mbs, env);
+    }
+
+    /**
+     * Returns a field of {@link NotificationBuffer#getStatistics}.
+     */
+    long statistic(String field) {
+	final String stats = " " + buffer.getStatistics() + " ";
+	final int i = stats.indexOf(" " + field + "=");
+	assertTrue(field + " in " + stats, i >= 0);
+	final int from = i + field.length() + 2;
+	return Long.parseLong(stats.substring(from, stats.indexOf(' ', from)));
+    }
+
+    long nextSequenceNumber() throws InterruptedException {
+	return buffer.fetchNotifications(new HashSet(), -1, 0, 0)
+	    .getNextSequenceNumber();
+    }
+
+    static Set listenTo(String pattern) throws Exception {
+	final Set listeners = new ListenerIndex();
+	listeners.add(new ListenerInfo(new Integer(1),
+				       new ObjectName(pattern), null));
+	return listeners;
+    }
+
+    static void join(Thread[] threads) throws InterruptedException {
+	for (int i = 0; i < threads.length; i++) {
+	    threads[i].join(60000);
+	    assertFalse("thread still running", threads[i].isAlive());
+	}
+    }
+
+    /**
+     * Waits until the reader is parked in the buffer.
+     */
+    static void waitParked(Thread reader) throws InterruptedException {
+	final long end = System.currentTimeMillis() + 5000;
+	while (reader.getState() != Thread.State.TIMED_WAITING &&
+	       System.currentTimeMillis() < end) {
+	    Thread.sleep(5);
+	}
+	assertEquals(Thread.State.TIMED_WAITING, reader.getState());
+    }
+
+    MBeanServer mbs;
+    NotificationBuffer buffer;
+}
@@ -0,0 +1,114 @@
+package com.sun.jmx.remote.profile.zlib;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests the frames of {@link ZlibOutputStream} and
+ * {@link ZlibInputStream}.
+ */
+public class ZlibStreamTest extends TestCase {
+
+    public ZlibStreamTest(String testName) {
+	super(testName);
+    }
+
+    public static Test suite() {
+	return new TestSuite(ZlibStreamTest.class);
+    }
+
+    /**
+     * A message bigger than a frame is split, and read back whole.
+     */
+    public void testBigMessage() throws Exception {
+	final byte[] message = new byte[ZlibOutputStream.MAX_FRAME_SIZE * 2 +
+					100];
+	final Random random = new Random(1);
+	for (int i = 0; i < message.length; i += 2) {
+	    message[i] = (byte) random.nextInt(4);
+	}
+
+	final ZlibStatistics stats = new ZlibStatistics();
+	final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+	final ZlibOutputStream out = new ZlibOutputStream(bout, 512,
+		Deflater.DEFAULT_COMPRESSION, stats);
+	out.write(message);
+	out.write(42);
+	out.flush();
+
+	final DataInputStream in = new DataInputStream(new ZlibInputStream(
+		new ByteArrayInputStream(bout.toByteArray()), stats));
+	final byte[] got = new byte[message.length];
+	in.readFully(got);
+	assertTrue(Arrays.equals(message, got));
+	assertEquals(42, in.read());
+	assertEquals(-1, in.read());
+    }
+
+    /**
+     * A frame declaring more than the maximum frame size is rejected
+     * before its buffer is allocated.
+     */
+    public void testHugeFrame() throws Exception {
+	assertRejected(new byte[] {0, 0x7f, (byte) 0xff, (byte) 0xff,
+				   (byte) 0xf0});
+	assertRejected(new byte[] {1, 0x7f, (byte) 0xff, (byte) 0xff,
+				   (byte) 0xf0, 0, 0, 0, 10});
+	assertRejected(new byte[] {0, (byte) 0xff, (byte) 0xff, (byte) 0xff,
+				   (byte) 0xff});
+    }
+
+    /**
+     * A compressed frame is not inflated beyond its declared length,
+     * nor bigger than it.
+     */
+    public void testBomb() throws Exception {
+	final byte[] zeros = new byte[1024 * 1024];
+	final Deflater deflater = new Deflater();
+	deflater.setInput(zeros);
+	deflater.finish();
+	final byte[] compressed = new byte[zeros.length];
+	final int clen = deflater.deflate(compressed);
+	deflater.end();
+
+	// declares 1000 bytes, inflates to a megabyte
+	final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+	final DataOutputStream out = new DataOutputStream(bout);
+	out.writeByte(ZlibOutputStream.COMPRESSED);
+	out.writeInt(1000);
+	out.writeInt(clen);
+	out.write(compressed, 0, clen);
+	out.flush();
+	assertRejected(bout.toByteArray());
+
+	// compressed data bigger than the data
+	bout.reset();
+	out.writeByte(ZlibOutputStream.COMPRESSED);
+	out.writeInt(10);
+	out.writeInt(clen);
+	out.write(compressed, 0, clen);
+	out.flush();
+	assertRejected(bout.toByteArray());
+    }
+
+    private static void assertRejected(byte[] frame) throws Exception {
+	final ZlibInputStream in = new ZlibInputStream(
+		new ByteArrayInputStream(frame), new ZlibStatistics());
+	try {
+	    in.read();
+	    fail("read a hostile frame");
+	} catch (IOException e) {
+	    // OK
+	}
+    }
+}